@@ -84,6 +84,17 @@ public abstract class AbstractKVSpaceReader implements IKVSpaceReader {
 
     protected abstract IKVSpaceIterator doNewIterator(Boundary subBoundary);
 
+    @Override
+    public final IKVSpaceIterator newZeroCopyIterator(Boundary subBoundary) {
+        return metricMgr.iterNewCallTimer.record(
+            () -> new MonitoredKeyRangeIterator(doNewZeroCopyIterator(subBoundary)));
+    }
+
+    protected IKVSpaceIterator doNewZeroCopyIterator(Boundary subBoundary) {
+        // the key and value are not copied by default
+        return doNewIterator(subBoundary);
+    }
+
     private class MonitoredKeyRangeIterator implements IKVSpaceIterator {
         final IKVSpaceIterator delegate;
 
@@ -32,4 +32,11 @@ public interface ICPableKVSpace extends IKVSpace {
      * @return the range object for accessing the checkpoint
      */
     Optional<IKVSpaceCheckpoint> open(String checkpointId);
+
+    /**
+     * Start a session to restore the space in bulk, the data of the space will be replaced once the session is done.
+     *
+     * @return the restore session
+     */
+    IKVSpaceRestoreSession startRestore();
 }
@@ -25,4 +25,13 @@ public interface IKVSpaceReader extends IKVSpaceMetadata {
     IKVSpaceIterator newIterator();
 
     IKVSpaceIterator newIterator(Boundary subBoundary);
+
+    /**
+     * Create an iterator whose key and value may be the views over the buffers reused by the iterator, they are only
+     * valid until the iterator is moved. Use it for scanning the entries without retaining them.
+     *
+     * @param subBoundary the boundary to iterate
+     * @return the iterator
+     */
+    IKVSpaceIterator newZeroCopyIterator(Boundary subBoundary);
 }
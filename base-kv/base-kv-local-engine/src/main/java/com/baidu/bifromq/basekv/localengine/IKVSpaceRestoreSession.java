@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.basekv.localengine;
+
+import com.google.protobuf.ByteString;
+
+/**
+ * The session for bulk restoring a kv space from a stream of key-value pairs sorted in ascending key order, e.g. the
+ * content of a checkpoint. Once done, all the existing data of the space will be replaced by the restored ones.
+ */
+public interface IKVSpaceRestoreSession extends IKVSpaceMetadataUpdatable<IKVSpaceRestoreSession> {
+    /**
+     * Put a key-value pair, the key must be greater than any key put before.
+     *
+     * @param key   the key
+     * @param value the value
+     * @return the session
+     */
+    IKVSpaceRestoreSession put(ByteString key, ByteString value);
+
+    /**
+     * Replace the data of the space with the restored ones, after done the session should not be used again.
+     */
+    void done();
+
+    /**
+     * Abort the session and discard all the restored data.
+     */
+    void abort();
+
+    /**
+     * How many key-value pairs restored.
+     *
+     * @return the restored count
+     */
+    int count();
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.basekv.localengine.memory;
+
+import static com.google.protobuf.ByteString.unsignedLexicographicalComparator;
+
+import com.baidu.bifromq.basekv.proto.Boundary;
+import com.google.protobuf.ByteString;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Range data kept in on-heap skiplist.
+ */
+class HeapRangeData implements IRangeData {
+    private final ConcurrentSkipListMap<ByteString, ByteString> data;
+
+    HeapRangeData() {
+        this(new ConcurrentSkipListMap<>(unsignedLexicographicalComparator()));
+    }
+
+    private HeapRangeData(ConcurrentSkipListMap<ByteString, ByteString> data) {
+        this.data = data;
+    }
+
+    @Override
+    public boolean containsKey(ByteString key) {
+        return data.containsKey(key);
+    }
+
+    @Override
+    public ByteString get(ByteString key) {
+        return data.get(key);
+    }
+
+    @Override
+    public void put(ByteString key, ByteString value) {
+        data.put(key, value);
+    }
+
+    @Override
+    public void remove(ByteString key) {
+        data.remove(key);
+    }
+
+    @Override
+    public void clear(Boundary boundary) {
+        if (!boundary.hasStartKey() && !boundary.hasEndKey()) {
+            data.clear();
+        } else {
+            subMap(boundary).clear();
+        }
+    }
+
+    @Override
+    public long size(Boundary boundary) {
+        // this may take a long time
+        return subMap(boundary).entrySet()
+            .stream()
+            .mapToLong(entry -> entry.getKey().size() + entry.getValue().size())
+            .sum();
+    }
+
+    @Override
+    public Map.Entry<ByteString, ByteString> firstEntry() {
+        return data.firstEntry();
+    }
+
+    @Override
+    public Map.Entry<ByteString, ByteString> lastEntry() {
+        return data.lastEntry();
+    }
+
+    @Override
+    public Map.Entry<ByteString, ByteString> ceilingEntry(ByteString key) {
+        return data.ceilingEntry(key);
+    }
+
+    @Override
+    public Map.Entry<ByteString, ByteString> floorEntry(ByteString key) {
+        return data.floorEntry(key);
+    }
+
+    @Override
+    public Map.Entry<ByteString, ByteString> higherEntry(ByteString key) {
+        return data.higherEntry(key);
+    }
+
+    @Override
+    public Map.Entry<ByteString, ByteString> lowerEntry(ByteString key) {
+        return data.lowerEntry(key);
+    }
+
+    @Override
+    public IRangeData snapshot() {
+        return new HeapRangeData(data.clone());
+    }
+
+    private NavigableMap<ByteString, ByteString> subMap(Boundary boundary) {
+        if (!boundary.hasStartKey() && !boundary.hasEndKey()) {
+            return data;
+        } else if (!boundary.hasStartKey()) {
+            return data.headMap(boundary.getEndKey(), false);
+        } else if (!boundary.hasEndKey()) {
+            return data.tailMap(boundary.getStartKey(), true);
+        } else {
+            return data.subMap(boundary.getStartKey(), true, boundary.getEndKey(), false);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.basekv.localengine.memory;
+
+import com.baidu.bifromq.basekv.proto.Boundary;
+import com.google.protobuf.ByteString;
+import java.util.Map;
+
+/**
+ * The sorted key-value data of an in-memory kv space, keys are ordered in unsigned lexicographical order.
+ */
+interface IRangeData {
+    boolean containsKey(ByteString key);
+
+    /**
+     * Get the value of the key.
+     *
+     * @param key the key
+     * @return the value or null if not exist
+     */
+    ByteString get(ByteString key);
+
+    void put(ByteString key, ByteString value);
+
+    void remove(ByteString key);
+
+    /**
+     * Remove all the keys in the boundary.
+     *
+     * @param boundary the boundary
+     */
+    void clear(Boundary boundary);
+
+    /**
+     * The total bytes of the keys and values in the boundary.
+     *
+     * @param boundary the boundary
+     * @return the size in bytes
+     */
+    long size(Boundary boundary);
+
+    Map.Entry<ByteString, ByteString> firstEntry();
+
+    Map.Entry<ByteString, ByteString> lastEntry();
+
+    Map.Entry<ByteString, ByteString> ceilingEntry(ByteString key);
+
+    Map.Entry<ByteString, ByteString> floorEntry(ByteString key);
+
+    Map.Entry<ByteString, ByteString> higherEntry(ByteString key);
+
+    Map.Entry<ByteString, ByteString> lowerEntry(ByteString key);
+
+    /**
+     * Make a point-in-time snapshot which won't be affected by later changes.
+     *
+     * @return the readonly snapshot
+     */
+    IRangeData snapshot();
+
+    /**
+     * Release the resources held by the snapshot, the snapshot can't be used afterward.
+     */
+    default void release() {
+    }
+}
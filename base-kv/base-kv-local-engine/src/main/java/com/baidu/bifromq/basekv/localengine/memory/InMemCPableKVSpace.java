@@ -15,6 +15,7 @@ package com.baidu.bifromq.basekv.localengine.memory;
 
 import com.baidu.bifromq.basekv.localengine.ICPableKVSpace;
 import com.baidu.bifromq.basekv.localengine.IKVSpaceCheckpoint;
+import com.baidu.bifromq.basekv.localengine.IKVSpaceRestoreSession;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import java.util.HashMap;
@@ -39,7 +40,8 @@ public class InMemCPableKVSpace extends InMemKVSpace<InMemCPableKVEngine, InMemC
         synchronized (this) {
             return metadataRefresher.call(() -> {
                 String cpId = UUID.randomUUID().toString();
-                latestCheckpoint = new InMemKVSpaceCheckpoint(id, cpId, new HashMap<>(metadataMap), rangeData.clone());
+                latestCheckpoint =
+                    new InMemKVSpaceCheckpoint(id, cpId, new HashMap<>(metadataMap), rangeData.snapshot());
                 checkpoints.put(cpId, latestCheckpoint);
                 return cpId;
             });
@@ -50,4 +52,9 @@ public class InMemCPableKVSpace extends InMemKVSpace<InMemCPableKVEngine, InMemC
     public Optional<IKVSpaceCheckpoint> open(String checkpointId) {
         return Optional.ofNullable(checkpoints.getIfPresent(checkpointId));
     }
+
+    @Override
+    public IKVSpaceRestoreSession startRestore() {
+        return new InMemKVSpaceRestoreSession(toWriter());
+    }
 }
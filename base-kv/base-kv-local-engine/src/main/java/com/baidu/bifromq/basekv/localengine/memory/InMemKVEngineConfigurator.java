@@ -31,4 +31,5 @@ import lombok.experimental.SuperBuilder;
 @SuperBuilder(toBuilder = true)
 public final class InMemKVEngineConfigurator implements ICPableKVEngineConfigurator, IWALableKVEngineConfigurator {
     private long gcIntervalInSec = 300; // ms
+    private boolean offHeap = false; // keep the data of kv spaces in off-heap memory
 }
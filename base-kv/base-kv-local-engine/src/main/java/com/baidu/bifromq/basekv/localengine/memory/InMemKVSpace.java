@@ -13,8 +13,6 @@
 
 package com.baidu.bifromq.basekv.localengine.memory;
 
-import static com.google.protobuf.ByteString.unsignedLexicographicalComparator;
-
 import com.baidu.bifromq.basekv.localengine.IKVSpace;
 import com.baidu.bifromq.basekv.localengine.IKVSpaceWriter;
 import com.baidu.bifromq.basekv.localengine.ISyncContext;
@@ -28,7 +26,6 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentSkipListMap;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
@@ -40,8 +37,7 @@ public class InMemKVSpace<E extends InMemKVEngine<E, T>, T extends InMemKVSpace<
     private final Runnable onDestroy;
     protected final String id;
     protected final Map<ByteString, ByteString> metadataMap = new ConcurrentHashMap<>();
-    protected final ConcurrentSkipListMap<ByteString, ByteString> rangeData =
-        new ConcurrentSkipListMap<>(unsignedLexicographicalComparator());
+    protected final IRangeData rangeData;
     protected final ISyncContext.IRefresher metadataRefresher = syncContext.refresher();
 
     protected InMemKVSpace(String id,
@@ -53,6 +49,7 @@ public class InMemKVSpace<E extends InMemKVEngine<E, T>, T extends InMemKVSpace<
         this.id = id;
         this.engine = engine;
         this.onDestroy = onDestroy;
+        this.rangeData = configurator.isOffHeap() ? new OffHeapRangeData() : new HeapRangeData();
     }
 
     ISyncContext syncContext() {
@@ -65,7 +62,7 @@ public class InMemKVSpace<E extends InMemKVEngine<E, T>, T extends InMemKVSpace<
     }
 
     @Override
-    protected ConcurrentSkipListMap<ByteString, ByteString> rangeData() {
+    protected IRangeData rangeData() {
         return rangeData;
     }
 
@@ -17,17 +17,16 @@ import com.baidu.bifromq.basekv.localengine.IKVSpaceCheckpoint;
 import com.google.protobuf.ByteString;
 import io.micrometer.core.instrument.Tags;
 import java.util.Map;
-import java.util.concurrent.ConcurrentSkipListMap;
 
 class InMemKVSpaceCheckpoint extends InMemKVSpaceReader implements IKVSpaceCheckpoint {
     private final String cpId;
     private final Map<ByteString, ByteString> metadataMap;
-    private final ConcurrentSkipListMap<ByteString, ByteString> rangeData;
+    private final IRangeData rangeData;
 
     protected InMemKVSpaceCheckpoint(String id,
                                      String cpId,
                                      Map<ByteString, ByteString> metadataMap,
-                                     ConcurrentSkipListMap<ByteString, ByteString> rangeData,
+                                     IRangeData rangeData,
                                      String... tags) {
         super(id, Tags.of(tags).and("from", "cp"));
         this.cpId = cpId;
@@ -46,7 +45,7 @@ class InMemKVSpaceCheckpoint extends InMemKVSpaceReader implements IKVSpaceCheck
     }
 
     @Override
-    protected ConcurrentSkipListMap<ByteString, ByteString> rangeData() {
+    protected IRangeData rangeData() {
         return rangeData;
     }
 }
@@ -13,24 +13,24 @@
 
 package com.baidu.bifromq.basekv.localengine.memory;
 
+import static com.google.protobuf.ByteString.unsignedLexicographicalComparator;
+
 import com.baidu.bifromq.basekv.localengine.IKVSpaceIterator;
 import com.baidu.bifromq.basekv.proto.Boundary;
 import com.google.protobuf.ByteString;
 import java.util.Map;
-import java.util.concurrent.ConcurrentNavigableMap;
-import java.util.concurrent.ConcurrentSkipListMap;
 
 public class InMemKVSpaceIterator implements IKVSpaceIterator {
     private Map.Entry<ByteString, ByteString> currentEntry;
-    private final ConcurrentSkipListMap<ByteString, ByteString> origData;
+    private final IRangeData origData;
     private final Boundary boundary;
-    private ConcurrentNavigableMap<ByteString, ByteString> dataSource;
+    private IRangeData dataSource;
 
-    public InMemKVSpaceIterator(ConcurrentSkipListMap<ByteString, ByteString> data) {
+    public InMemKVSpaceIterator(IRangeData data) {
         this(data, Boundary.getDefaultInstance());
     }
 
-    public InMemKVSpaceIterator(ConcurrentSkipListMap<ByteString, ByteString> data, Boundary boundary) {
+    public InMemKVSpaceIterator(IRangeData data, Boundary boundary) {
         origData = data;
         this.boundary = boundary;
         refresh();
@@ -53,51 +53,73 @@ public class InMemKVSpaceIterator implements IKVSpaceIterator {
 
     @Override
     public void next() {
-        currentEntry = dataSource.higherEntry(currentEntry.getKey());
+        currentEntry = inBoundary(dataSource.higherEntry(currentEntry.getKey()));
     }
 
     @Override
     public void prev() {
-        currentEntry = dataSource.lowerEntry(currentEntry.getKey());
+        currentEntry = inBoundary(dataSource.lowerEntry(currentEntry.getKey()));
     }
 
     @Override
     public void seekToFirst() {
-        currentEntry = dataSource.firstEntry();
+        currentEntry = inBoundary(boundary.hasStartKey()
+            ? dataSource.ceilingEntry(boundary.getStartKey()) : dataSource.firstEntry());
     }
 
     @Override
     public void seekToLast() {
-        currentEntry = dataSource.lastEntry();
+        currentEntry = inBoundary(boundary.hasEndKey()
+            ? dataSource.lowerEntry(boundary.getEndKey()) : dataSource.lastEntry());
     }
 
     @Override
     public void seek(ByteString target) {
-        currentEntry = dataSource.ceilingEntry(target);
+        if (boundary.hasStartKey() && compare(target, boundary.getStartKey()) < 0) {
+            seekToFirst();
+        } else {
+            currentEntry = inBoundary(dataSource.ceilingEntry(target));
+        }
     }
 
     @Override
     public void seekForPrev(ByteString target) {
-        currentEntry = dataSource.floorEntry(target);
+        if (boundary.hasEndKey() && compare(target, boundary.getEndKey()) >= 0) {
+            seekToLast();
+        } else {
+            currentEntry = inBoundary(dataSource.floorEntry(target));
+        }
     }
 
     @Override
     public void refresh() {
-        ConcurrentSkipListMap<ByteString, ByteString> data = origData.clone();
-        if (!boundary.hasStartKey() && !boundary.hasEndKey()) {
-            dataSource = data;
-        } else if (!boundary.hasStartKey()) {
-            dataSource = data.headMap(boundary.getEndKey());
-        } else if (!boundary.hasEndKey()) {
-            dataSource = data.tailMap(boundary.getStartKey());
-        } else {
-            dataSource = data.subMap(boundary.getStartKey(), boundary.getEndKey());
+        if (dataSource != null) {
+            dataSource.release();
         }
-        currentEntry = dataSource.firstEntry();
+        dataSource = origData.snapshot();
+        seekToFirst();
     }
 
     @Override
     public void close() {
         currentEntry = null;
+        dataSource.release();
+    }
+
+    private Map.Entry<ByteString, ByteString> inBoundary(Map.Entry<ByteString, ByteString> entry) {
+        if (entry == null) {
+            return null;
+        }
+        if (boundary.hasStartKey() && compare(entry.getKey(), boundary.getStartKey()) < 0) {
+            return null;
+        }
+        if (boundary.hasEndKey() && compare(entry.getKey(), boundary.getEndKey()) >= 0) {
+            return null;
+        }
+        return entry;
+    }
+
+    private static int compare(ByteString a, ByteString b) {
+        return unsignedLexicographicalComparator().compare(a, b);
     }
 }
@@ -20,8 +20,6 @@ import com.google.protobuf.ByteString;
 import io.micrometer.core.instrument.Tags;
 import java.util.Map;
 import java.util.Optional;
-import java.util.SortedMap;
-import java.util.concurrent.ConcurrentSkipListMap;
 
 public abstract class InMemKVSpaceReader extends AbstractKVSpaceReader {
     protected InMemKVSpaceReader(String id, Tags tags) {
@@ -30,7 +28,7 @@ public abstract class InMemKVSpaceReader extends AbstractKVSpaceReader {
 
     protected abstract Map<ByteString, ByteString> metadataMap();
 
-    protected abstract ConcurrentSkipListMap<ByteString, ByteString> rangeData();
+    protected abstract IRangeData rangeData();
 
     @Override
     protected Optional<ByteString> doMetadata(ByteString metaKey) {
@@ -39,22 +37,7 @@ public abstract class InMemKVSpaceReader extends AbstractKVSpaceReader {
 
     @Override
     protected long doSize(Boundary boundary) {
-        SortedMap<ByteString, ByteString> sizedData;
-        ConcurrentSkipListMap<ByteString, ByteString> rangeData = rangeData();
-        if (!boundary.hasStartKey() && !boundary.hasEndKey()) {
-            sizedData = rangeData;
-        } else if (!boundary.hasStartKey()) {
-            sizedData = rangeData.headMap(boundary.getEndKey());
-        } else if (!boundary.hasEndKey()) {
-            sizedData = rangeData.tailMap(boundary.getStartKey());
-        } else {
-            sizedData = rangeData.subMap(boundary.getStartKey(), boundary.getEndKey());
-        }
-        // this may take a long time
-        return sizedData.entrySet()
-            .stream()
-            .map(entry -> entry.getKey().size() + entry.getValue().size())
-            .reduce(0, Integer::sum);
+        return rangeData().size(boundary);
     }
 
     @Override
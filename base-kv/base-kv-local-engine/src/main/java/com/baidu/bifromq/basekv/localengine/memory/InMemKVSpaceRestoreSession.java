@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.basekv.localengine.memory;
+
+import com.baidu.bifromq.basekv.localengine.IKVSpaceRestoreSession;
+import com.baidu.bifromq.basekv.localengine.IKVSpaceWriter;
+import com.baidu.bifromq.basekv.proto.Boundary;
+import com.google.protobuf.ByteString;
+import java.util.Optional;
+
+/**
+ * Restore session backed by a writer of the space, all the changes are applied atomically once done.
+ */
+class InMemKVSpaceRestoreSession implements IKVSpaceRestoreSession {
+    private final IKVSpaceWriter writer;
+    private int count;
+
+    InMemKVSpaceRestoreSession(IKVSpaceWriter writer) {
+        this.writer = writer;
+        writer.clear();
+    }
+
+    @Override
+    public String id() {
+        return writer.id();
+    }
+
+    @Override
+    public Optional<ByteString> metadata(ByteString metaKey) {
+        return writer.metadata(metaKey);
+    }
+
+    @Override
+    public IKVSpaceRestoreSession metadata(ByteString metaKey, ByteString metaValue) {
+        writer.metadata(metaKey, metaValue);
+        return this;
+    }
+
+    @Override
+    public long size() {
+        return writer.size();
+    }
+
+    @Override
+    public long size(Boundary boundary) {
+        return writer.size(boundary);
+    }
+
+    @Override
+    public IKVSpaceRestoreSession put(ByteString key, ByteString value) {
+        writer.insert(key, value);
+        count++;
+        return this;
+    }
+
+    @Override
+    public void done() {
+        writer.done();
+    }
+
+    @Override
+    public void abort() {
+        writer.abort();
+    }
+
+    @Override
+    public int count() {
+        return count;
+    }
+}
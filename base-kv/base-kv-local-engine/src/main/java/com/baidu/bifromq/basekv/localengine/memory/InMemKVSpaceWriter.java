@@ -22,7 +22,6 @@ import com.baidu.bifromq.basekv.proto.Boundary;
 import com.google.protobuf.ByteString;
 import io.micrometer.core.instrument.Tags;
 import java.util.Map;
-import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.function.Consumer;
 import lombok.extern.slf4j.Slf4j;
 
@@ -30,13 +29,13 @@ import lombok.extern.slf4j.Slf4j;
 public class InMemKVSpaceWriter<E extends InMemKVEngine<E, T>, T extends InMemKVSpace<E, T>> extends InMemKVSpaceReader
     implements IKVSpaceWriter {
     private final Map<ByteString, ByteString> metadataMap;
-    private final ConcurrentSkipListMap<ByteString, ByteString> rangeData;
+    private final IRangeData rangeData;
     private final E engine;
     private final InMemKVSpaceWriterHelper helper;
 
     InMemKVSpaceWriter(String id,
                        Map<ByteString, ByteString> metadataMap,
-                       ConcurrentSkipListMap<ByteString, ByteString> rangeData,
+                       IRangeData rangeData,
                        E engine,
                        ISyncContext syncContext,
                        Consumer<Boolean> afterWrite,
@@ -46,7 +45,7 @@ public class InMemKVSpaceWriter<E extends InMemKVEngine<E, T>, T extends InMemKV
 
     InMemKVSpaceWriter(String id,
                        Map<ByteString, ByteString> metadataMap,
-                       ConcurrentSkipListMap<ByteString, ByteString> rangeData,
+                       IRangeData rangeData,
                        E engine,
                        ISyncContext syncContext,
                        InMemKVSpaceWriterHelper writerHelper,
@@ -161,7 +160,7 @@ public class InMemKVSpaceWriter<E extends InMemKVEngine<E, T>, T extends InMemKV
     }
 
     @Override
-    protected ConcurrentSkipListMap<ByteString, ByteString> rangeData() {
+    protected IRangeData rangeData() {
         return rangeData;
     }
 }
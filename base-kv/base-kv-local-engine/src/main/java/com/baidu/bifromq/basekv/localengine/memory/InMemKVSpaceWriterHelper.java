@@ -21,15 +21,13 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.NavigableSet;
 import java.util.Set;
-import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 class InMemKVSpaceWriterHelper {
     private final Map<String, Map<ByteString, ByteString>> metadataMap;
-    private final Map<String, ConcurrentSkipListMap<ByteString, ByteString>> rangeDataMap;
+    private final Map<String, IRangeData> rangeDataMap;
     private final Map<String, WriteBatch> batchMap;
     private final Map<String, Consumer<Boolean>> afterWriteCallbacks = new HashMap<>();
     private final Map<String, Boolean> metadataChanges = new HashMap<>();
@@ -43,7 +41,7 @@ class InMemKVSpaceWriterHelper {
 
     void addMutators(String rangeId,
                      Map<ByteString, ByteString> metadata,
-                     ConcurrentSkipListMap<ByteString, ByteString> rangeData,
+                     IRangeData rangeData,
                      ISyncContext.IMutator mutator) {
         metadataMap.put(rangeId, metadata);
         rangeDataMap.put(rangeId, rangeData);
@@ -155,19 +153,7 @@ class InMemKVSpaceWriterHelper {
                     }
                     case DeleteRange -> {
                         WriteBatch.DeleteRange deleteRange = (WriteBatch.DeleteRange) action;
-                        Boundary boundary = deleteRange.boundary;
-                        NavigableSet<ByteString> inRangeKeys;
-                        if (!boundary.hasStartKey() && !boundary.hasEndKey()) {
-                            inRangeKeys = rangeDataMap.get(rangeId).keySet();
-                        } else if (!boundary.hasStartKey()) {
-                            inRangeKeys = rangeDataMap.get(rangeId).headMap(boundary.getEndKey()).keySet();
-                        } else if (!boundary.hasEndKey()) {
-                            inRangeKeys = rangeDataMap.get(rangeId).tailMap(boundary.getStartKey()).keySet();
-                        } else {
-                            inRangeKeys =
-                                rangeDataMap.get(rangeId).subMap(boundary.getStartKey(), boundary.getEndKey()).keySet();
-                        }
-                        inRangeKeys.forEach(k -> rangeDataMap.get(rangeId).remove(k));
+                        rangeDataMap.get(rangeId).clear(deleteRange.boundary);
                     }
                 }
             }
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.basekv.localengine.memory;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The off-heap memory of skiplist, which consists of direct buffer pages addressed by page index and offset. Records
+ * larger than the regular page size get dedicated pages. Snapshots are readonly views sharing the page table, each
+ * view holds a reference until released or garbage collected. While any view is held, the pages shared with snapshots
+ * are copied before being modified, and the replaced pages are recycled once all the views are released.
+ */
+class OffHeapArena {
+    static final long NIL = 0;
+    private static final int PAGE_SIZE = 64 * 1024;
+    private static final int ALIGNMENT = 8;
+    private static final int MAX_POOLED_PAGES = 16;
+    private static final Cleaner CLEANER = Cleaner.create();
+    private final boolean readonly;
+    // the number of snapshot views not released yet
+    private final AtomicInteger readers;
+    private ByteBuffer[] pages;
+    // the epoch when page was allocated or copied, page from earlier epoch may be shared with snapshots
+    private int[] pageEpochs;
+    private int pageCount;
+    private int epoch;
+    private int tailPage = -1;
+    private int tailOffset;
+    private long allocatedBytes;
+    // the pages replaced by copies while snapshots were held
+    private List<ByteBuffer> retiredPages;
+    private Deque<ByteBuffer> pooledPages;
+    private Cleaner.Cleanable cleanable;
+
+    OffHeapArena() {
+        this.readonly = false;
+        this.readers = new AtomicInteger();
+        this.pages = new ByteBuffer[16];
+        this.pageEpochs = new int[16];
+        this.retiredPages = new ArrayList<>();
+        this.pooledPages = new ArrayDeque<>();
+    }
+
+    private OffHeapArena(ByteBuffer[] pages, int pageCount, long allocatedBytes, AtomicInteger readers) {
+        this.readonly = true;
+        this.readers = readers;
+        this.pages = pages;
+        this.pageCount = pageCount;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    static int offset(long addr) {
+        return (int) addr;
+    }
+
+    /**
+     * Allocate memory for a record.
+     *
+     * @param size the size of the record
+     * @return the address of the allocated memory
+     */
+    long allocate(int size) {
+        assert !readonly;
+        size = (size + ALIGNMENT - 1) & -ALIGNMENT;
+        allocatedBytes += size;
+        if (size > PAGE_SIZE) {
+            // dedicated page for large record, and keep allocating from current tail page
+            return address(newPage(size), 0);
+        }
+        if (tailPage < 0 || PAGE_SIZE - tailOffset < size) {
+            tailPage = newPage(PAGE_SIZE);
+            tailOffset = 0;
+        }
+        long addr = address(tailPage, tailOffset);
+        tailOffset += size;
+        return addr;
+    }
+
+    /**
+     * The page for reading the record at given address.
+     *
+     * @param addr the address
+     * @return the page
+     */
+    ByteBuffer page(long addr) {
+        return pages[(int) (addr >>> 32)];
+    }
+
+    /**
+     * The page for modifying the record at given address, the page will be copied if it's shared with snapshots.
+     *
+     * @param addr the address
+     * @return the page exclusively owned
+     */
+    ByteBuffer writablePage(long addr) {
+        assert !readonly;
+        int pageIdx = (int) (addr >>> 32);
+        if (pageEpochs[pageIdx] != epoch && readers.get() > 0) {
+            ByteBuffer page = pages[pageIdx];
+            ByteBuffer copy = allocatePage(page.capacity());
+            copy.put(page.duplicate().clear());
+            pages[pageIdx] = copy;
+            pageEpochs[pageIdx] = epoch;
+            retiredPages.add(page);
+        }
+        return pages[pageIdx];
+    }
+
+    long allocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * Take a readonly snapshot of current pages, which is not referenced until retained.
+     *
+     * @return the snapshot
+     */
+    OffHeapArena snapshot() {
+        assert !readonly;
+        OffHeapArena snapshot = new OffHeapArena(Arrays.copyOf(pages, pageCount), pageCount, allocatedBytes, readers);
+        // current pages are shared with the views retained from the snapshot
+        epoch++;
+        return snapshot;
+    }
+
+    /**
+     * Retain a view of the snapshot, the view must be released when no longer used, otherwise it's released when
+     * garbage collected.
+     *
+     * @return the view
+     */
+    OffHeapArena retain() {
+        assert readonly;
+        OffHeapArena view = new OffHeapArena(pages, pageCount, allocatedBytes, readers);
+        readers.incrementAndGet();
+        // the cleaning action must not reference the view
+        AtomicInteger counter = readers;
+        view.cleanable = CLEANER.register(view, counter::decrementAndGet);
+        return view;
+    }
+
+    /**
+     * Release the view, it's safe to release more than once.
+     */
+    void release() {
+        if (cleanable != null) {
+            cleanable.clean();
+        }
+    }
+
+    private int newPage(int capacity) {
+        if (pageCount == pages.length) {
+            pages = Arrays.copyOf(pages, pages.length * 2);
+            pageEpochs = Arrays.copyOf(pageEpochs, pageEpochs.length * 2);
+        }
+        pages[pageCount] = allocatePage(capacity);
+        pageEpochs[pageCount] = epoch;
+        return pageCount++;
+    }
+
+    private ByteBuffer allocatePage(int capacity) {
+        if (!retiredPages.isEmpty() && readers.get() == 0) {
+            // no snapshot could read the retired pages
+            for (ByteBuffer page : retiredPages) {
+                if (page.capacity() == PAGE_SIZE && pooledPages.size() < MAX_POOLED_PAGES) {
+                    pooledPages.push(page);
+                }
+            }
+            retiredPages.clear();
+        }
+        if (capacity == PAGE_SIZE && !pooledPages.isEmpty()) {
+            return pooledPages.pop().clear();
+        }
+        return ByteBuffer.allocateDirect(capacity);
+    }
+
+    private static long address(int pageIdx, int offset) {
+        return ((long) pageIdx << 32) | offset;
+    }
+}
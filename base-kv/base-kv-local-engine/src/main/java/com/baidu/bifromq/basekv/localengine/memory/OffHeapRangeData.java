@@ -0,0 +1,411 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.basekv.localengine.memory;
+
+import static com.baidu.bifromq.basekv.localengine.memory.OffHeapArena.NIL;
+
+import com.baidu.bifromq.basekv.proto.Boundary;
+import com.google.protobuf.ByteString;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Range data kept in an off-heap skiplist, so the keys and values won't be scanned by GC. The record layout is:
+ * <pre>
+ * [keyLen(int)][valueLen(int)][height(int)][padding(int)][next(long) * height][key bytes][value bytes]
+ * </pre>
+ * Mutations are exclusive while reads are concurrent. The memory of removed records is reclaimed by rebuilding the
+ * skiplist when the garbage exceeds half of the allocated memory.
+ */
+class OffHeapRangeData implements IRangeData {
+    private static final int MAX_HEIGHT = 16;
+    private static final int KEY_LEN = 0;
+    private static final int VALUE_LEN = 4;
+    private static final int HEIGHT = 8;
+    private static final int NEXT = 16;
+    private static final long REBUILD_MIN_BYTES = 16 * 1024 * 1024;
+    private final ReadWriteLock rwLock = new ReentrantReadWriteLock();
+    private final boolean readonly;
+    private OffHeapArena arena;
+    private long head;
+    private int height;
+    // the bytes of records reachable from head
+    private long liveBytes;
+    // reuse the snapshot page table if no changes made since then
+    private OffHeapRangeData lastSnapshot;
+
+    OffHeapRangeData() {
+        this.readonly = false;
+        reset();
+    }
+
+    private OffHeapRangeData(OffHeapArena arena, long head, int height, long liveBytes) {
+        this.readonly = true;
+        this.arena = arena;
+        this.head = head;
+        this.height = height;
+        this.liveBytes = liveBytes;
+    }
+
+    @Override
+    public boolean containsKey(ByteString key) {
+        return read(() -> {
+            long node = next(lastBefore(key, false), 0);
+            return node != NIL && compare(key, node) == 0;
+        });
+    }
+
+    @Override
+    public ByteString get(ByteString key) {
+        return read(() -> {
+            long node = next(lastBefore(key, false), 0);
+            return node != NIL && compare(key, node) == 0 ? value(node) : null;
+        });
+    }
+
+    @Override
+    public void put(ByteString key, ByteString value) {
+        write(() -> {
+            long[] preds = findPredecessors(key);
+            long node = next(preds[0], 0);
+            if (node != NIL && compare(key, node) == 0) {
+                unlink(node, preds);
+            }
+            int nodeHeight = randomHeight();
+            // the predecessors above current height are head
+            height = Math.max(height, nodeHeight);
+            long newNode = allocate(key, value, nodeHeight);
+            for (int level = 0; level < nodeHeight; level++) {
+                setNext(newNode, level, next(preds[level], level));
+                setNext(preds[level], level, newNode);
+            }
+        });
+    }
+
+    @Override
+    public void remove(ByteString key) {
+        write(() -> {
+            long[] preds = findPredecessors(key);
+            long node = next(preds[0], 0);
+            if (node != NIL && compare(key, node) == 0) {
+                unlink(node, preds);
+            }
+        });
+    }
+
+    @Override
+    public void clear(Boundary boundary) {
+        write(() -> {
+            if (!boundary.hasStartKey() && !boundary.hasEndKey()) {
+                reset();
+                return;
+            }
+            long[] preds = boundary.hasStartKey() ? findPredecessors(boundary.getStartKey()) : headPredecessors();
+            for (long node = next(preds[0], 0); inBoundary(node, boundary); node = next(node, 0)) {
+                liveBytes -= recordSize(node);
+            }
+            for (int level = 0; level < height; level++) {
+                long succ = next(preds[level], level);
+                while (inBoundary(succ, boundary)) {
+                    succ = next(succ, level);
+                }
+                setNext(preds[level], level, succ);
+            }
+        });
+    }
+
+    @Override
+    public long size(Boundary boundary) {
+        return read(() -> {
+            long size = 0;
+            long node = boundary.hasStartKey() ? next(lastBefore(boundary.getStartKey(), false), 0) : next(head, 0);
+            for (; inBoundary(node, boundary); node = next(node, 0)) {
+                ByteBuffer page = arena.page(node);
+                int offset = OffHeapArena.offset(node);
+                size += page.getInt(offset + KEY_LEN) + page.getInt(offset + VALUE_LEN);
+            }
+            return size;
+        });
+    }
+
+    @Override
+    public Map.Entry<ByteString, ByteString> firstEntry() {
+        return read(() -> entry(next(head, 0)));
+    }
+
+    @Override
+    public Map.Entry<ByteString, ByteString> lastEntry() {
+        return read(() -> {
+            long node = head;
+            for (int level = height - 1; level >= 0; level--) {
+                for (long next = next(node, level); next != NIL; next = next(node, level)) {
+                    node = next;
+                }
+            }
+            return node == head ? null : entry(node);
+        });
+    }
+
+    @Override
+    public Map.Entry<ByteString, ByteString> ceilingEntry(ByteString key) {
+        return read(() -> entry(next(lastBefore(key, false), 0)));
+    }
+
+    @Override
+    public Map.Entry<ByteString, ByteString> floorEntry(ByteString key) {
+        return read(() -> {
+            long node = lastBefore(key, true);
+            return node == head ? null : entry(node);
+        });
+    }
+
+    @Override
+    public Map.Entry<ByteString, ByteString> higherEntry(ByteString key) {
+        return read(() -> entry(next(lastBefore(key, true), 0)));
+    }
+
+    @Override
+    public Map.Entry<ByteString, ByteString> lowerEntry(ByteString key) {
+        return read(() -> {
+            long node = lastBefore(key, false);
+            return node == head ? null : entry(node);
+        });
+    }
+
+    @Override
+    public IRangeData snapshot() {
+        if (readonly) {
+            return new OffHeapRangeData(arena.retain(), head, height, liveBytes);
+        }
+        rwLock.writeLock().lock();
+        try {
+            if (lastSnapshot == null) {
+                lastSnapshot = new OffHeapRangeData(arena.snapshot(), head, height, liveBytes);
+            }
+            return lastSnapshot.snapshot();
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void release() {
+        if (readonly) {
+            arena.release();
+        }
+    }
+
+    private <T> T read(Supplier<T> reader) {
+        if (readonly) {
+            return reader.get();
+        }
+        rwLock.readLock().lock();
+        try {
+            return reader.get();
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    private void write(Runnable mutation) {
+        if (readonly) {
+            throw new UnsupportedOperationException("Snapshot is readonly");
+        }
+        rwLock.writeLock().lock();
+        try {
+            lastSnapshot = null;
+            mutation.run();
+            if (arena.allocatedBytes() > REBUILD_MIN_BYTES && liveBytes * 2 < arena.allocatedBytes()) {
+                rebuild();
+            }
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+
+    private void reset() {
+        arena = new OffHeapArena();
+        head = arena.allocate(NEXT + MAX_HEIGHT * Long.BYTES);
+        ByteBuffer page = arena.writablePage(head);
+        int offset = OffHeapArena.offset(head);
+        page.putInt(offset + KEY_LEN, 0);
+        page.putInt(offset + VALUE_LEN, 0);
+        page.putInt(offset + HEIGHT, MAX_HEIGHT);
+        for (int level = 0; level < MAX_HEIGHT; level++) {
+            page.putLong(offset + NEXT + level * Long.BYTES, NIL);
+        }
+        height = 1;
+        liveBytes = 0;
+    }
+
+    private void rebuild() {
+        OffHeapArena oldArena = arena;
+        long node = next(head, 0);
+        reset();
+        long[] tails = headPredecessors();
+        while (node != NIL) {
+            ByteBuffer page = oldArena.page(node);
+            int offset = OffHeapArena.offset(node);
+            int keyOffset = offset + NEXT + page.getInt(offset + HEIGHT) * Long.BYTES;
+            int keyLen = page.getInt(offset + KEY_LEN);
+            int valueLen = page.getInt(offset + VALUE_LEN);
+            int nodeHeight = randomHeight();
+            height = Math.max(height, nodeHeight);
+            long newNode = allocate(page, keyOffset, keyLen, valueLen, nodeHeight);
+            for (int level = 0; level < nodeHeight; level++) {
+                setNext(tails[level], level, newNode);
+                tails[level] = newNode;
+            }
+            node = page.getLong(offset + NEXT);
+        }
+    }
+
+    private long allocate(ByteString key, ByteString value, int nodeHeight) {
+        long node = allocateNode(key.size(), value.size(), nodeHeight);
+        ByteBuffer buffer = arena.writablePage(node).duplicate();
+        buffer.position(OffHeapArena.offset(node) + NEXT + nodeHeight * Long.BYTES);
+        key.copyTo(buffer);
+        value.copyTo(buffer);
+        return node;
+    }
+
+    private long allocate(ByteBuffer srcPage, int srcOffset, int keyLen, int valueLen, int nodeHeight) {
+        long node = allocateNode(keyLen, valueLen, nodeHeight);
+        ByteBuffer buffer = arena.writablePage(node).duplicate();
+        buffer.position(OffHeapArena.offset(node) + NEXT + nodeHeight * Long.BYTES);
+        buffer.put(srcPage.duplicate().limit(srcOffset + keyLen + valueLen).position(srcOffset));
+        return node;
+    }
+
+    private long allocateNode(int keyLen, int valueLen, int nodeHeight) {
+        int size = NEXT + nodeHeight * Long.BYTES + keyLen + valueLen;
+        long node = arena.allocate(size);
+        ByteBuffer page = arena.writablePage(node);
+        int offset = OffHeapArena.offset(node);
+        page.putInt(offset + KEY_LEN, keyLen);
+        page.putInt(offset + VALUE_LEN, valueLen);
+        page.putInt(offset + HEIGHT, nodeHeight);
+        liveBytes += size;
+        return node;
+    }
+
+    private void unlink(long node, long[] preds) {
+        int nodeHeight = arena.page(node).getInt(OffHeapArena.offset(node) + HEIGHT);
+        for (int level = 0; level < nodeHeight; level++) {
+            if (next(preds[level], level) == node) {
+                setNext(preds[level], level, next(node, level));
+            }
+        }
+        liveBytes -= recordSize(node);
+    }
+
+    private long[] findPredecessors(ByteString key) {
+        long[] preds = headPredecessors();
+        long node = head;
+        for (int level = height - 1; level >= 0; level--) {
+            for (long next = next(node, level); next != NIL && compare(key, next) > 0; next = next(node, level)) {
+                node = next;
+            }
+            preds[level] = node;
+        }
+        return preds;
+    }
+
+    private long[] headPredecessors() {
+        long[] preds = new long[MAX_HEIGHT];
+        Arrays.fill(preds, head);
+        return preds;
+    }
+
+    // the last node whose key is less than(or equal to if inclusive) given key, or head if not found
+    private long lastBefore(ByteString key, boolean inclusive) {
+        long node = head;
+        for (int level = height - 1; level >= 0; level--) {
+            for (long next = next(node, level); next != NIL; next = next(node, level)) {
+                int c = compare(key, next);
+                if (c > 0 || (inclusive && c == 0)) {
+                    node = next;
+                } else {
+                    break;
+                }
+            }
+        }
+        return node;
+    }
+
+    private boolean inBoundary(long node, Boundary boundary) {
+        return node != NIL && (!boundary.hasEndKey() || compare(boundary.getEndKey(), node) > 0);
+    }
+
+    private long next(long node, int level) {
+        return arena.page(node).getLong(OffHeapArena.offset(node) + NEXT + level * Long.BYTES);
+    }
+
+    private void setNext(long node, int level, long next) {
+        arena.writablePage(node).putLong(OffHeapArena.offset(node) + NEXT + level * Long.BYTES, next);
+    }
+
+    private int recordSize(long node) {
+        ByteBuffer page = arena.page(node);
+        int offset = OffHeapArena.offset(node);
+        return NEXT + page.getInt(offset + HEIGHT) * Long.BYTES
+            + page.getInt(offset + KEY_LEN) + page.getInt(offset + VALUE_LEN);
+    }
+
+    private int compare(ByteString key, long node) {
+        ByteBuffer page = arena.page(node);
+        int offset = OffHeapArena.offset(node);
+        int keyLen = page.getInt(offset + KEY_LEN);
+        int keyOffset = offset + NEXT + page.getInt(offset + HEIGHT) * Long.BYTES;
+        int len = Math.min(key.size(), keyLen);
+        for (int i = 0; i < len; i++) {
+            int c = (key.byteAt(i) & 0xFF) - (page.get(keyOffset + i) & 0xFF);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return key.size() - keyLen;
+    }
+
+    private ByteString key(long node) {
+        ByteBuffer page = arena.page(node);
+        int offset = OffHeapArena.offset(node);
+        int keyOffset = offset + NEXT + page.getInt(offset + HEIGHT) * Long.BYTES;
+        return ByteString.copyFrom(page.duplicate().position(keyOffset), page.getInt(offset + KEY_LEN));
+    }
+
+    private ByteString value(long node) {
+        ByteBuffer page = arena.page(node);
+        int offset = OffHeapArena.offset(node);
+        int valueOffset = offset + NEXT + page.getInt(offset + HEIGHT) * Long.BYTES + page.getInt(offset + KEY_LEN);
+        return ByteString.copyFrom(page.duplicate().position(valueOffset), page.getInt(offset + VALUE_LEN));
+    }
+
+    private Map.Entry<ByteString, ByteString> entry(long node) {
+        return node == NIL ? null : Map.entry(key(node), value(node));
+    }
+
+    private static int randomHeight() {
+        int nodeHeight = 1;
+        while (nodeHeight < MAX_HEIGHT && (ThreadLocalRandom.current().nextInt() & 3) == 0) {
+            nodeHeight++;
+        }
+        return nodeHeight;
+    }
+}
@@ -20,6 +20,8 @@ public enum KVSpaceMetric {
     TableReader("basekv.le.rocksdb.mem.tablereader", Meter.Type.GAUGE),
     MemTable("basekv.le.rocksdb.mem.memtable", Meter.Type.GAUGE),
     PinnedMem("basekv.le.rocksdb.mem.pinned", Meter.Type.GAUGE),
+    BlockCacheHit("basekv.le.rocksdb.blockcache.hit", Meter.Type.COUNTER),
+    BlockCacheMiss("basekv.le.rocksdb.blockcache.miss", Meter.Type.COUNTER),
     CheckpointNumGauge("basekv.le.active.checkpoints", Meter.Type.GAUGE),
     CheckpointTimer("basekv.le.rocksdb.checkpoint.time", Meter.Type.TIMER),
     CompactionCounter("basekv.le.rocksdb.compaction.count", Meter.Type.COUNTER),
@@ -16,6 +16,7 @@ package com.baidu.bifromq.basekv.localengine.rocksdb;
 import static com.google.protobuf.UnsafeByteOperations.unsafeWrap;
 
 import com.google.protobuf.ByteString;
+import java.nio.ByteBuffer;
 
 class Keys {
     public static final byte[] LATEST_CP_KEY = new byte[] {0x01};
@@ -30,12 +31,16 @@ class Keys {
         return DATA_PREFIX.concat(key).toByteArray();
     }
 
+    public static byte[] toDataKey(byte[] key) {
+        return DATA_PREFIX.concat(unsafeWrap(key)).toByteArray();
+    }
+
     public static ByteString fromDataKey(byte[] rawKey) {
         return unsafeWrap(rawKey).substring(DATA_PREFIX.size());
     }
 
-    public static byte[] toDataKey(byte[] key) {
-        return DATA_PREFIX.concat(unsafeWrap(key)).toByteArray();
+    public static ByteString fromDataKey(ByteBuffer rawKey) {
+        return unsafeWrap(rawKey.duplicate().position(rawKey.position() + DATA_PREFIX.size()));
     }
 
     public static byte[] toMetaKey(ByteString key) {
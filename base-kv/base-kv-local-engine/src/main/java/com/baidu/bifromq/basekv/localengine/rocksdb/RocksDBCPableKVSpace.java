@@ -18,6 +18,7 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.baidu.bifromq.basekv.localengine.ICPableKVSpace;
 import com.baidu.bifromq.basekv.localengine.IKVSpaceCheckpoint;
+import com.baidu.bifromq.basekv.localengine.IKVSpaceRestoreSession;
 import com.baidu.bifromq.basekv.localengine.KVEngineException;
 import com.baidu.bifromq.basekv.localengine.metrics.KVSpaceMeters;
 import com.baidu.bifromq.basekv.localengine.metrics.KVSpaceMetric;
@@ -56,6 +57,7 @@ public class RocksDBCPableKVSpace
     extends RocksDBKVSpace<RocksDBCPableKVEngine, RocksDBCPableKVSpace, RocksDBCPableKVEngineConfigurator>
     implements ICPableKVSpace {
     private static final String CP_SUFFIX = ".cp";
+    private static final String RESTORE_SUFFIX = ".restore";
     private final RocksDBCPableKVEngine engine;
     private final File cpRootDir;
     private final WriteOptions writeOptions;
@@ -107,6 +109,13 @@ public class RocksDBCPableKVSpace
         return Optional.ofNullable(checkpoints.getIfPresent(checkpointId));
     }
 
+    @Override
+    public IKVSpaceRestoreSession startRestore() {
+        // build sst files besides checkpoints, so they could be moved into db by hard-linking. The leftover of
+        // interrupted restoring will be cleaned as obsolete checkpoint when loading.
+        return new RocksDBKVSpaceRestoreSession(this, new File(cpRootDir, UUID.randomUUID() + RESTORE_SUFFIX));
+    }
+
     @Override
     protected void doClose() {
         metricMgr.close();
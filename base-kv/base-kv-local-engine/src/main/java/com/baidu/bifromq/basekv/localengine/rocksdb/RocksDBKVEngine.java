@@ -18,6 +18,8 @@ import static java.util.Collections.singletonList;
 
 import com.baidu.bifromq.basekv.localengine.AbstractKVEngine;
 import com.baidu.bifromq.basekv.localengine.KVEngineException;
+import com.baidu.bifromq.basekv.localengine.metrics.KVSpaceMetric;
+import io.micrometer.core.instrument.FunctionCounter;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.Metrics;
 import io.micrometer.core.instrument.Tags;
@@ -37,12 +39,20 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Stream;
 import lombok.extern.slf4j.Slf4j;
+import org.rocksdb.AbstractEventListener;
+import org.rocksdb.Cache;
 import org.rocksdb.ColumnFamilyDescriptor;
 import org.rocksdb.ColumnFamilyHandle;
 import org.rocksdb.DBOptions;
+import org.rocksdb.FlushJobInfo;
+import org.rocksdb.LRUCache;
 import org.rocksdb.Options;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
+import org.rocksdb.Statistics;
+import org.rocksdb.StatsLevel;
+import org.rocksdb.TickerType;
+import org.rocksdb.WriteBufferManager;
 
 @Slf4j
 public abstract class RocksDBKVEngine<
@@ -50,13 +60,26 @@ public abstract class RocksDBKVEngine<
     T extends RocksDBKVSpace<E, T, C>,
     C extends RocksDBKVEngineConfigurator<C>
     > extends AbstractKVEngine<T> {
+    static {
+        // the native library must be loaded before the shared block cache is created
+        RocksDB.loadLibrary();
+    }
+
     private final File dbRootDir;
+    // the block cache and the write buffer manager shared by all kv spaces
+    private final Cache blockCache;
+    private final WriteBufferManager writeBufferManager;
+    // the block cache tickers are only available per db, so the hits and misses are reported per engine
+    private final Statistics statistics;
+    // the manual compactions of all kv spaces are bounded by it
+    private final RocksDBKVSpaceCompactionManager compactionManager;
+    private final AbstractEventListener flushListener;
     private final DBOptions dbOptions;
     private final C configurator;
     private final Map<ColumnFamilyDescriptor, ColumnFamilyHandle> existingColumnFamilies = new HashMap<>();
     private final ConcurrentMap<String, T> kvSpaceMap = new ConcurrentHashMap<>();
     private final String identity;
-    private final RocksDB db;
+    protected final RocksDB db;
     private final ColumnFamilyDescriptor defaultCFDesc;
     private final ColumnFamilyHandle defaultCFHandle;
     private String[] metricTags;
@@ -65,7 +88,30 @@ public abstract class RocksDBKVEngine<
     public RocksDBKVEngine(String overrideIdentity, C configurator) {
         super(overrideIdentity);
         this.configurator = configurator;
-        dbOptions = configurator.dbOptions();
+        blockCache = new LRUCache(configurator.memoryBudget(), 8);
+        writeBufferManager = new WriteBufferManager(
+            (long) (configurator.memoryBudget() * configurator.writeBufferBudgetRatio()), blockCache);
+        compactionManager = new RocksDBKVSpaceCompactionManager(configurator.compactConcurrency(),
+            configurator.compactIOBudget());
+        statistics = new Statistics();
+        statistics.setStatsLevel(StatsLevel.EXCEPT_DETAILED_TIMERS);
+        dbOptions = configurator.dbOptions()
+            .setWriteBufferManager(writeBufferManager)
+            .setStatistics(statistics);
+        if (configurator.heuristicCompaction()) {
+            flushListener = new AbstractEventListener(AbstractEventListener.EnabledEventCallback.ON_FLUSH_COMPLETED) {
+                @Override
+                public void onFlushCompleted(RocksDB db, FlushJobInfo flushJobInfo) {
+                    T kvSpace = kvSpaceMap.get(flushJobInfo.getColumnFamilyName());
+                    if (kvSpace != null) {
+                        kvSpace.onFlushed(flushJobInfo.getTableProperties());
+                    }
+                }
+            };
+            dbOptions.setListeners(singletonList(flushListener));
+        } else {
+            flushListener = null;
+        }
         dbRootDir = new File(configurator.dbRootDir());
         try (Options options = new Options()) {
             Files.createDirectories(dbRootDir.getAbsoluteFile().toPath());
@@ -81,7 +127,7 @@ public abstract class RocksDBKVEngine<
                 List<ColumnFamilyDescriptor> cfDescs = RocksDB.listColumnFamilies(options, dbRootDir.getAbsolutePath())
                     .stream()
                     .map(nameBytes -> new ColumnFamilyDescriptor(nameBytes,
-                        configurator.cfOptions(new String(nameBytes, UTF_8))))
+                        configurator.cfOptions(new String(nameBytes, UTF_8), blockCache)))
                     .toList();
                 List<ColumnFamilyHandle> cfHandles = new ArrayList<>();
                 db = RocksDB.open(dbOptions, dbRootDir.getAbsolutePath(), cfDescs, cfHandles);
@@ -111,7 +157,8 @@ public abstract class RocksDBKVEngine<
             k -> {
                 try {
                     ColumnFamilyDescriptor cfDesc =
-                        new ColumnFamilyDescriptor(spaceId.getBytes(UTF_8), configurator.cfOptions(spaceId));
+                        new ColumnFamilyDescriptor(spaceId.getBytes(UTF_8),
+                            configurator.cfOptions(spaceId, blockCache));
                     ColumnFamilyHandle cfHandle = db.createColumnFamily(cfDesc);
                     return buildKVSpace(spaceId, cfDesc, cfHandle, db, () -> kvSpaceMap.remove(spaceId),
                         metricTags).open();
@@ -151,10 +198,18 @@ public abstract class RocksDBKVEngine<
         log.info("Stopping RocksDBKVEngine[{}]", identity);
         metricManager.close();
         kvSpaceMap.values().forEach(RocksDBKVSpace::close);
+        // no compaction task may touch the db after it's closed
+        compactionManager.close();
         db.destroyColumnFamilyHandle(defaultCFHandle);
         defaultCFDesc.getOptions().close();
         db.close();
+        if (flushListener != null) {
+            flushListener.close();
+        }
         dbOptions.close();
+        statistics.close();
+        writeBufferManager.close();
+        blockCache.close();
     }
 
     @Override
@@ -162,6 +217,11 @@ public abstract class RocksDBKVEngine<
         return identity;
     }
 
+    //For internal use only
+    RocksDBKVSpaceCompactionManager compactionManager() {
+        return compactionManager;
+    }
+
     private void loadExisting(String... metricTags) {
         existingColumnFamilies.forEach((cfDesc, cfHandle) -> {
             String rangeId = new String(cfDesc.getName());
@@ -202,6 +262,10 @@ public abstract class RocksDBKVEngine<
     private class MetricManager {
         private final Gauge dataTotalSpaceGauge;
         private final Gauge dataUsableSpaceGauge;
+        private final Gauge blockCacheSizeGauge;
+        private final Gauge pinnedMemorySizeGauge;
+        private final FunctionCounter blockCacheHitCounter;
+        private final FunctionCounter blockCacheMissCounter;
 
         MetricManager(String... metricTags) {
             Tags tags = Tags.of(metricTags);
@@ -211,11 +275,30 @@ public abstract class RocksDBKVEngine<
             dataUsableSpaceGauge = Gauge.builder("basekv.le.rocksdb.usable.data", dbRootDir::getUsableSpace)
                 .tags(tags)
                 .register(Metrics.globalRegistry);
+            // the block cache is shared by all kv spaces, so its usage is reported once per engine
+            blockCacheSizeGauge = Gauge.builder(KVSpaceMetric.BlockCache.metricName, blockCache::getUsage)
+                .tags(tags)
+                .register(Metrics.globalRegistry);
+            pinnedMemorySizeGauge = Gauge.builder(KVSpaceMetric.PinnedMem.metricName, blockCache::getPinnedUsage)
+                .tags(tags)
+                .register(Metrics.globalRegistry);
+            blockCacheHitCounter = FunctionCounter.builder(KVSpaceMetric.BlockCacheHit.metricName, statistics,
+                    stats -> stats.getTickerCount(TickerType.BLOCK_CACHE_HIT))
+                .tags(tags)
+                .register(Metrics.globalRegistry);
+            blockCacheMissCounter = FunctionCounter.builder(KVSpaceMetric.BlockCacheMiss.metricName, statistics,
+                    stats -> stats.getTickerCount(TickerType.BLOCK_CACHE_MISS))
+                .tags(tags)
+                .register(Metrics.globalRegistry);
         }
 
         void close() {
             Metrics.globalRegistry.remove(dataTotalSpaceGauge);
             Metrics.globalRegistry.remove(dataUsableSpaceGauge);
+            Metrics.globalRegistry.remove(blockCacheSizeGauge);
+            Metrics.globalRegistry.remove(pinnedMemorySizeGauge);
+            Metrics.globalRegistry.remove(blockCacheHitCounter);
+            Metrics.globalRegistry.remove(blockCacheMissCounter);
         }
     }
 }
@@ -18,10 +18,12 @@ import static java.lang.Math.max;
 
 import com.baidu.bifromq.baseenv.EnvProvider;
 import com.baidu.bifromq.basekv.localengine.IKVEngineConfigurator;
+import lombok.Builder;
 import lombok.NoArgsConstructor;
 import lombok.experimental.SuperBuilder;
 import org.rocksdb.BlockBasedTableConfig;
 import org.rocksdb.BloomFilter;
+import org.rocksdb.Cache;
 import org.rocksdb.ColumnFamilyOptions;
 import org.rocksdb.ColumnFamilyOptionsInterface;
 import org.rocksdb.CompactionStyle;
@@ -31,7 +33,6 @@ import org.rocksdb.DBOptionsInterface;
 import org.rocksdb.DataBlockIndexType;
 import org.rocksdb.Env;
 import org.rocksdb.IndexType;
-import org.rocksdb.LRUCache;
 import org.rocksdb.MutableColumnFamilyOptionsInterface;
 import org.rocksdb.MutableDBOptionsInterface;
 import org.rocksdb.RateLimiter;
@@ -46,6 +47,24 @@ public abstract class RocksDBKVEngineConfigurator<T extends RocksDBKVEngineConfi
     private int compactMinTombstoneKeys = 50000;
     private int compactMinTombstoneRanges = 10000;
     private double compactTombstoneKeysRatio = 0.3;
+    // the min tombstones in a single sst file to make its key range worth compacting
+    @Builder.Default
+    private int compactMinFileTombstoneKeys = 1000;
+    // the max number of kv spaces compacting concurrently in the engine
+    @Builder.Default
+    private int compactConcurrency = 2;
+    // the max bytes per second could be compacted manually in the engine
+    @Builder.Default
+    private long compactIOBudget = 64 * SizeUnit.MB;
+    // the capacity of the block cache shared by all kv spaces, the memtables are charged to it as well
+    @Builder.Default
+    private long memoryBudget = 256 * SizeUnit.MB;
+    // the ratio of the memory budget could be used by the memtables of all kv spaces
+    @Builder.Default
+    private double writeBufferBudgetRatio = 0.5;
+    // the max length of the key prefix which the prefix bloom filters are built on, 0 to disable them
+    @Builder.Default
+    private int keyPrefixLength = 0;
 
     public DBOptions dbOptions() {
         DBOptions targetOption = new DBOptions();
@@ -56,9 +75,9 @@ public abstract class RocksDBKVEngineConfigurator<T extends RocksDBKVEngineConfi
         return targetOption;
     }
 
-    public ColumnFamilyOptions cfOptions(String name) {
+    public ColumnFamilyOptions cfOptions(String name, Cache blockCache) {
         ColumnFamilyOptions targetOption = new ColumnFamilyOptions();
-        configCFOptions(name, (ColumnFamilyOptionsInterface<ColumnFamilyOptions>) targetOption);
+        configCFOptions(name, blockCache, (ColumnFamilyOptionsInterface<ColumnFamilyOptions>) targetOption);
         configCFOptions(name, (MutableColumnFamilyOptionsInterface<ColumnFamilyOptions>) targetOption);
         return targetOption;
     }
@@ -89,7 +108,9 @@ public abstract class RocksDBKVEngineConfigurator<T extends RocksDBKVEngineConfi
             .setMaxBackgroundJobs(max(EnvProvider.INSTANCE.availableProcessors() / 4, 2));
     }
 
-    protected void configCFOptions(String name, ColumnFamilyOptionsInterface<ColumnFamilyOptions> targetOption) {
+    protected void configCFOptions(String name,
+                                   Cache blockCache,
+                                   ColumnFamilyOptionsInterface<ColumnFamilyOptions> targetOption) {
         targetOption
             .setMergeOperatorName("uint64add")
             .setTableFormatConfig(
@@ -110,10 +131,14 @@ public abstract class RocksDBKVEngineConfigurator<T extends RocksDBKVEngineConfi
                     .setDataBlockHashTableUtilRatio(0.75)
                     // End of partitioned index filters settings.
                     .setBlockSize(4 * SizeUnit.KB)//
-                    .setBlockCache(autoRelease(new LRUCache(32 * SizeUnit.MB, 8), targetOption)))
+                    .setBlockCache(blockCache))
             // https://github.com/facebook/rocksdb/pull/5744
             .setForceConsistencyChecks(true)
             .setCompactionStyle(CompactionStyle.LEVEL);
+        if (keyPrefixLength > 0) {
+            // the data key is stored with a section prefix
+            targetOption.useCappedPrefixExtractor(Keys.DATA_SECTION_START.length + keyPrefixLength);
+        }
     }
 
     protected void configCFOptions(String name, MutableColumnFamilyOptionsInterface<ColumnFamilyOptions> targetOption) {
@@ -169,6 +194,8 @@ public abstract class RocksDBKVEngineConfigurator<T extends RocksDBKVEngineConfi
             // write_buffer_size * memtable_prefix_bloom_size_ratio.
             // If it is larger than 0.25, it is santinized to 0.25.
             .setMemtablePrefixBloomSizeRatio(0.125)
+            // build memtable bloom on whole key as well, so point lookups of absent keys could skip the memtables
+            .setMemtableWholeKeyFiltering(true)
             // Soft limit on number of level-0 files. We start slowing down writes at this
             // point. A value 0 means that no writing slow down will be triggered by number
             // of files in level-0.
@@ -181,44 +208,98 @@ public abstract class RocksDBKVEngineConfigurator<T extends RocksDBKVEngineConfi
         return this.dbRootDir;
     }
 
-    public boolean heuristicCompaction() {
-        return this.heuristicCompaction;
+    public T dbRootDir(String dbRootDir) {
+        this.dbRootDir = dbRootDir;
+        return (T) this;
     }
 
-    public int compactMinTombstoneKeys() {
-        return this.compactMinTombstoneKeys;
+    public long memoryBudget() {
+        return this.memoryBudget;
     }
 
-    public int compactMinTombstoneRanges() {
-        return this.compactMinTombstoneRanges;
+    public T memoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+        return (T) this;
     }
 
-    public double compactTombstoneKeysRatio() {
-        return this.compactTombstoneKeysRatio;
+    public double writeBufferBudgetRatio() {
+        return this.writeBufferBudgetRatio;
     }
 
-    public T dbRootDir(String dbRootDir) {
-        this.dbRootDir = dbRootDir;
+    public T writeBufferBudgetRatio(double writeBufferBudgetRatio) {
+        this.writeBufferBudgetRatio = writeBufferBudgetRatio;
+        return (T) this;
+    }
+
+    public int keyPrefixLength() {
+        return this.keyPrefixLength;
+    }
+
+    public T keyPrefixLength(int keyPrefixLength) {
+        this.keyPrefixLength = keyPrefixLength;
         return (T) this;
     }
 
+    public boolean heuristicCompaction() {
+        return this.heuristicCompaction;
+    }
+
     public T heuristicCompaction(boolean heuristicCompaction) {
         this.heuristicCompaction = heuristicCompaction;
         return (T) this;
     }
 
+    public int compactMinTombstoneKeys() {
+        return this.compactMinTombstoneKeys;
+    }
+
     public T compactMinTombstoneKeys(int compactMinTombstoneKeys) {
         this.compactMinTombstoneKeys = compactMinTombstoneKeys;
         return (T) this;
     }
 
+    public int compactMinTombstoneRanges() {
+        return this.compactMinTombstoneRanges;
+    }
+
     public T compactMinTombstoneRanges(int compactMinTombstoneRanges) {
         this.compactMinTombstoneRanges = compactMinTombstoneRanges;
         return (T) this;
     }
 
+    public double compactTombstoneKeysRatio() {
+        return this.compactTombstoneKeysRatio;
+    }
+
     public T compactTombstoneKeysRatio(double compactTombstoneKeysRatio) {
         this.compactTombstoneKeysRatio = compactTombstoneKeysRatio;
         return (T) this;
     }
+
+    public int compactMinFileTombstoneKeys() {
+        return this.compactMinFileTombstoneKeys;
+    }
+
+    public T compactMinFileTombstoneKeys(int compactMinFileTombstoneKeys) {
+        this.compactMinFileTombstoneKeys = compactMinFileTombstoneKeys;
+        return (T) this;
+    }
+
+    public int compactConcurrency() {
+        return this.compactConcurrency;
+    }
+
+    public T compactConcurrency(int compactConcurrency) {
+        this.compactConcurrency = compactConcurrency;
+        return (T) this;
+    }
+
+    public long compactIOBudget() {
+        return this.compactIOBudget;
+    }
+
+    public T compactIOBudget(long compactIOBudget) {
+        this.compactIOBudget = compactIOBudget;
+        return (T) this;
+    }
 }
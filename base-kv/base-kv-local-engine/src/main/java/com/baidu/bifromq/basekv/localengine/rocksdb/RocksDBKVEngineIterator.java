@@ -15,6 +15,7 @@ package com.baidu.bifromq.basekv.localengine.rocksdb;
 
 import com.baidu.bifromq.basekv.localengine.KVEngineException;
 import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
 import lombok.extern.slf4j.Slf4j;
 import org.rocksdb.ColumnFamilyHandle;
 import org.rocksdb.ReadOptions;
@@ -51,7 +52,8 @@ class RocksDBKVEngineIterator implements AutoCloseable {
                             Snapshot snapshot,
                             byte[] startKey,
                             byte[] endKey) {
-        ReadOptions readOptions = new ReadOptions();
+        // seek in prefix mode only when it yields the same result as total order seek
+        ReadOptions readOptions = new ReadOptions().setAutoPrefixMode(true);
         Slice lowerSlice = null;
         if (startKey != null) {
             lowerSlice = new Slice(startKey);
@@ -74,10 +76,18 @@ class RocksDBKVEngineIterator implements AutoCloseable {
         return rocksIterator.key();
     }
 
+    public int key(ByteBuffer key) {
+        return rocksIterator.key(key);
+    }
+
     public byte[] value() {
         return rocksIterator.value();
     }
 
+    public int value(ByteBuffer value) {
+        return rocksIterator.value(value);
+    }
+
     public boolean isValid() {
         return rocksIterator.isValid();
     }
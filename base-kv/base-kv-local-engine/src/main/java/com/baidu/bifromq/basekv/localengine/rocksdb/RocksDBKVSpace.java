@@ -18,7 +18,6 @@ import static com.baidu.bifromq.basekv.localengine.rocksdb.Keys.META_SECTION_STA
 import static com.baidu.bifromq.basekv.localengine.rocksdb.Keys.fromMetaKey;
 import static com.google.protobuf.UnsafeByteOperations.unsafeWrap;
 
-import com.baidu.bifromq.baseenv.EnvProvider;
 import com.baidu.bifromq.basekv.localengine.IKVSpace;
 import com.baidu.bifromq.basekv.localengine.IKVSpaceWriter;
 import com.baidu.bifromq.basekv.localengine.ISyncContext;
@@ -35,24 +34,27 @@ import io.micrometer.core.instrument.Tags;
 import io.micrometer.core.instrument.Timer;
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.subjects.BehaviorSubject;
+import java.io.File;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
-import org.rocksdb.BlockBasedTableConfig;
 import org.rocksdb.ColumnFamilyDescriptor;
 import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.ColumnFamilyOptions;
 import org.rocksdb.CompactRangeOptions;
+import org.rocksdb.IngestExternalFileOptions;
+import org.rocksdb.LevelMetaData;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
+import org.rocksdb.SstFileMetaData;
+import org.rocksdb.TableProperties;
 import org.rocksdb.WriteOptions;
 
 @Slf4j
@@ -72,7 +74,8 @@ abstract class RocksDBKVSpace<
     private final ColumnFamilyDescriptor cfDesc;
     protected final ColumnFamilyHandle cfHandle;
     private final IWriteStatsRecorder writeStats;
-    private final ExecutorService compactionExecutor;
+    private final RocksDBKVSpaceCompactionManager compactionManager;
+    private final RocksDBKVSpaceCompactionPlanner compactionPlanner;
     private final E engine;
     private final Runnable onDestroy;
     private final AtomicBoolean compacting = new AtomicBoolean(false);
@@ -106,9 +109,9 @@ abstract class RocksDBKVSpace<
             configurator.compactTombstoneKeysRatio(),
             this::scheduleCompact) : NoopWriteStatsRecorder.INSTANCE;
         this.engine = engine;
-        compactionExecutor = new ThreadPoolExecutor(1, 1,
-            0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
-            EnvProvider.INSTANCE.newThreadFactory("keyrange-compactor"));
+        this.compactionManager = engine.compactionManager();
+        this.compactionPlanner = new RocksDBKVSpaceCompactionPlanner(configurator.compactMinFileTombstoneKeys(),
+            configurator.compactTombstoneKeysRatio(), cfDesc.getOptions().maxCompactionBytes());
 
         metricMgr = new MetricManager(tags);
     }
@@ -116,6 +119,10 @@ abstract class RocksDBKVSpace<
     public T open() {
         if (state.compareAndSet(State.Init, State.Opening)) {
             doLoad();
+            if (configurator.heuristicCompaction()) {
+                // the tombstones left before restart are tracked by the table properties
+                scheduleCompact();
+            }
         }
         return (T) this;
     }
@@ -203,6 +210,40 @@ abstract class RocksDBKVSpace<
         );
     }
 
+    //For internal use only
+    ColumnFamilyOptions cfOptions() {
+        return cfDesc.getOptions();
+    }
+
+    /**
+     * Replace all the data with the ones in given sst files and update the metadata. The sst files carry the tombstones
+     * of the replaced data as well as the metadata, and they are ingested at once, so the replacement is atomic.
+     *
+     * <p>Ingested files bypass flush, so the compaction for purging the carried tombstones is scheduled here.
+     *
+     * @param sstFiles   the sst files without overlapping
+     * @param metadata   the metadata carried in the sst files
+     * @param tombstones the number of tombstones carried in the sst files
+     */
+    //For internal use only
+    void ingest(List<String> sstFiles, Map<ByteString, ByteString> metadata, long tombstones) {
+        if (!sstFiles.isEmpty()) {
+            syncContext.mutator().run(() -> {
+                try (IngestExternalFileOptions ingestOptions = new IngestExternalFileOptions()
+                    .setMoveFiles(true)
+                    .setAllowBlockingFlush(true)) {
+                    db.ingestExternalFile(cfHandle, sstFiles, ingestOptions);
+                } catch (RocksDBException e) {
+                    throw new KVEngineException("Ingest sst files error", e);
+                }
+            });
+        }
+        updateMetadata(metadata);
+        if (tombstones > 0) {
+            scheduleCompact();
+        }
+    }
+
     void close() {
         if (state.compareAndSet(State.Opening, State.Closing)) {
             try {
@@ -242,25 +283,43 @@ abstract class RocksDBKVSpace<
         return syncContext.refresher();
     }
 
+    //For internal use only
+    void onFlushed(TableProperties tableProps) {
+        if (compactionPlanner.isDense(tableProps.getNumEntries(), tableProps.getNumDeletions(),
+            tableProps.getNumRangeDeletions())) {
+            scheduleCompact();
+        }
+    }
+
     private void scheduleCompact() {
         if (state.get() != State.Opening) {
             return;
         }
         metricMgr.compactionSchedCounter.increment();
         if (compacting.compareAndSet(false, true)) {
-            compactionExecutor.execute(metricMgr.compactionTimer.wrap(() -> {
+            compactionManager.submit(metricMgr.compactionTimer.wrap(() -> {
                 log.debug("KeyRange[{}] compaction start", id);
                 lastCompactAt = System.nanoTime();
                 writeStats.reset();
                 try (CompactRangeOptions options = new CompactRangeOptions()
                     .setBottommostLevelCompaction(CompactRangeOptions.BottommostLevelCompaction.kSkip)
                     .setExclusiveManualCompaction(false)) {
+                    List<RocksDBKVSpaceCompactionPlanner.CompactRange> compactRanges;
                     synchronized (compacting) {
-                        if (state.get() == State.Opening) {
-                            db.compactRange(cfHandle, null, null, options);
+                        compactRanges = state.get() == State.Opening ? planCompaction() : Collections.emptyList();
+                    }
+                    for (RocksDBKVSpaceCompactionPlanner.CompactRange range : compactRanges) {
+                        if (!compactionManager.acquire(range.bytes())) {
+                            break;
+                        }
+                        synchronized (compacting) {
+                            if (state.get() != State.Opening) {
+                                break;
+                            }
+                            db.compactRange(cfHandle, range.startKey(), range.endKey(), options);
                         }
                     }
-                    log.debug("KeyRange[{}] compacted", id);
+                    log.debug("KeyRange[{}] compacted {} sub-ranges", id, compactRanges.size());
                 } catch (Throwable e) {
                     log.error("KeyRange[{}] compaction error", id, e);
                 } finally {
@@ -275,11 +334,34 @@ abstract class RocksDBKVSpace<
         }
     }
 
+    private List<RocksDBKVSpaceCompactionPlanner.CompactRange> planCompaction() throws RocksDBException {
+        Map<String, TableProperties> tablePropsMap = new HashMap<>();
+        db.getPropertiesOfAllTables(cfHandle)
+            .forEach((filePath, tableProps) -> tablePropsMap.put(new File(filePath).getName(), tableProps));
+        List<LevelMetaData> levels = db.getColumnFamilyMetaData(cfHandle).levels();
+        int bottommostLevel = levels.size() - 1;
+        while (bottommostLevel > 0 && levels.get(bottommostLevel).files().isEmpty()) {
+            bottommostLevel--;
+        }
+        List<RocksDBKVSpaceCompactionPlanner.SstFileStats> files = new ArrayList<>();
+        // the files in bottommost level won't be compacted, except in L0 which are always compacted into next level
+        for (int i = 0; i < Math.max(bottommostLevel, 1); i++) {
+            for (SstFileMetaData file : levels.get(i).files()) {
+                TableProperties tableProps = tablePropsMap.get(new File(file.fileName()).getName());
+                if (file.beingCompacted() || tableProps == null) {
+                    continue;
+                }
+                files.add(new RocksDBKVSpaceCompactionPlanner.SstFileStats(file.smallestKey(), file.largestKey(),
+                    file.size(), tableProps.getNumEntries(), tableProps.getNumDeletions(),
+                    tableProps.getNumRangeDeletions()));
+            }
+        }
+        return compactionPlanner.plan(files);
+    }
+
     private class MetricManager {
-        private final Gauge blockCacheSizeGauge;
         private final Gauge tableReaderSizeGauge;
         private final Gauge memtableSizeGauges;
-        private final Gauge pinedMemorySizeGauges;
         private final Counter compactionSchedCounter;
         private final Timer compactionTimer;
 
@@ -288,18 +370,6 @@ abstract class RocksDBKVSpace<
             compactionSchedCounter = KVSpaceMeters.getCounter(id, KVSpaceMetric.CompactionCounter, metricTags);
             compactionTimer = KVSpaceMeters.getTimer(id, KVSpaceMetric.CompactionTimer, metricTags);
 
-            blockCacheSizeGauge = KVSpaceMeters.getGauge(id, KVSpaceMetric.BlockCache, () -> {
-                try {
-                    if (!((BlockBasedTableConfig) cfDesc.getOptions().tableFormatConfig()).noBlockCache()) {
-                        return db.getLongProperty(cfHandle, "rocksdb.block-cache-usage");
-                    }
-                    return 0;
-                } catch (RocksDBException e) {
-                    log.warn("Unable to get long property {}", "rocksdb.block-cache-usage", e);
-                    return 0;
-                }
-            }, metricTags);
-
             tableReaderSizeGauge = KVSpaceMeters.getGauge(id, KVSpaceMetric.TableReader, () -> {
                 try {
                     return db.getLongProperty(cfHandle, "rocksdb.estimate-table-readers-mem");
@@ -317,25 +387,11 @@ abstract class RocksDBKVSpace<
                     return 0;
                 }
             }, metricTags);
-
-            pinedMemorySizeGauges = KVSpaceMeters.getGauge(id, KVSpaceMetric.PinnedMem, () -> {
-                try {
-                    if (!((BlockBasedTableConfig) cfDesc.getOptions().tableFormatConfig()).noBlockCache()) {
-                        return db.getLongProperty(cfHandle, "rocksdb.block-cache-pinned-usage");
-                    }
-                    return 0;
-                } catch (RocksDBException e) {
-                    log.warn("Unable to get long property {}", "rocksdb.block-cache-pinned-usage", e);
-                    return 0;
-                }
-            }, metricTags);
         }
 
         void close() {
-            blockCacheSizeGauge.close();
             memtableSizeGauges.close();
             tableReaderSizeGauge.close();
-            pinedMemorySizeGauges.close();
             compactionSchedCounter.close();
             compactionTimer.close();
         }
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.basekv.localengine.rocksdb;
+
+import com.baidu.bifromq.baseenv.EnvProvider;
+import com.google.common.util.concurrent.RateLimiter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The manual compaction resources shared by all kv spaces of an engine. The number of concurrently running
+ * compactions is bounded by the worker threads, and the bytes could be compacted per second is bounded by the IO
+ * budget.
+ */
+@Slf4j
+class RocksDBKVSpaceCompactionManager {
+    private static final int BYTES_PER_PERMIT = 1024;
+    private static final int CLOSE_TIMEOUT_SECONDS = 30;
+    private final ExecutorService executor;
+    private final RateLimiter ioBudget;
+
+    RocksDBKVSpaceCompactionManager(int concurrency, long ioBudgetPerSec) {
+        executor = new ThreadPoolExecutor(concurrency, concurrency,
+            0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+            EnvProvider.INSTANCE.newThreadFactory("keyrange-compactor"));
+        ioBudget = RateLimiter.create(Math.max(ioBudgetPerSec / BYTES_PER_PERMIT, 1));
+    }
+
+    void submit(Runnable compactionTask) {
+        executor.execute(compactionTask);
+    }
+
+    /**
+     * Acquire the IO budget for compacting the given bytes, block until it's available or the manager is closed.
+     *
+     * @param bytes the estimated bytes to compact
+     * @return false if the manager has been closed
+     */
+    boolean acquire(long bytes) {
+        int permits = (int) Math.min(Math.max(bytes / BYTES_PER_PERMIT, 1), Integer.MAX_VALUE);
+        while (!ioBudget.tryAcquire(permits, 100, TimeUnit.MILLISECONDS)) {
+            if (Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stop the compactions and wait for the running ones to quit, it must be called before closing the db.
+     */
+    @SneakyThrows
+    void close() {
+        executor.shutdownNow();
+        if (!executor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            log.warn("Running compactions not finished in {}s", CLOSE_TIMEOUT_SECONDS);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.basekv.localengine.rocksdb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Plan the bounded compactions over the sub-ranges with dense tombstones. The tombstone density is derived from the
+ * table properties of each sst file, which are persisted along with the file, so the plan survives restart.
+ */
+class RocksDBKVSpaceCompactionPlanner {
+    /**
+     * The tombstone stats of a live sst file.
+     */
+    record SstFileStats(byte[] smallestKey,
+                        byte[] largestKey,
+                        long size,
+                        long numEntries,
+                        long numDeletions,
+                        long numRangeDeletions) {
+    }
+
+    /**
+     * The key range to compact, both ends are inclusive.
+     */
+    record CompactRange(byte[] startKey, byte[] endKey, long bytes) {
+    }
+
+    private final int minTombstoneKeys;
+    private final double minTombstoneKeysRatio;
+    private final long maxCompactBytes;
+
+    RocksDBKVSpaceCompactionPlanner(int minTombstoneKeys, double minTombstoneKeysRatio, long maxCompactBytes) {
+        this.minTombstoneKeys = minTombstoneKeys;
+        this.minTombstoneKeysRatio = minTombstoneKeysRatio;
+        this.maxCompactBytes = maxCompactBytes;
+    }
+
+    /**
+     * Check if the sst file has dense tombstones.
+     *
+     * @param numEntries        the number of entries including tombstones
+     * @param numDeletions      the number of tombstones
+     * @param numRangeDeletions the number of range tombstones
+     * @return true if the file is worth compacting
+     */
+    boolean isDense(long numEntries, long numDeletions, long numRangeDeletions) {
+        return numRangeDeletions > 0
+            || (numDeletions >= minTombstoneKeys && numDeletions >= minTombstoneKeysRatio * numEntries);
+    }
+
+    /**
+     * Merge the overlapping dense files into key ranges in ascending order, each range is bounded by the max compact
+     * bytes unless it's made of a single file.
+     *
+     * @param files the live sst files excluding the ones in bottommost level
+     * @return the key ranges to compact
+     */
+    List<CompactRange> plan(List<SstFileStats> files) {
+        List<SstFileStats> denseFiles = files.stream()
+            .filter(f -> isDense(f.numEntries, f.numDeletions, f.numRangeDeletions))
+            .sorted(Comparator.comparing(SstFileStats::smallestKey, Arrays::compareUnsigned))
+            .toList();
+        List<CompactRange> ranges = new ArrayList<>();
+        CompactRange current = null;
+        for (SstFileStats file : denseFiles) {
+            if (current != null
+                && Arrays.compareUnsigned(file.smallestKey, current.endKey) <= 0
+                && current.bytes + file.size <= maxCompactBytes) {
+                byte[] endKey = Arrays.compareUnsigned(file.largestKey, current.endKey) > 0
+                    ? file.largestKey : current.endKey;
+                current = new CompactRange(current.startKey, endKey, current.bytes + file.size);
+            } else {
+                if (current != null) {
+                    ranges.add(current);
+                }
+                current = new CompactRange(file.smallestKey, file.largestKey, file.size);
+            }
+        }
+        if (current != null) {
+            ranges.add(current);
+        }
+        return ranges;
+    }
+}
@@ -26,6 +26,8 @@ import com.baidu.bifromq.basekv.localengine.ISyncContext;
 import com.baidu.bifromq.basekv.proto.Boundary;
 import com.google.protobuf.ByteString;
 import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.function.ToIntFunction;
 import org.rocksdb.ColumnFamilyHandle;
 import org.rocksdb.RocksDB;
 import org.rocksdb.Snapshot;
@@ -40,9 +42,19 @@ public class RocksDBKVSpaceIterator implements IKVSpaceIterator {
         }
     }
 
+    private static final int INIT_KEY_BUFFER_SIZE = 256;
+    private static final int INIT_VALUE_BUFFER_SIZE = 4096;
+
     private final RocksDBKVEngineIterator rocksItr;
     private final ISyncContext.IRefresher refresher;
     private final Cleaner.Cleanable onClose;
+    // in zero-copy mode, the key and value are read into reused direct buffers and exposed as views
+    private final boolean zeroCopy;
+    private ByteBuffer keyBuffer;
+    private ByteBuffer valueBuffer;
+    // the key and value of current entry, reset once the iterator is moved
+    private ByteString currentKey;
+    private ByteString currentValue;
 
     public RocksDBKVSpaceIterator(RocksDB db,
                                   ColumnFamilyHandle cfHandle,
@@ -56,23 +68,53 @@ public class RocksDBKVSpaceIterator implements IKVSpaceIterator {
                                   Snapshot snapshot,
                                   Boundary boundary,
                                   ISyncContext.IRefresher refresher) {
+        this(db, cfHandle, snapshot, boundary, refresher, false);
+    }
+
+    public RocksDBKVSpaceIterator(RocksDB db,
+                                  ColumnFamilyHandle cfHandle,
+                                  Snapshot snapshot,
+                                  Boundary boundary,
+                                  ISyncContext.IRefresher refresher,
+                                  boolean zeroCopy) {
         byte[] startKey = startKeyBytes(boundary);
         byte[] endKey = endKeyBytes(boundary);
         startKey = startKey != null ? toDataKey(startKey) : DATA_SECTION_START;
         endKey = endKey != null ? toDataKey(endKey) : DATA_SECTION_END;
         this.rocksItr = new RocksDBKVEngineIterator(db, cfHandle, snapshot, startKey, endKey);
         this.refresher = refresher;
+        this.zeroCopy = zeroCopy;
+        if (zeroCopy) {
+            keyBuffer = ByteBuffer.allocateDirect(INIT_KEY_BUFFER_SIZE);
+            valueBuffer = ByteBuffer.allocateDirect(INIT_VALUE_BUFFER_SIZE);
+        }
         onClose = CLEANER.register(this, new State(rocksItr));
     }
 
     @Override
     public ByteString key() {
-        return fromDataKey(rocksItr.key());
+        if (currentKey == null) {
+            if (zeroCopy) {
+                keyBuffer = read(keyBuffer, rocksItr::key);
+                currentKey = fromDataKey(keyBuffer);
+            } else {
+                currentKey = fromDataKey(rocksItr.key());
+            }
+        }
+        return currentKey;
     }
 
     @Override
     public ByteString value() {
-        return unsafeWrap(rocksItr.value());
+        if (currentValue == null) {
+            if (zeroCopy) {
+                valueBuffer = read(valueBuffer, rocksItr::value);
+                currentValue = unsafeWrap(valueBuffer);
+            } else {
+                currentValue = unsafeWrap(rocksItr.value());
+            }
+        }
+        return currentValue;
     }
 
     @Override
@@ -82,36 +124,43 @@ public class RocksDBKVSpaceIterator implements IKVSpaceIterator {
 
     @Override
     public void next() {
+        moved();
         rocksItr.next();
     }
 
     @Override
     public void prev() {
+        moved();
         rocksItr.prev();
     }
 
     @Override
     public void seekToFirst() {
+        moved();
         rocksItr.seekToFirst();
     }
 
     @Override
     public void seekToLast() {
+        moved();
         rocksItr.seekToLast();
     }
 
     @Override
     public void seek(ByteString target) {
+        moved();
         rocksItr.seek(toDataKey(target));
     }
 
     @Override
     public void seekForPrev(ByteString target) {
+        moved();
         rocksItr.seekForPrev(toDataKey(target));
     }
 
     @Override
     public void refresh() {
+        moved();
         refresher.runIfNeeded(rocksItr::refresh);
     }
 
@@ -119,4 +168,19 @@ public class RocksDBKVSpaceIterator implements IKVSpaceIterator {
     public void close() {
         onClose.clean();
     }
+
+    private void moved() {
+        currentKey = null;
+        currentValue = null;
+    }
+
+    private static ByteBuffer read(ByteBuffer buffer, ToIntFunction<ByteBuffer> reader) {
+        buffer.clear();
+        int size = reader.applyAsInt(buffer);
+        if (size > buffer.capacity()) {
+            buffer = ByteBuffer.allocateDirect(Math.max(size, buffer.capacity() * 2));
+            reader.applyAsInt(buffer);
+        }
+        return buffer;
+    }
 }
@@ -88,5 +88,11 @@ public abstract class RocksDBKVSpaceReader extends AbstractKVSpaceReader {
         return new RocksDBKVSpaceIterator(db(), cfHandle(), subBoundary, newRefresher());
     }
 
+    @Override
+    protected final IKVSpaceIterator doNewZeroCopyIterator(Boundary subBoundary) {
+        assert isValid(subBoundary);
+        return new RocksDBKVSpaceIterator(db(), cfHandle(), null, subBoundary, newRefresher(), true);
+    }
+
     abstract void close();
 }
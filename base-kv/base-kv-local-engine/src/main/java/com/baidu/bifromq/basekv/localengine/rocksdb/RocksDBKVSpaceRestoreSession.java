@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.basekv.localengine.rocksdb;
+
+import static com.baidu.bifromq.basekv.localengine.rocksdb.Keys.DATA_SECTION_END;
+import static com.baidu.bifromq.basekv.localengine.rocksdb.Keys.DATA_SECTION_START;
+import static com.baidu.bifromq.basekv.localengine.rocksdb.Keys.fromMetaKey;
+import static com.baidu.bifromq.basekv.localengine.rocksdb.Keys.toDataKey;
+import static com.baidu.bifromq.basekv.localengine.rocksdb.Keys.toMetaKey;
+
+import com.baidu.bifromq.basekv.localengine.IKVSpaceRestoreSession;
+import com.baidu.bifromq.basekv.localengine.KVEngineException;
+import com.baidu.bifromq.basekv.proto.Boundary;
+import com.google.protobuf.ByteString;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import lombok.extern.slf4j.Slf4j;
+import org.rocksdb.DBOptions;
+import org.rocksdb.EnvOptions;
+import org.rocksdb.Options;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.SstFileWriter;
+
+/**
+ * Restore session which builds sst files from the restored key-value pairs, and ingests them into the column family
+ * once done. Compared with writing via write batch, it bypasses memtable and WAL, and the restored data won't be
+ * compacted again and again while flowing down the LSM tree.
+ *
+ * <p>The existing data not restored is deleted by the tombstones written in the same sst files, and the metadata is
+ * written in a separate sst file, so the whole replacement is done by one atomic ingestion. The tombstones are purged
+ * by the compaction scheduled right after ingestion, instead of being carried down the LSM tree.
+ */
+@Slf4j
+class RocksDBKVSpaceRestoreSession implements IKVSpaceRestoreSession {
+    private final RocksDBKVSpace<?, ?, ?> space;
+    private final File restoreDir;
+    private final long maxFileSize;
+    private final EnvOptions envOptions;
+    private final Options options;
+    private final List<String> sstFiles = new ArrayList<>();
+    private final Map<ByteString, ByteString> metadata = new HashMap<>();
+    // the existing data in ascending order, which will be deleted unless overwritten
+    private final RocksDBKVEngineIterator existing;
+    private SstFileWriter sstFileWriter;
+    private long currentFileSize;
+    private int count;
+    private long tombstones;
+
+    RocksDBKVSpaceRestoreSession(RocksDBKVSpace<?, ?, ?> space, File restoreDir) {
+        this.space = space;
+        this.restoreDir = restoreDir;
+        this.maxFileSize = space.cfOptions().targetFileSizeBase();
+        try (DBOptions dbOptions = new DBOptions()) {
+            // build sst files in the same table format as the column family
+            this.options = new Options(dbOptions, space.cfOptions());
+        }
+        this.envOptions = new EnvOptions();
+        this.existing = new RocksDBKVEngineIterator(space.db(), space.cfHandle(), null,
+            DATA_SECTION_START, DATA_SECTION_END);
+        existing.seekToFirst();
+        try {
+            Files.createDirectories(restoreDir.toPath());
+        } catch (IOException e) {
+            close();
+            throw new KVEngineException("Create restore dir error", e);
+        }
+    }
+
+    @Override
+    public String id() {
+        return space.id();
+    }
+
+    @Override
+    public Optional<ByteString> metadata(ByteString metaKey) {
+        ByteString metaValue = metadata.get(metaKey);
+        if (metaValue != null) {
+            return Optional.of(metaValue);
+        }
+        return space.metadata(metaKey);
+    }
+
+    @Override
+    public IKVSpaceRestoreSession metadata(ByteString metaKey, ByteString metaValue) {
+        metadata.put(metaKey, metaValue);
+        return this;
+    }
+
+    @Override
+    public long size() {
+        return space.size();
+    }
+
+    @Override
+    public long size(Boundary boundary) {
+        return space.size(boundary);
+    }
+
+    @Override
+    public IKVSpaceRestoreSession put(ByteString key, ByteString value) {
+        try {
+            byte[] dataKey = toDataKey(key);
+            deleteExisting(dataKey);
+            // keys must be strictly ascending, otherwise sst file writer will complain
+            writer().put(dataKey, value.toByteArray());
+            currentFileSize += key.size() + value.size();
+            count++;
+            rollIfNeeded();
+            return this;
+        } catch (RocksDBException e) {
+            throw new KVEngineException("Write sst file failed", e);
+        }
+    }
+
+    @Override
+    public void done() {
+        try {
+            deleteExisting(null);
+            finishSstFile();
+            writeMetadata();
+            log.debug("Ingest {} kv and {} tombstones in {} sst files into kvspace[{}]",
+                count, tombstones, sstFiles.size(), space.id());
+            space.ingest(sstFiles, metadata, tombstones);
+        } catch (RocksDBException e) {
+            throw new KVEngineException("Finish sst file failed", e);
+        } finally {
+            close();
+        }
+    }
+
+    @Override
+    public void abort() {
+        close();
+    }
+
+    @Override
+    public int count() {
+        return count;
+    }
+
+    // delete the existing keys before given data key, or all the remaining ones if null
+    private void deleteExisting(byte[] untilDataKey) throws RocksDBException {
+        while (existing.isValid()) {
+            byte[] existingKey = existing.key();
+            int cmp = untilDataKey == null ? -1 : Arrays.compareUnsigned(existingKey, untilDataKey);
+            if (cmp > 0) {
+                break;
+            }
+            if (cmp < 0) {
+                writer().delete(existingKey);
+                currentFileSize += existingKey.length;
+                tombstones++;
+                rollIfNeeded();
+            }
+            existing.next();
+        }
+    }
+
+    private void writeMetadata() throws RocksDBException {
+        if (metadata.isEmpty()) {
+            return;
+        }
+        // metadata section is before data section, so the metadata sst file won't overlap with the data ones
+        List<byte[]> metaKeys = new ArrayList<>(metadata.size());
+        metadata.keySet().forEach(metaKey -> metaKeys.add(toMetaKey(metaKey)));
+        metaKeys.sort(Arrays::compareUnsigned);
+        try (SstFileWriter metaWriter = new SstFileWriter(envOptions, options)) {
+            String sstFile = new File(restoreDir, "meta.sst").getAbsolutePath();
+            metaWriter.open(sstFile);
+            for (byte[] metaKey : metaKeys) {
+                metaWriter.put(metaKey, metadata.get(fromMetaKey(metaKey)).toByteArray());
+            }
+            metaWriter.finish();
+            sstFiles.add(0, sstFile);
+        }
+    }
+
+    private SstFileWriter writer() throws RocksDBException {
+        if (sstFileWriter == null) {
+            String sstFile = new File(restoreDir, String.format("%06d.sst", sstFiles.size())).getAbsolutePath();
+            sstFileWriter = new SstFileWriter(envOptions, options);
+            sstFileWriter.open(sstFile);
+            sstFiles.add(sstFile);
+            currentFileSize = 0;
+        }
+        return sstFileWriter;
+    }
+
+    private void rollIfNeeded() throws RocksDBException {
+        if (currentFileSize >= maxFileSize) {
+            finishSstFile();
+        }
+    }
+
+    private void finishSstFile() throws RocksDBException {
+        if (sstFileWriter != null) {
+            try {
+                sstFileWriter.finish();
+            } finally {
+                sstFileWriter.close();
+                sstFileWriter = null;
+            }
+        }
+    }
+
+    private void close() {
+        if (sstFileWriter != null) {
+            sstFileWriter.close();
+            sstFileWriter = null;
+        }
+        existing.close();
+        envOptions.close();
+        options.close();
+        // ingested files have been moved into the db
+        File[] files = restoreDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    log.warn("Failed to delete restore file: {}", file);
+                }
+            }
+        }
+        if (!restoreDir.delete()) {
+            log.warn("Failed to delete restore dir: {}", restoreDir);
+        }
+    }
+}
@@ -127,4 +127,10 @@ class RocksDBKVSpaceSnapshot extends AbstractKVSpaceReader implements IRocksDBKV
         assert isValid(subBoundary);
         return new RocksDBKVSpaceIterator(db, cfHandle, snapshot, subBoundary, DUMMY_REFRESHER);
     }
+
+    @Override
+    protected IKVSpaceIterator doNewZeroCopyIterator(Boundary subBoundary) {
+        assert isValid(subBoundary);
+        return new RocksDBKVSpaceIterator(db, cfHandle, snapshot, subBoundary, DUMMY_REFRESHER, true);
+    }
 }
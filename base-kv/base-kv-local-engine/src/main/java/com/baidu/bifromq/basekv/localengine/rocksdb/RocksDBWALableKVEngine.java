@@ -20,12 +20,34 @@ import org.rocksdb.RocksDB;
 public class RocksDBWALableKVEngine
     extends RocksDBKVEngine<RocksDBWALableKVEngine, RocksDBWALableKVSpace, RocksDBWALableKVEngineConfigurator> {
     private final RocksDBWALableKVEngineConfigurator configurator;
+    private RocksDBWalFlusher walFlusher;
 
     public RocksDBWALableKVEngine(String overrideIdentity, RocksDBWALableKVEngineConfigurator configurator) {
         super(overrideIdentity, configurator);
         this.configurator = configurator;
     }
 
+    @Override
+    protected void doStart(String... metricTags) {
+        if (configurator.asyncWALFlush()) {
+            // existing kv spaces are loaded during start
+            walFlusher = new RocksDBWalFlusher(id(), db, configurator.fsyncWAL(), metricTags);
+        }
+        super.doStart(metricTags);
+    }
+
+    @Override
+    protected void doStop() {
+        if (walFlusher != null) {
+            walFlusher.close();
+        }
+        super.doStop();
+    }
+
+    RocksDBWalFlusher walFlusher() {
+        return walFlusher;
+    }
+
     @Override
     protected RocksDBWALableKVSpace buildKVSpace(String spaceId, ColumnFamilyDescriptor cfDesc,
                                                  ColumnFamilyHandle cfHandle, RocksDB db, Runnable onDestroy,
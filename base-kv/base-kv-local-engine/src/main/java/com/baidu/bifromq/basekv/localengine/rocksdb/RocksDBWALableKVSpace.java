@@ -13,20 +13,9 @@
 
 package com.baidu.bifromq.basekv.localengine.rocksdb;
 
-import com.baidu.bifromq.baseenv.EnvProvider;
 import com.baidu.bifromq.basekv.localengine.IWALableKVSpace;
 import com.baidu.bifromq.basekv.localengine.KVEngineException;
-import com.baidu.bifromq.basekv.localengine.metrics.KVSpaceMeters;
-import com.baidu.bifromq.basekv.localengine.metrics.KVSpaceMetric;
-import io.micrometer.core.instrument.Tags;
-import io.micrometer.core.instrument.Timer;
-import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicReference;
 import lombok.extern.slf4j.Slf4j;
 import org.rocksdb.ColumnFamilyDescriptor;
 import org.rocksdb.ColumnFamilyHandle;
@@ -39,9 +28,7 @@ public class RocksDBWALableKVSpace
     implements IWALableKVSpace {
     private final RocksDBWALableKVEngineConfigurator configurator;
     private final WriteOptions writeOptions;
-    private final AtomicReference<CompletableFuture<Long>> flushFutureRef = new AtomicReference<>();
-    private final ExecutorService flushExecutor;
-    private final MetricManager metricMgr;
+    private final RocksDBWalFlusher walFlusher;
 
     public RocksDBWALableKVSpace(String id, ColumnFamilyDescriptor cfDesc,
                                  ColumnFamilyHandle cfHandle, RocksDB db,
@@ -55,28 +42,12 @@ public class RocksDBWALableKVSpace
         if (!configurator.asyncWALFlush()) {
             writeOptions.setSync(configurator.fsyncWAL());
         }
-        flushExecutor = new ThreadPoolExecutor(1, 1,
-            0L, TimeUnit.MILLISECONDS,
-            new LinkedBlockingQueue<>(),
-            EnvProvider.INSTANCE.newThreadFactory("keyrange-flusher"));
-        metricMgr = new MetricManager(tags);
+        walFlusher = engine.walFlusher();
     }
 
     @Override
     protected void doClose() {
-        final CompletableFuture<Long> flushTaskFuture = Optional.ofNullable(flushFutureRef.get()).orElseGet(() -> {
-            CompletableFuture<Long> lastOne = new CompletableFuture<>();
-            flushExecutor.submit(() -> lastOne.complete(System.nanoTime()));
-            return lastOne;
-        });
-        flushExecutor.shutdown();
-        try {
-            flushTaskFuture.join();
-        } catch (Throwable e) {
-            log.debug("Flush error during closing", e);
-        }
         writeOptions.close();
-        metricMgr.close();
         super.doClose();
     }
 
@@ -93,52 +64,7 @@ public class RocksDBWALableKVSpace
         if (!configurator.asyncWALFlush()) {
             return CompletableFuture.completedFuture(System.nanoTime());
         }
-        CompletableFuture<Long> flushFuture;
-        if (flushFutureRef.compareAndSet(null, flushFuture = new CompletableFuture<>())) {
-            doFlush(flushFuture);
-        } else {
-            flushFuture = flushFutureRef.get();
-            if (flushFuture == null) {
-                // try again
-                return flush();
-            }
-        }
-        return flushFuture;
-    }
-
-    private void doFlush(CompletableFuture<Long> onDone) {
-        flushExecutor.submit(() -> {
-            long flashStartAt = System.nanoTime();
-            try {
-                log.debug("KVSpace[{}] flush wal start", id);
-                try {
-                    Timer.Sample start = Timer.start();
-                    db.flushWal(configurator.fsyncWAL());
-                    start.stop(metricMgr.flushTimer);
-                    log.debug("KVSpace[{}] flush complete", id);
-                } catch (Throwable e) {
-                    log.error("KVSpace[{}] flush error", id, e);
-                    throw new KVEngineException("KVSpace flush error", e);
-                }
-                flushFutureRef.compareAndSet(onDone, null);
-                onDone.complete(flashStartAt);
-            } catch (Throwable e) {
-                flushFutureRef.compareAndSet(onDone, null);
-                onDone.completeExceptionally(new KVEngineException("KVSpace flush error", e));
-            }
-        });
-    }
-
-    private class MetricManager {
-        private final Timer flushTimer;
-
-        MetricManager(String... tags) {
-            Tags metricTags = Tags.of(tags);
-            flushTimer = KVSpaceMeters.getTimer(id, KVSpaceMetric.FlushTimer, metricTags);
-        }
-
-        void close() {
-            flushTimer.close();
-        }
+        // the WAL is shared by all kv spaces of the engine, flush requests are group committed
+        return walFlusher.flush();
     }
 }
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.basekv.localengine.rocksdb;
+
+import com.baidu.bifromq.baseenv.EnvProvider;
+import com.baidu.bifromq.basekv.localengine.KVEngineException;
+import com.baidu.bifromq.basekv.localengine.metrics.KVSpaceMeters;
+import com.baidu.bifromq.basekv.localengine.metrics.KVSpaceMetric;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.extern.slf4j.Slf4j;
+import org.rocksdb.RocksDB;
+
+/**
+ * The WAL flusher shared by all the KVSpaces of an engine. The KVSpaces are column families of the same RocksDB
+ * instance sharing one WAL, so the flush requests arrived before a flush starts are committed together by that flush.
+ */
+@Slf4j
+class RocksDBWalFlusher {
+    private final String id;
+    private final RocksDB db;
+    private final boolean fsync;
+    // the flush which has been requested but not started yet
+    private final AtomicReference<CompletableFuture<Long>> pendingFlushRef = new AtomicReference<>();
+    private final ExecutorService flushExecutor;
+    private final Timer flushTimer;
+
+    RocksDBWalFlusher(String id, RocksDB db, boolean fsync, String... tags) {
+        this.id = id;
+        this.db = db;
+        this.fsync = fsync;
+        flushExecutor = new ThreadPoolExecutor(1, 1,
+            0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(),
+            EnvProvider.INSTANCE.newThreadFactory("wal-flusher"));
+        flushTimer = KVSpaceMeters.getTimer(id, KVSpaceMetric.FlushTimer, Tags.of(tags));
+    }
+
+    /**
+     * Flush the WAL, the returned future completes with the time when the flush started, all writes before that are
+     * persisted.
+     *
+     * @return the future of the flush start time
+     */
+    CompletableFuture<Long> flush() {
+        if (flushExecutor.isShutdown()) {
+            return CompletableFuture.failedFuture(new KVEngineException("WAL flusher closed"));
+        }
+        while (true) {
+            CompletableFuture<Long> pendingFlush = pendingFlushRef.get();
+            if (pendingFlush != null) {
+                // join the pending flush
+                return pendingFlush;
+            }
+            CompletableFuture<Long> newFlush = new CompletableFuture<>();
+            if (pendingFlushRef.compareAndSet(null, newFlush)) {
+                try {
+                    flushExecutor.execute(this::doFlush);
+                } catch (Throwable e) {
+                    pendingFlushRef.compareAndSet(newFlush, null);
+                    newFlush.completeExceptionally(new KVEngineException("WAL flusher closed", e));
+                }
+                return newFlush;
+            }
+        }
+    }
+
+    void close() {
+        flushExecutor.shutdown();
+        try {
+            if (!flushExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                log.warn("WALFlusher[{}] not terminated in time", id);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        CompletableFuture<Long> pendingFlush = pendingFlushRef.getAndSet(null);
+        if (pendingFlush != null) {
+            pendingFlush.completeExceptionally(new KVEngineException("WAL flusher closed"));
+        }
+        flushTimer.close();
+    }
+
+    private void doFlush() {
+        // the flush requested from now on will be committed by next flush
+        CompletableFuture<Long> onDone = pendingFlushRef.getAndSet(null);
+        if (onDone == null) {
+            return;
+        }
+        long flushStartAt = System.nanoTime();
+        try {
+            log.debug("WALFlusher[{}] flush wal start", id);
+            Timer.Sample start = Timer.start();
+            db.flushWal(fsync);
+            start.stop(flushTimer);
+            log.debug("WALFlusher[{}] flush complete", id);
+            onDone.complete(flushStartAt);
+        } catch (Throwable e) {
+            log.error("WALFlusher[{}] flush error", id, e);
+            onDone.completeExceptionally(new KVEngineException("KVSpace flush error", e));
+        }
+    }
+}
@@ -197,6 +197,34 @@ public abstract class AbstractKVEngineTest extends MockableTest {
         }
     }
 
+    @Test
+    public void zeroCopyIterator() {
+        String rangeId = "test_range1";
+        ByteString key1 = ByteString.copyFromUtf8("key1");
+        ByteString value1 = ByteString.copyFromUtf8("value1");
+        ByteString key2 = ByteString.copyFromUtf8("key2");
+        // larger than the initial buffer
+        ByteString value2 = ByteString.copyFrom(new byte[64 * 1024]);
+        IKVSpace keyRange = engine.createIfMissing(rangeId);
+        keyRange.toWriter().put(key1, value1).put(key2, value2).done();
+
+        try (IKVSpaceIterator keyRangeIterator = keyRange.newZeroCopyIterator(Boundary.getDefaultInstance())) {
+            keyRangeIterator.seekToFirst();
+            assertTrue(keyRangeIterator.isValid());
+            assertEquals(keyRangeIterator.key(), key1);
+            assertEquals(keyRangeIterator.value(), value1);
+            keyRangeIterator.next();
+            assertEquals(keyRangeIterator.key(), key2);
+            assertEquals(keyRangeIterator.value(), value2);
+            keyRangeIterator.seekForPrev(key1);
+            assertEquals(keyRangeIterator.key(), key1);
+            assertEquals(keyRangeIterator.value(), value1);
+            keyRangeIterator.next();
+            keyRangeIterator.next();
+            assertFalse(keyRangeIterator.isValid());
+        }
+    }
+
     @Test
     public void iterateSubBoundary() {
         String rangeId = "test_range1";
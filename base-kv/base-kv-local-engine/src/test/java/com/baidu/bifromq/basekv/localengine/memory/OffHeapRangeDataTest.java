@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.basekv.localengine.memory;
+
+import static com.google.protobuf.ByteString.copyFromUtf8;
+import static com.google.protobuf.ByteString.unsignedLexicographicalComparator;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import com.baidu.bifromq.basekv.proto.Boundary;
+import com.google.protobuf.ByteString;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import org.testng.annotations.Test;
+
+public class OffHeapRangeDataTest {
+    @Test
+    public void putAndGet() {
+        OffHeapRangeData data = new OffHeapRangeData();
+        assertNull(data.firstEntry());
+        assertNull(data.lastEntry());
+        data.put(copyFromUtf8("b"), copyFromUtf8("v1"));
+        data.put(copyFromUtf8("a"), copyFromUtf8("v2"));
+        data.put(copyFromUtf8("b"), copyFromUtf8("v3"));
+        assertTrue(data.containsKey(copyFromUtf8("a")));
+        assertFalse(data.containsKey(copyFromUtf8("c")));
+        assertEquals(data.get(copyFromUtf8("b")), copyFromUtf8("v3"));
+        assertEquals(data.size(Boundary.getDefaultInstance()), 6);
+
+        data.remove(copyFromUtf8("a"));
+        assertNull(data.get(copyFromUtf8("a")));
+        assertEquals(data.firstEntry().getKey(), copyFromUtf8("b"));
+    }
+
+    @Test
+    public void largeRecord() {
+        OffHeapRangeData data = new OffHeapRangeData();
+        ByteString value = ByteString.copyFrom(new byte[256 * 1024]);
+        data.put(copyFromUtf8("key"), value);
+        assertEquals(data.get(copyFromUtf8("key")), value);
+    }
+
+    @Test
+    public void navigation() {
+        OffHeapRangeData data = new OffHeapRangeData();
+        for (String key : new String[] {"a", "c", "e"}) {
+            data.put(copyFromUtf8(key), copyFromUtf8(key));
+        }
+        assertEquals(data.lastEntry().getKey(), copyFromUtf8("e"));
+        assertEquals(data.ceilingEntry(copyFromUtf8("c")).getKey(), copyFromUtf8("c"));
+        assertEquals(data.ceilingEntry(copyFromUtf8("b")).getKey(), copyFromUtf8("c"));
+        assertEquals(data.higherEntry(copyFromUtf8("c")).getKey(), copyFromUtf8("e"));
+        assertEquals(data.floorEntry(copyFromUtf8("d")).getKey(), copyFromUtf8("c"));
+        assertEquals(data.lowerEntry(copyFromUtf8("c")).getKey(), copyFromUtf8("a"));
+        assertNull(data.lowerEntry(copyFromUtf8("a")));
+        assertNull(data.higherEntry(copyFromUtf8("e")));
+    }
+
+    @Test
+    public void clearBoundary() {
+        OffHeapRangeData data = new OffHeapRangeData();
+        for (int i = 0; i < 100; i++) {
+            data.put(key(i), key(i));
+        }
+        data.clear(Boundary.newBuilder().setStartKey(key(10)).setEndKey(key(20)).build());
+        assertTrue(data.containsKey(key(9)));
+        assertFalse(data.containsKey(key(10)));
+        assertFalse(data.containsKey(key(19)));
+        assertTrue(data.containsKey(key(20)));
+
+        data.clear(Boundary.newBuilder().setEndKey(key(5)).build());
+        assertEquals(data.firstEntry().getKey(), key(5));
+        data.clear(Boundary.newBuilder().setStartKey(key(90)).build());
+        assertEquals(data.lastEntry().getKey(), key(89));
+        data.clear(Boundary.getDefaultInstance());
+        assertNull(data.firstEntry());
+    }
+
+    @Test
+    public void copyPagesOnlyWhileSnapshotHeld() {
+        OffHeapArena arena = new OffHeapArena();
+        long addr = arena.allocate(16);
+        ByteBuffer page = arena.writablePage(addr);
+        OffHeapArena view = arena.snapshot().retain();
+        ByteBuffer copy = arena.writablePage(addr);
+        assertNotSame(copy, page);
+        assertSame(view.page(addr), page);
+
+        view.release();
+        arena.snapshot();
+        // no snapshot is held, the page is modified in place
+        assertSame(arena.writablePage(addr), copy);
+
+        view = arena.snapshot().retain();
+        ByteBuffer copy2 = arena.writablePage(addr);
+        view.release();
+        view.release();
+        // the replaced page is recycled
+        assertSame(arena.page(arena.allocate(64 * 1024)), copy);
+        assertNotSame(copy2, copy);
+    }
+
+    @Test
+    public void snapshotIsolation() {
+        OffHeapRangeData data = new OffHeapRangeData();
+        data.put(copyFromUtf8("a"), copyFromUtf8("v1"));
+        IRangeData snapshot = data.snapshot();
+        data.snapshot().release();
+
+        data.put(copyFromUtf8("a"), copyFromUtf8("v2"));
+        data.put(copyFromUtf8("b"), copyFromUtf8("v2"));
+        assertEquals(snapshot.get(copyFromUtf8("a")), copyFromUtf8("v1"));
+        assertFalse(snapshot.containsKey(copyFromUtf8("b")));
+        assertEquals(data.get(copyFromUtf8("a")), copyFromUtf8("v2"));
+
+        data.clear(Boundary.getDefaultInstance());
+        assertEquals(snapshot.get(copyFromUtf8("a")), copyFromUtf8("v1"));
+    }
+
+    @Test
+    public void randomOpsWithRebuild() {
+        OffHeapRangeData data = new OffHeapRangeData();
+        TreeMap<ByteString, ByteString> expected = new TreeMap<>(unsignedLexicographicalComparator());
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        ByteString value = ByteString.copyFrom(new byte[1024]);
+        // overwrite the keys repeatedly to trigger rebuilding
+        for (int i = 0; i < 50000; i++) {
+            ByteString key = key(random.nextInt(1000));
+            if (random.nextInt(10) == 0) {
+                data.remove(key);
+                expected.remove(key);
+            } else {
+                data.put(key, value);
+                expected.put(key, value);
+            }
+        }
+        Map.Entry<ByteString, ByteString> entry = data.firstEntry();
+        for (ByteString key : expected.keySet()) {
+            assertEquals(entry.getKey(), key);
+            entry = data.higherEntry(key);
+        }
+        assertNull(entry);
+    }
+
+    private ByteString key(int i) {
+        return copyFromUtf8(String.format("key%05d", i));
+    }
+}
@@ -21,12 +21,16 @@ import static org.testng.Assert.assertTrue;
 
 import com.baidu.bifromq.basekv.localengine.AbstractKVEngineTest;
 import com.baidu.bifromq.basekv.localengine.IKVSpace;
+import com.baidu.bifromq.basekv.localengine.IKVSpaceWriter;
 import com.baidu.bifromq.basekv.localengine.TestUtil;
+import com.baidu.bifromq.basekv.localengine.metrics.KVSpaceMetric;
 import com.google.protobuf.ByteString;
+import io.micrometer.core.instrument.Metrics;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.concurrent.atomic.AtomicBoolean;
 import lombok.SneakyThrows;
+import org.rocksdb.RocksDBException;
 import org.testng.annotations.Test;
 
 public abstract class AbstractRocksDBKVEngine2Test extends AbstractKVEngineTest {
@@ -44,6 +48,40 @@ public abstract class AbstractRocksDBKVEngine2Test extends AbstractKVEngineTest
         TestUtil.deleteDir(dbRootDir.toString());
     }
 
+    @Test
+    @SneakyThrows
+    public void shareBlockCacheAndWriteBufferManager() {
+        RocksDBKVSpace space1 = (RocksDBKVSpace) engine.createIfMissing("shared_cache_range1");
+        RocksDBKVSpace space2 = (RocksDBKVSpace) engine.createIfMissing("shared_cache_range2");
+        assertEquals(blockCacheUsage(space1), blockCacheUsage(space2));
+        long usageBefore = blockCacheUsage(space2);
+
+        ByteString value = ByteString.copyFrom(new byte[1024]);
+        IKVSpaceWriter writer = space1.toWriter();
+        for (int i = 0; i < 4096; i++) {
+            writer.put(ByteString.copyFromUtf8("key" + i), value);
+        }
+        writer.done();
+        // the memtables of one space are charged to the block cache used by other spaces
+        assertTrue(blockCacheUsage(space2) > usageBefore);
+        assertEquals(blockCacheUsage(space1), blockCacheUsage(space2));
+    }
+
+    @Test
+    public void reportBlockCacheMetricsPerEngine() {
+        engine.createIfMissing("shared_cache_range1");
+        engine.createIfMissing("shared_cache_range2");
+        assertEquals(Metrics.globalRegistry.find(KVSpaceMetric.BlockCache.metricName).gauges().size(), 1);
+        assertEquals(Metrics.globalRegistry.find(KVSpaceMetric.PinnedMem.metricName).gauges().size(), 1);
+        assertEquals(Metrics.globalRegistry.find(KVSpaceMetric.BlockCacheHit.metricName).functionCounters().size(), 1);
+        assertEquals(Metrics.globalRegistry.find(KVSpaceMetric.BlockCacheMiss.metricName).functionCounters().size(),
+            1);
+    }
+
+    private long blockCacheUsage(RocksDBKVSpace space) throws RocksDBException {
+        return space.db().getLongProperty(space.cfHandle(), "rocksdb.block-cache-usage");
+    }
+
     @Test
     public void identityKeptSame() {
         String identity = engine.id();
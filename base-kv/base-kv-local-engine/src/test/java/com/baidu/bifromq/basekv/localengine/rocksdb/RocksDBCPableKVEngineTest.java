@@ -13,10 +13,26 @@
 
 package com.baidu.bifromq.basekv.localengine.rocksdb;
 
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
 import com.baidu.bifromq.basekv.localengine.ICPableKVSpace;
 import com.baidu.bifromq.basekv.localengine.IKVEngine;
+import com.baidu.bifromq.basekv.localengine.IKVSpaceIterator;
+import com.baidu.bifromq.basekv.localengine.IKVSpaceRestoreSession;
+import com.baidu.bifromq.basekv.localengine.IKVSpaceWriter;
+import com.baidu.bifromq.basekv.localengine.metrics.KVSpaceMetric;
+import com.baidu.bifromq.basekv.proto.Boundary;
+import com.google.protobuf.ByteString;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.File;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import lombok.SneakyThrows;
+import org.testng.annotations.Test;
 
 public class RocksDBCPableKVEngineTest extends AbstractRocksDBKVEngine2Test {
     private RocksDBCPableKVEngineConfigurator configurator;
@@ -30,6 +46,7 @@ public class RocksDBCPableKVEngineTest extends AbstractRocksDBKVEngine2Test {
         configurator = RocksDBCPableKVEngineConfigurator.builder()
             .dbRootDir(Paths.get(dbRootDir.toString(), DB_NAME).toString())
             .dbCheckpointRootDir(Paths.get(dbRootDir.toString(), DB_CHECKPOINT_DIR).toString())
+            .keyPrefixLength(4)
             .build();
     }
 
@@ -38,4 +55,152 @@ public class RocksDBCPableKVEngineTest extends AbstractRocksDBKVEngine2Test {
     protected IKVEngine<? extends ICPableKVSpace> newEngine() {
         return new RocksDBCPableKVEngine(null, configurator);
     }
+
+    @Test
+    public void iterateAcrossPrefixes() {
+        String rangeId = "test_range1";
+        ICPableKVSpace keyRange = (ICPableKVSpace) engine.createIfMissing(rangeId);
+        List<ByteString> keys = List.of(
+            ByteString.copyFromUtf8("a"),
+            ByteString.copyFromUtf8("aaaa1"),
+            ByteString.copyFromUtf8("aaaa2"),
+            ByteString.copyFromUtf8("aaab1"),
+            ByteString.copyFromUtf8("bbbb1"));
+        IKVSpaceWriter writer = keyRange.toWriter();
+        keys.forEach(key -> writer.put(key, key));
+        writer.done();
+
+        // both ends share the same prefix
+        Boundary samePrefix = Boundary.newBuilder()
+            .setStartKey(ByteString.copyFromUtf8("aaaa"))
+            .setEndKey(ByteString.copyFromUtf8("aaaa3"))
+            .build();
+        assertEquals(scan(keyRange, samePrefix, ByteString.copyFromUtf8("aaaa")), keys.subList(1, 3));
+        assertEquals(scan(keyRange, samePrefix, ByteString.copyFromUtf8("aaaa2")), keys.subList(2, 3));
+        // cross the prefixes
+        assertEquals(scan(keyRange, Boundary.getDefaultInstance(), ByteString.copyFromUtf8("aaaa2")),
+            keys.subList(2, 5));
+        // the keys shorter than the prefix
+        assertEquals(scan(keyRange, Boundary.getDefaultInstance(), ByteString.copyFromUtf8("a")), keys);
+    }
+
+    private List<ByteString> scan(ICPableKVSpace keyRange, Boundary boundary, ByteString seekKey) {
+        List<ByteString> scanned = new ArrayList<>();
+        try (IKVSpaceIterator itr = keyRange.newIterator(boundary)) {
+            for (itr.seek(seekKey); itr.isValid(); itr.next()) {
+                scanned.add(itr.key());
+            }
+        }
+        return scanned;
+    }
+
+    @Test
+    public void restore() {
+        String rangeId = "test_range1";
+        ByteString staleKey = ByteString.copyFromUtf8("staleKey");
+        ByteString metaKey = ByteString.copyFromUtf8("metaKey");
+        ByteString metaValue = ByteString.copyFromUtf8("metaValue");
+        ICPableKVSpace keyRange = (ICPableKVSpace) engine.createIfMissing(rangeId);
+        keyRange.toWriter().put(staleKey, staleKey).done();
+
+        IKVSpaceRestoreSession restoreSession = keyRange.startRestore().metadata(metaKey, metaValue);
+        for (int i = 0; i < 100; i++) {
+            ByteString key = ByteString.copyFromUtf8(String.format("key%03d", i));
+            restoreSession.put(key, key);
+        }
+        assertEquals(restoreSession.count(), 100);
+        assertFalse(keyRange.metadata(metaKey).isPresent());
+        restoreSession.done();
+
+        assertFalse(keyRange.exist(staleKey));
+        assertEquals(keyRange.metadata(metaKey).get(), metaValue);
+        int count = 0;
+        try (IKVSpaceIterator itr = keyRange.newIterator()) {
+            for (itr.seekToFirst(); itr.isValid(); itr.next()) {
+                assertEquals(itr.key(), ByteString.copyFromUtf8(String.format("key%03d", count)));
+                count++;
+            }
+        }
+        assertEquals(count, 100);
+        // no leftover sst files
+        File[] restoreDirs = new File(configurator.dbCheckpointRootDir(), rangeId)
+            .listFiles(file -> file.getName().endsWith(".restore"));
+        assertTrue(restoreDirs == null || restoreDirs.length == 0);
+    }
+
+    @Test
+    public void restoreOverExistingData() {
+        String rangeId = "test_range1";
+        ByteString metaKey = ByteString.copyFromUtf8("metaKey");
+        ICPableKVSpace keyRange = (ICPableKVSpace) engine.createIfMissing(rangeId);
+        keyRange.toWriter()
+            .put(ByteString.copyFromUtf8("a"), ByteString.EMPTY)
+            .put(ByteString.copyFromUtf8("key000"), ByteString.EMPTY)
+            .put(ByteString.copyFromUtf8("key0005"), ByteString.EMPTY)
+            .put(ByteString.copyFromUtf8("z"), ByteString.EMPTY)
+            .metadata(metaKey, ByteString.copyFromUtf8("oldValue"))
+            .done();
+
+        IKVSpaceRestoreSession restoreSession = keyRange.startRestore()
+            .metadata(metaKey, ByteString.copyFromUtf8("newValue"));
+        for (int i = 0; i < 10; i++) {
+            ByteString key = ByteString.copyFromUtf8(String.format("key%03d", i));
+            restoreSession.put(key, key);
+        }
+        restoreSession.done();
+
+        // the restored state survives restart without relying on WAL
+        engine.stop();
+        engine = newEngine();
+        engine.start();
+        keyRange = (ICPableKVSpace) engine.spaces().get(rangeId);
+        assertEquals(keyRange.metadata(metaKey).get(), ByteString.copyFromUtf8("newValue"));
+        int count = 0;
+        try (IKVSpaceIterator itr = keyRange.newIterator()) {
+            for (itr.seekToFirst(); itr.isValid(); itr.next()) {
+                ByteString key = ByteString.copyFromUtf8(String.format("key%03d", count));
+                assertEquals(itr.key(), key);
+                assertEquals(itr.value(), key);
+                count++;
+            }
+        }
+        assertEquals(count, 10);
+    }
+
+    @Test
+    public void compactAfterRestore() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        Metrics.addRegistry(meterRegistry);
+        try {
+            // not shared with other cases, whose meters may be cached
+            String rangeId = "test_restore_range";
+            ICPableKVSpace keyRange = (ICPableKVSpace) engine.createIfMissing(rangeId);
+            keyRange.toWriter()
+                .put(ByteString.copyFromUtf8("a"), ByteString.EMPTY)
+                .put(ByteString.copyFromUtf8("z"), ByteString.EMPTY)
+                .done();
+            keyRange.startRestore().put(ByteString.copyFromUtf8("key"), ByteString.EMPTY).done();
+            // the tombstones of the replaced data get compacted
+            assertEquals(meterRegistry.find(KVSpaceMetric.CompactionCounter.metricName)
+                .tag("kvspace", rangeId).counter().count(), 1.0);
+        } finally {
+            Metrics.removeRegistry(meterRegistry);
+            meterRegistry.close();
+        }
+    }
+
+    @Test
+    public void abortRestore() {
+        String rangeId = "test_range1";
+        ByteString key = ByteString.copyFromUtf8("key");
+        ICPableKVSpace keyRange = (ICPableKVSpace) engine.createIfMissing(rangeId);
+        keyRange.toWriter().put(key, key).done();
+
+        IKVSpaceRestoreSession restoreSession = keyRange.startRestore();
+        restoreSession.put(ByteString.copyFromUtf8("restoredKey"), key);
+        restoreSession.abort();
+
+        assertTrue(keyRange.exist(key));
+        assertFalse(keyRange.exist(ByteString.copyFromUtf8("restoredKey")));
+    }
 }
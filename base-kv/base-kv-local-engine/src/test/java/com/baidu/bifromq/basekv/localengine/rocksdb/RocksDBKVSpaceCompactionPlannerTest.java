@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.basekv.localengine.rocksdb;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import org.testng.annotations.Test;
+
+public class RocksDBKVSpaceCompactionPlannerTest {
+    private final RocksDBKVSpaceCompactionPlanner planner = new RocksDBKVSpaceCompactionPlanner(10, 0.3, 1000);
+
+    @Test
+    public void isDense() {
+        assertFalse(planner.isDense(100, 9, 0));
+        assertFalse(planner.isDense(100, 20, 0));
+        assertTrue(planner.isDense(100, 30, 0));
+        assertTrue(planner.isDense(100, 0, 1));
+    }
+
+    @Test
+    public void skipSparseFiles() {
+        assertTrue(planner.plan(List.of(file("a", "c", 100, 100, 10))).isEmpty());
+    }
+
+    @Test
+    public void mergeOverlappedFiles() {
+        List<RocksDBKVSpaceCompactionPlanner.CompactRange> ranges = planner.plan(List.of(
+            file("e", "g", 100, 100, 50),
+            file("a", "c", 100, 100, 50),
+            file("b", "d", 100, 100, 50),
+            file("x", "z", 100, 100, 50)));
+        assertEquals(ranges.size(), 3);
+        assertRange(ranges.get(0), "a", "d", 200);
+        assertRange(ranges.get(1), "e", "g", 100);
+        assertRange(ranges.get(2), "x", "z", 100);
+    }
+
+    @Test
+    public void boundedByMaxCompactBytes() {
+        List<RocksDBKVSpaceCompactionPlanner.CompactRange> ranges = planner.plan(List.of(
+            file("a", "f", 600, 100, 50),
+            file("b", "c", 300, 100, 50),
+            file("d", "e", 300, 100, 50),
+            file("g", "h", 2000, 100, 50)));
+        assertEquals(ranges.size(), 3);
+        assertRange(ranges.get(0), "a", "f", 900);
+        assertRange(ranges.get(1), "d", "e", 300);
+        assertRange(ranges.get(2), "g", "h", 2000);
+    }
+
+    private RocksDBKVSpaceCompactionPlanner.SstFileStats file(String smallestKey, String largestKey, long size,
+                                                              long numEntries, long numDeletions) {
+        return new RocksDBKVSpaceCompactionPlanner.SstFileStats(smallestKey.getBytes(), largestKey.getBytes(), size,
+            numEntries, numDeletions, 0);
+    }
+
+    private void assertRange(RocksDBKVSpaceCompactionPlanner.CompactRange range, String startKey, String endKey,
+                             long bytes) {
+        assertEquals(new String(range.startKey()), startKey);
+        assertEquals(new String(range.endKey()), endKey);
+        assertEquals(range.bytes(), bytes);
+    }
+}
@@ -13,10 +13,20 @@
 
 package com.baidu.bifromq.basekv.localengine.rocksdb;
 
+import static org.awaitility.Awaitility.await;
+import static org.testng.Assert.assertTrue;
+
 import com.baidu.bifromq.basekv.localengine.IKVEngine;
 import com.baidu.bifromq.basekv.localengine.IKVSpace;
+import com.baidu.bifromq.basekv.localengine.IKVSpaceWriter;
+import com.google.protobuf.ByteString;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import lombok.SneakyThrows;
+import org.rocksdb.FlushOptions;
+import org.testng.annotations.Test;
 
 public class RocksDBWALableKVEngineTest extends AbstractRocksDBKVEngine2Test {
     protected RocksDBWALableKVEngineConfigurator configurator;
@@ -36,4 +46,55 @@ public class RocksDBWALableKVEngineTest extends AbstractRocksDBKVEngine2Test {
     protected IKVEngine<? extends IKVSpace> newEngine() {
         return new RocksDBWALableKVEngine(null, configurator);
     }
+
+    @Test
+    public void groupCommitFlush() {
+        engine.stop();
+        configurator = configurator.toBuilder().asyncWALFlush(true).build();
+        RocksDBWALableKVEngine walEngine = new RocksDBWALableKVEngine(null, configurator);
+        engine = walEngine;
+        engine.start();
+        List<CompletableFuture<Long>> flushFutures = new ArrayList<>();
+        List<Long> writtenAts = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            RocksDBWALableKVSpace space = walEngine.createIfMissing("test_range" + i);
+            space.toWriter().put(ByteString.copyFromUtf8("key"), ByteString.copyFromUtf8("value")).done();
+            writtenAts.add(System.nanoTime());
+            flushFutures.add(space.flush());
+        }
+        CompletableFuture.allOf(flushFutures.toArray(CompletableFuture[]::new)).join();
+        for (int i = 0; i < flushFutures.size(); i++) {
+            // the flush committing the write must start after it
+            assertTrue(flushFutures.get(i).join() >= writtenAts.get(i));
+        }
+    }
+
+    @SneakyThrows
+    @Test
+    public void compactTombstonesInL0() {
+        engine.stop();
+        configurator = configurator.toBuilder()
+            .heuristicCompaction(true)
+            .compactMinFileTombstoneKeys(100)
+            .build();
+        engine = new RocksDBWALableKVEngine(null, configurator);
+        engine.start();
+        RocksDBWALableKVSpace space = (RocksDBWALableKVSpace) engine.createIfMissing("test_range");
+        IKVSpaceWriter writer = space.toWriter();
+        for (int i = 0; i < 1000; i++) {
+            writer.put(ByteString.copyFromUtf8("key" + i), ByteString.copyFromUtf8("value"));
+        }
+        writer.done();
+        try (FlushOptions flushOptions = new FlushOptions().setWaitForFlush(true)) {
+            space.db().flush(flushOptions, space.cfHandle());
+            writer = space.toWriter();
+            for (int i = 0; i < 1000; i++) {
+                writer.delete(ByteString.copyFromUtf8("key" + i));
+            }
+            writer.done();
+            // the tombstone dense table is flushed into L0, which is also the bottommost level
+            space.db().flush(flushOptions, space.cfHandle());
+        }
+        await().until(() -> space.db().getProperty(space.cfHandle(), "rocksdb.num-files-at-level0").equals("0"));
+    }
 }
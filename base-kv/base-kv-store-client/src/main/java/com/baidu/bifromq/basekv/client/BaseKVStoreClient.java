@@ -184,6 +184,11 @@ final class BaseKVStoreClient implements IBaseKVStoreClient {
         });
     }
 
+    @Override
+    public Observable<Map<String, Map<String, String>>> serverMetadata() {
+        return rpcClient.serverList();
+    }
+
     @Override
     public Optional<KVRangeSetting> findById(KVRangeId id) {
         return router.findById(id);
@@ -394,11 +399,7 @@ final class BaseKVStoreClient implements IBaseKVStoreClient {
                     }
                 };
             }
-            if (linearized) {
-                return rpcClient.createRequestPipeline("", serverId, null, emptyMap(), linearizedQueryMethod);
-            } else {
-                return rpcClient.createRequestPipeline("", serverId, null, emptyMap(), queryMethod);
-            }
+            return new ReqIdMatchedQueryPipeline(rpcClient, serverId, linearized ? linearizedQueryMethod : queryMethod);
         }));
     }
 
@@ -585,12 +586,7 @@ final class BaseKVStoreClient implements IBaseKVStoreClient {
 
         QueryPipeline(String serverId, boolean linearized) {
             this.linearized = linearized;
-            if (linearized) {
-                ppln = rpcClient.createRequestPipeline("", serverId, null, emptyMap(), linearizedQueryMethod);
-            } else {
-                ppln = rpcClient.createRequestPipeline("", serverId, null,
-                    emptyMap(), queryMethod);
-            }
+            ppln = new ReqIdMatchedQueryPipeline(rpcClient, serverId, linearized ? linearizedQueryMethod : queryMethod);
         }
 
         @Override
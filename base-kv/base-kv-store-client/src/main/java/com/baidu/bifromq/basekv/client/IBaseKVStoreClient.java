@@ -32,6 +32,7 @@ import com.baidu.bifromq.basekv.store.proto.TransferLeadershipReply;
 import com.baidu.bifromq.basekv.store.proto.TransferLeadershipRequest;
 import com.baidu.bifromq.baserpc.IConnectable;
 import io.reactivex.rxjava3.core.Observable;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 
@@ -44,6 +45,13 @@ public interface IBaseKVStoreClient extends IKVRangeRouter, IConnectable {
 
     Observable<Set<KVRangeStoreDescriptor>> describe();
 
+    /**
+     * The metadata advertised by the store servers currently alive, keyed by server id.
+     *
+     * @return observable of the server metadata
+     */
+    Observable<Map<String, Map<String, String>>> serverMetadata();
+
     CompletableFuture<BootstrapReply> bootstrap(String storeId);
 
     CompletableFuture<RecoverReply> recover(String storeId, RecoverRequest request);
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.basekv.client;
+
+import static com.baidu.bifromq.basekv.PipelineUtil.PIPELINE_ATTR_KEY_REPLY_BY_REQ_ID;
+import static java.util.Collections.singletonMap;
+
+import com.baidu.bifromq.basekv.store.proto.KVRangeROReply;
+import com.baidu.bifromq.basekv.store.proto.KVRangeRORequest;
+import com.baidu.bifromq.baserpc.IRPCClient;
+import io.grpc.MethodDescriptor;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The query request pipeline whose replies are matched by reqId, so the server could reply once the query is done
+ * instead of in request order. The reqId of the request is replaced by a sequence number unique in the pipeline, and
+ * restored in the reply.
+ */
+class ReqIdMatchedQueryPipeline implements IRPCClient.IRequestPipeline<KVRangeRORequest, KVRangeROReply> {
+    private static final Map<String, String> METADATA = singletonMap(PIPELINE_ATTR_KEY_REPLY_BY_REQ_ID, "true");
+    private final AtomicLong seqNo = new AtomicLong();
+    private final IRPCClient.IRequestPipeline<KVRangeRORequest, KVRangeROReply> ppln;
+
+    ReqIdMatchedQueryPipeline(IRPCClient rpcClient,
+                              String serverId,
+                              MethodDescriptor<KVRangeRORequest, KVRangeROReply> methodDesc) {
+        ppln = rpcClient.createRequestPipeline("", serverId, null, () -> METADATA, methodDesc,
+            (req, reply) -> req.getReqId() == reply.getReqId());
+    }
+
+    @Override
+    public boolean isClosed() {
+        return ppln.isClosed();
+    }
+
+    @Override
+    public CompletableFuture<KVRangeROReply> invoke(KVRangeRORequest req) {
+        long reqId = req.getReqId();
+        return ppln.invoke(req.toBuilder().setReqId(seqNo.incrementAndGet()).build())
+            .thenApply(reply -> reply.toBuilder().setReqId(reqId).build());
+    }
+
+    @Override
+    public void close() {
+        ppln.close();
+    }
+}
@@ -37,6 +37,7 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public abstract class BatchQueryCall<Req, Resp> implements IBatchCall<Req, Resp, QueryCallBatcherKey> {
     private final KVRangeId rangeId;
+    private final long maxStaleMillis;
     private final LoadingCache<String, IQueryPipeline> storePipelines;
     private final Deque<BatchQueryCall.BatchCallTask<Req, Resp>> batchCallTasks = new ArrayDeque<>();
 
@@ -44,7 +45,25 @@ public abstract class BatchQueryCall<Req, Resp> implements IBatchCall<Req, Resp,
                              IBaseKVStoreClient storeClient,
                              boolean linearizable,
                              Duration pipelineExpiryTime) {
+        this(rangeId, storeClient, linearizable, 0, pipelineExpiryTime);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param rangeId            the id of the range
+     * @param storeClient        the store client
+     * @param linearizable       if the queries are linearizable
+     * @param maxStaleMillis     the max staleness allowed by the linearizable queries, 0 for strictly linearizable
+     * @param pipelineExpiryTime the expiry time of idle pipelines
+     */
+    protected BatchQueryCall(KVRangeId rangeId,
+                             IBaseKVStoreClient storeClient,
+                             boolean linearizable,
+                             long maxStaleMillis,
+                             Duration pipelineExpiryTime) {
         this.rangeId = rangeId;
+        this.maxStaleMillis = maxStaleMillis;
         storePipelines = Caffeine.newBuilder()
             .evictionListener((RemovalListener<String, IQueryPipeline>) (key, value, cause) -> {
                 if (value != null) {
@@ -124,6 +143,7 @@ public abstract class BatchQueryCall<Req, Resp> implements IBatchCall<Req, Resp,
                 .setVer(batchCallTask.ver)
                 .setKvRangeId(rangeId)
                 .setRoCoProc(input)
+                .setMaxStaleMillis(maxStaleMillis)
                 .build())
             .thenApply(reply -> {
                 if (reply.getCode() == ReplyCode.Ok) {
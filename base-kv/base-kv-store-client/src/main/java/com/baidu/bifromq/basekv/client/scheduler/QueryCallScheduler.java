@@ -22,27 +22,91 @@ import java.util.Optional;
 
 public abstract class QueryCallScheduler<Req, Resp> extends BatchCallScheduler<Req, Resp, QueryCallBatcherKey> {
     protected final IBaseKVStoreClient storeClient;
+    // the max staleness allowed by the linearized queries, 0 for strictly linearizable read
+    protected final long maxStaleMillis;
 
+    /**
+     * Construct a scheduler serving strictly linearizable queries.
+     *
+     * @param name             the name of the scheduler
+     * @param storeClient      the store client
+     * @param tolerableLatency the tolerable latency of the batched calls
+     * @param burstLatency     the latency tolerated during bursts
+     */
     public QueryCallScheduler(String name,
                               IBaseKVStoreClient storeClient,
                               Duration tolerableLatency,
                               Duration burstLatency) {
+        this(name, storeClient, tolerableLatency, burstLatency, 0);
+    }
+
+    /**
+     * Construct a scheduler serving queries allowing the given staleness.
+     *
+     * @param name             the name of the scheduler
+     * @param storeClient      the store client
+     * @param tolerableLatency the tolerable latency of the batched calls
+     * @param burstLatency     the latency tolerated during bursts
+     * @param maxStaleMillis   the max staleness allowed, 0 for strictly linearizable read
+     */
+    public QueryCallScheduler(String name,
+                              IBaseKVStoreClient storeClient,
+                              Duration tolerableLatency,
+                              Duration burstLatency,
+                              long maxStaleMillis) {
         super(name, tolerableLatency, burstLatency);
         this.storeClient = storeClient;
+        this.maxStaleMillis = maxStaleMillis;
     }
 
+    /**
+     * Construct a scheduler serving strictly linearizable queries with idle batchers expired.
+     *
+     * @param name             the name of the scheduler
+     * @param storeClient      the store client
+     * @param tolerableLatency the tolerable latency of the batched calls
+     * @param burstLatency     the latency tolerated during bursts
+     * @param batcherExpiry    the expiry time of idle batchers
+     */
     public QueryCallScheduler(String name,
                               IBaseKVStoreClient storeClient,
                               Duration tolerableLatency,
                               Duration burstLatency,
                               Duration batcherExpiry) {
+        this(name, storeClient, tolerableLatency, burstLatency, batcherExpiry, 0);
+    }
+
+    /**
+     * Construct a scheduler serving queries allowing the given staleness with idle batchers expired.
+     *
+     * @param name             the name of the scheduler
+     * @param storeClient      the store client
+     * @param tolerableLatency the tolerable latency of the batched calls
+     * @param burstLatency     the latency tolerated during bursts
+     * @param batcherExpiry    the expiry time of idle batchers
+     * @param maxStaleMillis   the max staleness allowed, 0 for strictly linearizable read
+     */
+    public QueryCallScheduler(String name,
+                              IBaseKVStoreClient storeClient,
+                              Duration tolerableLatency,
+                              Duration burstLatency,
+                              Duration batcherExpiry,
+                              long maxStaleMillis) {
         super(name, tolerableLatency, burstLatency, batcherExpiry);
         this.storeClient = storeClient;
+        this.maxStaleMillis = maxStaleMillis;
     }
 
-
+    /**
+     * Select the store serving the request. The strictly linearizable queries go to the leader, while the ones allowing
+     * staleness are spread across all replicas including followers.
+     *
+     * @param setting the range setting
+     * @param request the request
+     * @return the store id
+     */
     protected String selectStore(KVRangeSetting setting, Req request) {
-        return setting.leader;
+        return maxStaleMillis > 0 ? setting.randomReplica() : setting.leader;
     }
 
     protected abstract int selectQueue(Req request);
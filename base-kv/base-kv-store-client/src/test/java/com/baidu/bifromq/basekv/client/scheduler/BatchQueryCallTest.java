@@ -15,6 +15,7 @@ package com.baidu.bifromq.basekv.client.scheduler;
 
 import static com.baidu.bifromq.basekv.client.scheduler.Fixtures.setting;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -23,8 +24,12 @@ import static org.testng.Assert.assertEquals;
 import com.baidu.bifromq.basekv.KVRangeSetting;
 import com.baidu.bifromq.basekv.client.IBaseKVStoreClient;
 import com.baidu.bifromq.basekv.client.IQueryPipeline;
+import com.baidu.bifromq.basekv.proto.KVRangeDescriptor;
 import com.baidu.bifromq.basekv.proto.KVRangeId;
+import com.baidu.bifromq.basekv.raft.proto.ClusterConfig;
+import com.baidu.bifromq.basekv.raft.proto.RaftNodeSyncState;
 import com.baidu.bifromq.basekv.store.proto.KVRangeROReply;
+import com.baidu.bifromq.basekv.store.proto.KVRangeRORequest;
 import com.baidu.bifromq.basekv.utils.KVRangeIdUtil;
 import com.google.protobuf.ByteString;
 import java.time.Duration;
@@ -37,6 +42,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadLocalRandom;
 import lombok.SneakyThrows;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.mockito.stubbing.Answer;
@@ -137,6 +143,37 @@ public class BatchQueryCallTest {
         executor2.shutdown();
     }
 
+    @Test
+    public void boundedStaleReadFromFollower() {
+        KVRangeSetting setting = new KVRangeSetting("test_cluster", "V1", KVRangeDescriptor.newBuilder()
+            .setId(id)
+            .setVer(0)
+            .setConfig(ClusterConfig.newBuilder().addVoters("V1").addVoters("V2").build())
+            .putSyncState("V1", RaftNodeSyncState.Replicating)
+            .putSyncState("V2", RaftNodeSyncState.Replicating)
+            .build());
+        when(storeClient.findByKey(any())).thenReturn(Optional.of(setting));
+        when(storeClient.createLinearizedQueryPipeline("V1")).thenReturn(queryPipeline1);
+        when(storeClient.createLinearizedQueryPipeline("V2")).thenReturn(queryPipeline2);
+        when(queryPipeline1.query(any()))
+            .thenReturn(CompletableFuture.completedFuture(KVRangeROReply.newBuilder().build()));
+        when(queryPipeline2.query(any()))
+            .thenReturn(CompletableFuture.completedFuture(KVRangeROReply.newBuilder().build()));
+
+        TestQueryCallScheduler scheduler =
+            new TestQueryCallScheduler("test_call_scheduler", storeClient, Duration.ofMillis(100),
+                Duration.ofMillis(1000), Duration.ofMinutes(5), 100);
+        List<CompletableFuture<ByteString>> futures = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            futures.add(scheduler.schedule(ByteString.copyFromUtf8(Integer.toString(i))));
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        ArgumentCaptor<KVRangeRORequest> requestCap = ArgumentCaptor.forClass(KVRangeRORequest.class);
+        // the follower serves the queries as well
+        verify(queryPipeline2, atLeastOnce()).query(requestCap.capture());
+        requestCap.getAllValues().forEach(request -> assertEquals(request.getMaxStaleMillis(), 100));
+    }
+
     @Test
     public void pipelineExpiry() {
         ExecutorService executor = Executors.newSingleThreadScheduledExecutor();
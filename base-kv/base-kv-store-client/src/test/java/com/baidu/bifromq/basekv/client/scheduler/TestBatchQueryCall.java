@@ -27,8 +27,9 @@ public class TestBatchQueryCall extends BatchQueryCall<ByteString, ByteString> {
     protected TestBatchQueryCall(KVRangeId rangeId,
                                  IBaseKVStoreClient storeClient,
                                  boolean linearizable,
+                                 long maxStaleMillis,
                                  Duration pipelineExpiryTime) {
-        super(rangeId, storeClient, linearizable, pipelineExpiryTime);
+        super(rangeId, storeClient, linearizable, maxStaleMillis, pipelineExpiryTime);
     }
 
     @Override
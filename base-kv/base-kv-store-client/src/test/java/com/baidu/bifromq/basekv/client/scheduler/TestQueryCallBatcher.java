@@ -21,6 +21,7 @@ import java.time.Duration;
 public class TestQueryCallBatcher extends QueryCallBatcher<ByteString, ByteString> {
     private final Duration pipelineExpiry;
     private final boolean linearizable;
+    private final long maxStaleMillis;
 
     protected TestQueryCallBatcher(String name,
                                    long tolerableLatencyNanos,
@@ -28,14 +29,16 @@ public class TestQueryCallBatcher extends QueryCallBatcher<ByteString, ByteStrin
                                    QueryCallBatcherKey batcherKey,
                                    IBaseKVStoreClient storeClient,
                                    Duration pipelineExpiry,
-                                   boolean linearizable) {
+                                   boolean linearizable,
+                                   long maxStaleMillis) {
         super(name, tolerableLatencyNanos, burstLatencyNanos, batcherKey, storeClient);
         this.pipelineExpiry = pipelineExpiry;
         this.linearizable = linearizable;
+        this.maxStaleMillis = maxStaleMillis;
     }
 
     @Override
     protected IBatchCall<ByteString, ByteString, QueryCallBatcherKey> newBatch() {
-        return new TestBatchQueryCall(batcherKey.id, storeClient, linearizable, pipelineExpiry);
+        return new TestBatchQueryCall(batcherKey.id, storeClient, linearizable, maxStaleMillis, pipelineExpiry);
     }
 }
@@ -45,6 +45,17 @@ public class TestQueryCallScheduler extends QueryCallScheduler<ByteString, ByteS
         this.linearizable = linearizable;
     }
 
+    public TestQueryCallScheduler(String name,
+                                  IBaseKVStoreClient storeClient,
+                                  Duration tolerableLatency,
+                                  Duration burstLatency,
+                                  Duration pipelineExpire,
+                                  long maxStaleMillis) {
+        super(name, storeClient, tolerableLatency, burstLatency, maxStaleMillis);
+        this.pipelineExpire = pipelineExpire;
+        this.linearizable = true;
+    }
+
     @Override
     protected int selectQueue(ByteString request) {
         return 0;
@@ -67,7 +78,8 @@ public class TestQueryCallScheduler extends QueryCallScheduler<ByteString, ByteS
             batcherKey,
             storeClient,
             pipelineExpire,
-            linearizable
+            linearizable,
+            maxStaleMillis
         );
     }
 }
@@ -0,0 +1,23 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.basekv;
+
+/**
+ * The attribute keys negotiated in the metadata of the request pipelines.
+ */
+public class PipelineUtil {
+    // the query pipeline matches replies by reqId, so they could be sent once ready instead of in request order
+    public static final String PIPELINE_ATTR_KEY_REPLY_BY_REQ_ID = "reply_by_req_id";
+}
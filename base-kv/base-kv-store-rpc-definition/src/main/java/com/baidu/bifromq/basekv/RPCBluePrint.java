@@ -18,6 +18,7 @@ import static com.baidu.bifromq.basekv.store.proto.BaseKVStoreServiceGrpc.getCha
 import static com.baidu.bifromq.basekv.store.proto.BaseKVStoreServiceGrpc.getExecuteMethod;
 import static com.baidu.bifromq.basekv.store.proto.BaseKVStoreServiceGrpc.getLinearizedQueryMethod;
 import static com.baidu.bifromq.basekv.store.proto.BaseKVStoreServiceGrpc.getMergeMethod;
+import static com.baidu.bifromq.basekv.store.proto.BaseKVStoreServiceGrpc.getMessageMethod;
 import static com.baidu.bifromq.basekv.store.proto.BaseKVStoreServiceGrpc.getQueryMethod;
 import static com.baidu.bifromq.basekv.store.proto.BaseKVStoreServiceGrpc.getRecoverMethod;
 import static com.baidu.bifromq.basekv.store.proto.BaseKVStoreServiceGrpc.getSplitMethod;
@@ -75,6 +76,7 @@ public class RPCBluePrint {
             .methodSemantic(methodMap.get(getExecuteMethod()), BluePrint.DDPipelineUnaryMethod.getInstance())
             .methodSemantic(methodMap.get(getQueryMethod()), BluePrint.DDPipelineUnaryMethod.getInstance())
             .methodSemantic(methodMap.get(getLinearizedQueryMethod()), BluePrint.DDPipelineUnaryMethod.getInstance())
+            .methodSemantic(methodMap.get(getMessageMethod()), BluePrint.DDStreamingMethod.getInstance())
             .build();
     }
 
@@ -14,7 +14,7 @@
 package com.baidu.bifromq.basekv.server;
 
 import static com.baidu.bifromq.basekv.Constants.RPC_METADATA_STORE_ID;
-import static java.util.Collections.singletonMap;
+import static java.util.Collections.unmodifiableMap;
 
 import com.baidu.bifromq.basekv.RPCBluePrint;
 import com.baidu.bifromq.baserpc.BluePrint;
@@ -36,7 +36,7 @@ abstract class AbstractBaseKVStoreServer<T extends AbstractBaseKVStoreServerBuil
     AbstractBaseKVStoreServer(T builder) {
         for (BaseKVStoreServiceBuilder<?> serviceBuilder : builder.serviceBuilders.values()) {
             BaseKVStoreService storeService = new BaseKVStoreService(serviceBuilder);
-            bindableStoreServices.add(new BindableStoreService(storeService));
+            bindableStoreServices.add(new BindableStoreService(storeService, serviceBuilder.attributes));
             storeServiceMap.put(storeService.clusterId(), storeService);
         }
     }
@@ -88,10 +88,12 @@ abstract class AbstractBaseKVStoreServer<T extends AbstractBaseKVStoreServerBuil
         final BluePrint bluePrint;
         final Map<String, String> metadata;
 
-        BindableStoreService(BaseKVStoreService storeService) {
+        BindableStoreService(BaseKVStoreService storeService, Map<String, String> attributes) {
             serviceDefinition = RPCBluePrint.scope(storeService.bindService(), storeService.clusterId());
             bluePrint = RPCBluePrint.build(storeService.clusterId());
-            metadata = singletonMap(RPC_METADATA_STORE_ID, storeService.storeId());
+            Map<String, String> serverMetadata = new HashMap<>(attributes);
+            serverMetadata.put(RPC_METADATA_STORE_ID, storeService.storeId());
+            metadata = unmodifiableMap(serverMetadata);
         }
     }
 
@@ -14,19 +14,32 @@
 package com.baidu.bifromq.basekv.server;
 
 import com.baidu.bifromq.basecluster.IAgentHost;
+import com.baidu.bifromq.basecluster.agent.proto.AgentMemberAddr;
 import com.baidu.bifromq.basecluster.memberlist.agent.IAgent;
 import com.baidu.bifromq.basecluster.memberlist.agent.IAgentMember;
-import com.baidu.bifromq.basekv.proto.KVRangeMessage;
 import com.baidu.bifromq.basekv.proto.StoreMessage;
 import com.baidu.bifromq.basekv.store.IStoreMessenger;
+import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
 import io.reactivex.rxjava3.core.Observable;
-import java.util.Optional;
+import io.reactivex.rxjava3.disposables.Disposable;
+import java.util.Collections;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * The store messenger built on agent host. The messages to the same store are coalesced, so that the raft messages,
+ * especially heartbeats, of all ranges between two stores are sent in as few transport messages as possible.
+ * Since the stores not supporting it can't parse the batches, they are only sent to the stores advertising the
+ * capability in their agent member metadata, and the messages to other stores are sent one by one as before.
+ */
 @Slf4j
 class AgentHostStoreMessenger implements IStoreMessenger {
+    // the agent member metadata advertising that the store is able to receive coalesced messages
+    static final ByteString BATCH_CAPABLE = ByteString.copyFromUtf8("store_message_batch");
+
     static String agentId(String clusterId) {
         return "BaseKV:" + clusterId;
     }
@@ -37,6 +50,9 @@ class AgentHostStoreMessenger implements IStoreMessenger {
     private final IAgentMember agentMember;
     private final String clusterId;
     private final String storeId;
+    private final StoreMessageCoalescer coalescer;
+    private final Disposable disposable;
+    private volatile Set<String> batchCapableStores = Collections.emptySet();
 
     AgentHostStoreMessenger(IAgentHost agentHost, String clusterId, String storeId) {
         this.agentHost = agentHost;
@@ -44,13 +60,33 @@ class AgentHostStoreMessenger implements IStoreMessenger {
         this.storeId = storeId;
         this.agent = agentHost.host(agentId(clusterId));
         this.agentMember = agent.register(storeId);
+        this.agentMember.metadata(BATCH_CAPABLE);
+        this.coalescer = new StoreMessageCoalescer(storeId,
+            (targetStoreId, batch) -> agentMember.multicast(targetStoreId, batch.toByteString(), true));
+        this.disposable = agent.membership()
+            .subscribe(members -> {
+                batchCapableStores = members.entrySet().stream()
+                    .filter(member -> BATCH_CAPABLE.equals(member.getValue().getValue()))
+                    .map(member -> member.getKey().getName())
+                    .collect(Collectors.toSet());
+                coalescer.retain(batchCapableStores);
+            });
     }
 
     @Override
     public void send(StoreMessage message) {
+        if (stopped.get()) {
+            return;
+        }
         if (message.getPayload().hasHostStoreId()) {
-            agentMember.multicast(message.getPayload().getHostStoreId(), message.toByteString(), true);
+            String targetStoreId = message.getPayload().getHostStoreId();
+            if (batchCapableStores.contains(targetStoreId)) {
+                coalescer.add(targetStoreId, message);
+            } else {
+                agentMember.multicast(targetStoreId, message.toByteString(), true);
+            }
         } else {
+            // every store is able to parse a single store message
             agentMember.broadcast(message.toByteString(), true);
         }
     }
@@ -58,20 +94,12 @@ class AgentHostStoreMessenger implements IStoreMessenger {
     @Override
     public Observable<StoreMessage> receive() {
         return agentMember.receive()
-            .mapOptional(agentMessage -> {
+            .flatMapIterable(agentMessage -> {
                 try {
-                    StoreMessage message = StoreMessage.parseFrom(agentMessage.getPayload());
-                    KVRangeMessage payload = message.getPayload();
-                    if (!payload.hasHostStoreId()) {
-                        // this is a broadcast message
-                        message = message.toBuilder().setPayload(payload.toBuilder()
-                            .setHostStoreId(storeId)
-                            .build()).build();
-                    }
-                    return Optional.of(message);
+                    return StoreMessageCoalescer.parse(agentMessage.getPayload(), storeId);
                 } catch (InvalidProtocolBufferException e) {
                     log.warn("Unable to parse store message", e);
-                    return Optional.empty();
+                    return Collections.emptyList();
                 }
             });
     }
@@ -79,6 +107,8 @@ class AgentHostStoreMessenger implements IStoreMessenger {
     @Override
     public void close() {
         if (stopped.compareAndSet(false, true)) {
+            disposable.dispose();
+            coalescer.close();
             agent.deregister(agentMember).join();
         }
     }
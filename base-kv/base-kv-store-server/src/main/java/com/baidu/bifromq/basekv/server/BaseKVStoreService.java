@@ -16,8 +16,12 @@ package com.baidu.bifromq.basekv.server;
 import static com.baidu.bifromq.baserpc.UnaryResponse.response;
 
 import com.baidu.bifromq.basecluster.IAgentHost;
+import com.baidu.bifromq.basecrdt.service.ICRDTService;
+import com.baidu.bifromq.basekv.RPCBluePrint;
+import com.baidu.bifromq.basekv.proto.StoreMessageBatch;
 import com.baidu.bifromq.basekv.store.IKVRangeStore;
 import com.baidu.bifromq.basekv.store.IKVRangeStoreDescriptorReporter;
+import com.baidu.bifromq.basekv.store.IStoreMessenger;
 import com.baidu.bifromq.basekv.store.KVRangeStore;
 import com.baidu.bifromq.basekv.store.KVRangeStoreDescriptorReporter;
 import com.baidu.bifromq.basekv.store.exception.KVRangeException.BadRequest;
@@ -41,8 +45,11 @@ import com.baidu.bifromq.basekv.store.proto.RecoverRequest;
 import com.baidu.bifromq.basekv.store.proto.ReplyCode;
 import com.baidu.bifromq.basekv.store.proto.TransferLeadershipReply;
 import com.baidu.bifromq.basekv.store.proto.TransferLeadershipRequest;
+import com.baidu.bifromq.baserpc.AckStream;
+import com.baidu.bifromq.baserpc.IRPCClient;
 import com.google.common.collect.Sets;
 import io.grpc.stub.StreamObserver;
+import io.netty.handler.ssl.SslContext;
 import io.reactivex.rxjava3.disposables.CompositeDisposable;
 import java.time.Duration;
 import java.util.concurrent.CompletableFuture;
@@ -57,6 +64,11 @@ class BaseKVStoreService extends BaseKVStoreServiceGrpc.BaseKVStoreServiceImplBa
     private final IAgentHost agentHost;
     private final String clusterId;
     private final boolean bootstrap;
+    private final ICRDTService crdtService;
+    private final boolean rpcStoreMessenger;
+    private final SslContext clientSslContext;
+    private final int queryPipelineConcurrency;
+    private volatile RPCStoreMessenger rpcMessenger;
 
     BaseKVStoreService(BaseKVStoreServiceBuilder<?> builder) {
         kvRangeStore = new KVRangeStore(
@@ -69,7 +81,11 @@ class BaseKVStoreService extends BaseKVStoreServiceGrpc.BaseKVStoreServiceImplBa
         this.bootstrap = builder.bootstrap;
         this.clusterId = builder.clusterId;
         this.agentHost = builder.agentHost;
-        storeDescriptorReporter = new KVRangeStoreDescriptorReporter(clusterId, builder.serverBuilder.crdtService,
+        this.crdtService = builder.serverBuilder.crdtService;
+        this.rpcStoreMessenger = builder.rpcStoreMessenger;
+        this.clientSslContext = builder.clientSslContext;
+        this.queryPipelineConcurrency = builder.queryPipelineConcurrency;
+        storeDescriptorReporter = new KVRangeStoreDescriptorReporter(clusterId, crdtService,
             Duration.ofSeconds(builder.storeOptions.getStatsCollectIntervalSec()).toMillis() *
                 DEAD_STORE_CLEANUP_TIME_FACTOR);
     }
@@ -85,7 +101,18 @@ class BaseKVStoreService extends BaseKVStoreServiceGrpc.BaseKVStoreServiceImplBa
     public void start() {
         log.debug("Starting BaseKVRangeStore: clusterId={}, storeId={}, bootstrap{}",
             clusterId, kvRangeStore.id(), bootstrap);
-        kvRangeStore.start(new AgentHostStoreMessenger(agentHost, clusterId, kvRangeStore.id()));
+        IStoreMessenger messenger;
+        if (rpcStoreMessenger) {
+            rpcMessenger = new RPCStoreMessenger(clusterId, kvRangeStore.id(), IRPCClient.newBuilder()
+                .bluePrint(RPCBluePrint.build(clusterId))
+                .crdtService(crdtService)
+                .sslContext(clientSslContext)
+                .build());
+            messenger = rpcMessenger;
+        } else {
+            messenger = new AgentHostStoreMessenger(agentHost, clusterId, kvRangeStore.id());
+        }
+        kvRangeStore.start(messenger);
         if (bootstrap) {
             kvRangeStore.bootstrap();
         }
@@ -101,6 +128,20 @@ class BaseKVStoreService extends BaseKVStoreServiceGrpc.BaseKVStoreServiceImplBa
         storeDescriptorReporter.stop();
     }
 
+    @Override
+    public StreamObserver<StoreMessageBatch> message(StreamObserver<StoreMessageBatch> responseObserver) {
+        AckStream<StoreMessageBatch, StoreMessageBatch> inboundStream = new AckStream<>(responseObserver) {
+        };
+        RPCStoreMessenger messenger = rpcMessenger;
+        if (messenger != null) {
+            messenger.accept(inboundStream);
+        } else {
+            // the store is not started or not using rpc messenger
+            inboundStream.close();
+        }
+        return inboundStream;
+    }
+
     @Override
     public void bootstrap(BootstrapRequest request, StreamObserver<BootstrapReply> responseObserver) {
         response(tenantId -> {
@@ -199,12 +240,12 @@ class BaseKVStoreService extends BaseKVStoreServiceGrpc.BaseKVStoreServiceImplBa
 
     @Override
     public StreamObserver<KVRangeRORequest> query(StreamObserver<KVRangeROReply> responseObserver) {
-        return new QueryPipeline(kvRangeStore, false, responseObserver);
+        return new QueryPipeline(kvRangeStore, false, queryPipelineConcurrency, responseObserver);
     }
 
     @Override
     public StreamObserver<KVRangeRORequest> linearizedQuery(StreamObserver<KVRangeROReply> responseObserver) {
-        return new QueryPipeline(kvRangeStore, true, responseObserver);
+        return new QueryPipeline(kvRangeStore, true, queryPipelineConcurrency, responseObserver);
     }
 
     private ReplyCode convertKVRangeException(Throwable e) {
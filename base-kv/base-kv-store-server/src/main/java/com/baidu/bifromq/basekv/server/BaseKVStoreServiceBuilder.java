@@ -16,6 +16,9 @@ package com.baidu.bifromq.basekv.server;
 import com.baidu.bifromq.basecluster.IAgentHost;
 import com.baidu.bifromq.basekv.store.api.IKVRangeCoProcFactory;
 import com.baidu.bifromq.basekv.store.option.KVRangeStoreOptions;
+import io.netty.handler.ssl.SslContext;
+import java.util.Collections;
+import java.util.Map;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
 import lombok.Setter;
@@ -35,6 +38,14 @@ public class BaseKVStoreServiceBuilder<P extends AbstractBaseKVStoreServerBuilde
     Executor queryExecutor;
     ScheduledExecutorService tickTaskExecutor;
     ScheduledExecutorService bgTaskExecutor;
+    // the max number of queries executed concurrently in one query pipeline, 1 means sequentially
+    int queryPipelineConcurrency = 1;
+    // exchange store messages via dedicated rpc streams instead of agent host
+    boolean rpcStoreMessenger;
+    // the client ssl context used by the rpc streams
+    SslContext clientSslContext;
+    // the extra attributes advertised in rpc server metadata along with the store id
+    Map<String, String> attributes = Collections.emptyMap();
 
     BaseKVStoreServiceBuilder(String clusterId, boolean bootstrap,
                               P serverBuilder) {
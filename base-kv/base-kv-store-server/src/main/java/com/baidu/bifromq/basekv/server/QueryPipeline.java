@@ -13,6 +13,8 @@
 
 package com.baidu.bifromq.basekv.server;
 
+import static com.baidu.bifromq.basekv.PipelineUtil.PIPELINE_ATTR_KEY_REPLY_BY_REQ_ID;
+
 import com.baidu.bifromq.basekv.store.proto.NullableValue;
 import com.baidu.bifromq.basekv.store.IKVRangeStore;
 import com.baidu.bifromq.basekv.store.exception.KVRangeException;
@@ -24,32 +26,52 @@ import io.grpc.stub.StreamObserver;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * The pipeline serving read-only queries of one stream. Up to {@code maxConcurrency} queries are executed
+ * concurrently. The reply is emitted once ready if the client matches replies by reqId, otherwise it's emitted in the
+ * order of the requests as the client matches the replies in that order.
+ */
 @Slf4j
 class QueryPipeline extends ResponsePipeline<KVRangeRORequest, KVRangeROReply> {
 
     private final ConcurrentLinkedQueue<QueryTask> requests = new ConcurrentLinkedQueue<>();
     private final IKVRangeStore kvRangeStore;
     private final boolean linearized;
-    private final AtomicBoolean executing = new AtomicBoolean(false);
+    private final int maxConcurrency;
+    private final boolean orderedReply;
+    private final AtomicInteger executing = new AtomicInteger();
+    // the reply future of last request, only accessed in handleRequest which is called sequentially
+    private CompletableFuture<KVRangeROReply> lastReply = CompletableFuture.completedFuture(null);
 
     public QueryPipeline(IKVRangeStore kvRangeStore, boolean linearized,
                          StreamObserver<KVRangeROReply> responseObserver) {
+        this(kvRangeStore, linearized, 1, responseObserver);
+    }
+
+    public QueryPipeline(IKVRangeStore kvRangeStore, boolean linearized, int maxConcurrency,
+                         StreamObserver<KVRangeROReply> responseObserver) {
         super(responseObserver);
         this.linearized = linearized;
         this.kvRangeStore = kvRangeStore;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.orderedReply = metadata == null || !metadata.containsKey(PIPELINE_ATTR_KEY_REPLY_BY_REQ_ID);
     }
 
     @Override
     protected CompletableFuture<KVRangeROReply> handleRequest(String ignore, KVRangeRORequest request) {
+        CompletableFuture<KVRangeROReply> prevReply = orderedReply ? lastReply : null;
         QueryTask task = switch (request.getTypeCase()) {
-            case GETKEY -> new QueryTask(request, this::get);
-            case EXISTKEY -> new QueryTask(request, this::exist);
-            default -> new QueryTask(request, this::roCoproc);
+            case GETKEY -> new QueryTask(request, this::get, prevReply);
+            case EXISTKEY -> new QueryTask(request, this::exist, prevReply);
+            default -> new QueryTask(request, this::roCoproc, prevReply);
         };
+        if (orderedReply) {
+            lastReply = task.onDone;
+        }
         log.trace("Submit ro request:\n{}", request);
         requests.add(task);
         submitForExecution();
@@ -57,60 +79,73 @@ class QueryPipeline extends ResponsePipeline<KVRangeRORequest, KVRangeROReply> {
     }
 
     private void submitForExecution() {
-        if (executing.compareAndSet(false, true)) {
+        while (!requests.isEmpty()) {
+            int current = executing.get();
+            if (current >= maxConcurrency) {
+                // the request will be submitted when any executing one finished
+                return;
+            }
+            if (!executing.compareAndSet(current, current + 1)) {
+                continue;
+            }
             QueryTask task = requests.poll();
-            if (task != null) {
-                KVRangeRORequest request = task.request;
-                if (task.onDone.isCancelled()) {
-                    log.trace("Skip submit ro range request[linearized={}] to store:\n{}", linearized, request);
-                }
-                task.queryFn.apply(request)
-                    .exceptionally(e -> {
-                        if (e instanceof KVRangeException.BadVersion ||
-                            e.getCause() instanceof KVRangeException.BadVersion) {
-                            return KVRangeROReply.newBuilder()
-                                .setReqId(request.getReqId())
-                                .setCode(ReplyCode.BadVersion)
-                                .build();
-                        }
-                        if (e instanceof KVRangeException.TryLater ||
-                            e.getCause() instanceof KVRangeException.TryLater) {
-                            return KVRangeROReply.newBuilder()
-                                .setReqId(request.getReqId())
-                                .setCode(ReplyCode.TryLater)
-                                .build();
-                        }
-                        if (e instanceof KVRangeException.BadRequest ||
-                            e.getCause() instanceof KVRangeException.BadRequest) {
-                            return KVRangeROReply.newBuilder()
-                                .setReqId(request.getReqId())
-                                .setCode(ReplyCode.BadRequest)
-                                .build();
-                        }
-                        log.debug("query range error: reqId={}", request.getReqId(), e);
-                        return KVRangeROReply.newBuilder()
-                            .setReqId(request.getReqId())
-                            .setCode(ReplyCode.InternalError)
-                            .build();
-                    })
-                    .thenAccept(v -> {
-                        task.onDone.complete(v);
-                        executing.set(false);
-                        if (!requests.isEmpty()) {
-                            submitForExecution();
-                        }
-                    });
-            } else {
-                executing.set(false);
-                if (!requests.isEmpty()) {
-                    submitForExecution();
-                }
+            if (task == null) {
+                executing.decrementAndGet();
+                continue;
             }
+            execute(task);
+        }
+    }
+
+    private void execute(QueryTask task) {
+        KVRangeRORequest request = task.request;
+        if (task.onDone.isCancelled()) {
+            log.trace("Skip submit ro range request[linearized={}] to store:\n{}", linearized, request);
         }
+        task.queryFn.apply(request)
+            .exceptionally(e -> {
+                if (e instanceof KVRangeException.BadVersion ||
+                    e.getCause() instanceof KVRangeException.BadVersion) {
+                    return KVRangeROReply.newBuilder()
+                        .setReqId(request.getReqId())
+                        .setCode(ReplyCode.BadVersion)
+                        .build();
+                }
+                if (e instanceof KVRangeException.TryLater ||
+                    e.getCause() instanceof KVRangeException.TryLater) {
+                    return KVRangeROReply.newBuilder()
+                        .setReqId(request.getReqId())
+                        .setCode(ReplyCode.TryLater)
+                        .build();
+                }
+                if (e instanceof KVRangeException.BadRequest ||
+                    e.getCause() instanceof KVRangeException.BadRequest) {
+                    return KVRangeROReply.newBuilder()
+                        .setReqId(request.getReqId())
+                        .setCode(ReplyCode.BadRequest)
+                        .build();
+                }
+                log.debug("query range error: reqId={}", request.getReqId(), e);
+                return KVRangeROReply.newBuilder()
+                    .setReqId(request.getReqId())
+                    .setCode(ReplyCode.InternalError)
+                    .build();
+            })
+            .thenAccept(v -> {
+                if (task.prevReply == null) {
+                    task.onDone.complete(v);
+                } else {
+                    // reply after the previous one
+                    task.prevReply.whenComplete((prev, e) -> task.onDone.complete(v));
+                }
+                executing.decrementAndGet();
+                submitForExecution();
+            });
     }
 
     private CompletionStage<KVRangeROReply> exist(KVRangeRORequest request) {
-        return kvRangeStore.exist(request.getVer(), request.getKvRangeId(), request.getExistKey(), linearized)
+        return kvRangeStore.exist(request.getVer(), request.getKvRangeId(), request.getExistKey(), linearized,
+                request.getMaxStaleMillis())
             .thenApply(result -> KVRangeROReply.newBuilder()
                 .setReqId(request.getReqId())
                 .setCode(ReplyCode.Ok)
@@ -119,7 +154,8 @@ class QueryPipeline extends ResponsePipeline<KVRangeRORequest, KVRangeROReply> {
     }
 
     private CompletionStage<KVRangeROReply> get(KVRangeRORequest request) {
-        return kvRangeStore.get(request.getVer(), request.getKvRangeId(), request.getGetKey(), linearized)
+        return kvRangeStore.get(request.getVer(), request.getKvRangeId(), request.getGetKey(), linearized,
+                request.getMaxStaleMillis())
             .thenApply(result -> KVRangeROReply.newBuilder()
                 .setReqId(request.getReqId())
                 .setCode(ReplyCode.Ok)
@@ -130,7 +166,7 @@ class QueryPipeline extends ResponsePipeline<KVRangeRORequest, KVRangeROReply> {
 
     private CompletionStage<KVRangeROReply> roCoproc(KVRangeRORequest request) {
         return kvRangeStore.queryCoProc(request.getVer(), request.getKvRangeId(), request.getRoCoProc(),
-                linearized)
+                linearized, request.getMaxStaleMillis())
             .thenApply(result -> KVRangeROReply.newBuilder()
                 .setReqId(request.getReqId())
                 .setCode(ReplyCode.Ok)
@@ -146,11 +182,15 @@ class QueryPipeline extends ResponsePipeline<KVRangeRORequest, KVRangeROReply> {
     private static class QueryTask {
         final KVRangeRORequest request;
         final Function<KVRangeRORequest, CompletionStage<KVRangeROReply>> queryFn;
+        // null if the reply is not ordered
+        final CompletableFuture<KVRangeROReply> prevReply;
         final CompletableFuture<KVRangeROReply> onDone = new CompletableFuture<>();
 
-        QueryTask(KVRangeRORequest request, Function<KVRangeRORequest, CompletionStage<KVRangeROReply>> queryFn) {
+        QueryTask(KVRangeRORequest request, Function<KVRangeRORequest, CompletionStage<KVRangeROReply>> queryFn,
+                  CompletableFuture<KVRangeROReply> prevReply) {
             this.request = request;
             this.queryFn = queryFn;
+            this.prevReply = prevReply;
         }
     }
 }
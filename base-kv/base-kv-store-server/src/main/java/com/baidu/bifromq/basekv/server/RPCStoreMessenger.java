@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.basekv.server;
+
+import static com.baidu.bifromq.basekv.Constants.RPC_METADATA_STORE_ID;
+import static com.baidu.bifromq.basekv.RPCBluePrint.toScopedFullMethodName;
+import static com.baidu.bifromq.basekv.store.proto.BaseKVStoreServiceGrpc.getMessageMethod;
+import static java.util.Collections.emptyMap;
+
+import com.baidu.bifromq.basekv.RPCBluePrint;
+import com.baidu.bifromq.basekv.proto.StoreMessage;
+import com.baidu.bifromq.basekv.proto.StoreMessageBatch;
+import com.baidu.bifromq.basekv.store.IStoreMessenger;
+import com.baidu.bifromq.baserpc.AckStream;
+import com.baidu.bifromq.baserpc.IRPCClient;
+import io.grpc.MethodDescriptor;
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.subjects.PublishSubject;
+import io.reactivex.rxjava3.subjects.Subject;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The store messenger which sends the coalesced store messages to peer stores via a dedicated bidi-streaming rpc,
+ * one long-lived stream per peer store server. The batches are written to the stream as is without re-serializing
+ * into another envelope. The batches are buffered while the underlying http2 stream is not ready, and the batches
+ * beyond the pending limit of a peer server are dropped, which will be recovered by raft retransmission. The messages
+ * to the local store are delivered in-process without serialization.
+ */
+@Slf4j
+class RPCStoreMessenger implements IStoreMessenger {
+    private static final int MAX_PENDING_BATCHES_PER_SERVER = 1024;
+    private final AtomicBoolean stopped = new AtomicBoolean();
+    private final String storeId;
+    private final IRPCClient rpcClient;
+    private final MethodDescriptor<StoreMessageBatch, StoreMessageBatch> messageMethod;
+    private final StoreMessageCoalescer coalescer;
+    private final Subject<StoreMessage> receivedSubject = PublishSubject.<StoreMessage>create().toSerialized();
+    // key: serverId
+    private final Map<String, IRPCClient.IMessageStream<StoreMessageBatch, StoreMessageBatch>> outboundStreams =
+        new ConcurrentHashMap<>();
+    private final Set<AckStream<StoreMessageBatch, StoreMessageBatch>> inboundStreams = ConcurrentHashMap.newKeySet();
+    private final Disposable disposable;
+    // key: storeId, value: serverId
+    private volatile Map<String, String> storeServers = emptyMap();
+
+    /**
+     * Constructor.
+     *
+     * @param clusterId the cluster id of the store
+     * @param storeId   the id of the local store
+     * @param rpcClient the rpc client of the store service, which will be stopped when the messenger is closed
+     */
+    RPCStoreMessenger(String clusterId, String storeId, IRPCClient rpcClient) {
+        this.storeId = storeId;
+        this.rpcClient = rpcClient;
+        this.messageMethod = RPCBluePrint.build(clusterId)
+            .methodDesc(toScopedFullMethodName(clusterId, getMessageMethod().getFullMethodName()));
+        this.coalescer = new StoreMessageCoalescer(storeId, this::sendBatch);
+        this.disposable = rpcClient.serverList().subscribe(this::refresh);
+    }
+
+    @Override
+    public void send(StoreMessage message) {
+        if (stopped.get()) {
+            return;
+        }
+        if (message.getPayload().hasHostStoreId()) {
+            coalescer.add(message.getPayload().getHostStoreId(), message);
+        } else {
+            // broadcast to all known stores including local one
+            coalescer.add(storeId, message);
+            for (String peerStoreId : storeServers.keySet()) {
+                if (!peerStoreId.equals(storeId)) {
+                    coalescer.add(peerStoreId, message);
+                }
+            }
+        }
+    }
+
+    @Override
+    public Observable<StoreMessage> receive() {
+        return receivedSubject;
+    }
+
+    /**
+     * Accept an inbound message stream from peer store.
+     *
+     * @param inboundStream the server side of the message stream
+     */
+    void accept(AckStream<StoreMessageBatch, StoreMessageBatch> inboundStream) {
+        if (stopped.get()) {
+            inboundStream.close();
+            return;
+        }
+        inboundStreams.add(inboundStream);
+        inboundStream.ack()
+            .doFinally(() -> inboundStreams.remove(inboundStream))
+            .subscribe(this::receiveBatch, e -> log.debug("Inbound message stream error", e));
+    }
+
+    @Override
+    public void close() {
+        if (stopped.compareAndSet(false, true)) {
+            disposable.dispose();
+            coalescer.close();
+            outboundStreams.values().forEach(IRPCClient.IMessageStream::close);
+            outboundStreams.clear();
+            inboundStreams.forEach(AckStream::close);
+            rpcClient.stop();
+            receivedSubject.onComplete();
+        }
+    }
+
+    private void sendBatch(String targetStoreId, StoreMessageBatch batch) {
+        if (targetStoreId.equals(storeId)) {
+            receiveBatch(batch);
+            return;
+        }
+        String serverId = storeServers.get(targetStoreId);
+        if (serverId == null) {
+            // raft will retransmit once the target store is online
+            log.debug("No server found for store[{}], drop {} messages", targetStoreId, batch.getMessagesCount());
+            return;
+        }
+        IRPCClient.IMessageStream<StoreMessageBatch, StoreMessageBatch> outboundStream =
+            outboundStreams.compute(serverId, (k, stream) -> {
+                if (stream == null || stream.isClosed()) {
+                    stream = rpcClient.createMessageStream("", serverId, null, emptyMap(), messageMethod);
+                }
+                return stream;
+            });
+        if (outboundStream.pendingAcks() >= MAX_PENDING_BATCHES_PER_SERVER) {
+            // the peer server can't keep up
+            log.debug("Too many pending batches to server[{}], drop {} messages", serverId, batch.getMessagesCount());
+            return;
+        }
+        outboundStream.ack(batch);
+    }
+
+    private void receiveBatch(StoreMessageBatch batch) {
+        StoreMessageCoalescer.restore(batch, storeId).forEach(receivedSubject::onNext);
+    }
+
+    private void refresh(Map<String, Map<String, String>> servers) {
+        Map<String, String> newStoreServers = new HashMap<>();
+        servers.forEach((serverId, metadata) -> {
+            String serverStoreId = metadata.get(RPC_METADATA_STORE_ID);
+            if (serverStoreId != null) {
+                newStoreServers.put(serverStoreId, serverId);
+            }
+        });
+        storeServers = newStoreServers;
+        // close the streams to the servers gone
+        outboundStreams.entrySet().removeIf(entry -> {
+            if (!newStoreServers.containsValue(entry.getKey())) {
+                entry.getValue().close();
+                return true;
+            }
+            return false;
+        });
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.basekv.server;
+
+import com.baidu.bifromq.baseenv.EnvProvider;
+import com.baidu.bifromq.basekv.proto.StoreMessage;
+import com.baidu.bifromq.basekv.proto.StoreMessageBatch;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Coalesce the store messages to the same store, so that the raft messages, especially heartbeats, of all ranges
+ * between two stores are sent in as few transport messages as possible.
+ */
+@Slf4j
+class StoreMessageCoalescer {
+    // the messages queued more than this size are sent in next batch
+    private static final int MAX_BATCH_BYTES = 1024 * 1024;
+
+    /**
+     * Wrap a single message into a batch, used for the payloads sent by the stores not coalescing messages.
+     *
+     * @param message the store message
+     * @return the batch
+     */
+    static StoreMessageBatch single(StoreMessage message) {
+        return StoreMessageBatch.newBuilder()
+            .setFrom(message.getFrom())
+            .addMessages(message.toBuilder().clearFrom())
+            .build();
+    }
+
+    /**
+     * Parse the received transport payload. A batch always carries at least one message in a field number that
+     * StoreMessage never uses, so the payload without any message is sent by a store not coalescing messages, and it's
+     * parsed as a single StoreMessage.
+     *
+     * @param payload      the transport payload
+     * @param localStoreId the id of the receiving store
+     * @return the store messages
+     * @throws InvalidProtocolBufferException if the payload is neither a batch nor a single store message
+     */
+    static List<StoreMessage> parse(ByteString payload, String localStoreId) throws InvalidProtocolBufferException {
+        StoreMessageBatch batch = StoreMessageBatch.parseFrom(payload);
+        if (batch.getMessagesCount() == 0) {
+            batch = single(StoreMessage.parseFrom(payload));
+        }
+        return restore(batch, localStoreId);
+    }
+
+    /**
+     * Restore the fields omitted in the batch.
+     *
+     * @param batch        the received batch
+     * @param localStoreId the id of the receiving store
+     * @return the store messages
+     */
+    static List<StoreMessage> restore(StoreMessageBatch batch, String localStoreId) {
+        List<StoreMessage> messages = new ArrayList<>(batch.getMessagesCount());
+        for (StoreMessage message : batch.getMessagesList()) {
+            StoreMessage.Builder builder = message.toBuilder().setFrom(batch.getFrom());
+            if (!message.getPayload().hasHostStoreId()) {
+                // the target store is implied by the batch or this is a broadcast message
+                builder.getPayloadBuilder().setHostStoreId(localStoreId);
+            }
+            messages.add(builder.build());
+        }
+        return messages;
+    }
+
+    private final String storeId;
+    private final BiConsumer<String, StoreMessageBatch> sender;
+    private final Map<String, StoreQueue> storeQueues = new ConcurrentHashMap<>();
+    private final ExecutorService flushExecutor;
+
+    /**
+     * Constructor.
+     *
+     * @param storeId the id of the sending store
+     * @param sender  the callback to send the batch to the target store
+     */
+    StoreMessageCoalescer(String storeId, BiConsumer<String, StoreMessageBatch> sender) {
+        this.storeId = storeId;
+        this.sender = sender;
+        this.flushExecutor = Executors.newSingleThreadExecutor(
+            EnvProvider.INSTANCE.newThreadFactory("basekv-store-messenger-" + storeId, true));
+    }
+
+    void add(String targetStoreId, StoreMessage message) {
+        storeQueues.computeIfAbsent(targetStoreId, StoreQueue::new).add(message);
+    }
+
+    /**
+     * Drop the queues and pending messages of the stores no longer in the cluster.
+     *
+     * @param liveStoreIds the ids of the stores in the cluster
+     */
+    void retain(Set<String> liveStoreIds) {
+        storeQueues.entrySet().removeIf(entry -> {
+            if (liveStoreIds.contains(entry.getKey())) {
+                return false;
+            }
+            entry.getValue().messages.clear();
+            return true;
+        });
+    }
+
+    void close() {
+        flushExecutor.shutdown();
+    }
+
+    private class StoreQueue {
+        private final String targetStoreId;
+        private final Queue<StoreMessage> messages = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean flushing = new AtomicBoolean();
+
+        StoreQueue(String targetStoreId) {
+            this.targetStoreId = targetStoreId;
+        }
+
+        void add(StoreMessage message) {
+            messages.add(message);
+            scheduleFlush();
+        }
+
+        private void scheduleFlush() {
+            if (!messages.isEmpty() && flushing.compareAndSet(false, true)) {
+                try {
+                    flushExecutor.execute(this::flush);
+                } catch (RejectedExecutionException e) {
+                    // messenger has been closed
+                    messages.clear();
+                }
+            }
+        }
+
+        private void flush() {
+            try {
+                // the messages added while previous batch is being sent are coalesced into next one
+                StoreMessageBatch.Builder batchBuilder = StoreMessageBatch.newBuilder().setFrom(storeId);
+                int batchBytes = 0;
+                StoreMessage message;
+                while ((message = messages.peek()) != null) {
+                    StoreMessage compacted = message.toBuilder()
+                        .clearFrom()
+                        .setPayload(message.getPayload().toBuilder().clearHostStoreId())
+                        .build();
+                    int size = compacted.getSerializedSize();
+                    if (batchBytes > 0 && batchBytes + size > MAX_BATCH_BYTES) {
+                        send(batchBuilder.build());
+                        batchBuilder = StoreMessageBatch.newBuilder().setFrom(storeId);
+                        batchBytes = 0;
+                    }
+                    messages.poll();
+                    batchBuilder.addMessages(compacted);
+                    batchBytes += size;
+                }
+                if (batchBytes > 0) {
+                    send(batchBuilder.build());
+                }
+            } catch (Throwable e) {
+                log.error("Failed to flush store messages to store[{}]", targetStoreId, e);
+            } finally {
+                flushing.set(false);
+                scheduleFlush();
+            }
+        }
+
+        private void send(StoreMessageBatch batch) {
+            try {
+                sender.accept(targetStoreId, batch);
+            } catch (Throwable e) {
+                // raft will retransmit the lost messages
+                log.warn("Failed to send store messages to store[{}]", targetStoreId, e);
+            }
+        }
+    }
+}
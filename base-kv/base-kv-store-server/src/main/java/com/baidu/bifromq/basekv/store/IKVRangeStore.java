@@ -75,11 +75,56 @@ public interface IKVRangeStore {
 
     CompletionStage<Void> merge(long ver, KVRangeId mergerId, KVRangeId mergeeId);
 
-    CompletionStage<Boolean> exist(long ver, KVRangeId id, ByteString key, boolean linearized);
+    default CompletionStage<Boolean> exist(long ver, KVRangeId id, ByteString key, boolean linearized) {
+        return exist(ver, id, key, linearized, 0);
+    }
 
-    CompletionStage<Optional<ByteString>> get(long ver, KVRangeId id, ByteString key, boolean linearized);
+    /**
+     * Check if the key exists.
+     *
+     * @param ver            the version of the range
+     * @param id             the id of the range
+     * @param key            the key
+     * @param linearized     if the query is linearized
+     * @param maxStaleMillis the max staleness allowed by the linearized query, 0 for strictly linearizable read
+     * @return true if the key exists
+     */
+    CompletionStage<Boolean> exist(long ver, KVRangeId id, ByteString key, boolean linearized, long maxStaleMillis);
+
+    default CompletionStage<Optional<ByteString>> get(long ver, KVRangeId id, ByteString key, boolean linearized) {
+        return get(ver, id, key, linearized, 0);
+    }
+
+    /**
+     * Get the value of the key.
+     *
+     * @param ver            the version of the range
+     * @param id             the id of the range
+     * @param key            the key
+     * @param linearized     if the query is linearized
+     * @param maxStaleMillis the max staleness allowed by the linearized query, 0 for strictly linearizable read
+     * @return the value of the key
+     */
+    CompletionStage<Optional<ByteString>> get(long ver, KVRangeId id, ByteString key, boolean linearized,
+                                              long maxStaleMillis);
+
+    default CompletionStage<ROCoProcOutput> queryCoProc(long ver, KVRangeId id, ROCoProcInput query,
+                                                        boolean linearized) {
+        return queryCoProc(ver, id, query, linearized, 0);
+    }
 
-    CompletionStage<ROCoProcOutput> queryCoProc(long ver, KVRangeId id, ROCoProcInput query, boolean linearized);
+    /**
+     * Execute the read-only co-proc query.
+     *
+     * @param ver            the version of the range
+     * @param id             the id of the range
+     * @param query          the query
+     * @param linearized     if the query is linearized
+     * @param maxStaleMillis the max staleness allowed by the linearized query, 0 for strictly linearizable read
+     * @return the query output
+     */
+    CompletionStage<ROCoProcOutput> queryCoProc(long ver, KVRangeId id, ROCoProcInput query, boolean linearized,
+                                                long maxStaleMillis);
 
     CompletionStage<ByteString> put(long ver, KVRangeId id, ByteString key, ByteString value);
 
@@ -52,7 +52,10 @@ import com.baidu.bifromq.basekv.store.range.KVRange;
 import com.baidu.bifromq.basekv.store.range.KVRangeFSM;
 import com.baidu.bifromq.basekv.store.stats.IStatsCollector;
 import com.baidu.bifromq.basekv.store.util.AsyncRunner;
+import com.baidu.bifromq.basekv.store.wal.FileWALStoreEngine;
+import com.baidu.bifromq.basekv.store.wal.FileWALStoreEngineConfigurator;
 import com.baidu.bifromq.basekv.store.wal.IKVRangeWALStore;
+import com.baidu.bifromq.basekv.store.wal.IKVRangeWALStoreEngine;
 import com.baidu.bifromq.basekv.store.wal.KVRangeWALStorageEngine;
 import com.baidu.bifromq.basekv.utils.KVRangeIdUtil;
 import com.google.common.base.Preconditions;
@@ -106,7 +109,7 @@ public class KVRangeStore implements IKVRangeStore {
     private final Subject<List<Observable<KVRangeDescriptor>>> descriptorListSubject =
         BehaviorSubject.<List<Observable<KVRangeDescriptor>>>create().toSerialized();
     private final IKVRangeCoProcFactory coProcFactory;
-    private final KVRangeWALStorageEngine walStorageEngine;
+    private final IKVRangeWALStoreEngine walStorageEngine;
     private final IKVEngine<? extends ICPableKVSpace> kvRangeEngine;
     private final IStatsCollector storeStatsCollector;
     private final CompositeDisposable disposable = new CompositeDisposable();
@@ -129,8 +132,12 @@ public class KVRangeStore implements IKVRangeStore {
         this.clusterId = clusterId;
         this.coProcFactory = coProcFactory;
         this.opts = opts.toBuilder().build();
-        this.walStorageEngine =
-            new KVRangeWALStorageEngine(clusterId, opts.getOverrideIdentity(), opts.getWalEngineConfigurator());
+        if (opts.getWalEngineConfigurator() instanceof FileWALStoreEngineConfigurator walConfigurator) {
+            this.walStorageEngine = new FileWALStoreEngine(clusterId, opts.getOverrideIdentity(), walConfigurator);
+        } else {
+            this.walStorageEngine = new KVRangeWALStorageEngine(clusterId, opts.getOverrideIdentity(),
+                opts.getWalEngineConfigurator(), opts.getWalTailCacheBytes());
+        }
         id = walStorageEngine.id();
         if (opts.getOverrideIdentity() != null
             && !opts.getOverrideIdentity().trim().isEmpty()
@@ -219,10 +226,10 @@ public class KVRangeStore implements IKVRangeStore {
                 }
 
                 CompletableFuture.allOf(closeFutures.toArray(CompletableFuture[]::new)).join();
-//                CompletableFuture.allOf(kvRangeMap.values().stream()
-//                        .map(IKVRangeFSM::close)
-//                        .toArray(CompletableFuture[]::new))
-//                    .join();
+                // CompletableFuture.allOf(kvRangeMap.values().stream()
+                //         .map(IKVRangeFSM::close)
+                //         .toArray(CompletableFuture[]::new))
+                //     .join();
                 disposable.dispose();
                 storeStatsCollector.stop().toCompletableFuture().join();
                 mgmtTaskRunner.awaitDone().toCompletableFuture().join();
@@ -471,34 +478,35 @@ public class KVRangeStore implements IKVRangeStore {
     }
 
     @Override
-    public CompletionStage<Boolean> exist(long ver, KVRangeId id, ByteString key, boolean linearized) {
+    public CompletionStage<Boolean> exist(long ver, KVRangeId id, ByteString key, boolean linearized,
+                                          long maxStaleMillis) {
         checkStarted();
         IKVRangeFSM kvRange = kvRangeMap.get(id);
         if (kvRange != null) {
-            return kvRange.exist(ver, key, linearized);
+            return kvRange.exist(ver, key, linearized, maxStaleMillis);
         }
         return CompletableFuture.failedFuture(rangeNotFound());
     }
 
     @Override
     public CompletionStage<Optional<ByteString>> get(long ver, KVRangeId id, ByteString key,
-                                                     boolean linearized) {
+                                                     boolean linearized, long maxStaleMillis) {
         checkStarted();
         IKVRangeFSM kvRange = kvRangeMap.get(id);
         if (kvRange != null) {
-            return kvRange.get(ver, key, linearized);
+            return kvRange.get(ver, key, linearized, maxStaleMillis);
         }
         return CompletableFuture.failedFuture(rangeNotFound());
     }
 
     @Override
     public CompletionStage<ROCoProcOutput> queryCoProc(long ver, KVRangeId id, ROCoProcInput query,
-                                                       boolean linearized) {
+                                                       boolean linearized, long maxStaleMillis) {
         checkStarted();
         IKVRangeFSM kvRange = kvRangeMap.get(id);
         if (kvRange != null) {
             metricsManager.runningQueryNum.increment();
-            return kvRange.queryCoProc(ver, query, linearized)
+            return kvRange.queryCoProc(ver, query, linearized, maxStaleMillis)
                 .whenComplete((v, e) -> metricsManager.runningQueryNum.decrement());
         }
         return CompletableFuture.failedFuture(rangeNotFound());
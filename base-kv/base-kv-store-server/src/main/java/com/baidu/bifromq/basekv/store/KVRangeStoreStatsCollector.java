@@ -18,6 +18,7 @@ import com.baidu.bifromq.basekv.localengine.rocksdb.RocksDBWALableKVEngineConfig
 import com.baidu.bifromq.basekv.store.option.KVRangeStoreOptions;
 import com.baidu.bifromq.basekv.store.stats.StatsCollector;
 import com.baidu.bifromq.basekv.store.util.ProcessUtil;
+import com.baidu.bifromq.basekv.store.wal.FileWALStoreEngineConfigurator;
 import java.io.File;
 import java.time.Duration;
 import java.util.Map;
@@ -44,6 +45,11 @@ class KVRangeStoreStatsCollector extends StatsCollector {
             stats.put("wal.usable", (double) dbRootDir.getUsableSpace());
             stats.put("wal.total", (double) dbRootDir.getTotalSpace());
         }
+        if (opt.getWalEngineConfigurator() instanceof FileWALStoreEngineConfigurator conf) {
+            File walRootDir = new File(conf.walRootDir());
+            stats.put("wal.usable", (double) walRootDir.getUsableSpace());
+            stats.put("wal.total", (double) walRootDir.getTotalSpace());
+        }
         stats.put("cpu.usage", ProcessUtil.cpuLoad());
     }
 }
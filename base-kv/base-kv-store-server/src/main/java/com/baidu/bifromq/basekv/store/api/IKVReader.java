@@ -17,7 +17,7 @@ import com.baidu.bifromq.basekv.proto.Boundary;
 import com.google.protobuf.ByteString;
 import java.util.Optional;
 
-public interface IKVReader {
+public interface IKVReader extends AutoCloseable {
     Boundary boundary();
 
     long size(Boundary boundary);
@@ -28,5 +28,19 @@ public interface IKVReader {
 
     IKVIterator iterator();
 
+    /**
+     * The iterator whose key and value are only valid until it's moved, use it for scanning without retaining them.
+     *
+     * @return the iterator
+     */
+    IKVIterator zeroCopyIterator();
+
     void refresh();
+
+    /**
+     * Release the resources held by the reader, the reader is not usable afterward.
+     */
+    @Override
+    default void close() {
+    }
 }
@@ -31,9 +31,11 @@ import lombok.experimental.Accessors;
 public class KVRangeOptions {
     private boolean enableLoadEstimation = false;
     private int snapshotSyncBytesPerSec = 128 * 1024 * 1024; // 128MB
+    private int snapshotSyncWindowSize = 16; // the max number of in-flight snapshot data chunks
     private int compactWALThreshold = 10000; // the max number of logs before compaction
     private long tickUnitInMS = 100;
     private int maxWALFatchBatchSize = 5 * 1024 * 1024; // 5MB
+    private int maxApplyBatchSize = 64; // the max number of committed logs applied in one write batch
     private int snapshotSyncIdleTimeoutSec = 30;
     private int statsCollectIntervalSec = 5;
     private RaftConfig walRaftConfig = new RaftConfig()
@@ -39,6 +39,7 @@ public class KVRangeStoreOptions {
     private String overrideIdentity;
     private KVRangeOptions kvRangeOptions = new KVRangeOptions();
     private int statsCollectIntervalSec = 5;
+    private long walTailCacheBytes = 64 * 1024 * 1024; // the max bytes of recently appended logs cached by all ranges
 
     private ICPableKVEngineConfigurator dataEngineConfigurator = RocksDBCPableKVEngineConfigurator.builder()
         .dbRootDir(Paths.get(System.getProperty("java.io.tmpdir"), "basekv",
@@ -70,11 +70,24 @@ public interface IKVRangeFSM {
 
     CompletableFuture<Void> merge(long ver, KVRangeId mergeeId);
 
-    CompletableFuture<Boolean> exist(long ver, ByteString key, boolean linearized);
+    default CompletableFuture<Boolean> exist(long ver, ByteString key, boolean linearized) {
+        return exist(ver, key, linearized, 0);
+    }
 
-    CompletableFuture<Optional<ByteString>> get(long ver, ByteString key, boolean linearized);
+    CompletableFuture<Boolean> exist(long ver, ByteString key, boolean linearized, long maxStaleMillis);
 
-    CompletableFuture<ROCoProcOutput> queryCoProc(long ver, ROCoProcInput query, boolean linearized);
+    default CompletableFuture<Optional<ByteString>> get(long ver, ByteString key, boolean linearized) {
+        return get(ver, key, linearized, 0);
+    }
+
+    CompletableFuture<Optional<ByteString>> get(long ver, ByteString key, boolean linearized, long maxStaleMillis);
+
+    default CompletableFuture<ROCoProcOutput> queryCoProc(long ver, ROCoProcInput query, boolean linearized) {
+        return queryCoProc(ver, query, linearized, 0);
+    }
+
+    CompletableFuture<ROCoProcOutput> queryCoProc(long ver, ROCoProcInput query, boolean linearized,
+                                                  long maxStaleMillis);
 
     CompletableFuture<ByteString> put(long ver, ByteString key, ByteString value);
 
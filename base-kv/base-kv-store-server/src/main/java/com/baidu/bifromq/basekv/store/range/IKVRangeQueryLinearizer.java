@@ -16,7 +16,13 @@ package com.baidu.bifromq.basekv.store.range;
 import java.util.concurrent.CompletionStage;
 
 public interface IKVRangeQueryLinearizer {
-    CompletionStage<Void> linearize();
+    /**
+     * Linearize a query, the returned future completes when the local data is ready to serve it.
+     *
+     * @param maxStaleMillis the max staleness allowed by the query, 0 for strictly linearizable read
+     * @return the future completed when the query could be served locally
+     */
+    CompletionStage<Void> linearize(long maxStaleMillis);
 
     void afterLogApplied(long logIndex);
 }
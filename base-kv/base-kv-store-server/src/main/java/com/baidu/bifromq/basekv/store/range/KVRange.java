@@ -19,12 +19,12 @@ import static com.baidu.bifromq.basekv.store.range.KVRangeKeys.METADATA_VER_BYTE
 
 import com.baidu.bifromq.basekv.localengine.ICPableKVSpace;
 import com.baidu.bifromq.basekv.localengine.IKVSpace;
+import com.baidu.bifromq.basekv.localengine.IKVSpaceRestoreSession;
 import com.baidu.bifromq.basekv.proto.Boundary;
 import com.baidu.bifromq.basekv.proto.KVRangeSnapshot;
 import com.baidu.bifromq.basekv.proto.State;
 import com.baidu.bifromq.basekv.store.api.IKVRangeReader;
 import com.baidu.bifromq.basekv.store.api.IKVReader;
-import com.baidu.bifromq.basekv.store.api.IKVWriter;
 import com.google.protobuf.ByteString;
 import io.reactivex.rxjava3.core.Observable;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -114,29 +114,28 @@ public class KVRange extends AbstractKVRangeMetadata implements IKVRange {
 
     @Override
     public IKVReseter toReseter(KVRangeSnapshot snapshot) {
-        IKVRangeWriter<?> rangeWriter = toWriter();
-        IKVWriter kvWriter = rangeWriter
+        // restore in bulk, so that large range could be rebuilt without going through memtable
+        IKVSpaceRestoreSession restoreSession = kvSpace.startRestore();
+        new KVRangeMetadataUpdatable(restoreSession)
             .resetVer(snapshot.getVer())
             .lastAppliedIndex(snapshot.getLastAppliedIndex())
             .state(snapshot.getState())
-            .boundary(snapshot.getBoundary())
-            .kvWriter();
-        kvWriter.clear(boundary());
+            .boundary(snapshot.getBoundary());
         return new IKVReseter() {
             @Override
             public void put(ByteString key, ByteString value) {
-                kvWriter.put(key, value);
+                restoreSession.put(key, value);
             }
 
             @Override
             public IKVRange abort() {
-                rangeWriter.abort();
+                restoreSession.abort();
                 return KVRange.this;
             }
 
             @Override
             public IKVRange done() {
-                rangeWriter.done();
+                restoreSession.done();
                 return KVRange.this;
             }
         };
@@ -26,14 +26,23 @@ import com.google.common.util.concurrent.RateLimiter;
 import io.reactivex.rxjava3.disposables.Disposable;
 import java.time.Duration;
 import java.util.Optional;
+import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * The session dumping checkpoint data to the restoring peer. The data is sent in chunks through a sliding window of
+ * in-flight requests, which starts from the earliest unacknowledged one. The peer acknowledges each received chunk
+ * individually, and only the unacknowledged chunks will be retransmitted.
+ */
 @Slf4j
 class KVRangeDumpSession {
+    private static final int MAX_CHUNK_BYTES = 1024 * 1024;
+
     interface DumpBytesRecorder {
         void record(int bytes);
     }
@@ -48,9 +57,18 @@ class KVRangeDumpSession {
     private final Duration maxIdleDuration;
     private final CompletableFuture<Void> doneSignal = new CompletableFuture<>();
     private final DumpBytesRecorder recorder;
-    private RateLimiter rateLimiter;
+    private final int windowSize;
+    private final int chunkBytes;
+    private final long bandwidth;
+    private final RateLimiter rateLimiter;
+    // the in-flight requests keyed by reqId, only accessed in runner
+    private final TreeMap<Integer, InflightRequest> inflightRequests = new TreeMap<>();
     private IKVIterator snapshotItr;
-    private volatile KVRangeMessage currentRequest;
+    // the built request waiting for rate limiter's permits
+    private KVRangeMessage pendingRequest;
+    private int pendingBytes;
+    private boolean lastRequestBuilt;
+    private boolean fillScheduled;
     private volatile long lastReplyTS;
 
     KVRangeDumpSession(String peerStoreId,
@@ -60,6 +78,7 @@ class KVRangeDumpSession {
                        Executor executor,
                        Duration maxIdleDuration,
                        long bandwidth,
+                       int windowSize,
                        DumpBytesRecorder recorder) {
         this.rangeId = accessor.id();
         this.peerStoreId = peerStoreId;
@@ -68,6 +87,9 @@ class KVRangeDumpSession {
         this.runner = new AsyncRunner("basekv.runner.sessiondump", executor);
         this.maxIdleDuration = maxIdleDuration;
         this.recorder = recorder;
+        this.windowSize = Math.max(1, windowSize);
+        this.bandwidth = bandwidth;
+        this.chunkBytes = (int) Math.max(1, Math.min(MAX_CHUNK_BYTES, bandwidth));
         rateLimiter = RateLimiter.create(bandwidth);
         if (!request.getSnapshot().hasCheckpointId()) {
             messenger.send(KVRangeMessage.newBuilder()
@@ -103,11 +125,11 @@ class KVRangeDumpSession {
                     }
                     return Optional.empty();
                 })
-                .subscribe(this::handleReply);
+                .subscribe(reply -> runner.add(() -> handleReply(reply)));
             doneSignal.whenComplete((v, e) -> disposable.dispose());
             log.debug("Start dump session[{}] to store[{}]: rangeId={}",
                 request.getSessionId(), peerStoreId, KVRangeIdUtil.toString(rangeId));
-            nextSaveRequest();
+            runner.add(this::fillWindow);
         }
     }
 
@@ -124,12 +146,8 @@ class KVRangeDumpSession {
             log.debug("Cancel the idle dump session[{}] to store[{}]: rangeId={}",
                 request.getSessionId(), peerStoreId, KVRangeIdUtil.toString(rangeId));
             cancel();
-        } else if (maxIdleDuration.toNanos() / 2 < elapseNanos && currentRequest != null) {
-            runner.add(() -> {
-                if (maxIdleDuration.toNanos() / 2 < Duration.ofNanos(System.nanoTime() - lastReplyTS).toNanos()) {
-                    messenger.send(currentRequest);
-                }
-            });
+        } else if (maxIdleDuration.toNanos() / 2 < elapseNanos) {
+            runner.add(this::resendTimeoutRequests);
         }
     }
 
@@ -144,80 +162,147 @@ class KVRangeDumpSession {
     }
 
     private void handleReply(SaveSnapshotDataReply reply) {
-        KVRangeMessage currReq = currentRequest;
-        if (currReq == null) {
+        InflightRequest inflightRequest = inflightRequests.get(reply.getReqId());
+        if (inflightRequest == null || doneSignal.isDone()) {
+            // stale reply of retransmitted request
             return;
         }
-        SaveSnapshotDataRequest req = currentRequest.getSaveSnapshotDataRequest();
         lastReplyTS = System.nanoTime();
-        if (req.getReqId() == reply.getReqId()) {
-            currentRequest = null;
-            switch (reply.getResult()) {
-                case OK -> {
-                    switch (req.getFlag()) {
-                        case More -> nextSaveRequest();
-                        case End -> runner.add(() -> doneSignal.complete(null));
-                    }
+        switch (reply.getResult()) {
+            case OK -> {
+                inflightRequests.remove(reply.getReqId());
+                // the end request is acknowledged after all data saved
+                if (inflightRequest.request.getSaveSnapshotDataRequest().getFlag()
+                    == SaveSnapshotDataRequest.Flag.End) {
+                    doneSignal.complete(null);
+                } else {
+                    fillWindow();
                 }
-                case NoSessionFound, Error -> runner.add(() -> doneSignal.complete(null));
+            }
+            case NoSessionFound, Error -> doneSignal.complete(null);
+            default -> {
+                // retransmit later
             }
         }
     }
 
-    private void nextSaveRequest() {
-        runner.add(() -> {
-            SaveSnapshotDataRequest.Builder reqBuilder = SaveSnapshotDataRequest.newBuilder()
-                .setSessionId(request.getSessionId())
-                .setReqId(reqId.getAndIncrement());
-            int dumpBytes = 0;
-            while (true) {
-                if (!canceled.get()) {
-                    try {
-                        if (snapshotItr.isValid()) {
-                            KVPair kvPair = KVPair.newBuilder()
-                                .setKey(snapshotItr.key())
-                                .setValue(snapshotItr.value())
-                                .build();
-                            reqBuilder.addKv(kvPair);
-                            int bytes = snapshotItr.key().size() + snapshotItr.value().size();
-                            snapshotItr.next();
-                            if (!rateLimiter.tryAcquire(bytes)) {
-                                if (snapshotItr.isValid()) {
-                                    reqBuilder.setFlag(SaveSnapshotDataRequest.Flag.More);
-                                } else {
-                                    reqBuilder.setFlag(SaveSnapshotDataRequest.Flag.End);
-                                }
-                                break;
+    private void resendTimeoutRequests() {
+        long now = System.nanoTime();
+        for (InflightRequest inflightRequest : inflightRequests.values()) {
+            if (maxIdleDuration.toNanos() / 2 < now - inflightRequest.sentAt) {
+                inflightRequest.sentAt = now;
+                messenger.send(inflightRequest.request);
+            }
+        }
+    }
+
+    private void fillWindow() {
+        while (!doneSignal.isDone()) {
+            if (pendingRequest == null) {
+                if (lastRequestBuilt) {
+                    return;
+                }
+                buildNextRequest();
+            }
+            int pendingReqId = pendingRequest.getSaveSnapshotDataRequest().getReqId();
+            if (!inflightRequests.isEmpty() && pendingReqId - inflightRequests.firstKey() >= windowSize) {
+                // window is full
+                return;
+            }
+            // acquire permits per chunk
+            if (pendingBytes > 0 && !rateLimiter.tryAcquire(pendingBytes)) {
+                scheduleFillWindow();
+                return;
+            }
+            long now = System.nanoTime();
+            inflightRequests.put(pendingReqId, new InflightRequest(pendingRequest, now));
+            lastReplyTS = now;
+            recorder.record(pendingBytes);
+            messenger.send(pendingRequest);
+            pendingRequest = null;
+            pendingBytes = 0;
+        }
+    }
+
+    private void scheduleFillWindow() {
+        if (fillScheduled) {
+            return;
+        }
+        fillScheduled = true;
+        // wait roughly the time for paying off the permits acquired by previous chunk
+        long delayMillis = Math.max(1, chunkBytes * 1000L / bandwidth);
+        CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS)
+            .execute(() -> runner.add(() -> {
+                fillScheduled = false;
+                fillWindow();
+            }));
+    }
+
+    private void buildNextRequest() {
+        SaveSnapshotDataRequest.Builder reqBuilder = SaveSnapshotDataRequest.newBuilder()
+            .setSessionId(request.getSessionId())
+            .setReqId(reqId.getAndIncrement());
+        int dumpBytes = 0;
+        while (true) {
+            if (!canceled.get()) {
+                try {
+                    if (snapshotItr.isValid()) {
+                        KVPair kvPair = KVPair.newBuilder()
+                            .setKey(snapshotItr.key())
+                            .setValue(snapshotItr.value())
+                            .build();
+                        reqBuilder.addKv(kvPair);
+                        dumpBytes += snapshotItr.key().size() + snapshotItr.value().size();
+                        snapshotItr.next();
+                        if (dumpBytes >= chunkBytes) {
+                            if (snapshotItr.isValid()) {
+                                reqBuilder.setFlag(SaveSnapshotDataRequest.Flag.More);
+                            } else {
+                                reqBuilder.setFlag(SaveSnapshotDataRequest.Flag.End);
+                                lastRequestBuilt = true;
                             }
-                            dumpBytes += bytes;
-                        } else {
-                            // current iterator finished
-                            reqBuilder.setFlag(SaveSnapshotDataRequest.Flag.End);
                             break;
                         }
-                    } catch (Throwable e) {
-                        log.error("DumpSession[{}] to store[{}] error: rangeId={}",
-                            request.getSessionId(), peerStoreId, KVRangeIdUtil.toString(rangeId), e);
-                        reqBuilder.clearKv();
-                        reqBuilder.setFlag(SaveSnapshotDataRequest.Flag.Error);
+                    } else {
+                        // current iterator finished
+                        reqBuilder.setFlag(SaveSnapshotDataRequest.Flag.End);
+                        lastRequestBuilt = true;
                         break;
                     }
-                } else {
-                    log.debug("DumpSession[{}] to store[{}] has been canceled: rangeId={}",
-                        request.getSessionId(), peerStoreId, KVRangeIdUtil.toString(rangeId));
+                } catch (Throwable e) {
+                    log.error("DumpSession[{}] to store[{}] error: rangeId={}",
+                        request.getSessionId(), peerStoreId, KVRangeIdUtil.toString(rangeId), e);
                     reqBuilder.clearKv();
                     reqBuilder.setFlag(SaveSnapshotDataRequest.Flag.Error);
+                    lastRequestBuilt = true;
+                    dumpBytes = 0;
                     break;
                 }
+            } else {
+                log.debug("DumpSession[{}] to store[{}] has been canceled: rangeId={}",
+                    request.getSessionId(), peerStoreId, KVRangeIdUtil.toString(rangeId));
+                reqBuilder.clearKv();
+                reqBuilder.setFlag(SaveSnapshotDataRequest.Flag.Error);
+                lastRequestBuilt = true;
+                dumpBytes = 0;
+                break;
             }
-            currentRequest = KVRangeMessage.newBuilder()
-                .setRangeId(request.getSnapshot().getId())
-                .setHostStoreId(peerStoreId)
-                .setSaveSnapshotDataRequest(reqBuilder.build())
-                .build();
-            lastReplyTS = System.nanoTime();
-            recorder.record(dumpBytes);
-            messenger.send(currentRequest);
-        });
+        }
+        pendingRequest = KVRangeMessage.newBuilder()
+            .setRangeId(request.getSnapshot().getId())
+            .setHostStoreId(peerStoreId)
+            .setSaveSnapshotDataRequest(reqBuilder.build())
+            .build();
+        pendingBytes = dumpBytes;
+    }
+
+    private static class InflightRequest {
+        final KVRangeMessage request;
+        long sentAt;
+
+        InflightRequest(KVRangeMessage request, long sentAt) {
+            this.request = request;
+            this.sentAt = sentAt;
+        }
     }
 }
@@ -77,6 +77,7 @@ import com.baidu.bifromq.basekv.store.api.IKVRangeCoProc;
 import com.baidu.bifromq.basekv.store.api.IKVRangeCoProcFactory;
 import com.baidu.bifromq.basekv.store.api.IKVRangeSplitHinter;
 import com.baidu.bifromq.basekv.store.api.IKVReader;
+import com.baidu.bifromq.basekv.store.api.IKVWriter;
 import com.baidu.bifromq.basekv.store.exception.KVRangeException;
 import com.baidu.bifromq.basekv.store.option.KVRangeOptions;
 import com.baidu.bifromq.basekv.store.proto.ROCoProcInput;
@@ -104,6 +105,7 @@ import io.reactivex.rxjava3.schedulers.Schedulers;
 import io.reactivex.rxjava3.subjects.BehaviorSubject;
 import io.reactivex.rxjava3.subjects.Subject;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -167,6 +169,7 @@ public class KVRangeFSM implements IKVRangeFSM {
     private final KVRangeMetricManager metricManager;
     private final List<IKVRangeSplitHinter> splitHinters;
     private final AtomicBoolean compacting = new AtomicBoolean();
+    private volatile boolean transferringLeadership = false;
     private IKVRangeMessenger messenger;
     private KVRangeRestorer restorer;
     private volatile CompletableFuture<Void> compactionFuture = CompletableFuture.completedFuture(null);
@@ -207,7 +210,11 @@ public class KVRangeFSM implements IKVRangeFSM {
         this.coProc = coProcFactory.createCoProc(clusterId, hostStoreId, id, this.kvRange::newDataReader);
 
         long lastAppliedIndex = this.kvRange.lastAppliedIndex();
-        this.linearizer = new KVRangeQueryLinearizer(wal::readIndex, queryExecutor, lastAppliedIndex);
+        boolean leaseMode = opts.getWalRaftConfig().isReadOnlyLeaderLeaseMode();
+        this.linearizer = new KVRangeQueryLinearizer(wal::readIndex,
+            // raft falls back to message based read index during leadership transfer
+            () -> leaseMode && !transferringLeadership && wal.isLeader(),
+            queryExecutor, lastAppliedIndex);
         this.queryRunner =
             new KVRangeQueryRunner(this.kvRange, coProc, queryExecutor, linearizer, splitHinters);
         this.statsCollector = new KVRangeStatsCollector(this.kvRange,
@@ -220,6 +227,16 @@ public class KVRangeFSM implements IKVRangeFSM {
                     return metricManager.recordLogApply(() -> KVRangeFSM.this.apply(log));
                 }
 
+                @Override
+                public CompletableFuture<Void> apply(List<LogEntry> logs) {
+                    return metricManager.recordLogApply(() -> KVRangeFSM.this.apply(logs));
+                }
+
+                @Override
+                public int maxApplyBatchSize() {
+                    return opts.getMaxApplyBatchSize();
+                }
+
                 @Override
                 public CompletableFuture<KVRangeSnapshot> install(KVRangeSnapshot request, String leader) {
                     return metricManager.recordSnapshotInstall(() -> KVRangeFSM.this.install(request, leader));
@@ -268,6 +285,8 @@ public class KVRangeFSM implements IKVRangeFSM {
                                 .build());
                         }
                     }));
+                disposables.add(wal.commitIndex().subscribe(linearizer::afterCommitted));
+                disposables.add(wal.state().distinctUntilChanged().subscribe(role -> linearizer.resetLease()));
                 disposables.add(wal.snapshotRestoreEvent()
                     .subscribe(e -> clusterConfigSubject.onNext(e.snapshot.getClusterConfig())));
                 disposables.add(descriptorSubject.subscribe(metricManager::report));
@@ -456,33 +475,35 @@ public class KVRangeFSM implements IKVRangeFSM {
     }
 
     @Override
-    public CompletableFuture<Boolean> exist(long ver, ByteString key, boolean linearized) {
+    public CompletableFuture<Boolean> exist(long ver, ByteString key, boolean linearized, long maxStaleMillis) {
         if (isNotOpening()) {
             // treat un-opened range as not exist
             return CompletableFuture.failedFuture(
                 new KVRangeException.InternalException("Range not open:" + KVRangeIdUtil.toString(id)));
         }
-        return metricManager.recordExist(() -> queryRunner.exist(ver, key, linearized));
+        return metricManager.recordExist(() -> queryRunner.exist(ver, key, linearized, maxStaleMillis));
     }
 
     @Override
-    public CompletableFuture<Optional<ByteString>> get(long ver, ByteString key, boolean linearized) {
+    public CompletableFuture<Optional<ByteString>> get(long ver, ByteString key, boolean linearized,
+                                                       long maxStaleMillis) {
         if (isNotOpening()) {
             // treat un-opened range as not exist
             return CompletableFuture.failedFuture(
                 new KVRangeException.InternalException("Range not open:" + KVRangeIdUtil.toString(id)));
         }
-        return metricManager.recordGet(() -> queryRunner.get(ver, key, linearized));
+        return metricManager.recordGet(() -> queryRunner.get(ver, key, linearized, maxStaleMillis));
     }
 
     @Override
-    public CompletableFuture<ROCoProcOutput> queryCoProc(long ver, ROCoProcInput query, boolean linearized) {
+    public CompletableFuture<ROCoProcOutput> queryCoProc(long ver, ROCoProcInput query, boolean linearized,
+                                                         long maxStaleMillis) {
         if (isNotOpening()) {
             // treat un-opened range as not exist
             return CompletableFuture.failedFuture(
                 new KVRangeException.InternalException("Range not open:" + KVRangeIdUtil.toString(id)));
         }
-        return metricManager.recordQueryCoProc(() -> queryRunner.queryCoProc(ver, query, linearized));
+        return metricManager.recordQueryCoProc(() -> queryRunner.queryCoProc(ver, query, linearized, maxStaleMillis));
     }
 
     @Override
@@ -648,6 +669,118 @@ public class KVRangeFSM implements IKVRangeFSM {
         return onDone;
     }
 
+    private CompletableFuture<Void> apply(List<LogEntry> entries) {
+        CompletableFuture<Void> onDone = new CompletableFuture<>();
+        applyFrom(entries, 0, onDone);
+        return onDone;
+    }
+
+    private void applyFrom(List<LogEntry> entries, int from, CompletableFuture<Void> onDone) {
+        // skip the logs applied before the batch is reapplied
+        long lastAppliedIndex = kvRange.lastAppliedIndex();
+        while (from < entries.size() && entries.get(from).getIndex() <= lastAppliedIndex) {
+            from++;
+        }
+        if (from == entries.size()) {
+            onDone.complete(null);
+            return;
+        }
+        // consecutive data mutations are applied in one write batch, others are applied one by one
+        List<LogEntry> mutationLogs = new ArrayList<>();
+        List<KVRangeCommand> mutations = new ArrayList<>();
+        try {
+            for (int i = from; i < entries.size(); i++) {
+                LogEntry entry = entries.get(i);
+                if (entry.getTypeCase() != LogEntry.TypeCase.DATA) {
+                    break;
+                }
+                KVRangeCommand command = KVRangeCommand.parseFrom(entry.getData());
+                if (!isMutation(command)) {
+                    break;
+                }
+                mutationLogs.add(entry);
+                mutations.add(command);
+            }
+        } catch (Throwable e) {
+            log.error("Failed to apply command", e);
+            onDone.completeExceptionally(e);
+            return;
+        }
+        int next = from + Math.max(mutationLogs.size(), 1);
+        CompletableFuture<Void> stepFuture = mutationLogs.size() > 1
+            ? applyMutations(mutationLogs, mutations) : apply(entries.get(from));
+        onDone.whenComplete((v, e) -> {
+            if (onDone.isCancelled()) {
+                stepFuture.cancel(true);
+            }
+        });
+        stepFuture.whenComplete((v, e) -> {
+            if (e != null) {
+                onDone.completeExceptionally(e);
+            } else if (!onDone.isDone()) {
+                applyFrom(entries, next, onDone);
+            }
+        });
+    }
+
+    private CompletableFuture<Void> applyMutations(List<LogEntry> entries, List<KVRangeCommand> commands) {
+        CompletableFuture<Void> onDone = new CompletableFuture<>();
+        IKVRangeWriter<?> rangeWriter = kvRange.toWriter();
+        IKVReader borrowedReader = null;
+        List<Runnable> callbacks = new ArrayList<>(commands.size());
+        List<IKVLoadRecorder> loadRecorders = new ArrayList<>(commands.size());
+        boolean written = false;
+        try {
+            borrowedReader = kvRange.borrowDataReader();
+            // later commands in the batch see the changes made by earlier ones
+            KVWriteBatchView batchView = new KVWriteBatchView(borrowedReader, rangeWriter.kvWriter());
+            long version = kvRange.version();
+            State state = kvRange.state();
+            // data mutations change neither version nor state, so they are examined against the same ones
+            for (KVRangeCommand command : commands) {
+                IKVLoadRecorder loadRecorder = new KVLoadRecorder();
+                loadRecorders.add(loadRecorder);
+                callbacks.add(applyMutation(version, state, command,
+                    new LoadRecordableKVReader(batchView.reader(), loadRecorder),
+                    new LoadRecordableKVWriter(batchView.writer(), loadRecorder)));
+            }
+            long lastIndex = entries.get(entries.size() - 1).getIndex();
+            rangeWriter.lastAppliedIndex(lastIndex);
+            // the write batch is released by done even if it fails
+            written = true;
+            rangeWriter.done();
+            for (int i = 0; i < commands.size(); i++) {
+                KVRangeCommand command = commands.get(i);
+                if (command.hasRwCoProc()) {
+                    IKVLoadRecord loadRecord = loadRecorders.get(i).stop();
+                    splitHinters.forEach(hint -> hint.recordMutate(command.getRwCoProc(), loadRecord));
+                }
+            }
+            callbacks.forEach(Runnable::run);
+            linearizer.afterLogApplied(lastIndex);
+            metricManager.reportLastAppliedIndex(lastIndex);
+            onDone.complete(null);
+        } catch (Throwable t) {
+            log.error("Failed to apply logs", t);
+            if (!written) {
+                rangeWriter.abort();
+            }
+            onDone.completeExceptionally(t);
+        } finally {
+            if (borrowedReader != null) {
+                kvRange.returnDataReader(borrowedReader);
+            }
+        }
+        return onDone;
+    }
+
+    private boolean isMutation(KVRangeCommand command) {
+        return switch (command.getCommandTypeCase()) {
+            case PUT, DELETE, RWCOPROC -> true;
+            default -> false;
+        };
+    }
+
     private CompletableFuture<Runnable> applyConfigChange(long term, long index,
                                                           ClusterConfig config,
                                                           IKVRangeWritable<?> rangeWriter) {
@@ -898,8 +1031,12 @@ public class KVRangeFSM implements IKVRangeFSM {
                         () -> finishCommandWithError(taskId, new KVRangeException.BadRequest("Invalid Leader")));
                     break;
                 }
+                transferringLeadership = true;
+                linearizer.resetLease();
                 wal.transferLeadership(request.getNewLeader())
                     .whenCompleteAsync((v, e) -> {
+                        transferringLeadership = false;
+                        linearizer.resetLease();
                         if (e != null) {
                             log.debug("Failed to transfer leadership[newLeader={}] due to {}",
                                 request.getNewLeader(), e.getMessage());
@@ -1317,50 +1454,8 @@ public class KVRangeFSM implements IKVRangeFSM {
                     onDone.complete(NOOP);
                 }
             }
-            case PUT, DELETE, RWCOPROC -> {
-                if (reqVer != ver) {
-                    onDone.complete(
-                        () -> finishCommandWithError(taskId,
-                            new KVRangeException.BadVersion("Version Mismatch")));
-                    break;
-                }
-                if (state.getType() == WaitingForMerge
-                    || state.getType() == Merged
-                    || state.getType() == Removed
-                    || state.getType() == Purged) {
-                    onDone.complete(() -> finishCommandWithError(taskId,
-                        new KVRangeException.BadRequest("Range is in state:" + state.getType().name())));
-                    break;
-                }
-                try {
-                    switch (command.getCommandTypeCase()) {
-                        // normal commands
-                        case DELETE -> {
-                            Delete delete = command.getDelete();
-                            Optional<ByteString> value = dataReader.get(delete.getKey());
-                            if (value.isPresent()) {
-                                rangeWriter.kvWriter().delete(delete.getKey());
-                            }
-                            onDone.complete(() -> finishCommand(taskId, value.orElse(ByteString.EMPTY)));
-                        }
-                        case PUT -> {
-                            Put put = command.getPut();
-                            Optional<ByteString> value = dataReader.get(put.getKey());
-                            rangeWriter.kvWriter().put(put.getKey(), put.getValue());
-                            onDone.complete(() -> finishCommand(taskId, value.orElse(ByteString.EMPTY)));
-                        }
-                        case RWCOPROC -> {
-                            Supplier<RWCoProcOutput> outputSupplier = coProc.mutate(command.getRwCoProc(),
-                                dataReader, rangeWriter.kvWriter());
-                            onDone.complete(() -> finishCommand(taskId, outputSupplier.get()));
-                        }
-                    }
-                } catch (Throwable e) {
-                    onDone.complete(
-                        () -> finishCommandWithError(taskId, new KVRangeException.InternalException(
-                            "Failed to execute " + command.getCommandTypeCase().name(), e)));
-                }
-            }
+            case PUT, DELETE, RWCOPROC ->
+                onDone.complete(applyMutation(ver, state, command, dataReader, rangeWriter.kvWriter()));
             default -> {
                 log.error("Unknown KVRange Command[type={}]", command.getCommandTypeCase());
                 onDone.complete(NOOP);
@@ -1369,6 +1464,51 @@ public class KVRangeFSM implements IKVRangeFSM {
         return onDone;
     }
 
+    private Runnable applyMutation(long ver,
+                                   State state,
+                                   KVRangeCommand command,
+                                   IKVReader dataReader,
+                                   IKVWriter kvWriter) {
+        String taskId = command.getTaskId();
+        if (command.getVer() != ver) {
+            return () -> finishCommandWithError(taskId, new KVRangeException.BadVersion("Version Mismatch"));
+        }
+        if (state.getType() == WaitingForMerge
+            || state.getType() == Merged
+            || state.getType() == Removed
+            || state.getType() == Purged) {
+            return () -> finishCommandWithError(taskId,
+                new KVRangeException.BadRequest("Range is in state:" + state.getType().name()));
+        }
+        try {
+            switch (command.getCommandTypeCase()) {
+                // normal commands
+                case DELETE -> {
+                    Delete delete = command.getDelete();
+                    Optional<ByteString> value = dataReader.get(delete.getKey());
+                    if (value.isPresent()) {
+                        kvWriter.delete(delete.getKey());
+                    }
+                    return () -> finishCommand(taskId, value.orElse(ByteString.EMPTY));
+                }
+                case PUT -> {
+                    Put put = command.getPut();
+                    Optional<ByteString> value = dataReader.get(put.getKey());
+                    kvWriter.put(put.getKey(), put.getValue());
+                    return () -> finishCommand(taskId, value.orElse(ByteString.EMPTY));
+                }
+                default -> {
+                    Supplier<RWCoProcOutput> outputSupplier =
+                        coProc.mutate(command.getRwCoProc(), dataReader, kvWriter);
+                    return () -> finishCommand(taskId, outputSupplier.get());
+                }
+            }
+        } catch (Throwable e) {
+            return () -> finishCommandWithError(taskId, new KVRangeException.InternalException(
+                "Failed to execute " + command.getCommandTypeCase().name(), e));
+        }
+    }
+
     private CompletableFuture<KVRangeSnapshot> install(KVRangeSnapshot snapshot, String leader) {
         if (isNotOpening()) {
             return CompletableFuture.failedFuture(
@@ -1518,7 +1658,7 @@ public class KVRangeFSM implements IKVRangeFSM {
             follower, KVRangeIdUtil.toString(id), hostStoreId, request.getSessionId(), request.getSnapshot());
         KVRangeDumpSession session = new KVRangeDumpSession(follower, request, kvRange, messenger, fsmExecutor,
             Duration.ofSeconds(opts.getSnapshotSyncIdleTimeoutSec()),
-            opts.getSnapshotSyncBytesPerSec(), metricManager::reportDump);
+            opts.getSnapshotSyncBytesPerSec(), opts.getSnapshotSyncWindowSize(), metricManager::reportDump);
         dumpSessions.put(request.getSessionId(), session);
         session.awaitDone().whenComplete((v, e) -> dumpSessions.remove(request.getSessionId(), session));
     }
@@ -13,6 +13,7 @@
 
 package com.baidu.bifromq.basekv.store.range;
 
+import com.baidu.bifromq.basehlc.HLC;
 import com.google.common.collect.Maps;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
@@ -20,29 +21,114 @@ import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
 import java.util.function.Supplier;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * The linearizer of queries. Besides the read index approach, there are two shortcuts avoiding the read index round
+ * trip:
+ * <ul>
+ *     <li>leader lease read: once a read index is confirmed while holding the leader lease, the following queries are
+ *     linearized by the local commit index until the leadership changes</li>
+ *     <li>bounded staleness read: the queries explicitly allowing staleness are served locally by any replica as long
+ *     as the local data is fresher than the bound, which is measured by the HLC time when the last applied read index
+ *     was requested</li>
+ * </ul>
+ */
 @Slf4j
 class KVRangeQueryLinearizer implements IKVRangeQueryLinearizer {
     private final ConcurrentMap<CompletableFuture<Long>, CompletableFuture<Void>> readIndexes = Maps.newConcurrentMap();
     private final ConcurrentLinkedDeque<ToLinearize> toBeLinearized = new ConcurrentLinkedDeque<>();
     private final Supplier<CompletableFuture<Long>> readIndexProvider;
+    private final BooleanSupplier leaseHolder;
     private final Executor executor;
     private final AtomicBoolean linearizing = new AtomicBoolean();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    // increased whenever the leadership may change
+    private final AtomicLong leaseEpoch = new AtomicLong();
+    // the lease epoch in which read index has been confirmed while holding the lease
+    private volatile long confirmedLeaseEpoch = -1;
+    private volatile long lastCommittedIndex = 0;
     private volatile long lastAppliedIndex = 0;
+    // the HLC time when the read index applied most recently was requested
+    private volatile long freshHLC = 0;
 
     KVRangeQueryLinearizer(Supplier<CompletableFuture<Long>> readIndexProvider, Executor executor,
                            long lastAppliedIndex) {
+        this(readIndexProvider, () -> false, executor, lastAppliedIndex);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param readIndexProvider the provider of read index
+     * @param leaseHolder       if the local replica is the leader holding the lease
+     * @param executor          the executor
+     * @param lastAppliedIndex  the last applied index
+     */
+    KVRangeQueryLinearizer(Supplier<CompletableFuture<Long>> readIndexProvider,
+                           BooleanSupplier leaseHolder,
+                           Executor executor,
+                           long lastAppliedIndex) {
         this.readIndexProvider = readIndexProvider;
+        this.leaseHolder = leaseHolder;
         this.executor = executor;
         this.lastAppliedIndex = lastAppliedIndex;
+        this.lastCommittedIndex = lastAppliedIndex;
     }
 
     @Override
-    public CompletionStage<Void> linearize() {
+    public CompletionStage<Void> linearize(long maxStaleMillis) {
+        long epoch = leaseEpoch.get();
+        if (leaseHolder.getAsBoolean() && confirmedLeaseEpoch == epoch) {
+            // no other leader could commit logs during the lease
+            return waitForApplied(lastCommittedIndex, 0);
+        }
+        if (maxStaleMillis > 0) {
+            long staleness = HLC.INST.getPhysical() - HLC.INST.getPhysical(freshHLC);
+            if (staleness <= maxStaleMillis) {
+                if (staleness > maxStaleMillis / 2) {
+                    // refresh in background before it's too stale
+                    refresh();
+                }
+                return CompletableFuture.completedFuture(null);
+            }
+        }
+        return readIndex(epoch);
+    }
+
+    @Override
+    public void afterLogApplied(long logIndex) {
+        if (logIndex >= lastAppliedIndex) {
+            lastAppliedIndex = logIndex;
+            schedule();
+        }
+    }
+
+    /**
+     * Track the commit index observed locally.
+     *
+     * @param commitIndex the commit index
+     */
+    void afterCommitted(long commitIndex) {
+        if (commitIndex > lastCommittedIndex) {
+            lastCommittedIndex = commitIndex;
+        }
+    }
+
+    /**
+     * Invalidate the confirmed leader lease, it will be confirmed again by next read index.
+     */
+    void resetLease() {
+        leaseEpoch.incrementAndGet();
+    }
+
+    private CompletableFuture<Void> readIndex(long epoch) {
         CompletableFuture<Void> onDone = new CompletableFuture<>();
+        long requestHLC = HLC.INST.get();
         CompletableFuture<Long> readIndex = readIndexProvider.get();
         readIndexes.put(readIndex, onDone);
         readIndex.whenCompleteAsync((ri, e) -> {
@@ -50,12 +136,17 @@ class KVRangeQueryLinearizer implements IKVRangeQueryLinearizer {
                 log.debug("failed to get readIndex", e);
                 readIndexes.remove(readIndex).completeExceptionally(e);
             } else {
+                afterCommitted(ri);
+                if (leaseEpoch.get() == epoch && leaseHolder.getAsBoolean()) {
+                    confirmedLeaseEpoch = epoch;
+                }
                 if (ri <= lastAppliedIndex) {
+                    markFresh(requestHLC);
                     readIndexes.remove(readIndex).complete(null);
                 } else {
                     readIndexes.remove(readIndex, onDone);
                     if (!onDone.isDone()) {
-                        toBeLinearized.add(new ToLinearize(ri, onDone));
+                        toBeLinearized.add(new ToLinearize(ri, requestHLC, onDone));
                         schedule();
                     }
                 }
@@ -64,11 +155,25 @@ class KVRangeQueryLinearizer implements IKVRangeQueryLinearizer {
         return onDone;
     }
 
-    @Override
-    public void afterLogApplied(long logIndex) {
-        if (logIndex >= lastAppliedIndex) {
-            lastAppliedIndex = logIndex;
-            schedule();
+    private CompletableFuture<Void> waitForApplied(long index, long requestHLC) {
+        if (index <= lastAppliedIndex) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> onDone = new CompletableFuture<>();
+        toBeLinearized.add(new ToLinearize(index, requestHLC, onDone));
+        schedule();
+        return onDone;
+    }
+
+    private void refresh() {
+        if (refreshing.compareAndSet(false, true)) {
+            readIndex(leaseEpoch.get()).whenComplete((v, e) -> refreshing.set(false));
+        }
+    }
+
+    private void markFresh(long requestHLC) {
+        if (requestHLC > freshHLC) {
+            freshHLC = requestHLC;
         }
     }
 
@@ -82,6 +187,7 @@ class KVRangeQueryLinearizer implements IKVRangeQueryLinearizer {
         ToLinearize toLinearize;
         while ((toLinearize = toBeLinearized.poll()) != null) {
             if (toLinearize.readIndex <= lastAppliedIndex) {
+                markFresh(toLinearize.requestHLC);
                 toLinearize.onDone.complete(null);
             } else {
                 // put it back
@@ -98,6 +204,8 @@ class KVRangeQueryLinearizer implements IKVRangeQueryLinearizer {
     @AllArgsConstructor
     private static class ToLinearize {
         final long readIndex;
+        // the HLC time when the read index was requested, 0 if not applicable
+        final long requestHLC;
         final CompletableFuture<Void> onDone;
     }
 }
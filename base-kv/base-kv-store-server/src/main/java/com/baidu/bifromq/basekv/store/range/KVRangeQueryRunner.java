@@ -64,18 +64,20 @@ class KVRangeQueryRunner implements IKVRangeQueryRunner {
 
     // Execute a ROCommand
     @Override
-    public CompletableFuture<Boolean> exist(long ver, ByteString key, boolean linearized) {
-        return submit(ver, rangeReader -> completedFuture(rangeReader.exist(key)), linearized);
+    public CompletableFuture<Boolean> exist(long ver, ByteString key, boolean linearized, long maxStaleMillis) {
+        return submit(ver, rangeReader -> completedFuture(rangeReader.exist(key)), linearized, maxStaleMillis);
     }
 
 
     @Override
-    public CompletableFuture<Optional<ByteString>> get(long ver, ByteString key, boolean linearized) {
-        return submit(ver, rangeReader -> completedFuture(rangeReader.get(key)), linearized);
+    public CompletableFuture<Optional<ByteString>> get(long ver, ByteString key, boolean linearized,
+                                                       long maxStaleMillis) {
+        return submit(ver, rangeReader -> completedFuture(rangeReader.get(key)), linearized, maxStaleMillis);
     }
 
     @Override
-    public CompletableFuture<ROCoProcOutput> queryCoProc(long ver, ROCoProcInput query, boolean linearized) {
+    public CompletableFuture<ROCoProcOutput> queryCoProc(long ver, ROCoProcInput query, boolean linearized,
+                                                         long maxStaleMillis) {
         return submit(ver, rangeReader -> {
             IKVLoadRecorder loadRecorder = new KVLoadRecorder();
             IKVReader loadRecordableReader = new LoadRecordableKVReader(rangeReader, loadRecorder);
@@ -88,7 +90,7 @@ class KVRangeQueryRunner implements IKVRangeQueryRunner {
                         log.error("Failed to reset hinter and coProc", t);
                     }
                 });
-        }, linearized);
+        }, linearized, maxStaleMillis);
     }
 
     // Close the executor, the returned future will be completed when running commands finished and pending tasks
@@ -100,7 +102,8 @@ class KVRangeQueryRunner implements IKVRangeQueryRunner {
     }
 
     private <ReqT, ResultT> CompletableFuture<ResultT> submit(long ver, QueryFunction<ReqT, ResultT> queryFn,
-                                                              boolean linearized) {
+                                                              boolean linearized,
+                                                              long maxStaleMillis) {
         CompletableFuture<ResultT> onDone = new CompletableFuture<>();
         runningQueries.add(onDone);
         Runnable queryTask = () -> {
@@ -112,7 +115,7 @@ class KVRangeQueryRunner implements IKVRangeQueryRunner {
                 return;
             }
             if (linearized) {
-                linearizer.linearize()
+                linearizer.linearize(maxStaleMillis)
                     .thenComposeAsync(v -> doQuery(ver, queryFn), executor)
                     .whenCompleteAsync((r, e) -> {
                         if (e != null) {
@@ -23,6 +23,7 @@ import com.baidu.bifromq.basekv.store.exception.KVRangeStoreException;
 import com.baidu.bifromq.basekv.utils.KVRangeIdUtil;
 import io.reactivex.rxjava3.annotations.NonNull;
 import io.reactivex.rxjava3.observers.DisposableObserver;
+import java.util.TreeMap;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
@@ -93,46 +94,29 @@ class KVRangeRestorer {
                             m.getSaveSnapshotDataRequest().getSessionId().equals(sessionId))
                         .timeout(idleTimeSec, TimeUnit.SECONDS)
                         .subscribeWith(new DisposableObserver<KVRangeMessage>() {
+                            // the data must be saved in order, so buffer the requests arrived ahead
+                            private final TreeMap<Integer, KVRangeMessage> aheadRequests = new TreeMap<>();
+                            private int nextReqId = 0;
+
                             @Override
                             public void onNext(@NonNull KVRangeMessage m) {
                                 SaveSnapshotDataRequest request = m.getSaveSnapshotDataRequest();
                                 try {
                                     switch (request.getFlag()) {
                                         case More, End -> {
-                                            int bytes = 0;
-                                            for (KVPair kv : request.getKvList()) {
-                                                bytes += kv.getKey().size();
-                                                bytes += kv.getValue().size();
-                                                restorer.put(kv.getKey(), kv.getValue());
-                                            }
-                                            metricManager.reportRestore(bytes);
-                                            log.debug(
-                                                "Saved {} bytes snapshot data, send reply to {}: rangeId={}, sessionId={}",
-                                                bytes, m.getHostStoreId(), KVRangeIdUtil.toString(range.id()),
-                                                sessionId);
-                                            if (request.getFlag() == SaveSnapshotDataRequest.Flag.End) {
-                                                if (!onDone.isCancelled()) {
-                                                    restorer.done();
-                                                    dispose();
-                                                    onDone.complete(null);
-                                                    log.debug("Snapshot restored: rangeId={}, sessionId={}",
-                                                        KVRangeIdUtil.toString(range.id()), sessionId);
-                                                } else {
-                                                    restorer.abort();
-                                                    dispose();
-                                                    log.debug("Snapshot restore canceled: rangeId={}, sessionId={}",
-                                                        KVRangeIdUtil.toString(range.id()), sessionId);
+                                            if (request.getReqId() >= nextReqId) {
+                                                aheadRequests.put(request.getReqId(), m);
+                                                KVRangeMessage next;
+                                                while ((next = aheadRequests.remove(nextReqId)) != null) {
+                                                    nextReqId++;
+                                                    save(next);
                                                 }
                                             }
-                                            messenger.send(KVRangeMessage.newBuilder()
-                                                .setRangeId(range.id())
-                                                .setHostStoreId(m.getHostStoreId())
-                                                .setSaveSnapshotDataReply(SaveSnapshotDataReply.newBuilder()
-                                                    .setReqId(request.getReqId())
-                                                    .setSessionId(request.getSessionId())
-                                                    .setResult(SaveSnapshotDataReply.Result.OK)
-                                                    .build())
-                                                .build());
+                                            // acknowledge each received request, except for the end request which
+                                            // will be acknowledged after all data saved
+                                            if (request.getFlag() == SaveSnapshotDataRequest.Flag.More) {
+                                                reply(m, SaveSnapshotDataReply.Result.OK);
+                                            }
                                         }
                                         case Error -> throw new KVRangeStoreException("Snapshot dump failed");
                                     }
@@ -140,18 +124,50 @@ class KVRangeRestorer {
                                     log.error("Snapshot restored failed: rangeId={}, sessionId={}",
                                         KVRangeIdUtil.toString(range.id()), sessionId, t);
                                     onError(t);
-                                    messenger.send(KVRangeMessage.newBuilder()
-                                        .setRangeId(range.id())
-                                        .setHostStoreId(m.getHostStoreId())
-                                        .setSaveSnapshotDataReply(SaveSnapshotDataReply.newBuilder()
-                                            .setReqId(request.getReqId())
-                                            .setSessionId(request.getSessionId())
-                                            .setResult(SaveSnapshotDataReply.Result.Error)
-                                            .build())
-                                        .build());
+                                    reply(m, SaveSnapshotDataReply.Result.Error);
                                 }
                             }
 
+                            private void save(KVRangeMessage m) {
+                                SaveSnapshotDataRequest request = m.getSaveSnapshotDataRequest();
+                                int bytes = 0;
+                                for (KVPair kv : request.getKvList()) {
+                                    bytes += kv.getKey().size();
+                                    bytes += kv.getValue().size();
+                                    restorer.put(kv.getKey(), kv.getValue());
+                                }
+                                metricManager.reportRestore(bytes);
+                                log.debug("Saved {} bytes snapshot data from {}: rangeId={}, sessionId={}",
+                                    bytes, m.getHostStoreId(), KVRangeIdUtil.toString(range.id()), sessionId);
+                                if (request.getFlag() == SaveSnapshotDataRequest.Flag.End) {
+                                    if (!onDone.isCancelled()) {
+                                        restorer.done();
+                                        dispose();
+                                        onDone.complete(null);
+                                        log.debug("Snapshot restored: rangeId={}, sessionId={}",
+                                            KVRangeIdUtil.toString(range.id()), sessionId);
+                                    } else {
+                                        restorer.abort();
+                                        dispose();
+                                        log.debug("Snapshot restore canceled: rangeId={}, sessionId={}",
+                                            KVRangeIdUtil.toString(range.id()), sessionId);
+                                    }
+                                    reply(m, SaveSnapshotDataReply.Result.OK);
+                                }
+                            }
+
+                            private void reply(KVRangeMessage m, SaveSnapshotDataReply.Result result) {
+                                messenger.send(KVRangeMessage.newBuilder()
+                                    .setRangeId(range.id())
+                                    .setHostStoreId(m.getHostStoreId())
+                                    .setSaveSnapshotDataReply(SaveSnapshotDataReply.newBuilder()
+                                        .setReqId(m.getSaveSnapshotDataRequest().getReqId())
+                                        .setSessionId(m.getSaveSnapshotDataRequest().getSessionId())
+                                        .setResult(result)
+                                        .build())
+                                    .build());
+                            }
+
                             @Override
                             public void onError(@NonNull Throwable e) {
                                 restorer.abort();
@@ -28,6 +28,7 @@ public class KVReader implements IKVReader {
     private final IKVSpaceReader kvSpace;
     private final IKVRangeReader kvRangeReader;
     private volatile IKVSpaceIterator kvSpaceIterator;
+    private volatile IKVSpaceIterator zeroCopyKVSpaceIterator;
 
     KVReader(IKVSpaceReader kvSpace, IKVRangeReader reader) {
         this.kvSpace = kvSpace;
@@ -62,9 +63,27 @@ public class KVReader implements IKVReader {
         return new KVIterator(getKvSpaceIterator());
     }
 
+    @Override
+    public IKVIterator zeroCopyIterator() {
+        return new KVIterator(getZeroCopyKvSpaceIterator());
+    }
+
     @Override
     public void refresh() {
         getKvSpaceIterator().refresh();
+        if (zeroCopyKVSpaceIterator != null) {
+            zeroCopyKVSpaceIterator.refresh();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (kvSpaceIterator != null) {
+            kvSpaceIterator.close();
+        }
+        if (zeroCopyKVSpaceIterator != null) {
+            zeroCopyKVSpaceIterator.close();
+        }
     }
 
     private IKVSpaceIterator getKvSpaceIterator() {
@@ -77,4 +96,15 @@ public class KVReader implements IKVReader {
         }
         return kvSpaceIterator;
     }
+
+    private IKVSpaceIterator getZeroCopyKvSpaceIterator() {
+        if (zeroCopyKVSpaceIterator == null) {
+            synchronized (this) {
+                if (zeroCopyKVSpaceIterator == null) {
+                    this.zeroCopyKVSpaceIterator = kvSpace.newZeroCopyIterator(Boundary.getDefaultInstance());
+                }
+            }
+        }
+        return zeroCopyKVSpaceIterator;
+    }
 }
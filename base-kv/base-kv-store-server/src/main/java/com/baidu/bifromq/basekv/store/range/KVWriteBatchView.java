@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.basekv.store.range;
+
+import static com.baidu.bifromq.basekv.utils.BoundaryUtil.inRange;
+import static com.google.protobuf.ByteString.unsignedLexicographicalComparator;
+
+import com.baidu.bifromq.basekv.proto.Boundary;
+import com.baidu.bifromq.basekv.store.api.IKVIterator;
+import com.baidu.bifromq.basekv.store.api.IKVReader;
+import com.baidu.bifromq.basekv.store.api.IKVWriter;
+import com.google.protobuf.ByteString;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * The read-your-writes view of the changes buffered in an uncommitted write batch. The changes are written through to
+ * the underlying writer, and the reader sees them on top of the committed data.
+ */
+class KVWriteBatchView {
+    // null value means deleted
+    private final NavigableMap<ByteString, ByteString> changes = new TreeMap<>(unsignedLexicographicalComparator());
+    private final List<Boundary> clearedBoundaries = new ArrayList<>();
+    private final IKVReader reader;
+    private final IKVWriter writer;
+
+    KVWriteBatchView(IKVReader committedReader, IKVWriter batchWriter) {
+        this.reader = new Reader(committedReader);
+        this.writer = new Writer(batchWriter);
+    }
+
+    IKVReader reader() {
+        return reader;
+    }
+
+    IKVWriter writer() {
+        return writer;
+    }
+
+    private static boolean isCleared(ByteString key, List<Boundary> clearedBoundaries) {
+        for (Boundary boundary : clearedBoundaries) {
+            if (inRange(key, boundary)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private class Writer implements IKVWriter {
+        private final IKVWriter delegate;
+
+        Writer(IKVWriter delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void delete(ByteString key) {
+            delegate.delete(key);
+            changes.put(key, null);
+        }
+
+        @Override
+        public void clear(Boundary boundary) {
+            delegate.clear(boundary);
+            changes.keySet().removeIf(key -> inRange(key, boundary));
+            clearedBoundaries.add(boundary);
+        }
+
+        @Override
+        public void insert(ByteString key, ByteString value) {
+            delegate.insert(key, value);
+            changes.put(key, value);
+        }
+
+        @Override
+        public void put(ByteString key, ByteString value) {
+            delegate.put(key, value);
+            changes.put(key, value);
+        }
+    }
+
+    private class Reader implements IKVReader {
+        private final IKVReader delegate;
+
+        Reader(IKVReader delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Boundary boundary() {
+            return delegate.boundary();
+        }
+
+        @Override
+        public long size(Boundary boundary) {
+            // approximate size of committed data is good enough
+            return delegate.size(boundary);
+        }
+
+        @Override
+        public boolean exist(ByteString key) {
+            return get(key).isPresent();
+        }
+
+        @Override
+        public Optional<ByteString> get(ByteString key) {
+            if (changes.containsKey(key)) {
+                return Optional.ofNullable(changes.get(key));
+            }
+            if (isCleared(key, clearedBoundaries)) {
+                return Optional.empty();
+            }
+            return delegate.get(key);
+        }
+
+        @Override
+        public IKVIterator iterator() {
+            return changes.isEmpty() && clearedBoundaries.isEmpty()
+                ? delegate.iterator() : new MergedIterator(delegate.iterator());
+        }
+
+        @Override
+        public IKVIterator zeroCopyIterator() {
+            return changes.isEmpty() && clearedBoundaries.isEmpty()
+                ? delegate.zeroCopyIterator() : new MergedIterator(delegate.zeroCopyIterator());
+        }
+
+        @Override
+        public void refresh() {
+            delegate.refresh();
+        }
+    }
+
+    /**
+     * Merge the changes in the batch with the committed data, the iterator is not aware of the changes made after
+     * its creation.
+     */
+    private class MergedIterator implements IKVIterator {
+        private final IKVIterator committed;
+        private final NavigableMap<ByteString, ByteString> changed;
+        private final NavigableMap<ByteString, ByteString> buffered;
+        private final List<Boundary> cleared;
+        private Map.Entry<ByteString, ByteString> bufferedEntry;
+        private boolean forward = true;
+
+        MergedIterator(IKVIterator committed) {
+            this.committed = committed;
+            this.changed = new TreeMap<>(changes);
+            this.buffered = new TreeMap<>(changes);
+            this.buffered.values().removeIf(Objects::isNull);
+            this.cleared = new ArrayList<>(clearedBoundaries);
+        }
+
+        @Override
+        public ByteString key() {
+            return fromBuffered() ? bufferedEntry.getKey() : committed.key();
+        }
+
+        @Override
+        public ByteString value() {
+            return fromBuffered() ? bufferedEntry.getValue() : committed.value();
+        }
+
+        @Override
+        public boolean isValid() {
+            return bufferedEntry != null || committed.isValid();
+        }
+
+        @Override
+        public void next() {
+            if (!forward) {
+                // the zero-copy key of committed iterator is invalidated after seeking
+                ByteString current = ByteString.copyFrom(key().toByteArray());
+                committed.seek(current);
+                skipShadowedForward();
+                bufferedEntry = buffered.ceilingEntry(current);
+                forward = true;
+            }
+            if (fromBuffered()) {
+                bufferedEntry = buffered.higherEntry(bufferedEntry.getKey());
+            } else {
+                committed.next();
+                skipShadowedForward();
+            }
+        }
+
+        @Override
+        public void prev() {
+            if (forward) {
+                // the zero-copy key of committed iterator is invalidated after seeking
+                ByteString current = ByteString.copyFrom(key().toByteArray());
+                committed.seekForPrev(current);
+                skipShadowedBackward();
+                bufferedEntry = buffered.floorEntry(current);
+                forward = false;
+            }
+            if (fromBuffered()) {
+                bufferedEntry = buffered.lowerEntry(bufferedEntry.getKey());
+            } else {
+                committed.prev();
+                skipShadowedBackward();
+            }
+        }
+
+        @Override
+        public void seekToFirst() {
+            committed.seekToFirst();
+            skipShadowedForward();
+            bufferedEntry = buffered.firstEntry();
+            forward = true;
+        }
+
+        @Override
+        public void seekToLast() {
+            committed.seekToLast();
+            skipShadowedBackward();
+            bufferedEntry = buffered.lastEntry();
+            forward = false;
+        }
+
+        @Override
+        public void seek(ByteString key) {
+            committed.seek(key);
+            skipShadowedForward();
+            bufferedEntry = buffered.ceilingEntry(key);
+            forward = true;
+        }
+
+        @Override
+        public void seekForPrev(ByteString key) {
+            committed.seekForPrev(key);
+            skipShadowedBackward();
+            bufferedEntry = buffered.floorEntry(key);
+            forward = false;
+        }
+
+        // whether current entry comes from the batch, the shadowed committed keys never equal to buffered ones
+        private boolean fromBuffered() {
+            if (bufferedEntry == null) {
+                return false;
+            }
+            if (!committed.isValid()) {
+                return true;
+            }
+            int c = unsignedLexicographicalComparator().compare(bufferedEntry.getKey(), committed.key());
+            return forward ? c < 0 : c > 0;
+        }
+
+        // the committed key is shadowed if it's changed or cleared in the batch
+        private boolean isShadowed(ByteString key) {
+            return changed.containsKey(key) || isCleared(key, cleared);
+        }
+
+        private void skipShadowedForward() {
+            while (committed.isValid() && isShadowed(committed.key())) {
+                committed.next();
+            }
+        }
+
+        private void skipShadowedBackward() {
+            while (committed.isValid() && isShadowed(committed.key())) {
+                committed.prev();
+            }
+        }
+    }
+}
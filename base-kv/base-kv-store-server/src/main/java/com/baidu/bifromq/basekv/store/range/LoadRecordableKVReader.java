@@ -59,6 +59,11 @@ class LoadRecordableKVReader implements IKVReader {
         return new LoadRecordableKVIterator(delegate.iterator(), recorder);
     }
 
+    @Override
+    public IKVIterator zeroCopyIterator() {
+        return new LoadRecordableKVIterator(delegate.zeroCopyIterator(), recorder);
+    }
+
     @Override
     public void refresh() {
         long start = System.nanoTime();
@@ -0,0 +1,339 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.basekv.store.wal;
+
+import com.baidu.bifromq.basekv.raft.proto.LogEntry;
+import com.baidu.bifromq.basekv.store.exception.KVRangeStoreException;
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32C;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A memory-mapped, append-only file holding consecutive log entries starting from the base index. Each record is laid
+ * out as:
+ * <pre>
+ * | length(int) | crc32c(int) | index(long) | flags(byte) | LogEntry bytes |
+ * </pre>
+ * The zero-filled space after the last record marks the end of the segment.
+ *
+ * <p>The mapped memory is released explicitly when the segment is closed or deleted instead of waiting for GC, so
+ * reading a closed segment fails rather than touching the unmapped memory.
+ */
+@Slf4j
+class FileWALSegment {
+    static final String SUFFIX = ".log";
+    private static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES + Long.BYTES + 1;
+    private static final byte FLAG_CONFIG = 0x01;
+    private static final byte[] ZEROS = new byte[4096];
+    // Unsafe.invokeCleaner(ByteBuffer), which releases the mapped memory immediately
+    private static final MethodHandle UNMAPPER;
+
+    static {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            UNMAPPER = MethodHandles.lookup()
+                .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                .bindTo(field.get(null));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    final int epoch;
+    final long baseIndex;
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    // guard the mapped memory from being unmapped while accessing
+    private final ReadWriteLock unmapLock = new ReentrantReadWriteLock();
+    // the start position of each record, the array is replaced when growing
+    private volatile int[] offsets = new int[1024];
+    private volatile int count;
+    private volatile int writePos;
+    private boolean closed;
+
+    private FileWALSegment(int epoch, long baseIndex, Path path, MappedByteBuffer buffer) {
+        this.epoch = epoch;
+        this.baseIndex = baseIndex;
+        this.path = path;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Create a new segment file.
+     *
+     * @param dir       the dir of the segment file
+     * @param epoch     the log epoch which is bumped when the whole log is discarded
+     * @param baseIndex the index of the first log entry in the segment
+     * @param capacity  the size of the segment file
+     * @return the created segment
+     */
+    static FileWALSegment create(Path dir, int epoch, long baseIndex, int capacity) {
+        Path path = dir.resolve(fileName(epoch, baseIndex));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+            FileWALSegment segment =
+                new FileWALSegment(epoch, baseIndex, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity));
+            // persist the dir entry, otherwise the forced records may be lost along with the file after power loss
+            syncDir(dir);
+            return segment;
+        } catch (IOException e) {
+            throw new KVRangeStoreException("Failed to create segment: " + path, e);
+        }
+    }
+
+    /**
+     * Force the entries of the dir to disk, so that the files created or renamed in it survive power loss.
+     *
+     * @param dir the dir
+     */
+    static void syncDir(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            throw new KVRangeStoreException("Failed to sync dir: " + dir, e);
+        }
+    }
+
+    /**
+     * Open an existing segment file, the records are verified and the torn tail is discarded.
+     *
+     * @param path           the path of the segment file
+     * @param configConsumer the consumer of the config entries found in the segment
+     * @return the opened segment
+     */
+    static FileWALSegment open(Path path, BiConsumer<Long, LogEntry> configConsumer) {
+        String fileName = path.getFileName().toString();
+        String[] parts = fileName.substring(0, fileName.length() - SUFFIX.length()).split("-");
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            FileWALSegment segment = new FileWALSegment(Integer.parseInt(parts[0]), Long.parseLong(parts[1]), path,
+                channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()));
+            segment.recover(configConsumer);
+            return segment;
+        } catch (IOException | NumberFormatException e) {
+            throw new KVRangeStoreException("Failed to open segment: " + path, e);
+        }
+    }
+
+    static boolean isSegmentFile(Path path) {
+        return path.getFileName().toString().endsWith(SUFFIX);
+    }
+
+    static int recordSize(LogEntry entry) {
+        return HEADER_SIZE + entry.getSerializedSize();
+    }
+
+    /**
+     * The index of the last entry in the segment, or baseIndex - 1 if the segment is empty.
+     *
+     * @return the last index
+     */
+    long lastIndex() {
+        return baseIndex + count - 1;
+    }
+
+    int size() {
+        return writePos;
+    }
+
+    /**
+     * Append the log entry to the end of the segment.
+     *
+     * @param entry the log entry whose index must be lastIndex + 1
+     * @return false if the segment has no enough space left
+     */
+    boolean append(LogEntry entry) {
+        assert entry.getIndex() == lastIndex() + 1;
+        byte[] data = entry.toByteArray();
+        int pos = writePos;
+        if (pos + HEADER_SIZE + data.length > buffer.capacity()) {
+            return false;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(data);
+        unmapLock.readLock().lock();
+        try {
+            ensureOpen();
+            buffer.putInt(pos + Integer.BYTES, (int) crc.getValue());
+            buffer.putLong(pos + Integer.BYTES * 2, entry.getIndex());
+            buffer.put(pos + Integer.BYTES * 2 + Long.BYTES, entry.hasConfig() ? FLAG_CONFIG : 0);
+            buffer.put(pos + HEADER_SIZE, data);
+            // write length at last, so the record is visible only after it has been written completely
+            buffer.putInt(pos, data.length);
+        } finally {
+            unmapLock.readLock().unlock();
+        }
+        addOffset(pos);
+        writePos = pos + HEADER_SIZE + data.length;
+        return true;
+    }
+
+    /**
+     * Read the log entry at given index.
+     *
+     * @param index the index in [baseIndex, lastIndex]
+     * @return the log entry
+     */
+    LogEntry read(long index) {
+        // read count first, so the offset written before it is visible
+        int i = (int) (index - baseIndex);
+        if (i < 0 || i >= count) {
+            throw new KVRangeStoreException("Log index[" + index + "] not in segment: " + path);
+        }
+        int pos = offsets[i];
+        unmapLock.readLock().lock();
+        try {
+            ensureOpen();
+            return LogEntry.parseFrom(buffer.slice(pos + HEADER_SIZE, buffer.getInt(pos)));
+        } catch (InvalidProtocolBufferException e) {
+            throw new KVRangeStoreException("Log data corruption", e);
+        } finally {
+            unmapLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Discard the entries from given index, the space is zero-filled and forced to disk, so the discarded records won't
+     * be recovered after restart.
+     *
+     * @param fromIndex the index in [baseIndex, lastIndex + 1]
+     */
+    void truncate(long fromIndex) {
+        int newCount = (int) (fromIndex - baseIndex);
+        if (newCount >= count) {
+            return;
+        }
+        int newWritePos = offsets[newCount];
+        unmapLock.readLock().lock();
+        try {
+            ensureOpen();
+            for (int pos = newWritePos; pos < writePos; pos += ZEROS.length) {
+                buffer.put(pos, ZEROS, 0, Math.min(ZEROS.length, writePos - pos));
+            }
+        } finally {
+            unmapLock.readLock().unlock();
+        }
+        count = newCount;
+        writePos = newWritePos;
+        force();
+    }
+
+    void force() {
+        unmapLock.readLock().lock();
+        try {
+            if (!closed) {
+                buffer.force();
+            }
+        } finally {
+            unmapLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Unmap the segment file, the segment is not accessible afterward.
+     */
+    void close() {
+        unmapLock.writeLock().lock();
+        try {
+            if (!closed) {
+                closed = true;
+                UNMAPPER.invokeExact((ByteBuffer) buffer);
+            }
+        } catch (Throwable e) {
+            log.warn("Failed to unmap segment: {}", path, e);
+        } finally {
+            unmapLock.writeLock().unlock();
+        }
+    }
+
+    void delete() {
+        close();
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Failed to delete segment: {}", path, e);
+        }
+    }
+
+    private void recover(BiConsumer<Long, LogEntry> configConsumer) {
+        int pos = 0;
+        while (pos + HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(pos);
+            if (length <= 0 || pos + HEADER_SIZE + length > buffer.capacity()) {
+                break;
+            }
+            long index = buffer.getLong(pos + Integer.BYTES * 2);
+            if (index != baseIndex + count) {
+                break;
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.slice(pos + HEADER_SIZE, length));
+            if ((int) crc.getValue() != buffer.getInt(pos + Integer.BYTES)) {
+                break;
+            }
+            addOffset(pos);
+            writePos = pos + HEADER_SIZE + length;
+            if ((buffer.get(pos + Integer.BYTES * 2 + Long.BYTES) & FLAG_CONFIG) != 0) {
+                configConsumer.accept(index, read(index));
+            }
+            pos = writePos;
+        }
+        if (pos + Integer.BYTES <= buffer.capacity() && buffer.getInt(pos) != 0) {
+            log.warn("Discard torn records after index[{}]: segment={}", lastIndex(), path);
+            // zero-fill the rest, so the stale records won't be recovered after appending new ones
+            for (; pos < buffer.capacity(); pos += ZEROS.length) {
+                buffer.put(pos, ZEROS, 0, Math.min(ZEROS.length, buffer.capacity() - pos));
+            }
+            force();
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new KVRangeStoreException("Segment has been closed: " + path);
+        }
+    }
+
+    private void addOffset(int pos) {
+        int[] current = offsets;
+        if (count == current.length) {
+            current = Arrays.copyOf(current, count * 2);
+        }
+        current[count] = pos;
+        offsets = current;
+        // bump count at last, so the offset is visible to the reader seeing the new count
+        count++;
+    }
+
+    private static String fileName(int epoch, long baseIndex) {
+        return String.format("%010d-%020d%s", epoch, baseIndex, SUFFIX);
+    }
+}
@@ -0,0 +1,492 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.basekv.store.wal;
+
+import static java.lang.String.format;
+
+import com.baidu.bifromq.basekv.proto.KVRangeId;
+import com.baidu.bifromq.basekv.raft.proto.ClusterConfig;
+import com.baidu.bifromq.basekv.raft.proto.LogEntry;
+import com.baidu.bifromq.basekv.raft.proto.Snapshot;
+import com.baidu.bifromq.basekv.raft.proto.Voting;
+import com.baidu.bifromq.basekv.store.exception.KVRangeStoreException;
+import com.baidu.bifromq.basekv.utils.KVRangeIdUtil;
+import com.google.common.collect.Maps;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The raft state store keeping log entries in a sequence of memory-mapped segment files. Truncating the log prefix
+ * is done by deleting the segments, and the whole log is discarded by bumping the log epoch.
+ */
+@Slf4j
+class FileWALStore implements IKVRangeWALStore {
+    private static final StableListener DEFAULT_STABLE_LISTENER = stabledIndex -> {
+    };
+    private static final String META_FILE = "META";
+    private static final String META_TMP_FILE = "META.tmp";
+    private final String storeId;
+    private final KVRangeId rangeId;
+    private final Path dir;
+    private final int segmentSize;
+    private final Executor flushExecutor;
+    private final Consumer<FileWALStore> onDestroy;
+    // key: base index of the segment
+    private final ConcurrentSkipListMap<Long, FileWALSegment> segments = new ConcurrentSkipListMap<>();
+    private final TreeMap<Long, ClusterConfig> configEntryMap = Maps.newTreeMap();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final Object flushLock = new Object();
+    private long currentTerm = 0;
+    private Voting currentVoting;
+    private Snapshot latestSnapshot;
+    private int logEpoch;
+    private volatile long lastIndex;
+    // guarded by flushLock
+    private long stabledIndex;
+    private volatile StableListener stableListener = DEFAULT_STABLE_LISTENER;
+
+    FileWALStore(String storeId,
+                 KVRangeId rangeId,
+                 Path dir,
+                 int segmentSize,
+                 Executor flushExecutor,
+                 Consumer<FileWALStore> onDestroy) {
+        this.storeId = storeId;
+        this.rangeId = rangeId;
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.flushExecutor = flushExecutor;
+        this.onDestroy = onDestroy;
+        load();
+    }
+
+    /**
+     * Initialize the dir of a new store.
+     *
+     * @param dir          the dir of the store
+     * @param initSnapshot the initial snapshot
+     */
+    static void init(Path dir, Snapshot initSnapshot) {
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            throw new KVRangeStoreException("Failed to create wal dir: " + dir, e);
+        }
+        if (dir.getParent() != null) {
+            FileWALSegment.syncDir(dir.getParent());
+        }
+        saveMeta(dir, 0, null, initSnapshot, 0);
+    }
+
+    static boolean isInitialized(Path dir) {
+        return Files.exists(dir.resolve(META_FILE));
+    }
+
+    @Override
+    public String local() {
+        return storeId;
+    }
+
+    @Override
+    public Optional<Voting> currentVoting() {
+        return Optional.ofNullable(currentVoting);
+    }
+
+    @Override
+    public void saveVoting(Voting voting) {
+        trace("Save voting: {}", voting);
+        saveMeta(dir, currentTerm, voting, latestSnapshot, logEpoch);
+        currentVoting = voting;
+    }
+
+    @Override
+    public long currentTerm() {
+        return currentTerm;
+    }
+
+    @Override
+    public void saveTerm(long term) {
+        trace("Save term: {}", term);
+        saveMeta(dir, term, currentVoting, latestSnapshot, logEpoch);
+        currentTerm = term;
+    }
+
+    @Override
+    public ClusterConfig latestClusterConfig() {
+        if (configEntryMap.isEmpty()) {
+            return latestSnapshot.getClusterConfig();
+        } else {
+            return configEntryMap.lastEntry().getValue();
+        }
+    }
+
+    @Override
+    public void applySnapshot(Snapshot snapshot) {
+        long snapLastIndex = snapshot.getIndex();
+        long snapLastTerm = snapshot.getTerm();
+        Optional<LogEntry> lastEntryInSS = entryAt(snapLastIndex);
+        log.debug("Compact logs using snapshot[term={}, index={}]: rangeId={}, storeId={}",
+            snapLastTerm, snapLastIndex, KVRangeIdUtil.toString(rangeId), storeId);
+        if ((lastEntryInSS.isPresent() && lastEntryInSS.get().getTerm() == snapLastTerm)
+            || (lastEntryInSS.isEmpty() && latestSnapshot != null && latestSnapshot.getIndex() == snapLastIndex
+            && latestSnapshot.getTerm() == snapLastTerm)) {
+            // the snapshot represents partial history, it happens when compacting
+            saveMeta(dir, currentTerm, currentVoting, snapshot, logEpoch);
+            latestSnapshot = snapshot;
+            lastIndex = Math.max(lastIndex, snapLastIndex);
+
+            long truncateBeforeIndex = Math.min(lastIndex, snapLastIndex) + 1;
+            configEntryMap.headMap(truncateBeforeIndex).clear();
+            // delete the segments whose entries are all compacted, the last one is kept for appending
+            synchronized (flushLock) {
+                Map.Entry<Long, FileWALSegment> first;
+                while ((first = segments.firstEntry()) != null && first.getValue() != segments.lastEntry().getValue()
+                    && segments.higherKey(first.getKey()) <= truncateBeforeIndex) {
+                    segments.remove(first.getKey()).delete();
+                }
+            }
+            log.debug("Logs truncated before index[{}]: rangeId={}, storeId={}",
+                truncateBeforeIndex, KVRangeIdUtil.toString(rangeId), storeId);
+        } else {
+            // the snapshot represents a different history, it happens when installing snapshot from leader
+            // the segments of previous epoch are ignored once the new epoch is saved
+            saveMeta(dir, currentTerm, currentVoting, snapshot, logEpoch + 1);
+            latestSnapshot = snapshot;
+            logEpoch = logEpoch + 1;
+            configEntryMap.clear();
+            synchronized (flushLock) {
+                lastIndex = snapLastIndex;
+                // all previous index is stable after meta saved
+                stabledIndex = snapLastIndex;
+                segments.values().forEach(FileWALSegment::delete);
+                segments.clear();
+            }
+            log.debug("All logs of truncated: rangeId={}, storeId={}", KVRangeIdUtil.toString(rangeId), storeId);
+        }
+    }
+
+    @Override
+    public Snapshot latestSnapshot() {
+        return latestSnapshot;
+    }
+
+    @Override
+    public long firstIndex() {
+        return latestSnapshot.getIndex() + 1;
+    }
+
+    @Override
+    public long lastIndex() {
+        return lastIndex;
+    }
+
+    @Override
+    public Optional<LogEntry> entryAt(long index) {
+        if (index < firstIndex() || index > lastIndex()) {
+            return Optional.empty();
+        }
+        Map.Entry<Long, FileWALSegment> segment = segments.floorEntry(index);
+        if (segment == null) {
+            // the segments have been deleted concurrently
+            return Optional.empty();
+        }
+        return Optional.of(segment.getValue().read(index));
+    }
+
+    @Override
+    public Iterator<LogEntry> entries(long lo, long hi, long maxSize) {
+        if (lo < firstIndex()) {
+            throw new IndexOutOfBoundsException("lo[" + lo + "] must not be less than firstIndex["
+                + firstIndex() + "]");
+        }
+        if (hi > lastIndex() + 1) {
+            throw new IndexOutOfBoundsException("hi[" + hi + "] must not be greater than lastIndex["
+                + lastIndex() + "]");
+        }
+        if (maxSize < 0) {
+            maxSize = Long.MAX_VALUE;
+        }
+        return new LogEntryIterator(lo, hi, maxSize);
+    }
+
+    @Override
+    public void append(List<LogEntry> entries, boolean flush) {
+        assert !entries.isEmpty();
+        LogEntry startEntry = entries.get(0);
+        if (lastIndex() >= firstIndex()) {
+            if (firstIndex() > startEntry.getIndex() || lastIndex() + 1 < startEntry.getIndex()) {
+                throw new IndexOutOfBoundsException(format("first index[%d] must be in [%d,%d]",
+                    startEntry.getIndex(), firstIndex(), lastIndex() + 1));
+            }
+        } else {
+            if (startEntry.getIndex() != firstIndex()) {
+                throw new IndexOutOfBoundsException(format("log index must start from %d", firstIndex()));
+            }
+        }
+        long afterIndex = startEntry.getIndex() - 1;
+        configEntryMap.tailMap(afterIndex, false).clear();
+        if (afterIndex < lastIndex) {
+            truncate(afterIndex);
+        }
+        for (LogEntry entry : entries) {
+            if (entry.hasConfig()) {
+                configEntryMap.put(entry.getIndex(), entry.getConfig());
+                // force flush if log entry contains config
+                flush = true;
+            }
+            trace("Append log entry[index={}, term={}, type={}], flush? {}",
+                entry.getIndex(), entry.getTerm(), entry.getTypeCase().name(), flush);
+            Map.Entry<Long, FileWALSegment> last = segments.lastEntry();
+            if (last == null || last.getValue().lastIndex() < afterIndex || !last.getValue().append(entry)) {
+                FileWALSegment segment = FileWALSegment.create(dir, logEpoch, entry.getIndex(),
+                    Math.max(segmentSize, FileWALSegment.recordSize(entry)));
+                segments.put(entry.getIndex(), segment);
+                segment.append(entry);
+            }
+            afterIndex = entry.getIndex();
+        }
+        lastIndex = afterIndex;
+        if (flush) {
+            flush();
+        } else {
+            asyncFlush();
+        }
+    }
+
+    @Override
+    public void addStableListener(StableListener listener) {
+        stableListener = listener;
+    }
+
+    @Override
+    public void stop() {
+        log.debug("Stop range wal storage: rangeId={}, storeId={}", KVRangeIdUtil.toString(rangeId), storeId);
+        stableListener = DEFAULT_STABLE_LISTENER;
+        synchronized (flushLock) {
+            segments.values().forEach(FileWALSegment::close);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        log.debug("Destroy walStore: rangeId={}, storeId={} ", KVRangeIdUtil.toString(rangeId), storeId);
+        synchronized (flushLock) {
+            segments.values().forEach(FileWALSegment::close);
+            segments.clear();
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            log.warn("Failed to delete wal dir: {}", dir, e);
+        }
+        onDestroy.accept(this);
+    }
+
+    @Override
+    public long size() {
+        return segments.values().stream().mapToLong(FileWALSegment::size).sum();
+    }
+
+    private void truncate(long afterIndex) {
+        synchronized (flushLock) {
+            // update lastIndex together, so the concurrent flush won't report the truncated entries as stable
+            lastIndex = afterIndex;
+            // the entries after afterIndex are replaced, they should be reported as stable again
+            stabledIndex = Math.min(stabledIndex, afterIndex);
+            while (!segments.isEmpty() && segments.lastKey() > afterIndex) {
+                segments.remove(segments.lastKey()).delete();
+            }
+            Map.Entry<Long, FileWALSegment> last = segments.lastEntry();
+            if (last != null) {
+                last.getValue().truncate(afterIndex + 1);
+            }
+        }
+    }
+
+    private void flush() {
+        synchronized (flushLock) {
+            long flushIndex = lastIndex;
+            if (flushIndex <= stabledIndex) {
+                return;
+            }
+            Map.Entry<Long, FileWALSegment> from = segments.floorEntry(stabledIndex + 1);
+            (from == null ? segments : segments.tailMap(from.getKey())).values().forEach(FileWALSegment::force);
+            stabledIndex = flushIndex;
+            stableListener.onStabilized(flushIndex);
+        }
+    }
+
+    private void asyncFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            try {
+                flushExecutor.execute(() -> {
+                    // the appends from now on will be flushed in next round
+                    flushScheduled.set(false);
+                    try {
+                        flush();
+                    } catch (Throwable e) {
+                        log.warn("Flush error, try again", e);
+                        asyncFlush();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                flushScheduled.set(false);
+                log.debug("Flush executor has been shutdown: rangeId={}, storeId={}",
+                    KVRangeIdUtil.toString(rangeId), storeId);
+            }
+        }
+    }
+
+    private void load() {
+        try (DataInputStream input = new DataInputStream(Files.newInputStream(dir.resolve(META_FILE)))) {
+            currentTerm = input.readLong();
+            int votingSize = input.readInt();
+            if (votingSize >= 0) {
+                currentVoting = Voting.parseFrom(input.readNBytes(votingSize));
+            }
+            latestSnapshot = Snapshot.parseFrom(input.readNBytes(input.readInt()));
+            logEpoch = input.readInt();
+        } catch (IOException e) {
+            throw new KVRangeStoreException("Failed to load wal meta: " + dir, e);
+        }
+        loadSegments();
+        Map.Entry<Long, FileWALSegment> last = segments.lastEntry();
+        lastIndex = last == null ? latestSnapshot.getIndex() : Math.max(latestSnapshot.getIndex(),
+            last.getValue().lastIndex());
+        stabledIndex = lastIndex;
+        configEntryMap.headMap(firstIndex()).clear();
+        trace("New raft state storage loaded");
+    }
+
+    private void loadSegments() {
+        List<Path> segmentFiles;
+        try (Stream<Path> files = Files.list(dir)) {
+            segmentFiles = files.filter(FileWALSegment::isSegmentFile).sorted().toList();
+        } catch (IOException e) {
+            throw new KVRangeStoreException("Failed to list wal dir: " + dir, e);
+        }
+        for (Path segmentFile : segmentFiles) {
+            Map<Long, ClusterConfig> configEntries = Maps.newHashMap();
+            FileWALSegment segment = FileWALSegment.open(segmentFile,
+                (index, entry) -> configEntries.put(index, entry.getConfig()));
+            Map.Entry<Long, FileWALSegment> last = segments.lastEntry();
+            if (segment.epoch != logEpoch) {
+                // left by a crash before previous epoch is cleaned up
+                segment.delete();
+            } else if (last != null && last.getValue().lastIndex() + 1 != segment.baseIndex) {
+                // discontinuous segment left by a crash during truncating
+                log.warn("Discard discontinuous segment: {}", segmentFile);
+                segment.delete();
+            } else {
+                segments.put(segment.baseIndex, segment);
+                configEntryMap.putAll(configEntries);
+            }
+        }
+    }
+
+    private static void saveMeta(Path dir, long term, Voting voting, Snapshot snapshot, int logEpoch) {
+        Path tmpFile = dir.resolve(META_TMP_FILE);
+        try (FileChannel channel = FileChannel.open(tmpFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream output = Channels.newOutputStream(channel);
+            DataOutputStream dataOutput = new DataOutputStream(output);
+            dataOutput.writeLong(term);
+            if (voting != null) {
+                byte[] votingBytes = voting.toByteArray();
+                dataOutput.writeInt(votingBytes.length);
+                dataOutput.write(votingBytes);
+            } else {
+                dataOutput.writeInt(-1);
+            }
+            byte[] snapshotBytes = snapshot.toByteArray();
+            dataOutput.writeInt(snapshotBytes.length);
+            dataOutput.write(snapshotBytes);
+            dataOutput.writeInt(logEpoch);
+            dataOutput.flush();
+            channel.force(true);
+            Files.move(tmpFile, dir.resolve(META_FILE), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new KVRangeStoreException("Failed to save wal meta: " + dir, e);
+        }
+        // persist the rename
+        FileWALSegment.syncDir(dir);
+    }
+
+    private class LogEntryIterator implements Iterator<LogEntry> {
+        private final long maxIndex;
+        private final long maxSize;
+        private long currentIndex;
+        private long accumulatedSize;
+        private FileWALSegment segment;
+
+        private LogEntryIterator(long startIndex, long endIndex, long maxSize) {
+            this.currentIndex = startIndex;
+            this.maxIndex = endIndex;
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return currentIndex < maxIndex && accumulatedSize <= maxSize;
+        }
+
+        @Override
+        public LogEntry next() {
+            if (currentIndex > lastIndex) {
+                throw new NoSuchElementException();
+            }
+            if (segment == null || segment.lastIndex() < currentIndex) {
+                Map.Entry<Long, FileWALSegment> floor = segments.floorEntry(currentIndex);
+                if (floor == null) {
+                    throw new NoSuchElementException();
+                }
+                segment = floor.getValue();
+            }
+            LogEntry entry = segment.read(currentIndex);
+            accumulatedSize += entry.getData().size();
+            currentIndex++;
+            return entry;
+        }
+    }
+
+    private void trace(String msg, Object... args) {
+        if (log.isTraceEnabled()) {
+            log.trace(msg, args);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.basekv.store.wal;
+
+import com.baidu.bifromq.baseenv.EnvProvider;
+import com.baidu.bifromq.basekv.proto.KVRangeId;
+import com.baidu.bifromq.basekv.raft.proto.Snapshot;
+import com.baidu.bifromq.basekv.store.exception.KVRangeStoreException;
+import com.baidu.bifromq.basekv.utils.KVRangeIdUtil;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+import javax.annotation.concurrent.NotThreadSafe;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The WAL store engine keeping the raft log of each range in its own dir of memory-mapped segment files, the async
+ * flushes of all ranges are done by one flusher thread.
+ */
+@NotThreadSafe
+@Slf4j
+public class FileWALStoreEngine implements IKVRangeWALStoreEngine {
+    private static final String IDENTITY_FILE = "IDENTITY";
+    private static final String OVERRIDE_IDENTITY_FILE = "OVERRIDEIDENTITY";
+    private final AtomicReference<State> state = new AtomicReference<>(State.INIT);
+    private final Map<KVRangeId, FileWALStore> instances = Maps.newConcurrentMap();
+    private final Path walRootDir;
+    private final int segmentSize;
+    private final String identity;
+    private ExecutorService flushExecutor;
+
+    /**
+     * Create the engine with the identity persisted in the wal root dir.
+     *
+     * @param clusterId        the cluster id
+     * @param overrideIdentity the identity to persist when the wal root dir is created, null to generate one
+     * @param configurator     the configurator of the engine
+     */
+    public FileWALStoreEngine(String clusterId,
+                              String overrideIdentity,
+                              FileWALStoreEngineConfigurator configurator) {
+        walRootDir = Paths.get(configurator.walRootDir()).toAbsolutePath();
+        segmentSize = configurator.segmentSize();
+        identity = loadIdentity(overrideIdentity);
+    }
+
+    @Override
+    public void stop() {
+        if (state.compareAndSet(State.STARTED, State.STOPPING)) {
+            try {
+                log.debug("Stopping WALStoreEngine[{}]", identity);
+                instances.values().forEach(FileWALStore::stop);
+                flushExecutor.shutdown();
+                if (!flushExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                    log.warn("WAL flusher not terminated in time");
+                }
+                state.set(State.STOPPED);
+            } catch (Throwable e) {
+                log.warn("Failed to stop wal engine", e);
+            } finally {
+                state.set(State.TERMINATED);
+            }
+        }
+    }
+
+    @Override
+    public void start() {
+        if (state.compareAndSet(State.INIT, State.STARTING)) {
+            try {
+                flushExecutor = new ThreadPoolExecutor(1, 1,
+                    0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(),
+                    EnvProvider.INSTANCE.newThreadFactory("wal-flusher"));
+                loadExisting();
+                state.set(State.STARTED);
+            } catch (Throwable e) {
+                state.set(State.TERMINATED);
+                throw new KVRangeStoreException("Failed to start wal engine", e);
+            }
+        }
+    }
+
+    @Override
+    public Set<KVRangeId> allKVRangeIds() {
+        checkState();
+        return Sets.newHashSet(instances.keySet());
+    }
+
+    @Override
+    public String id() {
+        return identity;
+    }
+
+    @Override
+    public IKVRangeWALStore create(KVRangeId kvRangeId, Snapshot initSnapshot) {
+        checkState();
+        instances.computeIfAbsent(kvRangeId, id -> {
+            Path dir = walRootDir.resolve(KVRangeIdUtil.toString(id));
+            FileWALStore.init(dir, initSnapshot);
+            return newWALStore(id, dir);
+        });
+        return instances.get(kvRangeId);
+    }
+
+    @Override
+    public boolean has(KVRangeId kvRangeId) {
+        checkState();
+        return instances.containsKey(kvRangeId);
+    }
+
+    @Override
+    public IKVRangeWALStore get(KVRangeId kvRangeId) {
+        checkState();
+        return instances.get(kvRangeId);
+    }
+
+    private void checkState() {
+        Preconditions.checkState(state.get() == State.STARTED, "Not started");
+    }
+
+    private FileWALStore newWALStore(KVRangeId kvRangeId, Path dir) {
+        return new FileWALStore(identity, kvRangeId, dir, segmentSize, flushExecutor,
+            store -> instances.remove(kvRangeId, store));
+    }
+
+    private void loadExisting() throws IOException {
+        try (Stream<Path> dirs = Files.list(walRootDir)) {
+            for (Path dir : dirs.filter(Files::isDirectory).toList()) {
+                if (!FileWALStore.isInitialized(dir)) {
+                    // left by a crash during creating
+                    log.warn("Skip uninitialized wal dir: {}", dir);
+                    continue;
+                }
+                KVRangeId kvRangeId = KVRangeIdUtil.fromString(dir.getFileName().toString());
+                instances.put(kvRangeId, newWALStore(kvRangeId, dir));
+                log.debug("WAL loaded: kvRangeId={}", KVRangeIdUtil.toString(kvRangeId));
+            }
+        }
+    }
+
+    private String loadIdentity(String overrideIdentity) {
+        try {
+            Files.createDirectories(walRootDir);
+            Path overrideIdentityFilePath = walRootDir.resolve(OVERRIDE_IDENTITY_FILE);
+            Path identityFilePath = walRootDir.resolve(IDENTITY_FILE);
+            boolean isCreation = !Files.exists(identityFilePath);
+            if (isCreation) {
+                if (overrideIdentity != null && !overrideIdentity.trim().isEmpty()) {
+                    Files.writeString(overrideIdentityFilePath, overrideIdentity, StandardOpenOption.CREATE);
+                }
+                Files.writeString(identityFilePath, UUID.randomUUID().toString(), StandardOpenOption.CREATE);
+            }
+            if (overrideIdentityFilePath.toFile().exists()) {
+                List<String> lines = Files.readAllLines(overrideIdentityFilePath);
+                if (!lines.isEmpty()) {
+                    return lines.get(0);
+                }
+            }
+            return Files.readAllLines(identityFilePath).get(0);
+        } catch (IndexOutOfBoundsException | IOException e) {
+            throw new KVRangeStoreException("Failed to read IDENTITY file", e);
+        }
+    }
+
+    private enum State {
+        INIT, STARTING, STARTED, STOPPING, STOPPED, TERMINATED
+    }
+}
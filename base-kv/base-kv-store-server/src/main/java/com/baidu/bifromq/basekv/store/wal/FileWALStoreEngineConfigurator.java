@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.basekv.store.wal;
+
+import com.baidu.bifromq.basekv.localengine.IWALableKVEngineConfigurator;
+import java.nio.file.Paths;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+/**
+ * The configurator of {@link FileWALStoreEngine}, which keeps raft logs in memory-mapped segment files instead of
+ * RocksDB.
+ */
+@Accessors(chain = true, fluent = true)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@Builder(toBuilder = true)
+public final class FileWALStoreEngineConfigurator implements IWALableKVEngineConfigurator {
+    @Builder.Default
+    private String walRootDir = Paths.get(System.getProperty("java.io.tmpdir"), "basekv", "wal").toString();
+    // the capacity of each segment file, a larger one will be created for the log entry exceeding it
+    @Builder.Default
+    private int segmentSize = 64 * 1024 * 1024;
+}
@@ -15,6 +15,7 @@ package com.baidu.bifromq.basekv.store.wal;
 
 import com.baidu.bifromq.basekv.proto.KVRangeSnapshot;
 import com.baidu.bifromq.basekv.raft.proto.LogEntry;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 public interface IKVRangeWALSubscriber {
@@ -24,6 +25,31 @@ public interface IKVRangeWALSubscriber {
 
     CompletableFuture<Void> apply(LogEntry log);
 
+    /**
+     * Apply consecutive committed logs in batch. If the returned future fails, the same batch will be reapplied, so
+     * the logs already applied should be skipped. By default, the logs are applied one by one via
+     * {@link #apply(LogEntry)}.
+     *
+     * @param logs the logs in ascending index order
+     * @return future for the application
+     */
+    default CompletableFuture<Void> apply(List<LogEntry> logs) {
+        CompletableFuture<Void> onDone = CompletableFuture.completedFuture(null);
+        for (LogEntry log : logs) {
+            onDone = onDone.thenCompose(v -> apply(log));
+        }
+        return onDone;
+    }
+
+    /**
+     * The max number of consecutive committed logs which could be applied via {@link #apply(List)} in one call.
+     *
+     * @return the max batch size, logs are applied one by one if it's no greater than 1
+     */
+    default int maxApplyBatchSize() {
+        return 1;
+    }
+
     /**
      * Install snapshot to kv range asynchronously and the returned snapshot will be used for WAL compaction
      *
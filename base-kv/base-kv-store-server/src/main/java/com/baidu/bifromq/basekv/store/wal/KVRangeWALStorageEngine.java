@@ -22,6 +22,7 @@ import com.baidu.bifromq.basekv.localengine.KVEngineFactory;
 import com.baidu.bifromq.basekv.proto.KVRangeId;
 import com.baidu.bifromq.basekv.raft.proto.Snapshot;
 import com.baidu.bifromq.basekv.store.exception.KVRangeStoreException;
+import com.baidu.bifromq.basekv.store.option.KVRangeStoreOptions;
 import com.baidu.bifromq.basekv.utils.KVRangeIdUtil;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Maps;
@@ -41,11 +42,20 @@ public class KVRangeWALStorageEngine implements IKVRangeWALStoreEngine {
     private final AtomicReference<State> state = new AtomicReference<>(State.INIT);
     private final Map<KVRangeId, KVRangeWALStore> instances = Maps.newConcurrentMap();
     private final IKVEngine<? extends IWALableKVSpace> kvEngine;
+    private final LogEntryTailCacheBudget tailCacheBudget;
 
     public KVRangeWALStorageEngine(String clusterId,
                                    String overrideIdentity,
                                    IWALableKVEngineConfigurator configurator) {
+        this(clusterId, overrideIdentity, configurator, new KVRangeStoreOptions().getWalTailCacheBytes());
+    }
+
+    public KVRangeWALStorageEngine(String clusterId,
+                                   String overrideIdentity,
+                                   IWALableKVEngineConfigurator configurator,
+                                   long tailCacheBytes) {
         kvEngine = KVEngineFactory.createWALable(overrideIdentity, configurator);
+        this.tailCacheBudget = new LogEntryTailCacheBudget(tailCacheBytes);
     }
 
     @Override
@@ -97,7 +107,8 @@ public class KVRangeWALStorageEngine implements IKVRangeWALStoreEngine {
             kvSpace.toWriter().put(KEY_LATEST_SNAPSHOT_BYTES, initSnapshot.toByteString())
                 .done();
             kvSpace.flush().join();
-            return new KVRangeWALStore(kvEngine.id(), kvRangeId, kvSpace, store -> instances.remove(kvRangeId, store));
+            return new KVRangeWALStore(kvEngine.id(), kvRangeId, kvSpace, tailCacheBudget,
+                store -> instances.remove(kvRangeId, store));
         });
         return instances.get(kvRangeId);
     }
@@ -122,7 +133,8 @@ public class KVRangeWALStorageEngine implements IKVRangeWALStoreEngine {
         kvEngine.spaces().forEach((String id, IWALableKVSpace kvSpace) -> {
             KVRangeId kvRangeId = KVRangeIdUtil.fromString(id);
             instances.put(kvRangeId,
-                new KVRangeWALStore(kvEngine.id(), kvRangeId, kvSpace, store -> instances.remove(kvRangeId, store)));
+                new KVRangeWALStore(kvEngine.id(), kvRangeId, kvSpace, tailCacheBudget,
+                    store -> instances.remove(kvRangeId, store)));
             log.debug("WAL loaded: kvRangeId={}", KVRangeIdUtil.toString(kvRangeId));
 
         });
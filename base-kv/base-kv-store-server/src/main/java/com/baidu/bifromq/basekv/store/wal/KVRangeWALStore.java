@@ -64,6 +64,7 @@ class KVRangeWALStore implements IKVRangeWALStore {
     private final TreeMap<Long, ClusterConfig> configEntryMap = Maps.newTreeMap();
     private final Deque<StabilizingIndex> stabilizingIndices = new ConcurrentLinkedDeque<>();
     private final Consumer<KVRangeWALStore> onDestroy;
+    private final LogEntryTailCache tailCache;
     private long currentTerm = 0;
     private Voting currentVoting;
     private Snapshot latestSnapshot;
@@ -71,11 +72,16 @@ class KVRangeWALStore implements IKVRangeWALStore {
     private int logEntriesKeyInfix;
     private volatile StableListener stableListener = DEFAULT_STABLE_LISTENER;
 
-    KVRangeWALStore(String storeId, KVRangeId rangeId, IWALableKVSpace kvSpace, Consumer<KVRangeWALStore> onDestroy) {
+    KVRangeWALStore(String storeId,
+                    KVRangeId rangeId,
+                    IWALableKVSpace kvSpace,
+                    LogEntryTailCacheBudget tailCacheBudget,
+                    Consumer<KVRangeWALStore> onDestroy) {
         this.rangeId = rangeId;
         this.kvSpace = kvSpace;
         this.storeId = storeId;
         this.onDestroy = onDestroy;
+        this.tailCache = new LogEntryTailCache(tailCacheBudget);
         load();
     }
 
@@ -138,6 +144,7 @@ class KVRangeWALStore implements IKVRangeWALStore {
             lastIndex = Math.max(lastIndex, snapLastIndex);
 
             long truncateBeforeIndex = Math.min(lastIndex(), snapLastIndex) + 1;
+            tailCache.truncateBefore(truncateBeforeIndex);
             while (!configEntryMap.isEmpty()) {
                 if (configEntryMap.firstKey() <= truncateBeforeIndex) {
                     configEntryMap.pollFirstEntry();
@@ -163,7 +170,7 @@ class KVRangeWALStore implements IKVRangeWALStore {
                 }
                 writer.done();
                 // clear sub range will trigger compaction and implicit flush
-//                flushNotifier.notifyFlush();
+                // flushNotifier.notifyFlush();
             } catch (Throwable e) {
                 log.error("Unexpected error during truncating log: rangeId={}, storeId={}",
                     KVRangeIdUtil.toString(rangeId), storeId, e);
@@ -184,6 +191,7 @@ class KVRangeWALStore implements IKVRangeWALStore {
             logEntriesKeyInfix = logEntriesKeyInfix + 1;
 
             configEntryMap.clear();
+            tailCache.clear();
 
             try {
                 log.trace("Truncating all logs: rangeId={}, storeId={}", KVRangeIdUtil.toString(rangeId), storeId);
@@ -226,6 +234,10 @@ class KVRangeWALStore implements IKVRangeWALStore {
         if (index < firstIndex() || index > lastIndex()) {
             return Optional.empty();
         }
+        LogEntry cached = tailCache.get(index);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
         try {
             ByteString data = kvSpace.get(logEntryKey(logEntriesKeyInfix, index)).get();
             return Optional.of(LogEntry.parseFrom(data));
@@ -284,6 +296,7 @@ class KVRangeWALStore implements IKVRangeWALStore {
             writer.insert(logEntryKey(logEntriesKeyInfix, entry.getIndex()), entry.toByteString());
         }
         writer.done();
+        tailCache.append(entries);
         lastIndex = entries.get(entries.size() - 1).getIndex();
         stabilizingIndices.add(new StabilizingIndex(lastIndex));
         if (flush) {
@@ -307,6 +320,7 @@ class KVRangeWALStore implements IKVRangeWALStore {
     @Override
     public void destroy() {
         log.debug("Destroy walStore: rangeId={}, storeId={} ", KVRangeIdUtil.toString(rangeId), storeId);
+        tailCache.close();
         kvSpace.destroy();
         onDestroy.accept(this);
     }
@@ -432,26 +446,24 @@ class KVRangeWALStore implements IKVRangeWALStore {
     private class LogEntryIterator implements Iterator<LogEntry> {
         private final long maxIndex;
         private final long maxSize;
+        private final int logEntriesKeyInfix;
         private long currentIndex;
         private long accumulatedSize;
-        private final IKVSpaceIterator iterator;
+        // created on first cache miss
+        private IKVSpaceIterator iterator;
+        private long iteratorIndex;
 
         private LogEntryIterator(long startIndex, long endIndex, long maxSize) {
             this.currentIndex = startIndex;
             this.maxIndex = endIndex;
             this.maxSize = maxSize;
-            this.iterator = kvSpace.newIterator(
-                Boundary.newBuilder()
-                    .setStartKey(logEntryKey(logEntriesKeyInfix, currentIndex))
-                    .setEndKey(upperBound(logEntriesKeyPrefixInfix(logEntriesKeyInfix)))
-                    .build());
-            this.iterator.seek(logEntryKey(logEntriesKeyInfix, currentIndex));
+            this.logEntriesKeyInfix = KVRangeWALStore.this.logEntriesKeyInfix;
         }
 
         @Override
         public boolean hasNext() {
             boolean has = currentIndex < maxIndex && accumulatedSize <= maxSize;
-            if (!has) {
+            if (!has && iterator != null) {
                 // the iterator can be closed automically by Cleaner if not scanned to the end
                 iterator.close();
             }
@@ -460,18 +472,35 @@ class KVRangeWALStore implements IKVRangeWALStore {
 
         @Override
         public LogEntry next() {
+            LogEntry entry = tailCache.get(currentIndex);
+            if (entry == null) {
+                entry = load();
+            }
+            accumulatedSize += entry.getData().size();
+            currentIndex++;
+            return entry;
+        }
+
+        private LogEntry load() {
+            if (iterator == null) {
+                iterator = kvSpace.newIterator(Boundary.newBuilder()
+                    .setStartKey(logEntryKey(logEntriesKeyInfix, currentIndex))
+                    .setEndKey(upperBound(logEntriesKeyPrefixInfix(logEntriesKeyInfix)))
+                    .build());
+                iterator.seek(logEntryKey(logEntriesKeyInfix, currentIndex));
+            } else if (iteratorIndex != currentIndex) {
+                iterator.seek(logEntryKey(logEntriesKeyInfix, currentIndex));
+            }
             if (!iterator.isValid()) {
                 throw new NoSuchElementException();
-            } else {
-                try {
-                    LogEntry entry = LogEntry.parseFrom(iterator.value());
-                    accumulatedSize += entry.getData().size();
-                    currentIndex++;
-                    iterator.next();
-                    return entry;
-                } catch (InvalidProtocolBufferException e) {
-                    throw new KVRangeStoreException("Log data corruption", e);
-                }
+            }
+            try {
+                LogEntry entry = LogEntry.parseFrom(iterator.value());
+                iterator.next();
+                iteratorIndex = currentIndex + 1;
+                return entry;
+            } catch (InvalidProtocolBufferException e) {
+                throw new KVRangeStoreException("Log data corruption", e);
             }
         }
     }
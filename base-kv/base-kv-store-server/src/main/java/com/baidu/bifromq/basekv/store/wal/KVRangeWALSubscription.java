@@ -19,6 +19,8 @@ import com.baidu.bifromq.basekv.store.util.AsyncRunner;
 import com.baidu.bifromq.basekv.utils.KVRangeIdUtil;
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.disposables.CompositeDisposable;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -101,11 +103,20 @@ class KVRangeWALSubscription implements IKVRangeWALSubscription {
                         scheduleFetchWAL();
                     } else {
                         fetchRunner.add(() -> {
+                            int maxApplyBatchSize = subscriber.maxApplyBatchSize();
+                            List<LogEntry> batch = new ArrayList<>();
                             LogEntry entry = null;
                             while (logEntries.hasNext()) {
                                 // no restore task interrupted
                                 entry = logEntries.next();
-                                applyRunner.add(applyLog(entry));
+                                batch.add(entry);
+                                if (batch.size() >= maxApplyBatchSize) {
+                                    applyRunner.add(applyLogs(batch));
+                                    batch = new ArrayList<>();
+                                }
+                            }
+                            if (!batch.isEmpty()) {
+                                applyRunner.add(applyLogs(batch));
                             }
                             if (entry != null) {
                                 lastFetchedIdx.set(Math.max(entry.getIndex(), lastFetchedIdx.get()));
@@ -127,10 +138,11 @@ class KVRangeWALSubscription implements IKVRangeWALSubscription {
         }
     }
 
-    private Supplier<CompletableFuture<Void>> applyLog(LogEntry logEntry) {
+    private Supplier<CompletableFuture<Void>> applyLogs(List<LogEntry> logEntries) {
         return () -> {
             CompletableFuture<Void> onDone = new CompletableFuture<>();
-            CompletableFuture<Void> applyFuture = subscriber.apply(logEntry);
+            CompletableFuture<Void> applyFuture = logEntries.size() == 1
+                ? subscriber.apply(logEntries.get(0)) : subscriber.apply(logEntries);
             onDone.whenComplete((v, e) -> {
                 if (onDone.isCancelled()) {
                     applyFuture.cancel(true);
@@ -141,7 +153,7 @@ class KVRangeWALSubscription implements IKVRangeWALSubscription {
                 if (!onDone.isCancelled()) {
                     if (e != null) {
                         // reapply
-                        applyRunner.addFirst(applyLog(logEntry));
+                        applyRunner.addFirst(applyLogs(logEntries));
                     }
                 }
                 onDone.complete(null);
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.basekv.store.wal;
+
+import com.baidu.bifromq.basekv.raft.proto.LogEntry;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The cache of the most recently appended log entries of a range, bounded by the budget shared with other ranges in
+ * the store. The cached entries are always a contiguous tail of the log, so they could be served to replication and
+ * apply without reading back and parsing.
+ *
+ * <p>The cache is appended only by the thread appending logs, while reading and evicting the oldest entries could
+ * happen from any thread.
+ */
+class LogEntryTailCache {
+    private final LogEntryTailCacheBudget budget;
+    private final ConcurrentSkipListMap<Long, LogEntry> entries = new ConcurrentSkipListMap<>();
+    private final AtomicLong bytes = new AtomicLong();
+
+    LogEntryTailCache(LogEntryTailCacheBudget budget) {
+        this.budget = budget;
+        budget.register(this);
+    }
+
+    /**
+     * Get the cached log entry.
+     *
+     * @param index the index of the log entry
+     * @return the cached log entry or null if not cached
+     */
+    LogEntry get(long index) {
+        return entries.get(index);
+    }
+
+    /**
+     * Cache the appended log entries, the cached entries after (first appended index - 1) are replaced.
+     *
+     * @param appended the appended log entries
+     */
+    void append(List<LogEntry> appended) {
+        if (!budget.enabled()) {
+            return;
+        }
+        long afterIndex = appended.get(0).getIndex() - 1;
+        Map.Entry<Long, LogEntry> last;
+        while ((last = entries.lastEntry()) != null && last.getKey() > afterIndex) {
+            remove(last.getKey());
+        }
+        if ((last = entries.lastEntry()) != null && last.getKey() != afterIndex) {
+            // keep the cached entries contiguous
+            clear();
+        }
+        for (LogEntry entry : appended) {
+            entries.put(entry.getIndex(), entry);
+            bytes.addAndGet(entry.getSerializedSize());
+            budget.acquire(entry.getSerializedSize());
+        }
+        budget.reclaim();
+    }
+
+    /**
+     * Remove the cached entries before given index.
+     *
+     * @param index the index
+     */
+    void truncateBefore(long index) {
+        Map.Entry<Long, LogEntry> first;
+        while ((first = entries.firstEntry()) != null && first.getKey() < index) {
+            remove(first.getKey());
+        }
+    }
+
+    void clear() {
+        while (evictFirst()) {
+            // evict until empty
+        }
+    }
+
+    /**
+     * Clear the cache and stop sharing the budget.
+     */
+    void close() {
+        budget.unregister(this);
+        clear();
+    }
+
+    long bytes() {
+        return bytes.get();
+    }
+
+    /**
+     * Evict the oldest cached entry.
+     *
+     * @return true if an entry is evicted
+     */
+    boolean evictFirst() {
+        Map.Entry<Long, LogEntry> first = entries.pollFirstEntry();
+        if (first == null) {
+            return false;
+        }
+        release(first.getValue());
+        return true;
+    }
+
+    /**
+     * Evict the oldest cached entries until the given bytes are freed or the cache is empty.
+     *
+     * @param bytes the bytes to free
+     * @return the bytes freed
+     */
+    long evictFirst(long bytes) {
+        long freed = 0;
+        Map.Entry<Long, LogEntry> first;
+        while (freed < bytes && (first = entries.pollFirstEntry()) != null) {
+            release(first.getValue());
+            freed += first.getValue().getSerializedSize();
+        }
+        return freed;
+    }
+
+    private void remove(long index) {
+        LogEntry entry = entries.remove(index);
+        if (entry != null) {
+            release(entry);
+        }
+    }
+
+    private void release(LogEntry entry) {
+        bytes.addAndGet(-entry.getSerializedSize());
+        budget.release(entry.getSerializedSize());
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.basekv.store.wal;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The memory budget shared by the tail caches of all ranges in a store. When the budget is exceeded, the oldest
+ * entries of the largest cache are evicted first, so an idle range can't hold the memory needed by busy ones. The
+ * entries are evicted in bulk down to a low watermark, so that the caches are not rescanned for every appended entry.
+ */
+class LogEntryTailCacheBudget {
+    private final long maxBytes;
+    private final long lowWatermark;
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final AtomicBoolean reclaiming = new AtomicBoolean();
+    private final Set<LogEntryTailCache> caches = ConcurrentHashMap.newKeySet();
+
+    LogEntryTailCacheBudget(long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.lowWatermark = maxBytes - maxBytes / 4;
+    }
+
+    boolean enabled() {
+        return maxBytes > 0;
+    }
+
+    long usedBytes() {
+        return usedBytes.get();
+    }
+
+    void register(LogEntryTailCache cache) {
+        caches.add(cache);
+    }
+
+    void unregister(LogEntryTailCache cache) {
+        caches.remove(cache);
+    }
+
+    void acquire(long bytes) {
+        usedBytes.addAndGet(bytes);
+    }
+
+    void release(long bytes) {
+        usedBytes.addAndGet(-bytes);
+    }
+
+    /**
+     * Evict cached entries down to the low watermark if the used bytes exceed the budget. Each round evicts from the
+     * largest cache until it shrinks to the size of the second largest one, and at least an even share of the bytes
+     * to free.
+     */
+    void reclaim() {
+        if (usedBytes.get() <= maxBytes || !reclaiming.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long toFree;
+            while ((toFree = usedBytes.get() - lowWatermark) > 0) {
+                LogEntryTailCache largest = null;
+                long largestBytes = 0;
+                long secondBytes = 0;
+                int count = 0;
+                for (LogEntryTailCache cache : caches) {
+                    long bytes = cache.bytes();
+                    if (largest == null || bytes > largestBytes) {
+                        secondBytes = largestBytes;
+                        largest = cache;
+                        largestBytes = bytes;
+                    } else if (bytes > secondBytes) {
+                        secondBytes = bytes;
+                    }
+                    count++;
+                }
+                if (largest == null) {
+                    return;
+                }
+                long evictBytes = Math.min(toFree, Math.max(largestBytes - secondBytes, toFree / count));
+                if (largest.evictFirst(evictBytes) == 0) {
+                    return;
+                }
+            }
+        } finally {
+            reclaiming.set(false);
+        }
+    }
+}
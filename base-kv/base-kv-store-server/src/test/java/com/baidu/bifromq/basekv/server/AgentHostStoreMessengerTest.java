@@ -13,7 +13,14 @@
 
 package com.baidu.bifromq.basekv.server;
 
+import static com.baidu.bifromq.basekv.server.AgentHostStoreMessenger.BATCH_CAPABLE;
 import static com.baidu.bifromq.basekv.server.AgentHostStoreMessenger.agentId;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
@@ -21,6 +28,7 @@ import static org.testng.Assert.assertTrue;
 
 import com.baidu.bifromq.basecluster.IAgentHost;
 import com.baidu.bifromq.basecluster.agent.proto.AgentMemberAddr;
+import com.baidu.bifromq.basecluster.agent.proto.AgentMemberMetadata;
 import com.baidu.bifromq.basecluster.agent.proto.AgentMessage;
 import com.baidu.bifromq.basecluster.memberlist.agent.IAgent;
 import com.baidu.bifromq.basecluster.memberlist.agent.IAgentMember;
@@ -28,11 +36,20 @@ import com.baidu.bifromq.basekv.MockableTest;
 import com.baidu.bifromq.basekv.proto.KVRangeId;
 import com.baidu.bifromq.basekv.proto.KVRangeMessage;
 import com.baidu.bifromq.basekv.proto.StoreMessage;
+import com.baidu.bifromq.basekv.proto.StoreMessageBatch;
 import com.baidu.bifromq.basekv.utils.KVRangeIdUtil;
 import com.google.protobuf.ByteString;
 import io.reactivex.rxjava3.observers.TestObserver;
+import io.reactivex.rxjava3.subjects.BehaviorSubject;
 import io.reactivex.rxjava3.subjects.PublishSubject;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import lombok.SneakyThrows;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.testng.annotations.Test;
@@ -51,6 +68,7 @@ public class AgentHostStoreMessengerTest extends MockableTest {
     private KVRangeId srcRange;
     private String targetStore = "store2";
     private PublishSubject<AgentMessage> tgtStoreMessageSubject;
+    private BehaviorSubject<Map<AgentMemberAddr, AgentMemberMetadata>> membershipSubject;
     @Mock
     private IAgentMember tgtStoreAgentMember;
     private KVRangeId targetRange;
@@ -58,9 +76,12 @@ public class AgentHostStoreMessengerTest extends MockableTest {
     @Override
     protected void doSetup(Method method) {
         tgtStoreMessageSubject = PublishSubject.create();
+        membershipSubject = BehaviorSubject.create();
         srcRange = KVRangeIdUtil.generate();
         targetRange = KVRangeIdUtil.generate();
         when(agentHost.host(agentId(clusterId))).thenReturn(agent);
+        when(agent.membership()).thenReturn(membershipSubject);
+        when(agent.deregister(any())).thenReturn(CompletableFuture.completedFuture(null));
         when(agent.register(srcStore)).thenReturn(srcStoreAgentMember);
         when(agent.register(targetStore)).thenReturn(tgtStoreAgentMember);
         when(tgtStoreAgentMember.receive()).thenReturn(tgtStoreMessageSubject);
@@ -74,11 +95,13 @@ public class AgentHostStoreMessengerTest extends MockableTest {
         ArgumentCaptor<String> agentMemberCap = ArgumentCaptor.forClass(String.class);
         verify(agent).register(agentMemberCap.capture());
         assertEquals(agentMemberCap.getValue(), srcStore);
+        verify(srcStoreAgentMember).metadata(BATCH_CAPABLE);
     }
 
     @Test
     public void send() {
         AgentHostStoreMessenger messenger = new AgentHostStoreMessenger(agentHost, clusterId, srcStore);
+        members(true);
         StoreMessage message = StoreMessage.newBuilder()
             .setFrom(srcStore)
             .setSrcRange(srcRange)
@@ -88,14 +111,52 @@ public class AgentHostStoreMessengerTest extends MockableTest {
         ArgumentCaptor<String> targetMemberCap = ArgumentCaptor.forClass(String.class);
         ArgumentCaptor<ByteString> msgCap = ArgumentCaptor.forClass(ByteString.class);
         ArgumentCaptor<Boolean> reliableCap = ArgumentCaptor.forClass(Boolean.class);
-        verify(srcStoreAgentMember).multicast(targetMemberCap.capture(), msgCap.capture(),
+        verify(srcStoreAgentMember, timeout(5000)).multicast(targetMemberCap.capture(), msgCap.capture(),
             reliableCap.capture());
 
         assertEquals(targetMemberCap.getValue(), targetStore);
-        assertEquals(msgCap.getValue(), message.toByteString());
+        assertEquals(parse(msgCap.getValue(), targetStore), List.of(message));
         assertTrue(reliableCap.getValue());
+        messenger.close();
     }
 
+    @SneakyThrows
+    @Test
+    public void coalesce() {
+        CountDownLatch blockLatch = new CountDownLatch(1);
+        List<ByteString> sentBatches = new CopyOnWriteArrayList<>();
+        when(srcStoreAgentMember.multicast(eq(targetStore), any(ByteString.class), eq(true)))
+            .thenAnswer(invocation -> {
+                blockLatch.await();
+                sentBatches.add(invocation.getArgument(1));
+                return CompletableFuture.completedFuture(null);
+            });
+        AgentHostStoreMessenger messenger = new AgentHostStoreMessenger(agentHost, clusterId, srcStore);
+        members(true);
+        List<StoreMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            StoreMessage message = StoreMessage.newBuilder()
+                .setFrom(srcStore)
+                .setSrcRange(KVRangeIdUtil.generate())
+                .setPayload(KVRangeMessage.newBuilder()
+                    .setHostStoreId(targetStore)
+                    .setRangeId(KVRangeIdUtil.generate())
+                    .build())
+                .build();
+            messages.add(message);
+            messenger.send(message);
+        }
+        blockLatch.countDown();
+        await().until(() -> sentBatches.stream().mapToInt(batch -> parse(batch, targetStore).size()).sum() == 10);
+        // the messages sent while flushing are coalesced, and the order is kept
+        List<StoreMessage> received = new ArrayList<>();
+        sentBatches.forEach(batch -> received.addAll(parse(batch, targetStore)));
+        assertEquals(received, messages);
+        assertTrue(sentBatches.size() < 10);
+        messenger.close();
+    }
+
+    @SneakyThrows
     @Test
     public void broadcast() {
         when(agentHost.host(agentId(clusterId))).thenReturn(agent);
@@ -109,10 +170,73 @@ public class AgentHostStoreMessengerTest extends MockableTest {
         ArgumentCaptor<ByteString> msgCap = ArgumentCaptor.forClass(ByteString.class);
         ArgumentCaptor<Boolean> reliableCap = ArgumentCaptor.forClass(Boolean.class);
         verify(srcStoreAgentMember).broadcast(msgCap.capture(), reliableCap.capture());
-        assertEquals(msgCap.getValue(), message.toByteString());
+        // broadcast as a single store message, which is parsed by the stores of all versions
+        assertEquals(StoreMessage.parseFrom(msgCap.getValue()), message);
         assertTrue(reliableCap.getValue());
     }
 
+    @SneakyThrows
+    @Test
+    public void sendToLegacyStore() {
+        AgentHostStoreMessenger messenger = new AgentHostStoreMessenger(agentHost, clusterId, srcStore);
+        members(false);
+        StoreMessage message = StoreMessage.newBuilder()
+            .setFrom(srcStore)
+            .setSrcRange(srcRange)
+            .setPayload(KVRangeMessage.newBuilder().setHostStoreId(targetStore).setRangeId(targetRange).build())
+            .build();
+        messenger.send(message);
+        messenger.send(message);
+        ArgumentCaptor<ByteString> msgCap = ArgumentCaptor.forClass(ByteString.class);
+        verify(srcStoreAgentMember, timeout(5000).times(2)).multicast(eq(targetStore), msgCap.capture(), eq(true));
+        // the store not advertising batch capability receives every message in the format it understands
+        for (ByteString payload : msgCap.getAllValues()) {
+            assertEquals(StoreMessage.parseFrom(payload), message);
+        }
+        messenger.close();
+    }
+
+    @SneakyThrows
+    @Test
+    public void mixedVersionRoundTrip() {
+        // a store of new version talks to a legacy one, and both sides understand each other
+        AgentHostStoreMessenger messenger = new AgentHostStoreMessenger(agentHost, clusterId, srcStore);
+        AgentHostStoreMessenger peer = new AgentHostStoreMessenger(agentHost, clusterId, targetStore);
+        TestObserver<StoreMessage> testObserver = TestObserver.create();
+        peer.receive().subscribe(testObserver);
+        members(false);
+        StoreMessage message = StoreMessage.newBuilder()
+            .setFrom(srcStore)
+            .setSrcRange(srcRange)
+            .setPayload(KVRangeMessage.newBuilder().setHostStoreId(targetStore).setRangeId(targetRange).build())
+            .build();
+        when(srcStoreAgentMember.multicast(eq(targetStore), any(ByteString.class), eq(true)))
+            .thenAnswer(invocation -> {
+                tgtStoreMessageSubject.onNext(AgentMessage.newBuilder()
+                    .setSender(AgentMemberAddr.newBuilder().setName(srcStore).build())
+                    .setPayload(invocation.getArgument(1))
+                    .build());
+                return CompletableFuture.completedFuture(null);
+            });
+        messenger.send(message);
+        testObserver.awaitCount(1);
+        assertEquals(testObserver.values().get(0), message);
+        // the legacy store parses the payload as a single store message
+        ArgumentCaptor<ByteString> msgCap = ArgumentCaptor.forClass(ByteString.class);
+        verify(srcStoreAgentMember).multicast(eq(targetStore), msgCap.capture(), eq(true));
+        assertEquals(StoreMessage.parseFrom(msgCap.getValue()), message);
+
+        // switch to batching once the peer is upgraded
+        members(true);
+        messenger.send(message);
+        testObserver.awaitCount(2);
+        assertEquals(testObserver.values().get(1), message);
+        verify(srcStoreAgentMember, times(2)).multicast(eq(targetStore), msgCap.capture(), eq(true));
+        assertEquals(StoreMessageBatch.parseFrom(msgCap.getValue()).getMessagesCount(), 1);
+        messenger.close();
+        peer.close();
+    }
+
     @Test
     public void receiveSend() {
         AgentHostStoreMessenger messenger = new AgentHostStoreMessenger(agentHost, clusterId, targetStore);
@@ -126,7 +250,11 @@ public class AgentHostStoreMessengerTest extends MockableTest {
             .build();
         AgentMessage nodeMessage = AgentMessage.newBuilder()
             .setSender(AgentMemberAddr.newBuilder().setName(srcStore).build())
-            .setPayload(message.toByteString())
+            .setPayload(StoreMessageBatch.newBuilder()
+                .setFrom(srcStore)
+                .addMessages(message.toBuilder().clearFrom())
+                .build()
+                .toByteString())
             .build();
         tgtStoreMessageSubject.onNext(nodeMessage);
         testObserver.awaitCount(1);
@@ -146,10 +274,113 @@ public class AgentHostStoreMessengerTest extends MockableTest {
             .build();
         AgentMessage nodeMessage = AgentMessage.newBuilder()
             .setSender(AgentMemberAddr.newBuilder().setName(srcStore).build())
-            .setPayload(message.toByteString())
+            .setPayload(StoreMessageBatch.newBuilder()
+                .setFrom(srcStore)
+                .addMessages(message.toBuilder().clearFrom())
+                .build()
+                .toByteString())
             .build();
         tgtStoreMessageSubject.onNext(nodeMessage);
         testObserver.awaitCount(1);
         assertEquals(testObserver.values().get(0).getPayload().getHostStoreId(), targetStore);
     }
+
+    @Test
+    public void receiveLegacy() {
+        AgentHostStoreMessenger messenger = new AgentHostStoreMessenger(agentHost, clusterId, targetStore);
+        TestObserver<StoreMessage> testObserver = TestObserver.create();
+        messenger.receive().subscribe(testObserver);
+
+        StoreMessage message = StoreMessage.newBuilder()
+            .setFrom(srcStore)
+            .setSrcRange(srcRange)
+            .setPayload(KVRangeMessage.newBuilder().setHostStoreId(targetStore).setRangeId(targetRange).build())
+            .build();
+        StoreMessage broadcast = StoreMessage.newBuilder()
+            .setFrom(srcStore)
+            .setSrcRange(srcRange)
+            .setPayload(KVRangeMessage.newBuilder().setRangeId(targetRange).build())
+            .build();
+        tgtStoreMessageSubject.onNext(AgentMessage.newBuilder()
+            .setSender(AgentMemberAddr.newBuilder().setName(srcStore).build())
+            .setPayload(message.toByteString())
+            .build());
+        tgtStoreMessageSubject.onNext(AgentMessage.newBuilder()
+            .setSender(AgentMemberAddr.newBuilder().setName(srcStore).build())
+            .setPayload(broadcast.toByteString())
+            .build());
+        testObserver.awaitCount(2);
+        assertEquals(testObserver.values().get(0), message);
+        assertEquals(testObserver.values().get(1).getFrom(), srcStore);
+        assertEquals(testObserver.values().get(1).getPayload().getHostStoreId(), targetStore);
+    }
+
+    @SneakyThrows
+    @Test
+    public void dropPendingMessagesToLeftStore() {
+        AgentHostStoreMessenger messenger = new AgentHostStoreMessenger(agentHost, clusterId, srcStore);
+        members(true);
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(srcStoreAgentMember.multicast(eq(targetStore), any(), eq(true))).thenAnswer(invocation -> {
+            sending.countDown();
+            release.await();
+            return CompletableFuture.completedFuture(null);
+        });
+        StoreMessage message = StoreMessage.newBuilder()
+            .setFrom(srcStore)
+            .setSrcRange(srcRange)
+            .setPayload(KVRangeMessage.newBuilder().setHostStoreId(targetStore).setRangeId(targetRange).build())
+            .build();
+        messenger.send(message);
+        sending.await();
+        // queued while the first batch is in flight
+        messenger.send(message);
+        membershipSubject.onNext(Map.of(AgentMemberAddr.newBuilder().setName(srcStore).build(),
+            AgentMemberMetadata.newBuilder().setValue(BATCH_CAPABLE).build()));
+        release.countDown();
+        verify(srcStoreAgentMember, after(200).times(1)).multicast(eq(targetStore), any(), eq(true));
+        messenger.close();
+    }
+
+    @Test
+    public void keepSendingAfterFailure() {
+        AgentHostStoreMessenger messenger = new AgentHostStoreMessenger(agentHost, clusterId, srcStore);
+        members(true);
+        when(srcStoreAgentMember.multicast(eq(targetStore), any(), eq(true)))
+            .thenThrow(new IllegalStateException("Mocked"))
+            .thenReturn(CompletableFuture.completedFuture(null));
+        StoreMessage message = StoreMessage.newBuilder()
+            .setFrom(srcStore)
+            .setSrcRange(srcRange)
+            .setPayload(KVRangeMessage.newBuilder().setHostStoreId(targetStore).setRangeId(targetRange).build())
+            .build();
+        messenger.send(message);
+        verify(srcStoreAgentMember, timeout(5000).times(1)).multicast(eq(targetStore), any(), eq(true));
+        messenger.send(message);
+        verify(srcStoreAgentMember, timeout(5000).times(2)).multicast(eq(targetStore), any(), eq(true));
+        messenger.close();
+    }
+
+    private void members(boolean targetBatchCapable) {
+        AgentMemberMetadata capable = AgentMemberMetadata.newBuilder().setValue(BATCH_CAPABLE).build();
+        membershipSubject.onNext(Map.of(
+            AgentMemberAddr.newBuilder().setName(srcStore).build(), capable,
+            AgentMemberAddr.newBuilder().setName(targetStore).build(),
+            targetBatchCapable ? capable : AgentMemberMetadata.getDefaultInstance()));
+    }
+
+    @SneakyThrows
+    private List<StoreMessage> parse(ByteString batchBytes, String hostStoreId) {
+        StoreMessageBatch batch = StoreMessageBatch.parseFrom(batchBytes);
+        List<StoreMessage> messages = new ArrayList<>();
+        for (StoreMessage message : batch.getMessagesList()) {
+            StoreMessage.Builder builder = message.toBuilder().setFrom(batch.getFrom());
+            if (hostStoreId != null) {
+                builder.getPayloadBuilder().setHostStoreId(hostStoreId);
+            }
+            messages.add(builder.build());
+        }
+        return messages;
+    }
 }
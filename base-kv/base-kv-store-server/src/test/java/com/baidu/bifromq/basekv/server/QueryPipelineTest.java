@@ -13,6 +13,9 @@
 
 package com.baidu.bifromq.basekv.server;
 
+import static com.baidu.bifromq.basekv.PipelineUtil.PIPELINE_ATTR_KEY_REPLY_BY_REQ_ID;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
@@ -28,10 +31,13 @@ import com.baidu.bifromq.basekv.store.proto.ROCoProcInput;
 import com.baidu.bifromq.basekv.store.proto.ROCoProcOutput;
 import com.baidu.bifromq.basekv.store.proto.ReplyCode;
 import com.baidu.bifromq.basekv.utils.KVRangeIdUtil;
+import com.baidu.bifromq.baserpc.RPCContext;
 import com.google.protobuf.ByteString;
+import io.grpc.Context;
 import io.grpc.stub.ServerCallStreamObserver;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ThreadLocalRandom;
@@ -63,7 +69,7 @@ public class QueryPipelineTest extends MockableTest {
             .setGetKey(getKey)
             .build();
 
-        when(rangeStore.get(1, rangeId, getKey, linearized))
+        when(rangeStore.get(1, rangeId, getKey, linearized, 0))
             .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
 
         KVRangeROReply getReply = pipeline.handleRequest("_", getRequest).join();
@@ -73,6 +79,28 @@ public class QueryPipelineTest extends MockableTest {
         assertFalse(getReply.getGetResult().hasValue());
     }
 
+    @Test
+    public void boundedStaleGet() {
+        QueryPipeline pipeline = new QueryPipeline(rangeStore, true, streamObserver);
+        KVRangeId rangeId = KVRangeIdUtil.generate();
+        ByteString getKey = ByteString.copyFromUtf8("get");
+        KVRangeRORequest getRequest = KVRangeRORequest.newBuilder()
+            .setReqId(1)
+            .setVer(1)
+            .setKvRangeId(rangeId)
+            .setGetKey(getKey)
+            .setMaxStaleMillis(100)
+            .build();
+
+        when(rangeStore.get(1, rangeId, getKey, true, 100))
+            .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
+
+        KVRangeROReply getReply = pipeline.handleRequest("_", getRequest).join();
+
+        assertEquals(getReply.getReqId(), 1);
+        assertEquals(getReply.getCode(), ReplyCode.Ok);
+    }
+
     @Test
     public void exist() {
         exist(false);
@@ -90,7 +118,7 @@ public class QueryPipelineTest extends MockableTest {
             .setExistKey(existKey)
             .build();
 
-        when(rangeStore.exist(1, rangeId, existKey, linearized))
+        when(rangeStore.exist(1, rangeId, existKey, linearized, 0))
             .thenReturn(CompletableFuture.completedFuture(true));
 
         KVRangeROReply existReply = pipeline.handleRequest("_", existRequest).join();
@@ -117,7 +145,7 @@ public class QueryPipelineTest extends MockableTest {
             .setRoCoProc(coProcInput)
             .build();
 
-        when(rangeStore.queryCoProc(1, rangeId, coProcInput, linearized))
+        when(rangeStore.queryCoProc(1, rangeId, coProcInput, linearized, 0))
             .thenReturn(
                 CompletableFuture.completedFuture(ROCoProcOutput.newBuilder().setRaw(ByteString.empty()).build()));
 
@@ -151,7 +179,7 @@ public class QueryPipelineTest extends MockableTest {
                 .setGetKey(getKey)
                 .build();
 
-            when(rangeStore.get(1, rangeId, getKey, linearized))
+            when(rangeStore.get(1, rangeId, getKey, linearized, 0))
                 .thenReturn(new CompletableFuture<Optional<ByteString>>()
                     .completeOnTimeout(Optional.empty(), ThreadLocalRandom.current().nextInt(0, 100),
                         TimeUnit.MILLISECONDS));
@@ -166,6 +194,71 @@ public class QueryPipelineTest extends MockableTest {
         }
     }
 
+    @Test
+    public void concurrentQueries() {
+        QueryPipeline pipeline = new QueryPipeline(rangeStore, false, 2, streamObserver);
+        KVRangeId rangeId = KVRangeIdUtil.generate();
+        List<CompletableFuture<Optional<ByteString>>> getFutures = new ArrayList<>();
+        List<CompletableFuture<KVRangeROReply>> replyFutures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            ByteString getKey = ByteString.copyFromUtf8("get-" + i);
+            CompletableFuture<Optional<ByteString>> getFuture = new CompletableFuture<>();
+            getFutures.add(getFuture);
+            when(rangeStore.get(1, rangeId, getKey, false, 0)).thenReturn(getFuture);
+            replyFutures.add(pipeline.handleRequest("_", KVRangeRORequest.newBuilder()
+                .setReqId(i)
+                .setVer(1)
+                .setKvRangeId(rangeId)
+                .setGetKey(getKey)
+                .build()));
+        }
+        // at most 2 queries are executing
+        verify(rangeStore).get(1, rangeId, ByteString.copyFromUtf8("get-0"), false, 0);
+        verify(rangeStore).get(1, rangeId, ByteString.copyFromUtf8("get-1"), false, 0);
+        verify(rangeStore, never()).get(1, rangeId, ByteString.copyFromUtf8("get-2"), false, 0);
+
+        // the reply is emitted after previous one
+        getFutures.get(1).complete(Optional.empty());
+        verify(rangeStore).get(1, rangeId, ByteString.copyFromUtf8("get-2"), false, 0);
+        getFutures.get(2).complete(Optional.empty());
+        assertFalse(replyFutures.get(1).isDone());
+        assertFalse(replyFutures.get(2).isDone());
+
+        getFutures.get(0).complete(Optional.empty());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(replyFutures.get(i).join().getReqId(), i);
+        }
+    }
+
+    @Test
+    public void replyByReqId() throws Exception {
+        QueryPipeline pipeline = Context.current()
+            .withValue(RPCContext.CUSTOM_METADATA_CTX_KEY, Map.of(PIPELINE_ATTR_KEY_REPLY_BY_REQ_ID, "true"))
+            .call(() -> new QueryPipeline(rangeStore, false, 2, streamObserver));
+        KVRangeId rangeId = KVRangeIdUtil.generate();
+        List<CompletableFuture<Optional<ByteString>>> getFutures = new ArrayList<>();
+        List<CompletableFuture<KVRangeROReply>> replyFutures = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            ByteString getKey = ByteString.copyFromUtf8("get-" + i);
+            CompletableFuture<Optional<ByteString>> getFuture = new CompletableFuture<>();
+            getFutures.add(getFuture);
+            when(rangeStore.get(1, rangeId, getKey, false, 0)).thenReturn(getFuture);
+            replyFutures.add(pipeline.handleRequest("_", KVRangeRORequest.newBuilder()
+                .setReqId(i)
+                .setVer(1)
+                .setKvRangeId(rangeId)
+                .setGetKey(getKey)
+                .build()));
+        }
+        // the reply is emitted without waiting for previous one
+        getFutures.get(1).complete(Optional.empty());
+        assertEquals(replyFutures.get(1).join().getReqId(), 1);
+        assertFalse(replyFutures.get(0).isDone());
+
+        getFutures.get(0).complete(Optional.empty());
+        assertEquals(replyFutures.get(0).join().getReqId(), 0);
+    }
+
     @Test
     public void errorCodeConversion() {
         QueryPipeline pipeline = new QueryPipeline(rangeStore, false, streamObserver);
@@ -179,7 +272,7 @@ public class QueryPipelineTest extends MockableTest {
             .setKvRangeId(rangeId)
             .setGetKey(getKey)
             .build();
-        when(rangeStore.get(1, rangeId, getKey, false))
+        when(rangeStore.get(1, rangeId, getKey, false, 0))
             .thenReturn(CompletableFuture.failedFuture(new KVRangeException.BadVersion("bad version")));
         KVRangeROReply getReply = pipeline.handleRequest("_", getRequest).join();
         assertEquals(getReply.getCode(), ReplyCode.BadVersion);
@@ -191,7 +284,7 @@ public class QueryPipelineTest extends MockableTest {
             .setKvRangeId(rangeId)
             .setGetKey(getKey)
             .build();
-        when(rangeStore.get(2, rangeId, getKey, false))
+        when(rangeStore.get(2, rangeId, getKey, false, 0))
             .thenReturn(CompletableFuture.failedFuture(new KVRangeException.BadRequest("bad request")));
         getReply = pipeline.handleRequest("_", getRequest).join();
         assertEquals(getReply.getCode(), ReplyCode.BadRequest);
@@ -203,7 +296,7 @@ public class QueryPipelineTest extends MockableTest {
             .setKvRangeId(rangeId)
             .setGetKey(getKey)
             .build();
-        when(rangeStore.get(3, rangeId, getKey, false))
+        when(rangeStore.get(3, rangeId, getKey, false, 0))
             .thenReturn(CompletableFuture.failedFuture(new KVRangeException.TryLater("try later")));
         getReply = pipeline.handleRequest("_", getRequest).join();
         assertEquals(getReply.getCode(), ReplyCode.TryLater);
@@ -215,7 +308,7 @@ public class QueryPipelineTest extends MockableTest {
             .setKvRangeId(rangeId)
             .setGetKey(getKey)
             .build();
-        when(rangeStore.get(4, rangeId, getKey, false))
+        when(rangeStore.get(4, rangeId, getKey, false, 0))
             .thenReturn(CompletableFuture.failedFuture(new KVRangeException.InternalException("internal error")));
         getReply = pipeline.handleRequest("_", getRequest).join();
         assertEquals(getReply.getCode(), ReplyCode.InternalError);
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.basekv.server;
+
+import static com.baidu.bifromq.basekv.Constants.RPC_METADATA_STORE_ID;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+import com.baidu.bifromq.basekv.MockableTest;
+import com.baidu.bifromq.basekv.proto.KVRangeId;
+import com.baidu.bifromq.basekv.proto.KVRangeMessage;
+import com.baidu.bifromq.basekv.proto.StoreMessage;
+import com.baidu.bifromq.basekv.proto.StoreMessageBatch;
+import com.baidu.bifromq.basekv.utils.KVRangeIdUtil;
+import com.baidu.bifromq.baserpc.AckStream;
+import com.baidu.bifromq.baserpc.IRPCClient;
+import io.grpc.MethodDescriptor;
+import io.reactivex.rxjava3.observers.TestObserver;
+import io.reactivex.rxjava3.subjects.BehaviorSubject;
+import io.reactivex.rxjava3.subjects.PublishSubject;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.testng.annotations.Test;
+
+public class RPCStoreMessengerTest extends MockableTest {
+    private final String clusterId = "testCluster";
+    private final String localStore = "store1";
+    private final String peerStore = "store2";
+    private final String peerServer = "server2";
+    @Mock
+    private IRPCClient rpcClient;
+    @Mock
+    private IRPCClient.IMessageStream<StoreMessageBatch, StoreMessageBatch> messageStream;
+    @Mock
+    private AckStream<StoreMessageBatch, StoreMessageBatch> inboundStream;
+    private BehaviorSubject<Map<String, Map<String, String>>> serverListSubject;
+    private KVRangeId srcRange;
+    private KVRangeId targetRange;
+
+    @Override
+    protected void doSetup(Method method) {
+        srcRange = KVRangeIdUtil.generate();
+        targetRange = KVRangeIdUtil.generate();
+        serverListSubject = BehaviorSubject.createDefault(Map.of(
+            "server1", Map.of(RPC_METADATA_STORE_ID, localStore),
+            peerServer, Map.of(RPC_METADATA_STORE_ID, peerStore)));
+        when(rpcClient.serverList()).thenReturn(serverListSubject);
+        when(rpcClient.<StoreMessageBatch, StoreMessageBatch>createMessageStream(eq(""), eq(peerServer), isNull(),
+            anyMap(), any(MethodDescriptor.class))).thenReturn(messageStream);
+    }
+
+    @Test
+    public void sendToPeer() {
+        RPCStoreMessenger messenger = new RPCStoreMessenger(clusterId, localStore, rpcClient);
+        StoreMessage message = message(peerStore);
+        messenger.send(message);
+
+        ArgumentCaptor<StoreMessageBatch> batchCap = ArgumentCaptor.forClass(StoreMessageBatch.class);
+        verify(messageStream, timeout(5000)).ack(batchCap.capture());
+        assertEquals(StoreMessageCoalescer.restore(batchCap.getValue(), peerStore), List.of(message));
+        messenger.close();
+        verify(messageStream).close();
+        verify(rpcClient).stop();
+    }
+
+    @Test
+    public void sendToLocal() {
+        RPCStoreMessenger messenger = new RPCStoreMessenger(clusterId, localStore, rpcClient);
+        TestObserver<StoreMessage> testObserver = TestObserver.create();
+        messenger.receive().subscribe(testObserver);
+
+        StoreMessage message = message(localStore);
+        messenger.send(message);
+        testObserver.awaitCount(1);
+        assertEquals(testObserver.values().get(0), message);
+        verify(rpcClient, never()).createMessageStream(anyString(), anyString(), any(), anyMap(),
+            any(MethodDescriptor.class));
+        messenger.close();
+    }
+
+    @Test
+    public void broadcast() {
+        RPCStoreMessenger messenger = new RPCStoreMessenger(clusterId, localStore, rpcClient);
+        TestObserver<StoreMessage> testObserver = TestObserver.create();
+        messenger.receive().subscribe(testObserver);
+
+        StoreMessage message = message(null);
+        messenger.send(message);
+        testObserver.awaitCount(1);
+        assertEquals(testObserver.values().get(0).getPayload().getHostStoreId(), localStore);
+
+        ArgumentCaptor<StoreMessageBatch> batchCap = ArgumentCaptor.forClass(StoreMessageBatch.class);
+        verify(messageStream, timeout(5000)).ack(batchCap.capture());
+        assertEquals(StoreMessageCoalescer.restore(batchCap.getValue(), peerStore), List.of(message(peerStore)));
+        messenger.close();
+    }
+
+    @Test
+    public void dropWhenStoreOffline() {
+        serverListSubject.onNext(Map.of("server1", Map.of(RPC_METADATA_STORE_ID, localStore)));
+        RPCStoreMessenger messenger = new RPCStoreMessenger(clusterId, localStore, rpcClient);
+        TestObserver<StoreMessage> testObserver = TestObserver.create();
+        messenger.receive().subscribe(testObserver);
+        messenger.send(message(peerStore));
+        messenger.send(message(localStore));
+        // the queues are flushed by single thread in order
+        testObserver.awaitCount(1);
+        verify(rpcClient, never()).createMessageStream(anyString(), anyString(), any(), anyMap(),
+            any(MethodDescriptor.class));
+        messenger.close();
+    }
+
+    @Test
+    public void dropWhenTooManyPending() {
+        when(messageStream.pendingAcks()).thenReturn(1024);
+        RPCStoreMessenger messenger = new RPCStoreMessenger(clusterId, localStore, rpcClient);
+        TestObserver<StoreMessage> testObserver = TestObserver.create();
+        messenger.receive().subscribe(testObserver);
+        messenger.send(message(peerStore));
+        messenger.send(message(localStore));
+        // the queues are flushed by single thread in order
+        testObserver.awaitCount(1);
+        verify(messageStream, never()).ack(any());
+
+        when(messageStream.pendingAcks()).thenReturn(0);
+        messenger.send(message(peerStore));
+        verify(messageStream, timeout(5000)).ack(any());
+        messenger.close();
+    }
+
+    @Test
+    public void receiveFromPeer() {
+        PublishSubject<StoreMessageBatch> ackSubject = PublishSubject.create();
+        when(inboundStream.ack()).thenReturn(ackSubject);
+        RPCStoreMessenger messenger = new RPCStoreMessenger(clusterId, localStore, rpcClient);
+        TestObserver<StoreMessage> testObserver = TestObserver.create();
+        messenger.receive().subscribe(testObserver);
+        messenger.accept(inboundStream);
+
+        StoreMessage message = StoreMessage.newBuilder()
+            .setFrom(peerStore)
+            .setSrcRange(srcRange)
+            .setPayload(KVRangeMessage.newBuilder().setHostStoreId(localStore).setRangeId(targetRange).build())
+            .build();
+        ackSubject.onNext(StoreMessageBatch.newBuilder()
+            .setFrom(peerStore)
+            .addMessages(message.toBuilder()
+                .clearFrom()
+                .setPayload(message.getPayload().toBuilder().clearHostStoreId()))
+            .build());
+        testObserver.awaitCount(1);
+        assertEquals(testObserver.values().get(0), message);
+
+        messenger.close();
+        verify(inboundStream).close();
+    }
+
+    private StoreMessage message(String hostStoreId) {
+        KVRangeMessage.Builder payloadBuilder = KVRangeMessage.newBuilder().setRangeId(targetRange);
+        if (hostStoreId != null) {
+            payloadBuilder.setHostStoreId(hostStoreId);
+        }
+        return StoreMessage.newBuilder()
+            .setFrom(localStore)
+            .setSrcRange(srcRange)
+            .setPayload(payloadBuilder.build())
+            .build();
+    }
+}
@@ -13,8 +13,10 @@
 
 package com.baidu.bifromq.basekv.store.range;
 
+import static org.awaitility.Awaitility.await;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -37,6 +39,7 @@ import com.google.common.util.concurrent.MoreExecutors;
 import com.google.protobuf.ByteString;
 import io.reactivex.rxjava3.subjects.PublishSubject;
 import java.time.Duration;
+import java.util.List;
 import lombok.SneakyThrows;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
@@ -70,7 +73,7 @@ public class KVRangeDumpSessionTest extends MockableTest {
             .build();
         when(rangeAccessor.id()).thenReturn(rangeId);
         KVRangeDumpSession dumpSession = new KVRangeDumpSession(peerStoreId, request, rangeAccessor, messenger,
-            MoreExecutors.directExecutor(), Duration.ofSeconds(5), 1024, dumpBytesRecorder);
+            MoreExecutors.directExecutor(), Duration.ofSeconds(5), 1024, 16, dumpBytesRecorder);
         assertTrue(dumpSession.awaitDone().toCompletableFuture().isDone());
         ArgumentCaptor<KVRangeMessage> messageCap = ArgumentCaptor.forClass(KVRangeMessage.class);
         verify(messenger).send(messageCap.capture());
@@ -97,7 +100,7 @@ public class KVRangeDumpSessionTest extends MockableTest {
         when(rangeAccessor.id()).thenReturn(rangeId);
         when(rangeAccessor.hasCheckpoint(snapshot)).thenReturn(false);
         KVRangeDumpSession dumpSession = new KVRangeDumpSession(peerStoreId, request, rangeAccessor, messenger,
-            MoreExecutors.directExecutor(), Duration.ofSeconds(5), 1024, dumpBytesRecorder);
+            MoreExecutors.directExecutor(), Duration.ofSeconds(5), 1024, 16, dumpBytesRecorder);
         assertTrue(dumpSession.awaitDone().toCompletableFuture().isDone());
         ArgumentCaptor<KVRangeMessage> messageCap = ArgumentCaptor.forClass(KVRangeMessage.class);
         verify(messenger).send(messageCap.capture());
@@ -150,7 +153,7 @@ public class KVRangeDumpSessionTest extends MockableTest {
         when(rangeCPDataItr.key()).thenReturn(ByteString.copyFromUtf8("key"));
         when(rangeCPDataItr.value()).thenReturn(ByteString.copyFromUtf8("value"));
         KVRangeDumpSession dumpSession = new KVRangeDumpSession(peerStoreId, request, rangeAccessor, messenger,
-            MoreExecutors.directExecutor(), Duration.ofSeconds(5), 1024, dumpBytesRecorder);
+            MoreExecutors.directExecutor(), Duration.ofSeconds(5), 1024, 16, dumpBytesRecorder);
         assertEquals(dumpSession.checkpointId(), checkpointId);
         verify(rangeCPDataItr).seekToFirst();
         verify(rangeCPDataItr).next();
@@ -199,12 +202,69 @@ public class KVRangeDumpSessionTest extends MockableTest {
         when(rangeCPDataItr.key()).thenReturn(ByteString.copyFromUtf8("key"));
         when(rangeCPDataItr.value()).thenReturn(ByteString.copyFromUtf8("value"));
         KVRangeDumpSession dumpSession = new KVRangeDumpSession(peerStoreId, request, rangeAccessor, messenger,
-            MoreExecutors.directExecutor(), Duration.ofMillis(100), 5, dumpBytesRecorder);
+            MoreExecutors.directExecutor(), Duration.ofMillis(100), 5, 16, dumpBytesRecorder);
         ArgumentCaptor<KVRangeMessage> messageCap = ArgumentCaptor.forClass(KVRangeMessage.class);
         verify(messenger, times(1)).send(messageCap.capture());
         assertEquals(messageCap.getValue().getSaveSnapshotDataRequest().getFlag(), SaveSnapshotDataRequest.Flag.More);
     }
 
+    @SneakyThrows
+    @Test
+    public void slidingWindow() {
+        String peerStoreId = "follower";
+        String sessionId = "session";
+        String checkpointId = "checkpoint";
+        KVRangeId rangeId = KVRangeIdUtil.generate();
+        KVRangeSnapshot snapshot = KVRangeSnapshot.newBuilder()
+            .setId(rangeId)
+            .setCheckpointId(checkpointId)
+            .build();
+        SnapshotSyncRequest request = SnapshotSyncRequest.newBuilder()
+            .setSessionId(sessionId)
+            .setSnapshot(snapshot)
+            .build();
+        PublishSubject<KVRangeMessage> incomingMsgs = PublishSubject.create();
+
+        when(rangeAccessor.id()).thenReturn(rangeId);
+        when(rangeAccessor.hasCheckpoint(snapshot)).thenReturn(true);
+        when(rangeAccessor.open(snapshot)).thenReturn(rangeCPReader);
+        when(rangeCPReader.newDataReader()).thenReturn(rangeCPDataReader);
+        when(rangeCPDataReader.iterator()).thenReturn(rangeCPDataItr);
+
+        when(messenger.receive()).thenReturn(incomingMsgs);
+
+        // one kv per chunk
+        when(rangeCPDataItr.isValid()).thenReturn(true, true, true, true, true, true, true, false);
+        when(rangeCPDataItr.key()).thenReturn(ByteString.copyFromUtf8("key"));
+        when(rangeCPDataItr.value()).thenReturn(ByteString.copyFrom(new byte[1024 * 1024]));
+        KVRangeDumpSession dumpSession = new KVRangeDumpSession(peerStoreId, request, rangeAccessor, messenger,
+            MoreExecutors.directExecutor(), Duration.ofSeconds(1), Integer.MAX_VALUE, 2, dumpBytesRecorder);
+        await().until(() -> sentRequests().size() == 2);
+        Thread.sleep(50);
+        assertEquals(sentRequests().size(), 2);
+
+        // out-of-order ack won't slide the window
+        incomingMsgs.onNext(reply(rangeId, sessionId, 1));
+        Thread.sleep(600);
+        assertEquals(sentRequests().size(), 2);
+
+        // only the unacknowledged request is retransmitted
+        dumpSession.tick();
+        List<SaveSnapshotDataRequest> sent = sentRequests();
+        assertEquals(sent.size(), 3);
+        assertEquals(sent.get(2), sent.get(0));
+
+        incomingMsgs.onNext(reply(rangeId, sessionId, 0));
+        await().until(() -> sentRequests().size() == 5);
+        sent = sentRequests();
+        assertEquals(sent.get(3).getReqId(), 2);
+        assertEquals(sent.get(4).getReqId(), 3);
+        assertEquals(sent.get(4).getFlag(), SaveSnapshotDataRequest.Flag.End);
+
+        incomingMsgs.onNext(reply(rangeId, sessionId, 3));
+        assertTrue(dumpSession.awaitDone().isDone());
+    }
+
     @SneakyThrows
     @Test
     public void resend() {
@@ -234,7 +294,7 @@ public class KVRangeDumpSessionTest extends MockableTest {
         when(rangeCPDataItr.key()).thenReturn(ByteString.copyFromUtf8("key"));
         when(rangeCPDataItr.value()).thenReturn(ByteString.copyFromUtf8("value"));
         KVRangeDumpSession dumpSession = new KVRangeDumpSession(peerStoreId, request, rangeAccessor, messenger,
-            MoreExecutors.directExecutor(), Duration.ofMillis(100), 1024, dumpBytesRecorder);
+            MoreExecutors.directExecutor(), Duration.ofMillis(100), 1024, 16, dumpBytesRecorder);
         Thread.sleep(60);
         dumpSession.tick();
         ArgumentCaptor<KVRangeMessage> messageCap = ArgumentCaptor.forClass(KVRangeMessage.class);
@@ -271,7 +331,7 @@ public class KVRangeDumpSessionTest extends MockableTest {
         when(rangeCPDataItr.key()).thenReturn(ByteString.copyFromUtf8("key"));
         when(rangeCPDataItr.value()).thenReturn(ByteString.copyFromUtf8("value"));
         KVRangeDumpSession dumpSession = new KVRangeDumpSession(peerStoreId, request, rangeAccessor, messenger,
-            MoreExecutors.directExecutor(), Duration.ofMillis(10), 1024, dumpBytesRecorder);
+            MoreExecutors.directExecutor(), Duration.ofMillis(10), 1024, 16, dumpBytesRecorder);
         Thread.sleep(20);
         dumpSession.tick();
         verify(messenger, times(1)).send(any());
@@ -306,10 +366,27 @@ public class KVRangeDumpSessionTest extends MockableTest {
         when(rangeCPDataItr.key()).thenReturn(ByteString.copyFromUtf8("key"));
         when(rangeCPDataItr.value()).thenReturn(ByteString.copyFromUtf8("value"));
         KVRangeDumpSession dumpSession = new KVRangeDumpSession(peerStoreId, request, rangeAccessor, messenger,
-            MoreExecutors.directExecutor(), Duration.ofMillis(10), 1024, dumpBytesRecorder);
+            MoreExecutors.directExecutor(), Duration.ofMillis(10), 1024, 16, dumpBytesRecorder);
         assertFalse(dumpSession.awaitDone().toCompletableFuture().isDone());
         dumpSession.cancel();
         verify(messenger, times(1)).send(any());
         assertTrue(dumpSession.awaitDone().toCompletableFuture().isDone());
     }
+
+    private List<SaveSnapshotDataRequest> sentRequests() {
+        ArgumentCaptor<KVRangeMessage> messageCap = ArgumentCaptor.forClass(KVRangeMessage.class);
+        verify(messenger, atLeast(0)).send(messageCap.capture());
+        return messageCap.getAllValues().stream().map(KVRangeMessage::getSaveSnapshotDataRequest).toList();
+    }
+
+    private KVRangeMessage reply(KVRangeId rangeId, String sessionId, int reqId) {
+        return KVRangeMessage.newBuilder()
+            .setRangeId(rangeId)
+            .setSaveSnapshotDataReply(SaveSnapshotDataReply.newBuilder()
+                .setReqId(reqId)
+                .setSessionId(sessionId)
+                .setResult(SaveSnapshotDataReply.Result.OK)
+                .build())
+            .build();
+    }
 }
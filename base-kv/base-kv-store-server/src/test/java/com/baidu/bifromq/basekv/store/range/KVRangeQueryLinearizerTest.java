@@ -13,6 +13,8 @@
 
 package com.baidu.bifromq.basekv.store.range;
 
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
@@ -20,6 +22,7 @@ import static org.testng.Assert.assertTrue;
 import com.baidu.bifromq.basekv.MockableTest;
 import com.google.common.util.concurrent.MoreExecutors;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Supplier;
 import org.mockito.Mock;
 import org.testng.annotations.Test;
@@ -36,9 +39,9 @@ public class KVRangeQueryLinearizerTest extends MockableTest {
             .thenReturn(CompletableFuture.completedFuture(1L),
                 CompletableFuture.completedFuture(2L),
                 CompletableFuture.completedFuture(3L));
-        CompletableFuture<Void> t1 = linearizer.linearize().toCompletableFuture();
-        CompletableFuture<Void> t2 = linearizer.linearize().toCompletableFuture();
-        CompletableFuture<Void> t3 = linearizer.linearize().toCompletableFuture();
+        CompletableFuture<Void> t1 = linearizer.linearize(0).toCompletableFuture();
+        CompletableFuture<Void> t2 = linearizer.linearize(0).toCompletableFuture();
+        CompletableFuture<Void> t3 = linearizer.linearize(0).toCompletableFuture();
         assertTrue(t1.isDone());
         assertTrue(t2.isDone());
         assertTrue(t3.isDone());
@@ -53,9 +56,9 @@ public class KVRangeQueryLinearizerTest extends MockableTest {
                 CompletableFuture.completedFuture(1L),
                 CompletableFuture.completedFuture(2L),
                 CompletableFuture.completedFuture(2L));
-        CompletableFuture<Void> t1 = linearizer.linearize().toCompletableFuture();
-        CompletableFuture<Void> t2 = linearizer.linearize().toCompletableFuture();
-        CompletableFuture<Void> t3 = linearizer.linearize().toCompletableFuture();
+        CompletableFuture<Void> t1 = linearizer.linearize(0).toCompletableFuture();
+        CompletableFuture<Void> t2 = linearizer.linearize(0).toCompletableFuture();
+        CompletableFuture<Void> t3 = linearizer.linearize(0).toCompletableFuture();
         assertFalse(t1.isDone());
         assertFalse(t2.isDone());
         assertFalse(t3.isDone());
@@ -66,6 +69,81 @@ public class KVRangeQueryLinearizerTest extends MockableTest {
         linearizer.afterLogApplied(2L);
         assertTrue(t3.isDone());
 
-        assertTrue(linearizer.linearize().toCompletableFuture().isDone());
+        assertTrue(linearizer.linearize(0).toCompletableFuture().isDone());
+    }
+
+    @Test
+    public void leaseRead() {
+        AtomicBoolean leaseHolder = new AtomicBoolean(true);
+        KVRangeQueryLinearizer linearizer = new KVRangeQueryLinearizer(readIndexSupplier, leaseHolder::get,
+            MoreExecutors.directExecutor(), 1);
+        when(readIndexSupplier.get()).thenReturn(CompletableFuture.completedFuture(1L));
+        // lease is confirmed by the first read index
+        assertTrue(linearizer.linearize(0).toCompletableFuture().isDone());
+        verify(readIndexSupplier, times(1)).get();
+
+        linearizer.afterCommitted(2);
+        CompletableFuture<Void> t1 = linearizer.linearize(0).toCompletableFuture();
+        verify(readIndexSupplier, times(1)).get();
+        assertFalse(t1.isDone());
+        linearizer.afterLogApplied(2);
+        assertTrue(t1.isDone());
+
+        // lease should be confirmed again after leadership changed
+        linearizer.resetLease();
+        when(readIndexSupplier.get()).thenReturn(CompletableFuture.completedFuture(2L));
+        assertTrue(linearizer.linearize(0).toCompletableFuture().isDone());
+        verify(readIndexSupplier, times(2)).get();
+        assertTrue(linearizer.linearize(0).toCompletableFuture().isDone());
+        verify(readIndexSupplier, times(2)).get();
+
+        // not leader
+        leaseHolder.set(false);
+        assertTrue(linearizer.linearize(0).toCompletableFuture().isDone());
+        verify(readIndexSupplier, times(3)).get();
+    }
+
+    @Test
+    public void staleRead() {
+        KVRangeQueryLinearizer linearizer = new KVRangeQueryLinearizer(readIndexSupplier, () -> false,
+            MoreExecutors.directExecutor(), 0);
+        CompletableFuture<Long> readIndex = new CompletableFuture<>();
+        when(readIndexSupplier.get()).thenReturn(readIndex);
+        // no fresh data yet
+        CompletableFuture<Void> t1 = linearizer.linearize(60_000).toCompletableFuture();
+        assertFalse(t1.isDone());
+        readIndex.complete(1L);
+        assertFalse(t1.isDone());
+        linearizer.afterLogApplied(1);
+        assertTrue(t1.isDone());
+
+        // served locally within the staleness bound
+        assertTrue(linearizer.linearize(60_000).toCompletableFuture().isDone());
+        verify(readIndexSupplier, times(1)).get();
+
+        // strictly linearizable read never serves stale data
+        when(readIndexSupplier.get()).thenReturn(new CompletableFuture<>());
+        assertFalse(linearizer.linearize(0).toCompletableFuture().isDone());
+        verify(readIndexSupplier, times(2)).get();
+    }
+
+    @Test
+    public void strictReadDuringLeaseLost() {
+        AtomicBoolean leaseHolder = new AtomicBoolean(true);
+        KVRangeQueryLinearizer linearizer = new KVRangeQueryLinearizer(readIndexSupplier, leaseHolder::get,
+            MoreExecutors.directExecutor(), 1);
+        when(readIndexSupplier.get()).thenReturn(CompletableFuture.completedFuture(1L));
+        assertTrue(linearizer.linearize(0).toCompletableFuture().isDone());
+        verify(readIndexSupplier, times(1)).get();
+
+        // e.g. transferring leadership
+        leaseHolder.set(false);
+        CompletableFuture<Long> readIndex = new CompletableFuture<>();
+        when(readIndexSupplier.get()).thenReturn(readIndex);
+        CompletableFuture<Void> t1 = linearizer.linearize(0).toCompletableFuture();
+        assertFalse(t1.isDone());
+        verify(readIndexSupplier, times(2)).get();
+        readIndex.complete(1L);
+        assertTrue(t1.isDone());
     }
 }
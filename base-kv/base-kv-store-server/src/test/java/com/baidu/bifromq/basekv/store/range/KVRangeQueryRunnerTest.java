@@ -168,7 +168,7 @@ public class KVRangeQueryRunnerTest extends MockableTest {
         when(accessor.state()).thenReturn(State.newBuilder().setType(State.StateType.Normal).build());
         when(coProc.query(any(ROCoProcInput.class), any(IKVReader.class)))
             .thenReturn(CompletableFuture.completedFuture(value));
-        when(linearizer.linearize()).thenReturn(CompletableFuture.completedFuture(null));
+        when(linearizer.linearize(0)).thenReturn(CompletableFuture.completedFuture(null));
         CompletableFuture<ROCoProcOutput> queryFuture = runner.queryCoProc(0, key, true);
         verify(accessor).returnDataReader(kvReader);
         ArgumentCaptor<ROCoProcInput> inputCap = ArgumentCaptor.forClass(ROCoProcInput.class);
@@ -191,7 +191,7 @@ public class KVRangeQueryRunnerTest extends MockableTest {
         when(accessor.version()).thenReturn(0L);
         when(accessor.state()).thenReturn(State.newBuilder().setType(State.StateType.Normal).build());
 
-        when(linearizer.linearize()).thenReturn(new CompletableFuture<>());
+        when(linearizer.linearize(0)).thenReturn(new CompletableFuture<>());
         when(coProc.query(any(ROCoProcInput.class), any(IKVReader.class))).thenReturn(new CompletableFuture<>());
 
         CompletableFuture<ROCoProcOutput> queryFuture = runner.queryCoProc(0, key, false);
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.basekv.store.range;
+
+import static com.baidu.bifromq.basekv.utils.BoundaryUtil.FULL_BOUNDARY;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import com.baidu.bifromq.basekv.localengine.ICPableKVSpace;
+import com.baidu.bifromq.basekv.proto.Boundary;
+import com.baidu.bifromq.basekv.proto.KVRangeSnapshot;
+import com.baidu.bifromq.basekv.proto.State;
+import com.baidu.bifromq.basekv.store.api.IKVIterator;
+import com.baidu.bifromq.basekv.store.api.IKVReader;
+import com.baidu.bifromq.basekv.store.api.IKVWriter;
+import com.baidu.bifromq.basekv.utils.KVRangeIdUtil;
+import com.google.protobuf.ByteString;
+import java.util.ArrayList;
+import java.util.List;
+import org.testng.annotations.Test;
+
+public class KVWriteBatchViewTest extends AbstractKVRangeTest {
+    @Test
+    public void readYourWrites() {
+        IKVRange range = newRange("a", "b", "c");
+        IKVRangeWriter<?> rangeWriter = range.toWriter();
+        KVWriteBatchView batchView = new KVWriteBatchView(range.newDataReader(), rangeWriter.kvWriter());
+        IKVReader reader = batchView.reader();
+        IKVWriter writer = batchView.writer();
+
+        writer.put(key("a"), key("a1"));
+        writer.delete(key("b"));
+        writer.insert(key("d"), key("d"));
+        assertEquals(reader.get(key("a")).get(), key("a1"));
+        assertFalse(reader.exist(key("b")));
+        assertTrue(reader.exist(key("c")));
+        assertTrue(reader.exist(key("d")));
+        // not visible outside before done
+        assertTrue(range.newDataReader().exist(key("b")));
+        assertFalse(range.newDataReader().exist(key("d")));
+
+        rangeWriter.done();
+        IKVReader committed = range.newDataReader();
+        assertEquals(committed.get(key("a")).get(), key("a1"));
+        assertFalse(committed.exist(key("b")));
+        assertTrue(committed.exist(key("d")));
+    }
+
+    @Test
+    public void clear() {
+        IKVRange range = newRange("a", "b", "c", "d");
+        IKVRangeWriter<?> rangeWriter = range.toWriter();
+        KVWriteBatchView batchView = new KVWriteBatchView(range.newDataReader(), rangeWriter.kvWriter());
+        IKVReader reader = batchView.reader();
+        IKVWriter writer = batchView.writer();
+
+        writer.put(key("b1"), key("b1"));
+        writer.clear(Boundary.newBuilder().setStartKey(key("b")).setEndKey(key("d")).build());
+        writer.put(key("c"), key("c1"));
+        assertTrue(reader.exist(key("a")));
+        assertFalse(reader.exist(key("b")));
+        assertFalse(reader.exist(key("b1")));
+        assertEquals(reader.get(key("c")).get(), key("c1"));
+        assertEquals(scan(reader.iterator()), List.of("a", "c", "d"));
+        rangeWriter.abort();
+    }
+
+    @Test
+    public void iterate() {
+        IKVRange range = newRange("b", "d", "f");
+        IKVRangeWriter<?> rangeWriter = range.toWriter();
+        KVWriteBatchView batchView = new KVWriteBatchView(range.newDataReader(), rangeWriter.kvWriter());
+        IKVReader reader = batchView.reader();
+        IKVWriter writer = batchView.writer();
+        writer.put(key("a"), key("a"));
+        writer.put(key("d"), key("d1"));
+        writer.delete(key("f"));
+        writer.put(key("e"), key("e"));
+
+        assertEquals(scan(reader.iterator()), List.of("a", "b", "d", "e"));
+        assertEquals(scan(reader.zeroCopyIterator()), List.of("a", "b", "d", "e"));
+
+        IKVIterator itr = reader.iterator();
+        List<String> keys = new ArrayList<>();
+        for (itr.seekToLast(); itr.isValid(); itr.prev()) {
+            keys.add(itr.key().toStringUtf8());
+        }
+        assertEquals(keys, List.of("e", "d", "b", "a"));
+
+        itr.seek(key("c"));
+        assertEquals(itr.key(), key("d"));
+        assertEquals(itr.value(), key("d1"));
+        itr.prev();
+        assertEquals(itr.key(), key("b"));
+        itr.next();
+        itr.next();
+        assertEquals(itr.key(), key("e"));
+        itr.seekForPrev(key("f"));
+        assertEquals(itr.key(), key("e"));
+        itr.prev();
+        itr.prev();
+        assertEquals(itr.key(), key("b"));
+        itr.next();
+        assertEquals(itr.key(), key("d"));
+        rangeWriter.abort();
+    }
+
+    @Test
+    public void switchDirectionOnZeroCopyIterator() {
+        IKVRange range = newRange("a", "bb", "ccc", "dddd");
+        IKVRangeWriter<?> rangeWriter = range.toWriter();
+        KVWriteBatchView batchView = new KVWriteBatchView(range.newDataReader(), rangeWriter.kvWriter());
+        batchView.writer().put(key("b"), key("b"));
+
+        IKVIterator itr = batchView.reader().zeroCopyIterator();
+        itr.seek(key("ccc"));
+        itr.prev();
+        assertEquals(itr.key(), key("bb"));
+        itr.next();
+        assertEquals(itr.key(), key("ccc"));
+        itr.next();
+        itr.prev();
+        assertEquals(itr.key(), key("ccc"));
+        rangeWriter.abort();
+    }
+
+    private IKVRange newRange(String... keys) {
+        KVRangeSnapshot snapshot = KVRangeSnapshot.newBuilder()
+            .setId(KVRangeIdUtil.generate())
+            .setVer(0)
+            .setLastAppliedIndex(0)
+            .setState(State.newBuilder().setType(State.StateType.Normal).build())
+            .setBoundary(FULL_BOUNDARY)
+            .build();
+        ICPableKVSpace keyRange = kvEngine.createIfMissing(KVRangeIdUtil.toString(snapshot.getId()));
+        IKVRange range = new KVRange(keyRange, snapshot);
+        IKVRangeWriter<?> rangeWriter = range.toWriter();
+        for (String k : keys) {
+            rangeWriter.kvWriter().put(key(k), key(k));
+        }
+        rangeWriter.done();
+        return range;
+    }
+
+    private List<String> scan(IKVIterator itr) {
+        List<String> keys = new ArrayList<>();
+        for (itr.seekToFirst(); itr.isValid(); itr.next()) {
+            keys.add(itr.key().toStringUtf8());
+        }
+        return keys;
+    }
+
+    private ByteString key(String key) {
+        return ByteString.copyFromUtf8(key);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.basekv.store.wal;
+
+import static java.util.Collections.singletonList;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertThrows;
+import static org.testng.Assert.assertTrue;
+
+import com.baidu.bifromq.basekv.TestUtil;
+import com.baidu.bifromq.basekv.proto.KVRangeId;
+import com.baidu.bifromq.basekv.raft.BasicStateStoreTest;
+import com.baidu.bifromq.basekv.raft.IRaftStateStore;
+import com.baidu.bifromq.basekv.raft.proto.ClusterConfig;
+import com.baidu.bifromq.basekv.raft.proto.LogEntry;
+import com.baidu.bifromq.basekv.raft.proto.Snapshot;
+import com.baidu.bifromq.basekv.store.exception.KVRangeStoreException;
+import com.baidu.bifromq.basekv.utils.KVRangeIdUtil;
+import com.google.protobuf.ByteString;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class FileWALStoreTest extends BasicStateStoreTest {
+    private FileWALStoreEngineConfigurator walConfigurator;
+    private FileWALStoreEngine stateStorageEngine;
+    public Path walRootDir;
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        walRootDir = Files.createTempDirectory("");
+        walConfigurator = FileWALStoreEngineConfigurator.builder()
+            .walRootDir(walRootDir.toString())
+            // small segment to test segment rolling
+            .segmentSize(1024)
+            .build();
+        stateStorageEngine = new FileWALStoreEngine("testcluster", null, walConfigurator);
+        stateStorageEngine.start();
+    }
+
+    @AfterMethod
+    public void teardown() {
+        stateStorageEngine.stop();
+        if (walRootDir != null) {
+            TestUtil.deleteDir(walRootDir.toString());
+            walRootDir.toFile().delete();
+        }
+    }
+
+    @Override
+    protected String localId() {
+        return stateStorageEngine.id();
+    }
+
+    @Override
+    protected IRaftStateStore createStorage(String id, Snapshot snapshot) {
+        return stateStorageEngine.create(KVRangeIdUtil.generate(), snapshot);
+    }
+
+    @Test
+    public void reloadAfterRestart() {
+        KVRangeId rangeId = KVRangeIdUtil.generate();
+        ClusterConfig config = ClusterConfig.newBuilder().addVoters(localId()).build();
+        IRaftStateStore stateStorage = stateStorageEngine.create(rangeId, Snapshot.newBuilder()
+            .setClusterConfig(config)
+            .setTerm(0)
+            .setIndex(0)
+            .build());
+        stateStorage.saveTerm(2);
+        for (int i = 1; i <= 100; i++) {
+            LogEntry.Builder entry = LogEntry.newBuilder().setTerm(1).setIndex(i);
+            if (i == 50) {
+                entry.setConfig(config);
+            } else {
+                entry.setData(ByteString.copyFromUtf8("Data:" + i));
+            }
+            stateStorage.append(singletonList(entry.build()), false);
+        }
+        // replace the tail
+        stateStorage.append(singletonList(LogEntry.newBuilder()
+            .setTerm(2)
+            .setIndex(90)
+            .setData(ByteString.copyFromUtf8("Data:90"))
+            .build()), true);
+        // compact the head
+        stateStorage.applySnapshot(Snapshot.newBuilder()
+            .setClusterConfig(config)
+            .setTerm(1)
+            .setIndex(30)
+            .build());
+        String storeId = stateStorageEngine.id();
+        stateStorageEngine.stop();
+
+        stateStorageEngine = new FileWALStoreEngine("testcluster", null, walConfigurator);
+        stateStorageEngine.start();
+        assertEquals(stateStorageEngine.id(), storeId);
+        assertTrue(stateStorageEngine.has(rangeId));
+        stateStorage = stateStorageEngine.get(rangeId);
+        assertEquals(stateStorage.currentTerm(), 2);
+        assertEquals(stateStorage.firstIndex(), 31);
+        assertEquals(stateStorage.lastIndex(), 90);
+        assertEquals(stateStorage.latestClusterConfig(), config);
+        assertEquals(stateStorage.entryAt(90).get().getTerm(), 2);
+        Iterator<LogEntry> itr = stateStorage.entries(31, 91, -1);
+        for (long i = 31; i <= 90; i++) {
+            assertEquals(itr.next().getIndex(), i);
+        }
+        assertFalse(itr.hasNext());
+    }
+
+    @Test
+    public void readAfterStop() {
+        IRaftStateStore stateStorage = stateStorageEngine.create(KVRangeIdUtil.generate(), Snapshot.newBuilder()
+            .setClusterConfig(ClusterConfig.newBuilder().addVoters(localId()).build())
+            .setTerm(0)
+            .setIndex(0)
+            .build());
+        stateStorage.append(singletonList(LogEntry.newBuilder()
+            .setTerm(1)
+            .setIndex(1)
+            .setData(ByteString.copyFromUtf8("Data:1"))
+            .build()), true);
+        stateStorage.stop();
+        // the segments are unmapped after stop
+        assertThrows(KVRangeStoreException.class, () -> stateStorage.entryAt(1));
+    }
+}
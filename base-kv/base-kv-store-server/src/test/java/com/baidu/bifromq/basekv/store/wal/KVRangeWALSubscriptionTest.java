@@ -15,9 +15,11 @@ package com.baidu.bifromq.basekv.store.wal;
 
 import static org.awaitility.Awaitility.await;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -36,6 +38,7 @@ import io.reactivex.rxjava3.subjects.PublishSubject;
 import java.lang.reflect.Method;
 import java.time.Duration;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
@@ -44,6 +47,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.stubbing.Answer;
 import org.testng.annotations.Test;
@@ -179,6 +183,62 @@ public class KVRangeWALSubscriptionTest extends MockableTest {
         });
     }
 
+    @SneakyThrows
+    @Test
+    public void applyLogsInBatch() {
+        LogEntry entry1 = LogEntry.newBuilder().setTerm(0).setIndex(0).build();
+        LogEntry entry2 = LogEntry.newBuilder().setTerm(0).setIndex(1).build();
+        LogEntry entry3 = LogEntry.newBuilder().setTerm(0).setIndex(2).build();
+        when(wal.retrieveCommitted(0, maxSize))
+            .thenReturn(CompletableFuture.completedFuture(Iterators.forArray(entry1, entry2, entry3)));
+        when(subscriber.maxApplyBatchSize()).thenReturn(2);
+        AtomicInteger batchApplyCount = new AtomicInteger();
+        when(subscriber.apply(anyList()))
+            .thenAnswer((Answer<CompletableFuture<Void>>) invocationOnMock -> {
+                if (batchApplyCount.getAndIncrement() == 0) {
+                    return CompletableFuture.failedFuture(new KVRangeException.TryLater("try again"));
+                }
+                return CompletableFuture.completedFuture(null);
+            });
+        CountDownLatch latch = new CountDownLatch(1);
+        when(subscriber.apply(any(LogEntry.class)))
+            .thenAnswer((Answer<CompletableFuture<Void>>) invocationOnMock -> {
+                latch.countDown();
+                return CompletableFuture.completedFuture(null);
+            });
+        KVRangeWALSubscription walSub =
+            new KVRangeWALSubscription(maxSize, wal, commitIndexSource, -1, subscriber, executor);
+        commitIndexSource.onNext(2L);
+        latch.await();
+        // the failed batch is reapplied as a whole before the rest
+        verify(subscriber, times(2)).apply(List.of(entry1, entry2));
+        verify(subscriber, times(1)).apply(entry3);
+    }
+
+    @SneakyThrows
+    @Test
+    public void applyLogsOneByOneByDefault() {
+        LogEntry entry1 = LogEntry.newBuilder().setTerm(0).setIndex(0).build();
+        LogEntry entry2 = LogEntry.newBuilder().setTerm(0).setIndex(1).build();
+        when(wal.retrieveCommitted(0, maxSize))
+            .thenReturn(CompletableFuture.completedFuture(Iterators.forArray(entry1, entry2)));
+        when(subscriber.maxApplyBatchSize()).thenReturn(2);
+        when(subscriber.apply(anyList())).thenCallRealMethod();
+        CountDownLatch latch = new CountDownLatch(2);
+        when(subscriber.apply(any(LogEntry.class)))
+            .thenAnswer((Answer<CompletableFuture<Void>>) invocationOnMock -> {
+                latch.countDown();
+                return CompletableFuture.completedFuture(null);
+            });
+        KVRangeWALSubscription walSub =
+            new KVRangeWALSubscription(maxSize, wal, commitIndexSource, -1, subscriber, executor);
+        commitIndexSource.onNext(1L);
+        latch.await();
+        InOrder inOrder = inOrder(subscriber);
+        inOrder.verify(subscriber).apply(entry1);
+        inOrder.verify(subscriber).apply(entry2);
+    }
+
     @SneakyThrows
     @Test
     public void cancelApplyLogWhenSnapshot() {
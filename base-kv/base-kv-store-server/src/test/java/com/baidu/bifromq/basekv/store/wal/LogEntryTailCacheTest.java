@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.basekv.store.wal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import com.baidu.bifromq.basekv.raft.proto.LogEntry;
+import com.google.protobuf.ByteString;
+import java.util.ArrayList;
+import java.util.List;
+import org.testng.annotations.Test;
+
+public class LogEntryTailCacheTest {
+    @Test
+    public void evictByBytes() {
+        List<LogEntry> entries = entries(1, 10, 1);
+        LogEntryTailCache cache =
+            new LogEntryTailCache(new LogEntryTailCacheBudget(entries.get(0).getSerializedSize() * 5L));
+        cache.append(entries);
+        // evicted down to the low watermark
+        for (long i = 1; i <= 7; i++) {
+            assertNull(cache.get(i));
+        }
+        for (int i = 8; i <= 10; i++) {
+            assertSame(cache.get(i), entries.get(i - 1));
+        }
+    }
+
+    @Test
+    public void replaceTail() {
+        LogEntryTailCache cache = new LogEntryTailCache(new LogEntryTailCacheBudget(1024 * 1024));
+        cache.append(entries(1, 10, 1));
+        List<LogEntry> replaced = entries(6, 7, 2);
+        cache.append(replaced);
+        assertSame(cache.get(6), replaced.get(0));
+        assertSame(cache.get(7), replaced.get(1));
+        assertNull(cache.get(8));
+        assertNotNull(cache.get(5));
+    }
+
+    @Test
+    public void keepContiguous() {
+        LogEntryTailCache cache = new LogEntryTailCache(new LogEntryTailCacheBudget(1024 * 1024));
+        cache.append(entries(1, 5, 1));
+        cache.append(entries(10, 11, 2));
+        assertNull(cache.get(5));
+        assertNotNull(cache.get(10));
+    }
+
+    @Test
+    public void truncateBefore() {
+        LogEntryTailCache cache = new LogEntryTailCache(new LogEntryTailCacheBudget(1024 * 1024));
+        cache.append(entries(1, 5, 1));
+        cache.truncateBefore(3);
+        assertNull(cache.get(2));
+        assertNotNull(cache.get(3));
+        cache.clear();
+        assertNull(cache.get(5));
+    }
+
+    @Test
+    public void disabled() {
+        LogEntryTailCache cache = new LogEntryTailCache(new LogEntryTailCacheBudget(0));
+        cache.append(entries(1, 5, 1));
+        assertNull(cache.get(5));
+    }
+
+    @Test
+    public void shareBudget() {
+        List<LogEntry> entries = entries(1, 10, 1);
+        LogEntryTailCacheBudget budget = new LogEntryTailCacheBudget(entries.get(0).getSerializedSize() * 10L);
+        LogEntryTailCache cache1 = new LogEntryTailCache(budget);
+        LogEntryTailCache cache2 = new LogEntryTailCache(budget);
+        cache1.append(entries);
+        assertEquals(budget.usedBytes(), cache1.bytes());
+
+        // the largest cache gives way
+        cache2.append(entries(1, 4, 1));
+        assertNull(cache1.get(4));
+        assertNotNull(cache1.get(10));
+        assertNotNull(cache2.get(4));
+        assertEquals(budget.usedBytes(), cache1.bytes() + cache2.bytes());
+        assertTrue(budget.usedBytes() <= entries.get(0).getSerializedSize() * 10L * 3 / 4);
+
+        cache1.close();
+        assertEquals(budget.usedBytes(), cache2.bytes());
+        cache2.append(entries(5, 10, 1));
+        assertNotNull(cache2.get(2));
+    }
+
+    private List<LogEntry> entries(long from, long to, long term) {
+        List<LogEntry> entries = new ArrayList<>();
+        for (long i = from; i <= to; i++) {
+            entries.add(LogEntry.newBuilder()
+                .setTerm(term)
+                .setIndex(i)
+                .setData(ByteString.copyFromUtf8("Data"))
+                .build());
+        }
+        return entries;
+    }
+}
@@ -20,6 +20,7 @@ import io.reactivex.rxjava3.core.Observable;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
+import java.util.function.BiPredicate;
 import java.util.function.Supplier;
 import javax.annotation.Nullable;
 
@@ -42,6 +43,13 @@ public interface IRPCClient extends IConnectable {
 
         void ack(AckT msg);
 
+        /**
+         * The number of acks buffered but not yet written to the underlying stream.
+         *
+         * @return the number of pending acks
+         */
+        int pendingAcks();
+
         Observable<MsgT> msg();
 
         void close();
@@ -131,6 +139,25 @@ public interface IRPCClient extends IConnectable {
                                                                       MethodDescriptor<ReqT, RespT> methodDesc,
                                                                       Executor executor);
 
+    /**
+     * Create a caller-managed auto-rebalanced request-response pipeline whose responses may arrive out of request
+     * order. Each response is matched to the earliest in-flight request accepted by the matcher.
+     *
+     * @param tenantId         the tenant id
+     * @param desiredServerId  the desired server id
+     * @param wchKey           key for calculating weighted consistent hash
+     * @param metadataSupplier supply the metadata of the pipeline
+     * @param methodDesc       the method descriptor
+     * @param responseMatcher  test if the response is for the request
+     * @return a request pipeline
+     */
+    <ReqT, RespT> IRequestPipeline<ReqT, RespT> createRequestPipeline(String tenantId,
+                                                                      @Nullable String desiredServerId,
+                                                                      @Nullable String wchKey,
+                                                                      Supplier<Map<String, String>> metadataSupplier,
+                                                                      MethodDescriptor<ReqT, RespT> methodDesc,
+                                                                      BiPredicate<ReqT, RespT> responseMatcher);
+
     /**
      * Create a caller-managed auto-rebalanced bi-directional message stream with at-most-once delivery guarantee.
      *
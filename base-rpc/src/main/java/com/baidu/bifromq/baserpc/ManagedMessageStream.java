@@ -35,6 +35,7 @@ import java.util.Optional;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 import javax.annotation.Nullable;
@@ -53,6 +54,7 @@ class ManagedMessageStream<MsgT, AckT> implements IRPCClient.IMessageStream<MsgT
 
     private final AtomicReference<State> state = new AtomicReference<>(State.Normal);
     private final ConcurrentLinkedQueue<AckT> ackSendingBuffers;
+    private final AtomicInteger pendingAckCount = new AtomicInteger();
     private final IRPCMeter.IRPCMethodMeter meter;
     private final String tenantId;
     private final String wchKey;
@@ -216,6 +218,8 @@ class ManagedMessageStream<MsgT, AckT> implements IRPCClient.IMessageStream<MsgT
     public void ack(AckT ack) {
         switch (state.get()) {
             case Normal, ServiceUnavailable -> {
+                // count before offering, so that it never drops below zero when the ack is polled in between
+                pendingAckCount.incrementAndGet();
                 ackSendingBuffers.offer(ack);
                 // check if pipeline is still open
                 sendUntilStreamNotReadyOrNoTask();
@@ -228,6 +232,11 @@ class ManagedMessageStream<MsgT, AckT> implements IRPCClient.IMessageStream<MsgT
         }
     }
 
+    @Override
+    public int pendingAcks() {
+        return pendingAckCount.get();
+    }
+
     @Override
     public Observable<MsgT> msg() {
         return msgSubject;
@@ -236,7 +245,9 @@ class ManagedMessageStream<MsgT, AckT> implements IRPCClient.IMessageStream<MsgT
     @Override
     public void close() {
         state.set(State.Closed);
-        ackSendingBuffers.clear();
+        while (ackSendingBuffers.poll() != null) {
+            pendingAckCount.decrementAndGet();
+        }
         disposables.dispose();
         msgSubject.onComplete();
         ClientCallStreamObserver<AckT> r = requester.getAndSet(null);
@@ -294,8 +305,12 @@ class ManagedMessageStream<MsgT, AckT> implements IRPCClient.IMessageStream<MsgT
                     sending.set(false);
                     return;
                 }
-                while (requestStream.isReady() && !ackSendingBuffers.isEmpty()) {
+                while (requestStream.isReady()) {
                     AckT ack = ackSendingBuffers.poll();
+                    if (ack == null) {
+                        break;
+                    }
+                    pendingAckCount.decrementAndGet();
                     requestStream.onNext(ack);
                     meter.recordCount(RPCMetric.StreamAckSendCount);
                 }
@@ -42,6 +42,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiPredicate;
 import java.util.function.Supplier;
 import javax.annotation.Nullable;
 import lombok.extern.slf4j.Slf4j;
@@ -64,6 +65,9 @@ class ManagedRequestPipeline<ReqT, RespT> implements IRPCClient.IRequestPipeline
     private final BluePrint.MethodSemantic semantic;
     private final MethodDescriptor<ReqT, RespT> methodDescriptor;
     private final BluePrint bluePrint;
+    // match the response to in-flight request, null if the responses are in request order
+    @Nullable
+    private final BiPredicate<ReqT, RespT> responseMatcher;
     private final CompositeDisposable disposables = new CompositeDisposable();
     private final BehaviorSubject<Long> signal = BehaviorSubject.createDefault(System.nanoTime());
     private final RPCClient.ChannelHolder channelHolder;
@@ -85,8 +89,24 @@ class ManagedRequestPipeline<ReqT, RespT> implements IRPCClient.IRequestPipeline
         MethodDescriptor<ReqT, RespT> methodDescriptor,
         BluePrint bluePrint,
         IRPCMeter.IRPCMethodMeter meter) {
+        this(tenantId, wchKey, targetServerId, metadataSupplier, channelHolder, callOptions, methodDescriptor,
+            bluePrint, meter, null);
+    }
+
+    ManagedRequestPipeline(
+        String tenantId,
+        @Nullable String wchKey,
+        @Nullable String targetServerId,
+        Supplier<Map<String, String>> metadataSupplier,
+        RPCClient.ChannelHolder channelHolder,
+        CallOptions callOptions,
+        MethodDescriptor<ReqT, RespT> methodDescriptor,
+        BluePrint bluePrint,
+        IRPCMeter.IRPCMethodMeter meter,
+        @Nullable BiPredicate<ReqT, RespT> responseMatcher) {
         assert methodDescriptor.getType() == MethodDescriptor.MethodType.BIDI_STREAMING;
         this.bluePrint = bluePrint;
+        this.responseMatcher = responseMatcher;
         semantic = bluePrint.semantic(methodDescriptor.getFullMethodName());
         assert semantic instanceof BluePrint.PipelineUnary;
         switch (semantic.mode()) {
@@ -375,6 +395,21 @@ class ManagedRequestPipeline<ReqT, RespT> implements IRPCClient.IRequestPipeline
         return Optional.ofNullable(requestTask);
     }
 
+    @Nullable
+    private RequestTask<ReqT, RespT> pollInflight(RespT resp) {
+        if (responseMatcher == null) {
+            return inflightTaskQueue.poll();
+        }
+        for (RequestTask<ReqT, RespT> requestTask : inflightTaskQueue) {
+            // the task may have been aborted concurrently
+            if (responseMatcher.test(requestTask.request, resp)
+                && inflightTaskQueue.removeFirstOccurrence(requestTask)) {
+                return requestTask;
+            }
+        }
+        return null;
+    }
+
     private Optional<RequestTask<ReqT, RespT>> prepareForAbort() {
         RequestTask<ReqT, RespT> requestTask = inflightTaskQueue.poll();
         if (requestTask != null) {
@@ -467,7 +502,7 @@ class ManagedRequestPipeline<ReqT, RespT> implements IRPCClient.IRequestPipeline
         public void onNext(RespT resp) {
             ClientCallStreamObserver<ReqT> currentRequestStream = requester.get();
             if (currentRequestStream == null || currentRequestStream == requestStream) {
-                RequestTask<ReqT, RespT> requestTask = inflightTaskQueue.poll();
+                RequestTask<ReqT, RespT> requestTask = pollInflight(resp);
                 if (requestTask != null) {
                     requestTask.finish(resp);
                 } else {
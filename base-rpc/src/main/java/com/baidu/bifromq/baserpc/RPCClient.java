@@ -36,6 +36,7 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiPredicate;
 import java.util.function.Supplier;
 import javax.annotation.Nullable;
 import lombok.NonNull;
@@ -173,6 +174,28 @@ final class RPCClient implements IRPCClient {
             meter.get(methodDesc));
     }
 
+    @Override
+    public <ReqT, RespT> IRequestPipeline<ReqT, RespT> createRequestPipeline(String tenantId,
+                                                                             @Nullable String desiredServerId,
+                                                                             @Nullable String wchKey,
+                                                                             Supplier<Map<String, String>>
+                                                                                 metadataSupplier,
+                                                                             MethodDescriptor<ReqT, RespT> methodDesc,
+                                                                             BiPredicate<ReqT, RespT>
+                                                                                 responseMatcher) {
+        return new ManagedRequestPipeline<>(
+            tenantId,
+            wchKey,
+            desiredServerId,
+            metadataSupplier,
+            channelHolder,
+            defaultCallOptions,
+            methodDesc,
+            bluePrint,
+            meter.get(methodDesc),
+            responseMatcher);
+    }
+
     @Override
     public <MsgT, AckT> IMessageStream<MsgT, AckT> createMessageStream(String tenantId,
                                                                        @Nullable String desiredServerId,
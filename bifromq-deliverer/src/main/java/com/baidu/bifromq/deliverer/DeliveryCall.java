@@ -27,9 +27,24 @@ public class DeliveryCall {
                         int brokerId,
                         String delivererKey,
                         TopicMessagePack msgPack) {
+        this(tenantId, matchInfo, new DelivererKey(brokerId, delivererKey), MessagePackWrapper.wrap(msgPack));
+    }
+
+    /**
+     * The calls sharing the same message pack wrapper will be delivered in one DeliveryPack if batched together.
+     *
+     * @param tenantId       the tenant
+     * @param matchInfo      the match info of the receiver
+     * @param delivererKey   the deliverer key of the receiver
+     * @param msgPackWrapper the message pack wrapper
+     */
+    public DeliveryCall(String tenantId,
+                        MatchInfo matchInfo,
+                        DelivererKey delivererKey,
+                        MessagePackWrapper msgPackWrapper) {
         this.tenantId = tenantId;
         this.matchInfo = matchInfo;
-        this.msgPackWrapper = MessagePackWrapper.wrap(msgPack);
-        this.delivererKey = new DelivererKey(brokerId, delivererKey);
+        this.msgPackWrapper = msgPackWrapper;
+        this.delivererKey = delivererKey;
     }
 }
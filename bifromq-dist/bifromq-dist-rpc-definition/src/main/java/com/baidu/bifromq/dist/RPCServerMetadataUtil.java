@@ -0,0 +1,22 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.dist;
+
+/**
+ * The metadata keys advertised by dist workers in their rpc server metadata.
+ */
+public class RPCServerMetadataUtil {
+    // advertised by dist workers which are able to apply match records in v2 schema
+    public static final String RPC_METADATA_MATCH_RECORD_V2 = "match_record_v2";
+}
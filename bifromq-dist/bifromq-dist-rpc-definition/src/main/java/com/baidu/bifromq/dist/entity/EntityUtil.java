@@ -22,6 +22,7 @@ import static com.baidu.bifromq.dist.util.TopicUtil.isNormalTopicFilter;
 import static com.baidu.bifromq.dist.util.TopicUtil.parseSharedTopic;
 import static com.baidu.bifromq.dist.util.TopicUtil.unescape;
 import static com.google.protobuf.ByteString.copyFromUtf8;
+import static com.google.protobuf.UnsafeByteOperations.unsafeWrap;
 
 import com.baidu.bifromq.dist.rpc.proto.GroupMatchRecord;
 import com.baidu.bifromq.dist.util.TopicUtil;
@@ -30,8 +31,17 @@ import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 
 public class EntityUtil {
+    // the infix of match records encoded in the schema introduced by v2, the value must be less than
+    // INFIX_UPPERBOUND_INFIX, so that tenant boundary covers match records in both schemas
+    private static final ByteString INFIX_MATCH_RECORD_V2_INFIX = copyFromUtf8("0");
+    // TODO: ONLY FOR BACKWARD COMPATIBLE WITH PREVIOUS ENCODING, WILL BE REMOVED IN FUTURE VERSION
     private static final ByteString INFIX_MATCH_RECORD_INFIX = copyFromUtf8("1");
     private static final ByteString INFIX_UPPERBOUND_INFIX = copyFromUtf8("2");
+    // the infix of the route counter, which is placed after all match records of the tenant
+    private static final ByteString INFIX_ROUTE_COUNTER_INFIX = copyFromUtf8("3");
+    private static final byte NUL_BYTE = 0;
+    private static final int TOPIC_FILTER_LENGTH_BYTES = Short.BYTES;
+    private static final int MAX_TOPIC_FILTER_LENGTH = 0xFFFF;
     private static final char FLAG_NORMAL_VAL = 1;
     private static final char FLAG_UNORDERED_VAL = 2;
     private static final char FLAG_ORDERED_VAL = 3;
@@ -44,12 +54,12 @@ public class EntityUtil {
         return Base64.getEncoder().encodeToString(scoped.getBytes(StandardCharsets.UTF_8));
     }
 
-    public static String toScopedQInboxId(String tenantId, String qInboxId) {
-        return tenantId + NUL + qInboxId;
+    public static String toScopedQInboxId(String tenantId, String qinboxId) {
+        return tenantId + NUL + qinboxId;
     }
 
-    public static String toScopedTopicFilter(String tenantId, String qInboxId, String topicFilter) {
-        return tenantId + NUL + qInboxId + NUL + topicFilter;
+    public static String toScopedTopicFilter(String tenantId, String qinboxId, String topicFilter) {
+        return tenantId + NUL + qinboxId + NUL + topicFilter;
     }
 
     public static String parseTenantIdFromScopedTopicFilter(String scopedTopicFilter) {
@@ -65,9 +75,12 @@ public class EntityUtil {
     }
 
     public static int parseSubBroker(String scopedInboxId) {
-        scopedInboxId = new String(Base64.getDecoder().decode(scopedInboxId), StandardCharsets.UTF_8);
-        int splitIdx = scopedInboxId.indexOf(NUL);
-        return Integer.parseInt(scopedInboxId.substring(0, splitIdx));
+        byte[] scopedInbox = Base64.getDecoder().decode(scopedInboxId);
+        int splitIdx = 0;
+        while (scopedInbox[splitIdx] != NUL_BYTE) {
+            splitIdx++;
+        }
+        return Integer.parseInt(new String(scopedInbox, 0, splitIdx, StandardCharsets.US_ASCII));
     }
 
     public static ByteString tenantPrefix(String tenantId) {
@@ -78,10 +91,12 @@ public class EntityUtil {
         return tenantPrefix(tenantId).concat(INFIX_UPPERBOUND_INFIX);
     }
 
+    public static ByteString toRouteCounterKey(String tenantId) {
+        return tenantPrefix(tenantId).concat(INFIX_ROUTE_COUNTER_INFIX);
+    }
+
     public static String parseTenantId(ByteString rawKey) {
-        String keyStr = rawKey.toStringUtf8();
-        int firstSplit = keyStr.indexOf(NUL);
-        return keyStr.substring(0, firstSplit);
+        return rawKey.substring(0, tenantIdLength(rawKey)).toStringUtf8();
     }
 
     public static String parseTenantId(String rawKeyUtf8) {
@@ -89,47 +104,55 @@ public class EntityUtil {
         return rawKeyUtf8.substring(0, firstSplit);
     }
 
+    public static boolean isLegacyMatchRecordKey(ByteString matchRecordKey) {
+        return matchRecordKey.byteAt(tenantIdLength(matchRecordKey) + 1) == INFIX_MATCH_RECORD_INFIX.byteAt(0);
+    }
+
+    /**
+     * Get the matching type of a match record key in either schema.
+     *
+     * @param matchRecordKey the match record key
+     * @return the matching type
+     */
     public static Matching.Type getType(ByteString matchRecordKey) {
-        String matchRecordKeyStr = matchRecordKey.toStringUtf8();
-        int lastSplit = matchRecordKeyStr.lastIndexOf(NUL);
-        char flag = matchRecordKeyStr.charAt(lastSplit + 1);
-        return switch (flag) {
-            case '0' -> Matching.Type.Normal;
+        MatchRecordKeyLayout layout = MatchRecordKeyLayout.of(matchRecordKey);
+        return switch (layout.flag(matchRecordKey)) {
+            case FLAG_NORMAL_VAL, '0' -> Matching.Type.Normal;
             default -> Matching.Type.Group;
         };
     }
 
     public static Matching parseMatchRecord(ByteString matchRecordKey, ByteString matchRecordValue) {
-        // <tenantId><NUL><1><ESCAPED_TOPIC_FILTER><NUL><FLAG><SCOPED_INBOX|SHARE_GROUP>
-        String matchRecordKeyStr = matchRecordKey.toStringUtf8();
-        int lastSplit = matchRecordKeyStr.lastIndexOf(NUL);
-        char flag = matchRecordKeyStr.charAt(lastSplit + 1);
+        // v2: <tenantId><NUL><0><ESCAPED_TOPIC_FILTER_LENGTH><ESCAPED_TOPIC_FILTER><FLAG><SCOPED_INBOX|SHARE_GROUP>
+        // v1: <tenantId><NUL><1><ESCAPED_TOPIC_FILTER><NUL><FLAG><SCOPED_INBOX|SHARE_GROUP>
+        MatchRecordKeyLayout layout = MatchRecordKeyLayout.of(matchRecordKey);
+        String tenantId = matchRecordKey.substring(0, layout.tenantIdLength).toStringUtf8();
+        String escapedTopicFilter = layout.escapedTopicFilter(matchRecordKey).toStringUtf8();
+        char flag = layout.flag(matchRecordKey);
+        String receiver = matchRecordKey.substring(layout.flagIndex + 1).toStringUtf8();
         try {
             if (flag <= 3) {
                 switch (flag) {
                     case FLAG_NORMAL_VAL:
-                        String scopedInbox = matchRecordKeyStr.substring(lastSplit + 2);
-                        return new NormalMatching(matchRecordKey, scopedInbox);
+                        return new NormalMatching(matchRecordKey, tenantId, escapedTopicFilter, receiver);
                     case FLAG_UNORDERED_VAL:
                     case FLAG_ORDERED_VAL:
                     default:
                         GroupMatchRecord matchRecord = GroupMatchRecord.parseFrom(matchRecordValue);
-                        String group = matchRecordKeyStr.substring(lastSplit + 2);
-                        return new GroupMatching(matchRecordKey, group, flag == FLAG_ORDERED_VAL,
-                            matchRecord.getQReceiverIdList());
+                        return new GroupMatching(matchRecordKey, tenantId, escapedTopicFilter, receiver,
+                            flag == FLAG_ORDERED_VAL, matchRecord.getQReceiverIdList());
                 }
             } else {
                 // TODO: ONLY FOR BACKWARD COMPATIBLE WITH PREVIOUS ENCODING, WILL BE REMOVED IN FUTURE VERSION
                 switch (flag) {
                     case '0':
-                        String scopedInbox = matchRecordKeyStr.substring(lastSplit + 2);
-                        return new NormalMatching(matchRecordKey, scopedInbox);
+                        return new NormalMatching(matchRecordKey, tenantId, escapedTopicFilter, receiver);
                     case '1':
                     case '2':
                     default:
                         GroupMatchRecord matchRecord = GroupMatchRecord.parseFrom(matchRecordValue);
-                        String group = matchRecordKeyStr.substring(lastSplit + 2);
-                        return new GroupMatching(matchRecordKey, group, flag == '2', matchRecord.getQReceiverIdList());
+                        return new GroupMatching(matchRecordKey, tenantId, escapedTopicFilter, receiver,
+                            flag == '2', matchRecord.getQReceiverIdList());
                 }
             }
         } catch (Exception e) {
@@ -138,22 +161,36 @@ public class EntityUtil {
     }
 
     public static ByteString matchRecordKeyPrefix(String tenantId) {
-        return tenantPrefix(tenantId).concat(INFIX_MATCH_RECORD_INFIX);
+        return tenantPrefix(tenantId).concat(INFIX_MATCH_RECORD_V2_INFIX);
     }
 
     public static ByteString matchRecordKeyPrefix(String tenantId, String topicFilter) {
-        return matchRecordKeyPrefix(tenantId).concat(copyFromUtf8(escape(topicFilter) + NUL));
+        return matchRecordPrefixWithEscapedTopicFilter(tenantId, escape(topicFilter));
     }
 
+    /**
+     * Build the v2 match record key prefix of an escaped topic filter, the length of which is encoded before it.
+     *
+     * @param tenantId the tenant id
+     * @param escapedTopicFilter the escaped topic filter
+     * @return the match record key prefix
+     */
     public static ByteString matchRecordPrefixWithEscapedTopicFilter(String tenantId, String escapedTopicFilter) {
-        return matchRecordKeyPrefix(tenantId).concat(copyFromUtf8(escapedTopicFilter + NUL));
+        ByteString escapedTopicFilterBytes = copyFromUtf8(escapedTopicFilter);
+        int length = escapedTopicFilterBytes.size();
+        if (length > MAX_TOPIC_FILTER_LENGTH) {
+            throw new IllegalArgumentException("Topic filter too long: " + length);
+        }
+        return matchRecordKeyPrefix(tenantId)
+            .concat(unsafeWrap(new byte[] {(byte) (length >>> 8), (byte) length}))
+            .concat(escapedTopicFilterBytes);
     }
 
-    public static ByteString toNormalMatchRecordKey(String tenantId, String topicFilter, String qInboxId) {
+    public static ByteString toNormalMatchRecordKey(String tenantId, String topicFilter, String qinboxId) {
         assert isNormalTopicFilter(topicFilter);
         return matchRecordKeyPrefix(tenantId, topicFilter)
             .concat(FLAG_NORMAL)
-            .concat(copyFromUtf8(qInboxId));
+            .concat(copyFromUtf8(qinboxId));
     }
 
     public static ByteString toGroupMatchRecordKey(String tenantId, String topicFilter) {
@@ -164,21 +201,55 @@ public class EntityUtil {
             .concat(copyFromUtf8(stf.shareGroup));
     }
 
-    public static ByteString toMatchRecordKey(String tenantId, String topicFilter, String qInboxId) {
+    public static ByteString toMatchRecordKey(String tenantId, String topicFilter, String qinboxId) {
+        if (isNormalTopicFilter(topicFilter)) {
+            return toNormalMatchRecordKey(tenantId, topicFilter, qinboxId);
+        } else {
+            return toGroupMatchRecordKey(tenantId, topicFilter);
+        }
+    }
+
+    /**
+     * Convert a match record key in legacy schema to the v2 one of the same route.
+     * TODO: ONLY FOR BACKWARD COMPATIBLE WITH PREVIOUS ENCODING, WILL BE REMOVED IN FUTURE VERSION
+     *
+     * @param legacyMatchRecordKey the match record key in legacy schema
+     * @return the match record key in v2 schema
+     */
+    public static ByteString toMatchRecordKey(ByteString legacyMatchRecordKey) {
+        assert isLegacyMatchRecordKey(legacyMatchRecordKey);
+        MatchRecordKeyLayout layout = MatchRecordKeyLayout.of(legacyMatchRecordKey);
+        String tenantId = legacyMatchRecordKey.substring(0, layout.tenantIdLength).toStringUtf8();
+        return matchRecordPrefixWithEscapedTopicFilter(tenantId,
+            layout.escapedTopicFilter(legacyMatchRecordKey).toStringUtf8())
+            .concat(legacyMatchRecordKey.substring(layout.flagIndex));
+    }
+
+    // TODO: ONLY FOR BACKWARD COMPATIBLE WITH PREVIOUS ENCODING, WILL BE REMOVED IN FUTURE VERSION
+    public static ByteString toLegacyMatchRecordKey(String tenantId, String topicFilter, String qinboxId) {
         if (isNormalTopicFilter(topicFilter)) {
-            return matchRecordKeyPrefix(tenantId, topicFilter)
+            return tenantPrefix(tenantId)
+                .concat(INFIX_MATCH_RECORD_INFIX)
+                .concat(copyFromUtf8(escape(topicFilter) + NUL))
                 .concat(FLAG_NORMAL)
-                .concat(copyFromUtf8(qInboxId));
+                .concat(copyFromUtf8(qinboxId));
         } else {
             TopicUtil.SharedTopicFilter stf = parseSharedTopic(topicFilter);
-            return matchRecordKeyPrefix(tenantId, stf.topicFilter)
+            return tenantPrefix(tenantId)
+                .concat(INFIX_MATCH_RECORD_INFIX)
+                .concat(copyFromUtf8(escape(stf.topicFilter) + NUL))
                 .concat(stf.ordered ? FLAG_ORDERD_SHARE : FLAG_UNORDERD_SHARE)
                 .concat(copyFromUtf8(stf.shareGroup));
         }
     }
 
-    public static int matchRecordSize(String tenantId, String topicFilter, String qInboxId) {
-        return toMatchRecordKey(tenantId, topicFilter, qInboxId).size() + 1;
+    // TODO: ONLY FOR BACKWARD COMPATIBLE WITH PREVIOUS ENCODING, WILL BE REMOVED IN FUTURE VERSION
+    public static ByteString legacyMatchRecordKeyPrefix(String tenantId) {
+        return tenantPrefix(tenantId).concat(INFIX_MATCH_RECORD_INFIX);
+    }
+
+    public static int matchRecordSize(String tenantId, String topicFilter, String qinboxId) {
+        return toMatchRecordKey(tenantId, topicFilter, qinboxId).size() + 1;
     }
 
     public static ByteString toMatchRecordKeyPrefix(String tenantId, String topicFilter) {
@@ -190,30 +261,26 @@ public class EntityUtil {
         }
     }
 
-    public static String parseTopicFilter(String matchRecordKeyStr) {
-        // <tenantId><NUL><1><ESCAPED_TOPIC_FILTER><NUL><FLAG><SCOPED_INBOX|SHARE_GROUP>
-        int firstSplit = matchRecordKeyStr.indexOf(NUL);
-        int lastSplit = matchRecordKeyStr.lastIndexOf(NUL);
-        return unescape(matchRecordKeyStr.substring(firstSplit + 2, lastSplit));
+    public static String parseTopicFilter(ByteString matchRecordKey) {
+        MatchRecordKeyLayout layout = MatchRecordKeyLayout.of(matchRecordKey);
+        return unescape(layout.escapedTopicFilter(matchRecordKey).toStringUtf8());
     }
 
-    public static String parseOriginalTopicFilter(String matchRecordKeyStr) {
-        // <tenantId><NUL><1><ESCAPED_TOPIC_FILTER><NUL><FLAG><SCOPED_INBOX|SHARE_GROUP>
-        int firstSplit = matchRecordKeyStr.indexOf(NUL);
-        int lastSplit = matchRecordKeyStr.lastIndexOf(NUL);
-        String topicFilter = unescape(matchRecordKeyStr.substring(firstSplit + 2, lastSplit));
-        char flag = matchRecordKeyStr.charAt(lastSplit + 1);
+    public static String parseOriginalTopicFilter(ByteString matchRecordKey) {
+        MatchRecordKeyLayout layout = MatchRecordKeyLayout.of(matchRecordKey);
+        String topicFilter = unescape(layout.escapedTopicFilter(matchRecordKey).toStringUtf8());
+        char flag = layout.flag(matchRecordKey);
         if (flag <= 3) {
             switch (flag) {
                 case FLAG_NORMAL_VAL -> {
                     return topicFilter;
                 }
                 case FLAG_UNORDERED_VAL -> {
-                    String group = matchRecordKeyStr.substring(lastSplit + 2);
+                    String group = matchRecordKey.substring(layout.flagIndex + 1).toStringUtf8();
                     return UNORDERED_SHARE + TOPIC_SEPARATOR + group + TOPIC_SEPARATOR + topicFilter;
                 }
                 case FLAG_ORDERED_VAL -> {
-                    String group = matchRecordKeyStr.substring(lastSplit + 2);
+                    String group = matchRecordKey.substring(layout.flagIndex + 1).toStringUtf8();
                     return ORDERED_SHARE + TOPIC_SEPARATOR + group + TOPIC_SEPARATOR + topicFilter;
                 }
                 default -> throw new UnsupportedOperationException("Unknown flag: " + flag);
@@ -225,15 +292,62 @@ public class EntityUtil {
                     return topicFilter;
                 }
                 case '1' -> {
-                    String group = matchRecordKeyStr.substring(lastSplit + 2);
+                    String group = matchRecordKey.substring(layout.flagIndex + 1).toStringUtf8();
                     return UNORDERED_SHARE + TOPIC_SEPARATOR + group + TOPIC_SEPARATOR + topicFilter;
                 }
                 case '2' -> {
-                    String group = matchRecordKeyStr.substring(lastSplit + 2);
+                    String group = matchRecordKey.substring(layout.flagIndex + 1).toStringUtf8();
                     return ORDERED_SHARE + TOPIC_SEPARATOR + group + TOPIC_SEPARATOR + topicFilter;
                 }
                 default -> throw new UnsupportedOperationException("Unknown flag: " + flag);
             }
         }
     }
+
+    private static int tenantIdLength(ByteString key) {
+        int size = key.size();
+        for (int i = 0; i < size; i++) {
+            if (key.byteAt(i) == NUL_BYTE) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Not a valid match record key");
+    }
+
+    /**
+     * The offsets of the fields in a match record key, located by scanning the bytes in place.
+     */
+    private record MatchRecordKeyLayout(int tenantIdLength, int topicFilterStart, int topicFilterEnd, int flagIndex) {
+        static MatchRecordKeyLayout of(ByteString key) {
+            int tenantIdLength = EntityUtil.tenantIdLength(key);
+            int infixIndex = tenantIdLength + 1;
+            int topicFilterStart;
+            int topicFilterEnd;
+            int flagIndex;
+            if (key.byteAt(infixIndex) == INFIX_MATCH_RECORD_V2_INFIX.byteAt(0)) {
+                int lengthIndex = infixIndex + 1;
+                int length = ((key.byteAt(lengthIndex) & 0xFF) << 8) | (key.byteAt(lengthIndex + 1) & 0xFF);
+                topicFilterStart = lengthIndex + TOPIC_FILTER_LENGTH_BYTES;
+                topicFilterEnd = topicFilterStart + length;
+                flagIndex = topicFilterEnd;
+            } else {
+                // the escaped topic filter in legacy key is terminated by the last NUL
+                topicFilterStart = infixIndex + 1;
+                topicFilterEnd = key.size() - 1;
+                while (topicFilterEnd >= topicFilterStart && key.byteAt(topicFilterEnd) != NUL_BYTE) {
+                    topicFilterEnd--;
+                }
+                flagIndex = topicFilterEnd + 1;
+            }
+            return new MatchRecordKeyLayout(tenantIdLength, topicFilterStart, topicFilterEnd, flagIndex);
+        }
+
+        ByteString escapedTopicFilter(ByteString key) {
+            return key.substring(topicFilterStart, topicFilterEnd);
+        }
+
+        char flag(ByteString key) {
+            return (char) key.byteAt(flagIndex);
+        }
+    }
 }
@@ -37,8 +37,13 @@ public class GroupMatching extends Matching {
     public final List<String> receiverIds;
     private final String origTopicFilter;
 
-    GroupMatching(ByteString key, String group, boolean ordered, List<String> scopedReceiverIds) {
-        super(key);
+    GroupMatching(ByteString key,
+                  String tenantId,
+                  String escapedTopicFilter,
+                  String group,
+                  boolean ordered,
+                  List<String> scopedReceiverIds) {
+        super(key, tenantId, escapedTopicFilter);
         this.group = group;
         this.ordered = ordered;
         this.receiverIds = scopedReceiverIds;
@@ -50,7 +55,7 @@ public class GroupMatching extends Matching {
                 UNORDERED_SHARE + TOPIC_SEPARATOR + group + TOPIC_SEPARATOR + unescape(escapedTopicFilter);
         }
         this.receiverList = Sets.newLinkedHashSet(scopedReceiverIds).stream()
-            .map(receiverId -> new NormalMatching(key, origTopicFilter, receiverId))
+            .map(receiverId -> new NormalMatching(key, tenantId, escapedTopicFilter, origTopicFilter, receiverId))
             .collect(Collectors.toList());
     }
 
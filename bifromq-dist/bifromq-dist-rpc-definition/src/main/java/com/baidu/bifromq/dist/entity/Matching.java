@@ -13,8 +13,6 @@
 
 package com.baidu.bifromq.dist.entity;
 
-import static com.baidu.bifromq.dist.util.TopicUtil.NUL;
-
 import com.google.protobuf.ByteString;
 import lombok.EqualsAndHashCode;
 
@@ -31,13 +29,10 @@ public abstract class Matching {
 
     public final String tenantId;
 
-    protected Matching(ByteString matchRecordKey) {
+    protected Matching(ByteString matchRecordKey, String tenantId, String escapedTopicFilter) {
         this.key = matchRecordKey;
-        String matchRecordKeyStr = matchRecordKey.toStringUtf8();
-        int firstSplit = matchRecordKeyStr.indexOf(NUL);
-        tenantId = matchRecordKeyStr.substring(0, firstSplit);
-        int lastSplit = matchRecordKeyStr.lastIndexOf(NUL);
-        escapedTopicFilter = matchRecordKeyStr.substring(firstSplit + 2, lastSplit);
+        this.tenantId = tenantId;
+        this.escapedTopicFilter = escapedTopicFilter;
     }
 
     public abstract Type type();
@@ -13,12 +13,9 @@
 
 package com.baidu.bifromq.dist.entity;
 
-
-import static com.baidu.bifromq.dist.util.TopicUtil.NUL;
 import static com.baidu.bifromq.dist.util.TopicUtil.unescape;
 
 import com.baidu.bifromq.type.MatchInfo;
-import com.google.common.base.Strings;
 import com.google.protobuf.ByteString;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
@@ -36,36 +33,42 @@ public class NormalMatching extends Matching {
     @EqualsAndHashCode.Exclude
     public final MatchInfo matchInfo;
 
-    NormalMatching(ByteString key, String scopedInboxId) {
-        super(key);
-        this.scopedInboxId = scopedInboxId;
-        this.originalTopicFilter = unescape(escapedTopicFilter);
-
-        scopedInboxId = new String(Base64.getDecoder().decode(scopedInboxId), StandardCharsets.UTF_8);
-        String[] parts = scopedInboxId.split(NUL);
-        subBrokerId = Integer.parseInt(parts[0]);
-        delivererKey = Strings.isNullOrEmpty(parts[2]) ? null : parts[2];
-        matchInfo = MatchInfo.newBuilder()
-            .setReceiverId(parts[1])
-            .setTopicFilter(originalTopicFilter)
-            .build();
+    NormalMatching(ByteString key, String tenantId, String escapedTopicFilter, String scopedInboxId) {
+        this(key, tenantId, escapedTopicFilter, unescape(escapedTopicFilter), scopedInboxId);
     }
 
-    NormalMatching(ByteString key, String originalTopicFilter, String scopedInboxId) {
-        super(key);
+    NormalMatching(ByteString key,
+                   String tenantId,
+                   String escapedTopicFilter,
+                   String originalTopicFilter,
+                   String scopedInboxId) {
+        super(key, tenantId, escapedTopicFilter);
         this.scopedInboxId = scopedInboxId;
         this.originalTopicFilter = originalTopicFilter;
 
-        scopedInboxId = new String(Base64.getDecoder().decode(scopedInboxId), StandardCharsets.UTF_8);
-        String[] parts = scopedInboxId.split(NUL);
-        subBrokerId = Integer.parseInt(parts[0]);
-        delivererKey = Strings.isNullOrEmpty(parts[2]) ? null : parts[2];
+        // <subBrokerId><NUL><inboxId><NUL><delivererKey>
+        byte[] scopedInbox = Base64.getDecoder().decode(scopedInboxId);
+        int firstSplit = indexOfNUL(scopedInbox, 0);
+        int secondSplit = indexOfNUL(scopedInbox, firstSplit + 1);
+        subBrokerId = Integer.parseInt(new String(scopedInbox, 0, firstSplit, StandardCharsets.US_ASCII));
+        delivererKey = secondSplit + 1 == scopedInbox.length ? null
+            : new String(scopedInbox, secondSplit + 1, scopedInbox.length - secondSplit - 1, StandardCharsets.UTF_8);
         matchInfo = MatchInfo.newBuilder()
-            .setReceiverId(parts[1])
+            .setReceiverId(new String(scopedInbox, firstSplit + 1, secondSplit - firstSplit - 1,
+                StandardCharsets.UTF_8))
             .setTopicFilter(originalTopicFilter)
             .build();
     }
 
+    private static int indexOfNUL(byte[] bytes, int from) {
+        for (int i = from; i < bytes.length; i++) {
+            if (bytes[i] == 0) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Not a valid scoped inbox id");
+    }
+
     @Override
     public Type type() {
         return Type.Normal;
@@ -13,17 +13,28 @@
 
 package com.baidu.bifromq.dist.entity;
 
+import static com.baidu.bifromq.dist.entity.EntityUtil.isLegacyMatchRecordKey;
+import static com.baidu.bifromq.dist.entity.EntityUtil.legacyMatchRecordKeyPrefix;
+import static com.baidu.bifromq.dist.entity.EntityUtil.matchRecordKeyPrefix;
 import static com.baidu.bifromq.dist.entity.EntityUtil.parseMatchRecord;
+import static com.baidu.bifromq.dist.entity.EntityUtil.parseOriginalTopicFilter;
 import static com.baidu.bifromq.dist.entity.EntityUtil.parseTopicFilter;
+import static com.baidu.bifromq.dist.entity.EntityUtil.tenantPrefix;
+import static com.baidu.bifromq.dist.entity.EntityUtil.tenantUpperBound;
+import static com.baidu.bifromq.dist.entity.EntityUtil.toLegacyMatchRecordKey;
 import static com.baidu.bifromq.dist.entity.EntityUtil.toMatchRecordKey;
+import static com.baidu.bifromq.dist.entity.EntityUtil.toMatchRecordKeyPrefix;
 import static com.baidu.bifromq.dist.entity.EntityUtil.toQInboxId;
+import static com.baidu.bifromq.dist.entity.EntityUtil.toRouteCounterKey;
 import static com.baidu.bifromq.dist.util.TopicUtil.escape;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 
 import com.baidu.bifromq.dist.rpc.proto.GroupMatchRecord;
 import com.baidu.bifromq.type.MatchInfo;
 import com.google.protobuf.ByteString;
+import java.util.Comparator;
 import org.testng.annotations.Test;
 
 public class EntityUtilTest {
@@ -36,7 +47,7 @@ public class EntityUtilTest {
         String scopedInboxId = toQInboxId(MqttBroker, "inbox1", "delivererKey1");
         String topicFilter = "/a/b/c";
         ByteString key = toMatchRecordKey("tenantId", topicFilter, scopedInboxId);
-        assertEquals(parseTopicFilter(key.toStringUtf8()), topicFilter);
+        assertEquals(parseTopicFilter(key), topicFilter);
     }
 
     @Test
@@ -79,4 +90,52 @@ public class EntityUtilTest {
         assertEquals(((GroupMatching) matching).receiverList.get(0).delivererKey, "server1");
 
     }
+
+    @Test
+    public void testParseLegacyMatchRecord() {
+        String scopedInboxId = toQInboxId(MqttBroker, "inbox1", "delivererKey1");
+        ByteString key = toLegacyMatchRecordKey("tenantId", "/a/b/c", scopedInboxId);
+        assertTrue(isLegacyMatchRecordKey(key));
+        Matching matching = parseMatchRecord(key, ByteString.EMPTY);
+        assertEquals(matching, parseMatchRecord(toMatchRecordKey("tenantId", "/a/b/c", scopedInboxId),
+            ByteString.EMPTY));
+        assertEquals(matching.tenantId, "tenantId");
+        assertEquals(matching.escapedTopicFilter, escape("/a/b/c"));
+        assertEquals(((NormalMatching) matching).subBrokerId, MqttBroker);
+
+        ByteString groupKey = toLegacyMatchRecordKey("tenantId", "$oshare/group//a/b/c", scopedInboxId);
+        assertEquals(parseOriginalTopicFilter(groupKey), "$oshare/group//a/b/c");
+        assertEquals(parseTopicFilter(groupKey), "/a/b/c");
+    }
+
+    @Test
+    public void testMatchRecordKeyLayout() {
+        String scopedInboxId = toQInboxId(MqttBroker, "inbox1", "delivererKey1");
+        ByteString key = toMatchRecordKey("tenantId", "/a/b/c", scopedInboxId);
+        ByteString legacyKey = toLegacyMatchRecordKey("tenantId", "/a/b/c", scopedInboxId);
+        assertFalse(isLegacyMatchRecordKey(key));
+        assertTrue(key.startsWith(toMatchRecordKeyPrefix("tenantId", "/a/b/c")));
+        // tenant boundary covers match records in both schemas
+        Comparator<ByteString> comparator = ByteString.unsignedLexicographicalComparator();
+        for (ByteString k : new ByteString[] {key, legacyKey}) {
+            assertTrue(comparator.compare(matchRecordKeyPrefix("tenantId"), k) < 0);
+            assertTrue(comparator.compare(k, tenantUpperBound("tenantId")) < 0);
+        }
+        // route counter is placed after all match records of the tenant
+        assertTrue(comparator.compare(tenantUpperBound("tenantId"), toRouteCounterKey("tenantId")) <= 0);
+        assertTrue(toRouteCounterKey("tenantId").startsWith(tenantPrefix("tenantId")));
+        // the topic filter is length prefixed, so a topic filter is not a prefix of another one
+        assertFalse(toMatchRecordKey("tenantId", "/a/b/cd", scopedInboxId)
+            .startsWith(toMatchRecordKeyPrefix("tenantId", "/a/b/c")));
+    }
+
+    @Test
+    public void testUpgradeLegacyMatchRecordKey() {
+        String scopedInboxId = toQInboxId(MqttBroker, "inbox1", "delivererKey1");
+        for (String topicFilter : new String[] {"/a/b/c", "$share/group//a/b/c", "$oshare/group/a/#"}) {
+            ByteString legacyKey = toLegacyMatchRecordKey("tenantId", topicFilter, scopedInboxId);
+            assertTrue(legacyKey.startsWith(legacyMatchRecordKeyPrefix("tenantId")));
+            assertEquals(toMatchRecordKey(legacyKey), toMatchRecordKey("tenantId", topicFilter, scopedInboxId));
+        }
+    }
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.dist.util.benchmark;
+
+import static com.baidu.bifromq.dist.util.TopicUtil.escape;
+
+import com.baidu.bifromq.dist.util.TopicFilterMatcher;
+import com.baidu.bifromq.dist.util.TopicTrie;
+import com.baidu.bifromq.type.TopicMessage;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import lombok.extern.slf4j.Slf4j;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@Slf4j
+@State(Scope.Thread)
+public class TopicFilterMatcherBenchmarkState {
+    private static final int TOPIC_LEVELS = 4;
+
+    @Param({"1000", "100000"})
+    public int topicCount;
+    // the number of distinct level names in each topic level
+    @Param({"16"})
+    public int levelFanout;
+
+    public TopicFilterMatcher matcher;
+    private final List<TopicMessage> distMessages = List.of(TopicMessage.getDefaultInstance());
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(0);
+        TopicTrie topicTrie = new TopicTrie();
+        for (int i = 0; i < topicCount; i++) {
+            topicTrie.add(randomLevels(random, false), distMessages);
+        }
+        matcher = new TopicFilterMatcher(topicTrie);
+        log.info("topic count: {}", topicTrie.topicCount());
+    }
+
+    public String randomEscapedTopicFilter() {
+        return escape(randomLevels(ThreadLocalRandom.current(), true));
+    }
+
+    private String randomLevels(Random random, boolean withWildcard) {
+        StringBuilder levels = new StringBuilder();
+        for (int i = 0; i < TOPIC_LEVELS; i++) {
+            if (i > 0) {
+                levels.append('/');
+            }
+            if (withWildcard && i == TOPIC_LEVELS - 1 && random.nextBoolean()) {
+                levels.append('#');
+            } else if (withWildcard && random.nextBoolean()) {
+                levels.append('+');
+            } else {
+                levels.append("level").append(random.nextInt(levelFanout));
+            }
+        }
+        return levels.toString();
+    }
+}
@@ -34,6 +34,7 @@ import com.baidu.bifromq.dist.server.scheduler.IGlobalDistCallRateSchedulerFacto
 import com.baidu.bifromq.dist.server.scheduler.IMatchCallScheduler;
 import com.baidu.bifromq.dist.server.scheduler.IUnmatchCallScheduler;
 import com.baidu.bifromq.dist.server.scheduler.MatchCallScheduler;
+import com.baidu.bifromq.dist.server.scheduler.MatchRecordSchemaSwitch;
 import com.baidu.bifromq.dist.server.scheduler.UnmatchCallScheduler;
 import com.baidu.bifromq.plugin.eventcollector.IEventCollector;
 import com.baidu.bifromq.plugin.eventcollector.distservice.MatchError;
@@ -52,6 +53,7 @@ public class DistService extends DistServiceGrpc.DistServiceImplBase {
     private final IEventCollector eventCollector;
     private final ICallScheduler<DistWorkerCall> distCallRateScheduler;
     private final IDistCallScheduler distCallScheduler;
+    private final MatchRecordSchemaSwitch matchRecordSchemaSwitch;
     private final IMatchCallScheduler subCallScheduler;
     private final IUnmatchCallScheduler unsubCallScheduler;
     private final LoadingCache<String, RunningAverage> tenantFanouts;
@@ -63,8 +65,9 @@ public class DistService extends DistServiceGrpc.DistServiceImplBase {
                 IGlobalDistCallRateSchedulerFactory distCallRateScheduler) {
         this.eventCollector = eventCollector;
         this.distCallRateScheduler = distCallRateScheduler.createScheduler(settingProvider, crdtService);
-        this.subCallScheduler = new MatchCallScheduler(distWorkerClient, settingProvider);
-        this.unsubCallScheduler = new UnmatchCallScheduler(distWorkerClient);
+        this.matchRecordSchemaSwitch = new MatchRecordSchemaSwitch(distWorkerClient);
+        this.subCallScheduler = new MatchCallScheduler(distWorkerClient, settingProvider, matchRecordSchemaSwitch);
+        this.unsubCallScheduler = new UnmatchCallScheduler(distWorkerClient, matchRecordSchemaSwitch);
         tenantFanouts = Caffeine.newBuilder()
             .expireAfterAccess(120, TimeUnit.SECONDS)
             .build(k -> new RunningAverage(5));
@@ -151,5 +154,6 @@ public class DistService extends DistServiceGrpc.DistServiceImplBase {
         distCallScheduler.close();
         log.debug("stop dist call rate limiter");
         distCallRateScheduler.close();
+        matchRecordSchemaSwitch.close();
     }
 }
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.dist.server.scheduler;
+
+import static com.baidu.bifromq.dist.entity.EntityUtil.toQInboxId;
+import static com.baidu.bifromq.dist.entity.EntityUtil.toScopedTopicFilter;
+
+import com.baidu.bifromq.basekv.client.IBaseKVStoreClient;
+import com.baidu.bifromq.basekv.client.scheduler.BatchMutationCall;
+import com.baidu.bifromq.basekv.client.scheduler.MutationCallBatcherKey;
+import com.baidu.bifromq.basekv.proto.KVRangeId;
+import com.baidu.bifromq.basekv.store.proto.RWCoProcInput;
+import com.baidu.bifromq.basekv.store.proto.RWCoProcOutput;
+import com.baidu.bifromq.basescheduler.CallTask;
+import com.baidu.bifromq.dist.rpc.proto.BatchMatchReply;
+import com.baidu.bifromq.dist.rpc.proto.BatchMatchRequest;
+import com.baidu.bifromq.dist.rpc.proto.MatchRequest;
+import com.baidu.bifromq.plugin.settingprovider.ISettingProvider;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Queue;
+
+/**
+ * Batch call updating the legacy match records hosted by a different range than their v2 keys.
+ */
+class BatchLegacyMatchCall extends BatchMutationCall<MatchRequest, BatchMatchReply.Result> {
+    private final ISettingProvider settingProvider;
+
+    BatchLegacyMatchCall(KVRangeId rangeId, IBaseKVStoreClient distWorkerClient, Duration pipelineExpiryTime,
+                         ISettingProvider settingProvider) {
+        super(rangeId, distWorkerClient, pipelineExpiryTime);
+        this.settingProvider = settingProvider;
+    }
+
+    @Override
+    protected RWCoProcInput makeBatch(Iterator<MatchRequest> reqIterator) {
+        return BatchMatchCall.makeBatch(reqIterator, settingProvider, BatchMatchRequest.newBuilder()
+            .setMatchRecordV2(true)
+            .setLegacyOnly(true));
+    }
+
+    @Override
+    protected void handleException(CallTask<MatchRequest, BatchMatchReply.Result, MutationCallBatcherKey> callTask,
+                                   Throwable e) {
+        callTask.callResult.completeExceptionally(e);
+    }
+
+    @Override
+    protected void handleOutput(
+        Queue<CallTask<MatchRequest, BatchMatchReply.Result, MutationCallBatcherKey>> batchedTasks,
+        RWCoProcOutput output) {
+        CallTask<MatchRequest, BatchMatchReply.Result, MutationCallBatcherKey> callTask;
+        while ((callTask = batchedTasks.poll()) != null) {
+            BatchMatchReply reply = output.getDistService().getBatchMatch();
+            MatchRequest subCall = callTask.call;
+            String qinboxId = toQInboxId(subCall.getBrokerId(), subCall.getReceiverId(), subCall.getDelivererKey());
+            String scopedTopicFilter = toScopedTopicFilter(subCall.getTenantId(), qinboxId, subCall.getTopicFilter());
+            callTask.callResult.complete(
+                reply.getResultsOrDefault(scopedTopicFilter, BatchMatchReply.Result.ERROR));
+        }
+    }
+}
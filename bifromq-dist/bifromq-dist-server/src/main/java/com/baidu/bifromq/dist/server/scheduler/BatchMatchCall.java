@@ -39,23 +39,30 @@ import java.util.Queue;
 
 public class BatchMatchCall extends BatchMutationCall<MatchRequest, MatchReply> {
     private final ISettingProvider settingProvider;
+    private final boolean matchRecordV2;
 
     BatchMatchCall(KVRangeId rangeId, IBaseKVStoreClient distWorkerClient, Duration pipelineExpiryTime,
-                   ISettingProvider settingProvider) {
+                   ISettingProvider settingProvider, boolean matchRecordV2) {
         super(rangeId, distWorkerClient, pipelineExpiryTime);
         this.settingProvider = settingProvider;
+        this.matchRecordV2 = matchRecordV2;
     }
 
     @Override
     protected RWCoProcInput makeBatch(Iterator<MatchRequest> reqIterator) {
-        BatchMatchRequest.Builder reqBuilder = BatchMatchRequest.newBuilder();
+        return makeBatch(reqIterator, settingProvider, BatchMatchRequest.newBuilder().setMatchRecordV2(matchRecordV2));
+    }
+
+    static RWCoProcInput makeBatch(Iterator<MatchRequest> reqIterator,
+                                   ISettingProvider settingProvider,
+                                   BatchMatchRequest.Builder reqBuilder) {
         Map<String, TenantOption> tenantOptionMap = new HashMap<>();
         while (reqIterator.hasNext()) {
             MatchRequest subCall = reqIterator.next();
-            String qInboxId =
+            String qinboxId =
                 toQInboxId(subCall.getBrokerId(), subCall.getReceiverId(), subCall.getDelivererKey());
             String scopedTopicFilter =
-                toScopedTopicFilter(subCall.getTenantId(), qInboxId, subCall.getTopicFilter());
+                toScopedTopicFilter(subCall.getTenantId(), qinboxId, subCall.getTopicFilter());
             reqBuilder.addScopedTopicFilter(scopedTopicFilter);
             tenantOptionMap.computeIfAbsent(subCall.getTenantId(), k -> TenantOption.newBuilder()
                 .setMaxReceiversPerSharedSubGroup(
@@ -85,8 +92,8 @@ public class BatchMatchCall extends BatchMutationCall<MatchRequest, MatchReply>
         while ((callTask = batchedTasks.poll()) != null) {
             BatchMatchReply reply = output.getDistService().getBatchMatch();
             MatchRequest subCall = callTask.call;
-            String qInboxId = toQInboxId(subCall.getBrokerId(), subCall.getReceiverId(), subCall.getDelivererKey());
-            String scopedTopicFilter = toScopedTopicFilter(subCall.getTenantId(), qInboxId, subCall.getTopicFilter());
+            String qinboxId = toQInboxId(subCall.getBrokerId(), subCall.getReceiverId(), subCall.getDelivererKey());
+            String scopedTopicFilter = toScopedTopicFilter(subCall.getTenantId(), qinboxId, subCall.getTopicFilter());
             BatchMatchReply.Result result = reply.getResultsOrDefault(scopedTopicFilter, BatchMatchReply.Result.ERROR);
             callTask.callResult.complete(MatchReply.newBuilder()
                 .setReqId(callTask.call.getReqId())
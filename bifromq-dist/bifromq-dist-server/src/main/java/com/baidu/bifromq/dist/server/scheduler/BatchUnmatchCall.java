@@ -33,10 +33,14 @@ import java.util.Iterator;
 import java.util.Queue;
 
 public class BatchUnmatchCall extends BatchMutationCall<UnmatchRequest, UnmatchReply> {
+    private final boolean matchRecordV2;
+
     BatchUnmatchCall(KVRangeId rangeId,
                      IBaseKVStoreClient distWorkerClient,
-                     Duration pipelineExpiryTime) {
+                     Duration pipelineExpiryTime,
+                     boolean matchRecordV2) {
         super(rangeId, distWorkerClient, pipelineExpiryTime);
+        this.matchRecordV2 = matchRecordV2;
     }
 
     @Override
@@ -44,10 +48,10 @@ public class BatchUnmatchCall extends BatchMutationCall<UnmatchRequest, UnmatchR
         BatchUnmatchRequest.Builder reqBuilder = BatchUnmatchRequest.newBuilder();
         while (reqIterator.hasNext()) {
             UnmatchRequest subCall = reqIterator.next();
-            String qInboxId =
+            String qinboxId =
                 toQInboxId(subCall.getBrokerId(), subCall.getReceiverId(), subCall.getDelivererKey());
             String scopedTopicFilter =
-                toScopedTopicFilter(subCall.getTenantId(), qInboxId, subCall.getTopicFilter());
+                toScopedTopicFilter(subCall.getTenantId(), qinboxId, subCall.getTopicFilter());
             reqBuilder.addScopedTopicFilter(scopedTopicFilter);
         }
         long reqId = System.nanoTime();
@@ -55,6 +59,7 @@ public class BatchUnmatchCall extends BatchMutationCall<UnmatchRequest, UnmatchR
             .setDistService(DistServiceRWCoProcInput.newBuilder()
                 .setBatchUnmatch(reqBuilder
                     .setReqId(reqId)
+                    .setMatchRecordV2(matchRecordV2)
                     .build())
                 .build())
             .build();
@@ -73,8 +78,8 @@ public class BatchUnmatchCall extends BatchMutationCall<UnmatchRequest, UnmatchR
         while ((callTask = batchedTasks.poll()) != null) {
             BatchUnmatchReply reply = output.getDistService().getBatchUnmatch();
             UnmatchRequest request = callTask.call;
-            String qInboxId = toQInboxId(request.getBrokerId(), request.getReceiverId(), request.getDelivererKey());
-            String scopedTopicFilter = toScopedTopicFilter(request.getTenantId(), qInboxId, request.getTopicFilter());
+            String qinboxId = toQInboxId(request.getBrokerId(), request.getReceiverId(), request.getDelivererKey());
+            String scopedTopicFilter = toScopedTopicFilter(request.getTenantId(), qinboxId, request.getTopicFilter());
             BatchUnmatchReply.Result result =
                 reply.getResultsOrDefault(scopedTopicFilter, BatchUnmatchReply.Result.ERROR);
             callTask.callResult.complete(UnmatchReply.newBuilder()
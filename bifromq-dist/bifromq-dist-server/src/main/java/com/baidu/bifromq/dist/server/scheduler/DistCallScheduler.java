@@ -13,6 +13,7 @@
 
 package com.baidu.bifromq.dist.server.scheduler;
 
+import static com.baidu.bifromq.basekv.utils.BoundaryUtil.intersect;
 import static com.baidu.bifromq.dist.entity.EntityUtil.matchRecordKeyPrefix;
 import static com.baidu.bifromq.dist.entity.EntityUtil.tenantUpperBound;
 import static com.baidu.bifromq.dist.util.MessageUtil.buildBatchDistRequest;
@@ -27,6 +28,7 @@ import com.baidu.bifromq.basekv.proto.KVRangeId;
 import com.baidu.bifromq.basekv.store.proto.KVRangeRORequest;
 import com.baidu.bifromq.basekv.store.proto.ROCoProcInput;
 import com.baidu.bifromq.basekv.store.proto.ReplyCode;
+import com.baidu.bifromq.basekv.utils.KVRangeIdUtil;
 import com.baidu.bifromq.basescheduler.BatchCallScheduler;
 import com.baidu.bifromq.basescheduler.Batcher;
 import com.baidu.bifromq.basescheduler.CallTask;
@@ -35,12 +37,16 @@ import com.baidu.bifromq.basescheduler.ICallScheduler;
 import com.baidu.bifromq.dist.rpc.proto.BatchDistReply;
 import com.baidu.bifromq.dist.rpc.proto.BatchDistRequest;
 import com.baidu.bifromq.dist.rpc.proto.DistPack;
+import com.baidu.bifromq.dist.rpc.proto.TopicFanout;
 import com.baidu.bifromq.type.ClientInfo;
 import com.baidu.bifromq.type.Message;
 import com.baidu.bifromq.type.TopicMessagePack;
 import com.google.common.collect.Iterables;
+import io.reactivex.rxjava3.core.Maybe;
 import java.time.Duration;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -49,7 +55,9 @@ import java.util.Optional;
 import java.util.Queue;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
@@ -58,6 +66,7 @@ public class DistCallScheduler extends BatchCallScheduler<DistWorkerCall, Map<St
     private final IBaseKVStoreClient distWorkerClient;
     private final Function<String, Integer> tenantFanoutGetter;
     private final int fanoutSplitThreshold = DIST_WORKER_FANOUT_SPLIT_THRESHOLD.get();
+    private final long routeRefreshTimeoutMillis = DATA_PLANE_TOLERABLE_LATENCY_MS.get();
 
     public DistCallScheduler(ICallScheduler<DistWorkerCall> reqScheduler,
                              IBaseKVStoreClient distWorkerClient,
@@ -75,6 +84,7 @@ public class DistCallScheduler extends BatchCallScheduler<DistWorkerCall, Map<St
                                                                                 Integer batchKey) {
         return new DistWorkerCallBatcher(batchKey, name, tolerableLatencyNanos, burstLatencyNanos,
             fanoutSplitThreshold,
+            routeRefreshTimeoutMillis,
             distWorkerClient,
             tenantFanoutGetter);
     }
@@ -89,17 +99,20 @@ public class DistCallScheduler extends BatchCallScheduler<DistWorkerCall, Map<St
         private final String orderKey = UUID.randomUUID().toString();
         private final Function<String, Integer> tenantFanoutGetter;
         private final int fanoutSplitThreshold;
+        private final long routeRefreshTimeoutMillis;
 
         protected DistWorkerCallBatcher(Integer batcherKey, String name,
                                         long tolerableLatencyNanos,
                                         long burstLatencyNanos,
                                         int fanoutSplitThreshold,
+                                        long routeRefreshTimeoutMillis,
                                         IBaseKVStoreClient distWorkerClient,
                                         Function<String, Integer> tenantFanoutGetter) {
             super(batcherKey, name, tolerableLatencyNanos, burstLatencyNanos);
             this.distWorkerClient = distWorkerClient;
             this.tenantFanoutGetter = tenantFanoutGetter;
             this.fanoutSplitThreshold = fanoutSplitThreshold;
+            this.routeRefreshTimeoutMillis = routeRefreshTimeoutMillis;
         }
 
         @Override
@@ -151,94 +164,182 @@ public class DistCallScheduler extends BatchCallScheduler<DistWorkerCall, Map<St
                     });
                     DistPack distPack = distPackBuilder.build();
                     int fanoutScale = tenantFanoutGetter.apply(tenantId);
-                    List<KVRangeSetting> ranges = distWorkerClient.findByBoundary(Boundary.newBuilder()
-                        .setStartKey(matchRecordKeyPrefix(tenantId))
-                        .setEndKey(tenantUpperBound(tenantId))
-                        .build());
+                    List<KVRangeSetting> ranges = distWorkerClient.findByBoundary(tenantBoundary(tenantId));
                     if (fanoutScale > fanoutSplitThreshold) {
                         ranges.forEach(range -> distPacksByRangeReplica.computeIfAbsent(
-                            new KVRangeReplica(range.id, range.ver, range.leader),
+                            new KVRangeReplica(range.id, range.ver, range.boundary, range.leader),
                             k -> new LinkedList<>()).add(distPack));
                     } else {
                         ranges.forEach(range -> distPacksByRangeReplica.computeIfAbsent(
-                            new KVRangeReplica(range.id, range.ver, range.randomReplica()),
+                            new KVRangeReplica(range.id, range.ver, range.boundary, range.randomReplica()),
                             k -> new LinkedList<>()).add(distPack));
                     }
                 });
 
                 long reqId = System.nanoTime();
+                // key: tenantId, value: the replies from all ranges covering the tenant
+                Map<String, List<CompletableFuture<List<BatchDistReply>>>> distReplyFuturesByTenant = new HashMap<>();
+                distPacksByRangeReplica.forEach((rangeReplica, distPacks) -> {
+                    CompletableFuture<List<BatchDistReply>> distReplyFuture =
+                        dist(reqId, rangeReplica, distPacks, true);
+                    distPacks.forEach(distPack -> distReplyFuturesByTenant
+                        .computeIfAbsent(distPack.getTenantId(), k -> new LinkedList<>())
+                        .add(distReplyFuture));
+                });
+                // complete the tasks of each tenant as soon as all ranges covering the tenant replied
+                Map<String, List<CallTask<DistWorkerCall, Map<String, Integer>, Integer>>> tasksByTenant =
+                    new HashMap<>();
+                CallTask<DistWorkerCall, Map<String, Integer>, Integer> task;
+                while ((task = tasks.poll()) != null) {
+                    tasksByTenant.computeIfAbsent(task.call.tenantId, k -> new LinkedList<>()).add(task);
+                }
                 @SuppressWarnings("unchecked")
-                CompletableFuture<BatchDistReply>[] distReplyFutures = distPacksByRangeReplica.entrySet().stream()
+                CompletableFuture<Void>[] tenantFutures = tasksByTenant.entrySet().stream()
                     .map(entry -> {
-                        KVRangeReplica rangeReplica = entry.getKey();
-                        BatchDistRequest batchDist = BatchDistRequest.newBuilder()
-                            .setReqId(reqId)
-                            .addAllDistPack(entry.getValue())
-                            .setOrderKey(orderKey)
-                            .build();
-                        return distWorkerClient.query(rangeReplica.storeId, KVRangeRORequest.newBuilder()
-                                .setReqId(reqId)
-                                .setVer(rangeReplica.ver)
-                                .setKvRangeId(rangeReplica.id)
-                                .setRoCoProc(ROCoProcInput.newBuilder()
-                                    .setDistService(buildBatchDistRequest(batchDist))
-                                    .build())
-                                .build(), batchDist.getOrderKey())
-                            .thenApply(v -> {
-                                if (v.getCode() == ReplyCode.Ok) {
-                                    BatchDistReply batchDistReply = v.getRoCoProcResult()
-                                        .getDistService()
-                                        .getBatchDist();
-                                    assert batchDistReply.getReqId() == reqId;
-                                    return batchDistReply;
+                        String tenantId = entry.getKey();
+                        List<CompletableFuture<List<BatchDistReply>>> distReplyFutures =
+                            distReplyFuturesByTenant.getOrDefault(tenantId, Collections.emptyList());
+                        return CompletableFuture.allOf(distReplyFutures.toArray(CompletableFuture[]::new))
+                            .handle((v, e) -> {
+                                if (e != null) {
+                                    entry.getValue().forEach(t -> t.callResult.completeExceptionally(e));
+                                } else {
+                                    // aggregate fanout from each reply
+                                    Map<String, Integer> allTopicFanouts = new HashMap<>();
+                                    for (CompletableFuture<List<BatchDistReply>> replyFuture : distReplyFutures) {
+                                        for (BatchDistReply reply : replyFuture.join()) {
+                                            TopicFanout topicFanout = reply.getResultMap().get(tenantId);
+                                            if (topicFanout != null) {
+                                                topicFanout.getFanoutMap()
+                                                    .forEach((topic, fanout) ->
+                                                        allTopicFanouts.merge(topic, fanout, Integer::sum));
+                                            }
+                                        }
+                                    }
+                                    entry.getValue().forEach(t -> {
+                                        Map<String, Integer> topicFanouts = new HashMap<>();
+                                        t.call.publisherMsgPacks.forEach(clientMessagePack ->
+                                            clientMessagePack.getMessagePackList().forEach(topicMessagePack ->
+                                                topicFanouts.put(topicMessagePack.getTopic(),
+                                                    allTopicFanouts.getOrDefault(topicMessagePack.getTopic(), 0))));
+                                        t.callResult.complete(topicFanouts);
+                                    });
                                 }
-                                log.warn("Failed to exec ro co-proc[code={}]", v.getCode());
-                                throw new RuntimeException("Failed to exec rw co-proc");
+                                return (Void) null;
                             });
                     })
                     .toArray(CompletableFuture[]::new);
-                return CompletableFuture.allOf(distReplyFutures)
-                    .handle((v, e) -> {
-                        CallTask<DistWorkerCall, Map<String, Integer>, Integer> task;
-                        if (e != null) {
-                            while ((task = tasks.poll()) != null) {
-                                task.callResult.completeExceptionally(e);
+                return CompletableFuture.allOf(tenantFutures);
+            }
+
+            private CompletableFuture<List<BatchDistReply>> dist(long reqId,
+                                                                 KVRangeReplica rangeReplica,
+                                                                 List<DistPack> distPacks,
+                                                                 boolean retryOnRangeChange) {
+                BatchDistRequest batchDist = BatchDistRequest.newBuilder()
+                    .setReqId(reqId)
+                    .addAllDistPack(distPacks)
+                    .setOrderKey(orderKey)
+                    .build();
+                return distWorkerClient.query(rangeReplica.storeId, KVRangeRORequest.newBuilder()
+                        .setReqId(reqId)
+                        .setVer(rangeReplica.ver)
+                        .setKvRangeId(rangeReplica.id)
+                        .setRoCoProc(ROCoProcInput.newBuilder()
+                            .setDistService(buildBatchDistRequest(batchDist))
+                            .build())
+                        .build(), batchDist.getOrderKey())
+                    .thenCompose(v -> {
+                        switch (v.getCode()) {
+                            case Ok -> {
+                                BatchDistReply batchDistReply = v.getRoCoProcResult()
+                                    .getDistService()
+                                    .getBatchDist();
+                                assert batchDistReply.getReqId() == reqId;
+                                return CompletableFuture.completedFuture(List.of(batchDistReply));
                             }
-                        } else {
-                            // aggregate fanout from each reply
-                            Map<String, Map<String, Integer>> topicFanoutByTenant = new HashMap<>();
-                            for (CompletableFuture<BatchDistReply> replyFuture : distReplyFutures) {
-                                BatchDistReply reply = replyFuture.join();
-                                reply.getResultMap().forEach((tenantId, topicFanout) -> {
-                                    topicFanoutByTenant.computeIfAbsent(tenantId, k -> new HashMap<>());
-                                    topicFanout.getFanoutMap()
-                                        .forEach((topic, fanout) -> topicFanoutByTenant.get(tenantId)
-                                            .compute(topic, (k, val) -> {
-                                                if (val == null) {
-                                                    val = 0;
-                                                }
-                                                val += fanout;
-                                                return val;
-                                            }));
-                                });
+                            case BadVersion, TryLater -> {
+                                // the request is rejected before being executed, it's safe to dist again
+                                if (retryOnRangeChange) {
+                                    log.debug("Retry dist to the ranges covering range[{}]: code={}",
+                                        KVRangeIdUtil.toString(rangeReplica.id), v.getCode());
+                                    return redist(reqId, rangeReplica, v.getCode(), distPacks);
+                                }
                             }
-                            while ((task = tasks.poll()) != null) {
-                                Map<String, Integer> allTopicFanouts =
-                                    topicFanoutByTenant.get(task.call.tenantId);
-                                Map<String, Integer> topicFanouts = new HashMap<>();
-                                task.call.publisherMsgPacks.forEach(clientMessagePack ->
-                                    clientMessagePack.getMessagePackList().forEach(topicMessagePack ->
-                                        topicFanouts.put(topicMessagePack.getTopic(),
-                                            allTopicFanouts.getOrDefault(topicMessagePack.getTopic(), 0))));
-                                task.callResult.complete(topicFanouts);
+                            default -> {
                             }
                         }
-                        return null;
+                        log.warn("Failed to exec ro co-proc[code={}]", v.getCode());
+                        return CompletableFuture.failedFuture(new RuntimeException("Failed to exec ro co-proc"));
                     });
             }
+
+            private CompletableFuture<List<BatchDistReply>> redist(long reqId,
+                                                                   KVRangeReplica failedRangeReplica,
+                                                                   ReplyCode failedCode,
+                                                                   List<DistPack> distPacks) {
+                // the local route is likely still the one just rejected, wait for it being refreshed before retrying
+                return awaitRouteRefresh(failedRangeReplica, failedCode).thenCompose(r -> {
+                    // re-route the dist packs of the failed range only, range may have been split or merged
+                    Map<KVRangeReplica, List<DistPack>> distPacksByRangeReplica = new HashMap<>();
+                    for (DistPack distPack : distPacks) {
+                        Boundary boundary =
+                            intersect(tenantBoundary(distPack.getTenantId()), failedRangeReplica.boundary);
+                        distWorkerClient.findByBoundary(boundary).forEach(range -> distPacksByRangeReplica
+                            .computeIfAbsent(new KVRangeReplica(range.id, range.ver, range.boundary, range.leader),
+                                k -> new LinkedList<>())
+                            .add(distPack));
+                    }
+                    List<CompletableFuture<List<BatchDistReply>>> distReplyFutures = new ArrayList<>();
+                    distPacksByRangeReplica.forEach((rangeReplica, packs) ->
+                        distReplyFutures.add(dist(reqId, rangeReplica, packs, false)));
+                    return CompletableFuture.allOf(distReplyFutures.toArray(CompletableFuture[]::new))
+                        .thenApply(v -> distReplyFutures.stream()
+                            .flatMap(f -> f.join().stream())
+                            .collect(Collectors.toList()));
+                });
+            }
+
+            private CompletableFuture<Void> awaitRouteRefresh(KVRangeReplica failedRangeReplica,
+                                                              ReplyCode failedCode) {
+                if (isRouteRefreshed(failedRangeReplica, failedCode)) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                // retry against whatever route is known when no refresh arrives in time
+                CompletableFuture<Void> onRefreshed = new CompletableFuture<>();
+                distWorkerClient.describe()
+                    .filter(storeDescriptors -> isRouteRefreshed(failedRangeReplica, failedCode))
+                    .firstElement()
+                    .timeout(routeRefreshTimeoutMillis, TimeUnit.MILLISECONDS, Maybe.empty())
+                    .subscribe(v -> onRefreshed.complete(null),
+                        e -> onRefreshed.complete(null),
+                        () -> onRefreshed.complete(null));
+                return onRefreshed;
+            }
+
+            private boolean isRouteRefreshed(KVRangeReplica failedRangeReplica, ReplyCode failedCode) {
+                List<KVRangeSetting> ranges = distWorkerClient.findByBoundary(failedRangeReplica.boundary);
+                if (ranges.size() != 1) {
+                    return true;
+                }
+                KVRangeSetting range = ranges.get(0);
+                if (!range.id.equals(failedRangeReplica.id) || range.ver != failedRangeReplica.ver) {
+                    return true;
+                }
+                // the failed replica may be any replica of the range, while the retry always goes to the leader.
+                // a replica not ready yet is worth bypassing at once, but a stale version has to be refreshed anyway
+                return failedCode == ReplyCode.TryLater && !range.leader.equals(failedRangeReplica.storeId);
+            }
+
+            private Boundary tenantBoundary(String tenantId) {
+                return Boundary.newBuilder()
+                    .setStartKey(matchRecordKeyPrefix(tenantId))
+                    .setEndKey(tenantUpperBound(tenantId))
+                    .build();
+            }
         }
 
-        private record KVRangeReplica(KVRangeId id, long ver, String storeId) {
+        private record KVRangeReplica(KVRangeId id, long ver, Boundary boundary, String storeId) {
         }
     }
 }
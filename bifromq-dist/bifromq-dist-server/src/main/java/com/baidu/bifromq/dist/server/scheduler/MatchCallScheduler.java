@@ -13,68 +13,170 @@
 
 package com.baidu.bifromq.dist.server.scheduler;
 
+import static com.baidu.bifromq.basekv.utils.BoundaryUtil.inRange;
+import static com.baidu.bifromq.dist.entity.EntityUtil.toLegacyMatchRecordKey;
 import static com.baidu.bifromq.dist.entity.EntityUtil.toMatchRecordKey;
 import static com.baidu.bifromq.dist.entity.EntityUtil.toQInboxId;
 import static com.baidu.bifromq.sysprops.BifroMQSysProp.CONTROL_PLANE_BURST_LATENCY_MS;
 import static com.baidu.bifromq.sysprops.BifroMQSysProp.CONTROL_PLANE_TOLERABLE_LATENCY_MS;
 
+import com.baidu.bifromq.basekv.KVRangeSetting;
 import com.baidu.bifromq.basekv.client.IBaseKVStoreClient;
 import com.baidu.bifromq.basekv.client.scheduler.MutationCallBatcher;
 import com.baidu.bifromq.basekv.client.scheduler.MutationCallBatcherKey;
 import com.baidu.bifromq.basekv.client.scheduler.MutationCallScheduler;
 import com.baidu.bifromq.basescheduler.Batcher;
 import com.baidu.bifromq.basescheduler.IBatchCall;
+import com.baidu.bifromq.dist.rpc.proto.BatchMatchReply;
 import com.baidu.bifromq.dist.rpc.proto.MatchReply;
 import com.baidu.bifromq.dist.rpc.proto.MatchRequest;
 import com.baidu.bifromq.plugin.settingprovider.ISettingProvider;
 import com.google.protobuf.ByteString;
 import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
-public class MatchCallScheduler extends MutationCallScheduler<MatchRequest, MatchReply>
-    implements IMatchCallScheduler {
+public class MatchCallScheduler implements IMatchCallScheduler {
+    private final IBaseKVStoreClient storeClient;
+    private final BooleanSupplier matchRecordV2;
+    private final SchemaMatchCallScheduler legacySchemaScheduler;
+    private final SchemaMatchCallScheduler v2SchemaScheduler;
+    private final LegacyMatchCallScheduler legacyOnlyScheduler;
 
-    private final ISettingProvider settingProvider;
+    public MatchCallScheduler(IBaseKVStoreClient distWorkerClient, ISettingProvider settingProvider,
+                              BooleanSupplier matchRecordV2) {
+        this.storeClient = distWorkerClient;
+        this.matchRecordV2 = matchRecordV2;
+        this.legacySchemaScheduler =
+            new SchemaMatchCallScheduler("dist_server_sub_batcher", distWorkerClient, settingProvider, false);
+        this.v2SchemaScheduler =
+            new SchemaMatchCallScheduler("dist_server_v2_sub_batcher", distWorkerClient, settingProvider, true);
+        this.legacyOnlyScheduler = new LegacyMatchCallScheduler(distWorkerClient, settingProvider);
+    }
 
-    public MatchCallScheduler(IBaseKVStoreClient distWorkerClient, ISettingProvider settingProvider) {
-        super("dist_server_sub_batcher",
-            distWorkerClient,
-            Duration.ofMillis(CONTROL_PLANE_TOLERABLE_LATENCY_MS.get()),
-            Duration.ofMillis(CONTROL_PLANE_BURST_LATENCY_MS.get()));
-        this.settingProvider = settingProvider;
+    @Override
+    public CompletableFuture<MatchReply> schedule(MatchRequest call) {
+        if (!matchRecordV2.getAsBoolean()) {
+            return legacySchemaScheduler.schedule(call);
+        }
+        if (!isHostedApart(storeClient, call.getTenantId(), call.getTopicFilter(),
+            toQInboxId(call.getBrokerId(), call.getReceiverId(), call.getDelivererKey()))) {
+            return v2SchemaScheduler.schedule(call);
+        }
+        // the legacy record, if any, is hosted by another range and keeps being updated there
+        return legacyOnlyScheduler.schedule(call)
+            .thenCompose(result -> {
+                if (result == BatchMatchReply.Result.NOT_EXISTED) {
+                    return v2SchemaScheduler.schedule(call);
+                }
+                return CompletableFuture.completedFuture(MatchReply.newBuilder()
+                    .setReqId(call.getReqId())
+                    .setResult(MatchReply.Result.forNumber(result.getNumber()))
+                    .build());
+            });
     }
 
     @Override
-    protected Batcher<MatchRequest, MatchReply, MutationCallBatcherKey> newBatcher(String name,
-                                                                                   long tolerableLatencyNanos,
-                                                                                   long burstLatencyNanos,
-                                                                                   MutationCallBatcherKey batcherKey) {
-        return new MatchCallBatcher(name, tolerableLatencyNanos, burstLatencyNanos,
-            batcherKey, storeClient, settingProvider);
+    public void close() {
+        legacySchemaScheduler.close();
+        v2SchemaScheduler.close();
+        legacyOnlyScheduler.close();
     }
 
-    protected ByteString rangeKey(MatchRequest call) {
-        String qInboxId = toQInboxId(call.getBrokerId(), call.getReceiverId(), call.getDelivererKey());
-        return toMatchRecordKey(call.getTenantId(), call.getTopicFilter(), qInboxId);
+    // check if the legacy match record key and the v2 one of a route are hosted by different ranges
+    static boolean isHostedApart(IBaseKVStoreClient storeClient, String tenantId, String topicFilter,
+                                 String qinboxId) {
+        Optional<KVRangeSetting> range = storeClient.findByKey(toMatchRecordKey(tenantId, topicFilter, qinboxId));
+        return range.isPresent()
+            && !inRange(toLegacyMatchRecordKey(tenantId, topicFilter, qinboxId), range.get().boundary);
+    }
+
+    private static class SchemaMatchCallScheduler extends MutationCallScheduler<MatchRequest, MatchReply> {
+        private final ISettingProvider settingProvider;
+        private final boolean matchRecordV2;
+
+        private SchemaMatchCallScheduler(String name, IBaseKVStoreClient distWorkerClient,
+                                         ISettingProvider settingProvider, boolean matchRecordV2) {
+            super(name,
+                distWorkerClient,
+                Duration.ofMillis(CONTROL_PLANE_TOLERABLE_LATENCY_MS.get()),
+                Duration.ofMillis(CONTROL_PLANE_BURST_LATENCY_MS.get()));
+            this.settingProvider = settingProvider;
+            this.matchRecordV2 = matchRecordV2;
+        }
+
+        @Override
+        protected Batcher<MatchRequest, MatchReply, MutationCallBatcherKey> newBatcher(String name,
+                                                                                       long tolerableLatencyNanos,
+                                                                                       long burstLatencyNanos,
+                                                                                       MutationCallBatcherKey key) {
+            return new MatchCallBatcher(name, tolerableLatencyNanos, burstLatencyNanos,
+                key, storeClient, settingProvider, matchRecordV2);
+        }
+
+        @Override
+        protected ByteString rangeKey(MatchRequest call) {
+            String qinboxId = toQInboxId(call.getBrokerId(), call.getReceiverId(), call.getDelivererKey());
+            return matchRecordV2 ? toMatchRecordKey(call.getTenantId(), call.getTopicFilter(), qinboxId)
+                : toLegacyMatchRecordKey(call.getTenantId(), call.getTopicFilter(), qinboxId);
+        }
     }
 
     private static class MatchCallBatcher extends MutationCallBatcher<MatchRequest, MatchReply> {
         private final ISettingProvider settingProvider;
+        private final boolean matchRecordV2;
 
         private MatchCallBatcher(String name,
                                  long tolerableLatencyNanos,
                                  long burstLatencyNanos,
                                  MutationCallBatcherKey batcherKey,
                                  IBaseKVStoreClient distWorkerClient,
-                                 ISettingProvider settingProvider) {
+                                 ISettingProvider settingProvider,
+                                 boolean matchRecordV2) {
             super(name, tolerableLatencyNanos, burstLatencyNanos, batcherKey, distWorkerClient);
             this.settingProvider = settingProvider;
+            this.matchRecordV2 = matchRecordV2;
         }
 
         @Override
         protected IBatchCall<MatchRequest, MatchReply, MutationCallBatcherKey> newBatch() {
-            return new BatchMatchCall(batcherKey.id, storeClient, Duration.ofMinutes(5), settingProvider);
+            return new BatchMatchCall(batcherKey.id, storeClient, Duration.ofMinutes(5), settingProvider,
+                matchRecordV2);
+        }
+    }
+
+    private static class LegacyMatchCallScheduler
+        extends MutationCallScheduler<MatchRequest, BatchMatchReply.Result> {
+        private final ISettingProvider settingProvider;
+
+        private LegacyMatchCallScheduler(IBaseKVStoreClient distWorkerClient, ISettingProvider settingProvider) {
+            super("dist_server_legacy_sub_batcher",
+                distWorkerClient,
+                Duration.ofMillis(CONTROL_PLANE_TOLERABLE_LATENCY_MS.get()),
+                Duration.ofMillis(CONTROL_PLANE_BURST_LATENCY_MS.get()));
+            this.settingProvider = settingProvider;
+        }
+
+        @Override
+        protected Batcher<MatchRequest, BatchMatchReply.Result, MutationCallBatcherKey> newBatcher(
+            String name, long tolerableLatencyNanos, long burstLatencyNanos, MutationCallBatcherKey batcherKey) {
+            return new MutationCallBatcher<>(name, tolerableLatencyNanos, burstLatencyNanos, batcherKey,
+                storeClient) {
+                @Override
+                protected IBatchCall<MatchRequest, BatchMatchReply.Result, MutationCallBatcherKey> newBatch() {
+                    return new BatchLegacyMatchCall(batcherKey.id, storeClient, Duration.ofMinutes(5),
+                        settingProvider);
+                }
+            };
+        }
+
+        @Override
+        protected ByteString rangeKey(MatchRequest call) {
+            String qinboxId = toQInboxId(call.getBrokerId(), call.getReceiverId(), call.getDelivererKey());
+            return toLegacyMatchRecordKey(call.getTenantId(), call.getTopicFilter(), qinboxId);
         }
     }
 }
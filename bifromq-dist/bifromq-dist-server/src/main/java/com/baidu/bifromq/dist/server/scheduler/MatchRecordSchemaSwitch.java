@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.dist.server.scheduler;
+
+import static com.baidu.bifromq.dist.RPCServerMetadataUtil.RPC_METADATA_MATCH_RECORD_V2;
+import static com.baidu.bifromq.sysprops.BifroMQSysProp.DIST_MATCH_RECORD_SCHEMA_V2;
+
+import com.baidu.bifromq.basekv.client.IBaseKVStoreClient;
+import io.reactivex.rxjava3.disposables.Disposable;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Turns on the v2 match record schema once every alive dist worker advertises its support. It never turns off again,
+ * since the records written in v2 schema are only reachable via v2 routing.
+ */
+@Slf4j
+public class MatchRecordSchemaSwitch implements BooleanSupplier {
+    private final Disposable disposable;
+    private volatile boolean matchRecordV2;
+
+    public MatchRecordSchemaSwitch(IBaseKVStoreClient distWorkerClient) {
+        this(distWorkerClient, DIST_MATCH_RECORD_SCHEMA_V2.get());
+    }
+
+    MatchRecordSchemaSwitch(IBaseKVStoreClient distWorkerClient, boolean allowed) {
+        if (allowed) {
+            disposable = distWorkerClient.serverMetadata().subscribe(this::onServerChanged);
+        } else {
+            disposable = Disposable.empty();
+        }
+    }
+
+    @Override
+    public boolean getAsBoolean() {
+        return matchRecordV2;
+    }
+
+    public void close() {
+        disposable.dispose();
+    }
+
+    private void onServerChanged(Map<String, Map<String, String>> servers) {
+        if (matchRecordV2 || servers.isEmpty()) {
+            return;
+        }
+        if (servers.values().stream().allMatch(metadata -> metadata.containsKey(RPC_METADATA_MATCH_RECORD_V2))) {
+            log.info("All dist workers support match record v2 schema, switch to it");
+            matchRecordV2 = true;
+        }
+    }
+}
@@ -13,6 +13,7 @@
 
 package com.baidu.bifromq.dist.server.scheduler;
 
+import static com.baidu.bifromq.dist.entity.EntityUtil.toLegacyMatchRecordKey;
 import static com.baidu.bifromq.dist.entity.EntityUtil.toMatchRecordKey;
 import static com.baidu.bifromq.dist.entity.EntityUtil.toQInboxId;
 import static com.baidu.bifromq.sysprops.BifroMQSysProp.CONTROL_PLANE_BURST_LATENCY_MS;
@@ -28,44 +29,100 @@ import com.baidu.bifromq.dist.rpc.proto.UnmatchReply;
 import com.baidu.bifromq.dist.rpc.proto.UnmatchRequest;
 import com.google.protobuf.ByteString;
 import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
-public class UnmatchCallScheduler extends MutationCallScheduler<UnmatchRequest, UnmatchReply>
-    implements IUnmatchCallScheduler {
+public class UnmatchCallScheduler implements IUnmatchCallScheduler {
+    private final IBaseKVStoreClient storeClient;
+    private final BooleanSupplier matchRecordV2;
+    private final SchemaUnmatchCallScheduler legacySchemaScheduler;
+    private final SchemaUnmatchCallScheduler v2SchemaScheduler;
+    private final SchemaUnmatchCallScheduler legacyRoutedScheduler;
 
-    public UnmatchCallScheduler(IBaseKVStoreClient distWorkerClient) {
-        super("dist_server_unsub_batcher",
-            distWorkerClient,
-            Duration.ofMillis(CONTROL_PLANE_TOLERABLE_LATENCY_MS.get()),
-            Duration.ofMillis(CONTROL_PLANE_BURST_LATENCY_MS.get()));
+    public UnmatchCallScheduler(IBaseKVStoreClient distWorkerClient, BooleanSupplier matchRecordV2) {
+        this.storeClient = distWorkerClient;
+        this.matchRecordV2 = matchRecordV2;
+        this.legacySchemaScheduler =
+            new SchemaUnmatchCallScheduler("dist_server_unsub_batcher", distWorkerClient, false, true);
+        this.v2SchemaScheduler =
+            new SchemaUnmatchCallScheduler("dist_server_v2_unsub_batcher", distWorkerClient, true, false);
+        this.legacyRoutedScheduler =
+            new SchemaUnmatchCallScheduler("dist_server_legacy_unsub_batcher", distWorkerClient, true, true);
     }
 
     @Override
-    protected Batcher<UnmatchRequest, UnmatchReply, MutationCallBatcherKey> newBatcher(String name,
-                                                                                       long tolerableLatencyNanos,
-                                                                                       long burstLatencyNanos,
-                                                                                       MutationCallBatcherKey range) {
-        return new UnsubCallBatcher(name, tolerableLatencyNanos, burstLatencyNanos, range, storeClient);
+    public CompletableFuture<UnmatchReply> schedule(UnmatchRequest call) {
+        if (!matchRecordV2.getAsBoolean()) {
+            return legacySchemaScheduler.schedule(call);
+        }
+        if (!MatchCallScheduler.isHostedApart(storeClient, call.getTenantId(), call.getTopicFilter(),
+            toQInboxId(call.getBrokerId(), call.getReceiverId(), call.getDelivererKey()))) {
+            return v2SchemaScheduler.schedule(call);
+        }
+        // the route may still be recorded by a legacy record hosted by another range
+        CompletableFuture<UnmatchReply> legacyReplyFuture = legacyRoutedScheduler.schedule(call);
+        return v2SchemaScheduler.schedule(call).thenCombine(legacyReplyFuture,
+            (reply, legacyReply) -> legacyReply.getResult() == UnmatchReply.Result.OK ? legacyReply : reply);
     }
 
-    protected ByteString rangeKey(UnmatchRequest call) {
-        String qInboxId = toQInboxId(call.getBrokerId(), call.getReceiverId(), call.getDelivererKey());
-        return toMatchRecordKey(call.getTenantId(), call.getTopicFilter(), qInboxId);
+    @Override
+    public void close() {
+        legacySchemaScheduler.close();
+        v2SchemaScheduler.close();
+        legacyRoutedScheduler.close();
+    }
+
+    private static class SchemaUnmatchCallScheduler extends MutationCallScheduler<UnmatchRequest, UnmatchReply> {
+        private final boolean matchRecordV2;
+        private final boolean routeByLegacyKey;
+
+        private SchemaUnmatchCallScheduler(String name,
+                                           IBaseKVStoreClient distWorkerClient,
+                                           boolean matchRecordV2,
+                                           boolean routeByLegacyKey) {
+            super(name,
+                distWorkerClient,
+                Duration.ofMillis(CONTROL_PLANE_TOLERABLE_LATENCY_MS.get()),
+                Duration.ofMillis(CONTROL_PLANE_BURST_LATENCY_MS.get()));
+            this.matchRecordV2 = matchRecordV2;
+            this.routeByLegacyKey = routeByLegacyKey;
+        }
+
+        @Override
+        protected Batcher<UnmatchRequest, UnmatchReply, MutationCallBatcherKey> newBatcher(String name,
+                                                                                           long tolerableLatencyNanos,
+                                                                                           long burstLatencyNanos,
+                                                                                           MutationCallBatcherKey key) {
+            return new UnsubCallBatcher(name, tolerableLatencyNanos, burstLatencyNanos, key, storeClient,
+                matchRecordV2);
+        }
+
+        @Override
+        protected ByteString rangeKey(UnmatchRequest call) {
+            String qinboxId = toQInboxId(call.getBrokerId(), call.getReceiverId(), call.getDelivererKey());
+            return routeByLegacyKey ? toLegacyMatchRecordKey(call.getTenantId(), call.getTopicFilter(), qinboxId)
+                : toMatchRecordKey(call.getTenantId(), call.getTopicFilter(), qinboxId);
+        }
     }
 
     private static class UnsubCallBatcher extends MutationCallBatcher<UnmatchRequest, UnmatchReply> {
+        private final boolean matchRecordV2;
+
         private UnsubCallBatcher(String name,
                                  long tolerableLatencyNanos,
                                  long burstLatencyNanos,
                                  MutationCallBatcherKey batcherKey,
-                                 IBaseKVStoreClient distWorkerClient) {
+                                 IBaseKVStoreClient distWorkerClient,
+                                 boolean matchRecordV2) {
             super(name, tolerableLatencyNanos, burstLatencyNanos, batcherKey, distWorkerClient);
+            this.matchRecordV2 = matchRecordV2;
         }
 
         @Override
         protected IBatchCall<UnmatchRequest, UnmatchReply, MutationCallBatcherKey> newBatch() {
-            return new BatchUnmatchCall(batcherKey.id, storeClient, Duration.ofMinutes(5));
+            return new BatchUnmatchCall(batcherKey.id, storeClient, Duration.ofMinutes(5), matchRecordV2);
         }
     }
 }
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2024. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.dist.server.scheduler;
+
+import static com.baidu.bifromq.dist.entity.EntityUtil.matchRecordKeyPrefix;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertThrows;
+
+import com.baidu.bifromq.basekv.KVRangeSetting;
+import com.baidu.bifromq.basekv.client.IBaseKVStoreClient;
+import com.baidu.bifromq.basekv.proto.Boundary;
+import com.baidu.bifromq.basekv.proto.KVRangeDescriptor;
+import com.baidu.bifromq.basekv.proto.KVRangeStoreDescriptor;
+import com.baidu.bifromq.basekv.raft.proto.ClusterConfig;
+import com.baidu.bifromq.basekv.raft.proto.RaftNodeSyncState;
+import com.baidu.bifromq.basekv.store.proto.KVRangeROReply;
+import com.baidu.bifromq.basekv.store.proto.KVRangeRORequest;
+import com.baidu.bifromq.basekv.store.proto.ROCoProcOutput;
+import com.baidu.bifromq.basekv.store.proto.ReplyCode;
+import com.baidu.bifromq.basekv.utils.KVRangeIdUtil;
+import com.baidu.bifromq.basescheduler.ICallScheduler;
+import com.baidu.bifromq.dist.rpc.proto.BatchDistReply;
+import com.baidu.bifromq.dist.rpc.proto.DistServiceROCoProcOutput;
+import com.baidu.bifromq.dist.rpc.proto.TopicFanout;
+import com.baidu.bifromq.type.ClientInfo;
+import com.baidu.bifromq.type.Message;
+import com.baidu.bifromq.type.PublisherMessagePack;
+import io.reactivex.rxjava3.subjects.PublishSubject;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class DistCallSchedulerTest {
+    @Mock
+    private IBaseKVStoreClient distWorkerClient;
+    private final ICallScheduler<DistWorkerCall> reqScheduler = new ICallScheduler<>() {
+    };
+    private final PublishSubject<Set<KVRangeStoreDescriptor>> storeDescriptors = PublishSubject.create();
+    private AutoCloseable closeable;
+
+    @BeforeMethod
+    public void setup() {
+        closeable = MockitoAnnotations.openMocks(this);
+        when(distWorkerClient.describe()).thenReturn(storeDescriptors);
+    }
+
+    @AfterMethod
+    public void teardown() throws Exception {
+        closeable.close();
+    }
+
+    @Test
+    public void retryAfterRouteRefreshed() {
+        KVRangeSetting range = rangeSetting(0, "store1");
+        KVRangeSetting splitRange = rangeSetting(1, "store2");
+        AtomicReference<List<KVRangeSetting>> route = new AtomicReference<>(List.of(range));
+        when(distWorkerClient.findByBoundary(any())).thenAnswer(invocation -> route.get());
+        CompletableFuture<KVRangeROReply> rejected = new CompletableFuture<>();
+        when(distWorkerClient.query(eq("store1"), any(), anyString())).thenReturn(rejected);
+        when(distWorkerClient.query(eq("store2"), any(), anyString()))
+            .thenAnswer(invocation -> CompletableFuture.completedFuture(
+                okReply(invocation.getArgument(1), "tenantA", "topic", 3)));
+
+        DistCallScheduler scheduler = new DistCallScheduler(reqScheduler, distWorkerClient, tenantId -> 1);
+        CompletableFuture<Map<String, Integer>> distFuture = scheduler.schedule(call("tenantA", "topic"));
+        verify(distWorkerClient, timeout(5000)).query(eq("store1"), any(), anyString());
+        rejected.complete(KVRangeROReply.newBuilder().setCode(ReplyCode.BadVersion).build());
+        // not retried against the stale route
+        verify(distWorkerClient, times(0)).query(eq("store2"), any(), anyString());
+
+        route.set(List.of(splitRange));
+        storeDescriptors.onNext(Set.of());
+        assertEquals(distFuture.join(), Map.of("topic", 3));
+        verify(distWorkerClient, times(1)).query(eq("store1"), any(), anyString());
+        verify(distWorkerClient, times(1))
+            .query(eq("store2"), argThat(request -> request.getVer() == 1), anyString());
+        scheduler.close();
+    }
+
+    @Test
+    public void waitVersionRefreshedAfterFollowerRejected() {
+        // the only replica serving query is a follower
+        KVRangeSetting range = rangeSetting(0, "store1", "store2");
+        KVRangeSetting refreshedRange = new KVRangeSetting("dist.worker", "store1", KVRangeDescriptor.newBuilder()
+            .setId(range.id)
+            .setVer(1)
+            .setConfig(ClusterConfig.newBuilder().addVoters("store2").build())
+            .putSyncState("store2", RaftNodeSyncState.Replicating)
+            .build());
+        AtomicReference<List<KVRangeSetting>> route = new AtomicReference<>(List.of(range));
+        when(distWorkerClient.findByBoundary(any())).thenAnswer(invocation -> route.get());
+        when(distWorkerClient.query(eq("store2"), any(), anyString())).thenReturn(CompletableFuture.completedFuture(
+            KVRangeROReply.newBuilder().setCode(ReplyCode.BadVersion).build()));
+        when(distWorkerClient.query(eq("store1"), any(), anyString()))
+            .thenAnswer(invocation -> CompletableFuture.completedFuture(
+                okReply(invocation.getArgument(1), "tenantA", "topic", 3)));
+
+        DistCallScheduler scheduler = new DistCallScheduler(reqScheduler, distWorkerClient, tenantId -> 1);
+        CompletableFuture<Map<String, Integer>> distFuture = scheduler.schedule(call("tenantA", "topic"));
+        verify(distWorkerClient, timeout(5000)).query(eq("store2"), any(), anyString());
+        // not retried against the leader with the stale version
+        verify(distWorkerClient, times(0)).query(eq("store1"), any(), anyString());
+
+        route.set(List.of(refreshedRange));
+        storeDescriptors.onNext(Set.of());
+        assertEquals(distFuture.join(), Map.of("topic", 3));
+        verify(distWorkerClient, times(1))
+            .query(eq("store1"), argThat(request -> request.getVer() == 1), anyString());
+        scheduler.close();
+    }
+
+    @Test
+    public void retryLeaderAfterFollowerNotReady() {
+        KVRangeSetting range = rangeSetting(0, "store1", "store2");
+        when(distWorkerClient.findByBoundary(any())).thenReturn(List.of(range));
+        when(distWorkerClient.query(eq("store2"), any(), anyString())).thenReturn(CompletableFuture.completedFuture(
+            KVRangeROReply.newBuilder().setCode(ReplyCode.TryLater).build()));
+        when(distWorkerClient.query(eq("store1"), any(), anyString()))
+            .thenAnswer(invocation -> CompletableFuture.completedFuture(
+                okReply(invocation.getArgument(1), "tenantA", "topic", 3)));
+
+        DistCallScheduler scheduler = new DistCallScheduler(reqScheduler, distWorkerClient, tenantId -> 1);
+        // retried against the leader without waiting for route refresh
+        assertEquals(scheduler.schedule(call("tenantA", "topic")).join(), Map.of("topic", 3));
+        verify(distWorkerClient, times(1))
+            .query(eq("store1"), argThat(request -> request.getVer() == 0), anyString());
+        scheduler.close();
+    }
+
+    @Test
+    public void partialFailure() {
+        KVRangeSetting rangeA = rangeSetting(0, "store1");
+        KVRangeSetting rangeB = rangeSetting(0, "store2");
+        when(distWorkerClient.findByBoundary(any())).thenAnswer(invocation -> {
+            Boundary boundary = invocation.getArgument(0);
+            return boundary.getStartKey().equals(matchRecordKeyPrefix("tenantA")) ? List.of(rangeA) : List.of(rangeB);
+        });
+        when(distWorkerClient.query(eq("store1"), any(), anyString())).thenReturn(CompletableFuture.completedFuture(
+            KVRangeROReply.newBuilder().setCode(ReplyCode.InternalError).build()));
+        when(distWorkerClient.query(eq("store2"), any(), anyString()))
+            .thenAnswer(invocation -> CompletableFuture.completedFuture(
+                okReply(invocation.getArgument(1), "tenantB", "topic", 2)));
+
+        DistCallScheduler scheduler = new DistCallScheduler(reqScheduler, distWorkerClient, tenantId -> 1);
+        CompletableFuture<Map<String, Integer>> distFutureA = scheduler.schedule(call("tenantA", "topic"));
+        CompletableFuture<Map<String, Integer>> distFutureB = scheduler.schedule(call("tenantB", "topic"));
+        // the failure of one range doesn't fail the tenants on other ranges
+        assertEquals(distFutureB.join(), Map.of("topic", 2));
+        assertThrows(distFutureA::join);
+        // internal error is not retried
+        verify(distWorkerClient, times(1)).query(eq("store1"), any(), anyString());
+        scheduler.close();
+    }
+
+    private KVRangeSetting rangeSetting(long ver, String storeId) {
+        return rangeSetting(ver, storeId, storeId);
+    }
+
+    private KVRangeSetting rangeSetting(long ver, String leader, String replica) {
+        return new KVRangeSetting("dist.worker", leader, KVRangeDescriptor.newBuilder()
+            .setId(KVRangeIdUtil.generate())
+            .setVer(ver)
+            .setConfig(ClusterConfig.newBuilder().addVoters(replica).build())
+            .putSyncState(replica, RaftNodeSyncState.Replicating)
+            .build());
+    }
+
+    private DistWorkerCall call(String tenantId, String topic) {
+        return new DistWorkerCall(tenantId, List.of(PublisherMessagePack.newBuilder()
+            .setPublisher(ClientInfo.newBuilder().setTenantId(tenantId).build())
+            .addMessagePack(PublisherMessagePack.TopicPack.newBuilder()
+                .setTopic(topic)
+                .addMessage(Message.getDefaultInstance())
+                .build())
+            .build()), 0, 1);
+    }
+
+    private KVRangeROReply okReply(KVRangeRORequest request, String tenantId, String topic, int fanout) {
+        return KVRangeROReply.newBuilder()
+            .setReqId(request.getReqId())
+            .setCode(ReplyCode.Ok)
+            .setRoCoProcResult(ROCoProcOutput.newBuilder()
+                .setDistService(DistServiceROCoProcOutput.newBuilder()
+                    .setBatchDist(BatchDistReply.newBuilder()
+                        .setReqId(request.getReqId())
+                        .putResult(tenantId, TopicFanout.newBuilder().putFanout(topic, fanout).build())
+                        .build())
+                    .build())
+                .build())
+            .build();
+    }
+}
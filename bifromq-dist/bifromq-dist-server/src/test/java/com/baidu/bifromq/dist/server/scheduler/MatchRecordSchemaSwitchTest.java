@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2024. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.dist.server.scheduler;
+
+import static com.baidu.bifromq.dist.RPCServerMetadataUtil.RPC_METADATA_MATCH_RECORD_V2;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import com.baidu.bifromq.basekv.client.IBaseKVStoreClient;
+import io.reactivex.rxjava3.subjects.BehaviorSubject;
+import java.util.Collections;
+import java.util.Map;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class MatchRecordSchemaSwitchTest {
+    private static final Map<String, String> V2_SERVER = Map.of(RPC_METADATA_MATCH_RECORD_V2, "true");
+    private static final Map<String, String> LEGACY_SERVER = Collections.emptyMap();
+    @Mock
+    private IBaseKVStoreClient distWorkerClient;
+    private final BehaviorSubject<Map<String, Map<String, String>>> servers = BehaviorSubject.create();
+    private AutoCloseable closeable;
+
+    @BeforeMethod
+    public void setup() {
+        closeable = MockitoAnnotations.openMocks(this);
+        when(distWorkerClient.serverMetadata()).thenReturn(servers);
+    }
+
+    @AfterMethod
+    public void teardown() throws Exception {
+        closeable.close();
+    }
+
+    @Test
+    public void switchOnceAllWorkersSupport() {
+        MatchRecordSchemaSwitch schemaSwitch = new MatchRecordSchemaSwitch(distWorkerClient, true);
+        assertFalse(schemaSwitch.getAsBoolean());
+
+        servers.onNext(Map.of("server1", V2_SERVER, "server2", LEGACY_SERVER));
+        assertFalse(schemaSwitch.getAsBoolean());
+
+        servers.onNext(Map.of("server1", V2_SERVER, "server2", V2_SERVER));
+        assertTrue(schemaSwitch.getAsBoolean());
+
+        // never switch back, since the records written in v2 schema are only reachable via v2 routing
+        servers.onNext(Map.of("server1", V2_SERVER, "server3", LEGACY_SERVER));
+        assertTrue(schemaSwitch.getAsBoolean());
+        schemaSwitch.close();
+    }
+
+    @Test
+    public void stayOnLegacySchemaWhenEmpty() {
+        servers.onNext(Collections.emptyMap());
+        MatchRecordSchemaSwitch schemaSwitch = new MatchRecordSchemaSwitch(distWorkerClient, true);
+        assertFalse(schemaSwitch.getAsBoolean());
+        schemaSwitch.close();
+    }
+
+    @Test
+    public void disallowed() {
+        servers.onNext(Map.of("server1", V2_SERVER));
+        MatchRecordSchemaSwitch schemaSwitch = new MatchRecordSchemaSwitch(distWorkerClient, false);
+        assertFalse(schemaSwitch.getAsBoolean());
+        schemaSwitch.close();
+    }
+}
@@ -22,6 +22,7 @@ import com.baidu.bifromq.dist.client.IDistClient;
 import com.baidu.bifromq.plugin.eventcollector.IEventCollector;
 import com.baidu.bifromq.plugin.subbroker.ISubBrokerManager;
 import com.bifromq.plugin.resourcethrottler.IResourceThrottler;
+import io.netty.handler.ssl.SslContext;
 import java.time.Duration;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
@@ -35,6 +36,9 @@ abstract class AbstractDistWorkerBuilder<T extends AbstractDistWorkerBuilder<T>>
     Executor queryExecutor;
     ScheduledExecutorService tickTaskExecutor;
     ScheduledExecutorService bgTaskExecutor;
+    int queryPipelineConcurrency = 1;
+    boolean rpcStoreMessenger;
+    SslContext clientSslContext;
     IEventCollector eventCollector;
     IResourceThrottler resourceThrottler;
     IDistClient distClient;
@@ -87,6 +91,21 @@ abstract class AbstractDistWorkerBuilder<T extends AbstractDistWorkerBuilder<T>>
         return thisT();
     }
 
+    public T queryPipelineConcurrency(int queryPipelineConcurrency) {
+        this.queryPipelineConcurrency = queryPipelineConcurrency;
+        return thisT();
+    }
+
+    public T rpcStoreMessenger(boolean rpcStoreMessenger) {
+        this.rpcStoreMessenger = rpcStoreMessenger;
+        return thisT();
+    }
+
+    public T clientSslContext(SslContext clientSslContext) {
+        this.clientSslContext = clientSslContext;
+        return thisT();
+    }
+
     public T eventCollector(IEventCollector eventCollector) {
         this.eventCollector = eventCollector;
         return thisT();
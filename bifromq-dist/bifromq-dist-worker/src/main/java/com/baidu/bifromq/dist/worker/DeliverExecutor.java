@@ -14,10 +14,14 @@
 package com.baidu.bifromq.dist.worker;
 
 import static com.baidu.bifromq.plugin.eventcollector.ThreadLocalEventPool.getLocal;
+import static com.baidu.bifromq.sysprops.BifroMQSysProp.DIST_WORKER_DELIVER_QUEUE_CAPACITY;
+import static com.baidu.bifromq.sysprops.BifroMQSysProp.DIST_WORKER_DELIVER_QUEUE_MAX_WAIT_MS;
 
 import com.baidu.bifromq.baseenv.EnvProvider;
+import com.baidu.bifromq.deliverer.DelivererKey;
 import com.baidu.bifromq.deliverer.DeliveryCall;
 import com.baidu.bifromq.deliverer.IMessageDeliverer;
+import com.baidu.bifromq.deliverer.MessagePackWrapper;
 import com.baidu.bifromq.dist.client.IDistClient;
 import com.baidu.bifromq.dist.entity.NormalMatching;
 import com.baidu.bifromq.plugin.eventcollector.IEventCollector;
@@ -26,24 +30,38 @@ import com.baidu.bifromq.plugin.eventcollector.distservice.DeliverNoInbox;
 import com.baidu.bifromq.plugin.eventcollector.distservice.Delivered;
 import com.baidu.bifromq.type.MatchInfo;
 import com.baidu.bifromq.type.TopicMessagePack;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.Metrics;
 import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedTransferQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 public class DeliverExecutor {
+    private static final int MAX_DRAIN_BATCH = 128;
     private final IEventCollector eventCollector;
     private final IDistClient distClient;
     private final IMessageDeliverer deliverer;
     private final ExecutorService executor;
-    private final ConcurrentLinkedQueue<SendTask> tasks = new ConcurrentLinkedQueue<>();
+    private final DeliverTaskRingBuffer tasks;
+    private final long maxWaitNanos;
+    private final DeliverTaskRingBuffer.Handler sender = this::send;
     private final AtomicBoolean sending = new AtomicBoolean();
+    private final ReentrantLock notFullLock = new ReentrantLock();
+    private final Condition notFull = notFullLock.newCondition();
+    private final AtomicInteger waitingProducers = new AtomicInteger();
+    private final Gauge queueSizeGauge;
+    private final Counter queueOverflowCounter;
+    private final Counter queueDropCounter;
 
     public DeliverExecutor(int id,
                            IMessageDeliverer deliverer,
@@ -52,23 +70,107 @@ public class DeliverExecutor {
         this.eventCollector = eventCollector;
         this.distClient = distClient;
         this.deliverer = deliverer;
+        this.tasks = new DeliverTaskRingBuffer(DIST_WORKER_DELIVER_QUEUE_CAPACITY.get());
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(DIST_WORKER_DELIVER_QUEUE_MAX_WAIT_MS.get());
         executor = ExecutorServiceMetrics.monitor(Metrics.globalRegistry,
             new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
                 new LinkedTransferQueue<>(),
                 EnvProvider.INSTANCE.newThreadFactory("deliver-executor-" + id)), "deliver-executor-" + id);
+        queueSizeGauge = Gauge.builder("dist.deliver.queue.size", tasks::size)
+            .tags("executor", "deliver-executor-" + id, "capacity", String.valueOf(tasks.capacity()))
+            .register(Metrics.globalRegistry);
+        queueOverflowCounter = Counter.builder("dist.deliver.queue.overflow")
+            .tags("executor", "deliver-executor-" + id)
+            .register(Metrics.globalRegistry);
+        queueDropCounter = Counter.builder("dist.deliver.queue.drop")
+            .tags("executor", "deliver-executor-" + id)
+            .register(Metrics.globalRegistry);
     }
 
-    public void submit(NormalMatching route, TopicMessagePack msgPack, boolean inline) {
+    /**
+     * Submit the routes sharing the same deliverer, the message pack will be delivered in one DeliveryPack.
+     *
+     * @param delivererKey the deliverer key of the routes
+     * @param routes       the routes
+     * @param msgPack      the wrapped message pack
+     * @param inline       whether to send in the caller thread
+     */
+    public void submit(DelivererKey delivererKey,
+                       List<NormalMatching> routes,
+                       MessagePackWrapper msgPack,
+                       boolean inline) {
         if (inline) {
-            send(route, msgPack);
+            send(delivererKey, routes, msgPack);
         } else {
-            tasks.add(new SendTask(route, msgPack));
-            scheduleSend();
+            enqueue(delivererKey, routes, msgPack);
         }
     }
 
     public void shutdown() {
         executor.shutdown();
+        signalNotFull();
+        Metrics.globalRegistry.remove(queueSizeGauge);
+        Metrics.globalRegistry.remove(queueOverflowCounter);
+        Metrics.globalRegistry.remove(queueDropCounter);
+    }
+
+    private void enqueue(DelivererKey delivererKey, List<NormalMatching> routes, MessagePackWrapper msgPack) {
+        if (tasks.offer(delivererKey, routes, msgPack)) {
+            scheduleSend();
+            return;
+        }
+        // back-pressure the fan-out until the queue has room, instead of bypassing it which breaks message order
+        queueOverflowCounter.increment();
+        if (awaitOffer(delivererKey, routes, msgPack)) {
+            return;
+        }
+        // the deliverers can't keep up, drop the messages rather than stalling the fan-out thread
+        queueDropCounter.increment();
+        for (NormalMatching route : routes) {
+            eventCollector.report(getLocal(DeliverError.class)
+                .brokerId(route.subBrokerId)
+                .delivererKey(route.delivererKey)
+                .subInfo(route.matchInfo)
+                .messages(msgPack.messagePack));
+        }
+    }
+
+    // block the caller until the sender frees some room or the max wait elapsed
+    private boolean awaitOffer(DelivererKey delivererKey, List<NormalMatching> routes, MessagePackWrapper msgPack) {
+        long waitNanos = maxWaitNanos;
+        waitingProducers.incrementAndGet();
+        notFullLock.lock();
+        try {
+            while (!executor.isShutdown()) {
+                if (tasks.offer(delivererKey, routes, msgPack)) {
+                    scheduleSend();
+                    return true;
+                }
+                if (waitNanos <= 0) {
+                    return false;
+                }
+                scheduleSend();
+                waitNanos = notFull.awaitNanos(waitNanos);
+            }
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            notFullLock.unlock();
+            waitingProducers.decrementAndGet();
+        }
+    }
+
+    private void signalNotFull() {
+        if (waitingProducers.get() > 0) {
+            notFullLock.lock();
+            try {
+                notFull.signalAll();
+            } finally {
+                notFullLock.unlock();
+            }
+        }
     }
 
     private void scheduleSend() {
@@ -78,21 +180,25 @@ public class DeliverExecutor {
     }
 
     private void sendAll() {
-        SendTask task;
-        while ((task = tasks.poll()) != null) {
-            send(task.route, task.msgPack);
-        }
+        tasks.drain(sender, MAX_DRAIN_BATCH);
+        signalNotFull();
         sending.set(false);
         if (!tasks.isEmpty()) {
             scheduleSend();
         }
     }
 
-    private void send(NormalMatching matched, TopicMessagePack msgPack) {
+    private void send(DelivererKey delivererKey, List<NormalMatching> routes, MessagePackWrapper msgPackWrapper) {
+        for (NormalMatching route : routes) {
+            send(route, new DeliveryCall(route.tenantId, route.matchInfo, delivererKey, msgPackWrapper));
+        }
+    }
+
+    private void send(NormalMatching matched, DeliveryCall request) {
         int subBrokerId = matched.subBrokerId;
         String delivererKey = matched.delivererKey;
         MatchInfo sub = matched.matchInfo;
-        DeliveryCall request = new DeliveryCall(matched.tenantId, sub, subBrokerId, delivererKey, msgPack);
+        TopicMessagePack msgPack = request.msgPackWrapper.messagePack;
         deliverer.schedule(request).whenComplete((result, e) -> {
             if (e != null) {
                 log.debug("Failed to deliver", e);
@@ -133,7 +239,4 @@ public class DeliverExecutor {
         });
 
     }
-
-    private record SendTask(NormalMatching route, TopicMessagePack msgPack) {
-    }
 }
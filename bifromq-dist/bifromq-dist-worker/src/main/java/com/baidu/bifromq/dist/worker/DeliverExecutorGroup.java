@@ -13,15 +13,15 @@
 
 package com.baidu.bifromq.dist.worker;
 
-import static com.baidu.bifromq.dist.util.TopicUtil.escape;
 import static com.baidu.bifromq.metrics.TenantMetric.MqttPersistentFanOutBytes;
 import static com.baidu.bifromq.plugin.eventcollector.ThreadLocalEventPool.getLocal;
 import static com.baidu.bifromq.sysprops.BifroMQSysProp.DIST_INLINE_FAN_OUT_THRESHOLD;
-import static com.baidu.bifromq.sysprops.BifroMQSysProp.DIST_TOPIC_MATCH_EXPIRY;
 import static com.bifromq.plugin.resourcethrottler.TenantResourceType.TotalPersistentFanOutBytesPerSeconds;
 import static com.google.common.hash.Hashing.murmur3_128;
 
+import com.baidu.bifromq.deliverer.DelivererKey;
 import com.baidu.bifromq.deliverer.IMessageDeliverer;
+import com.baidu.bifromq.deliverer.MessagePackWrapper;
 import com.baidu.bifromq.dist.client.IDistClient;
 import com.baidu.bifromq.dist.entity.GroupMatching;
 import com.baidu.bifromq.dist.entity.Matching;
@@ -36,25 +36,25 @@ import com.bifromq.plugin.resourcethrottler.IResourceThrottler;
 import com.bifromq.plugin.resourcethrottler.TenantResourceType;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
-import com.github.benmanes.caffeine.cache.LoadingCache;
-import com.github.benmanes.caffeine.cache.RemovalListener;
-import com.github.benmanes.caffeine.cache.Scheduler;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * The group of deliver executors, each matched route is always sent via the same executor to keep message order.
+ */
 @Slf4j
-class DeliverExecutorGroup {
-    private record OrderedSharedMatchingKey(String tenantId, String escapedTopicFilter) {
+public class DeliverExecutorGroup {
+    private record SendBucket(int executorIdx, DelivererKey delivererKey) {
     }
 
-    // OuterCacheKey: OrderedSharedMatchingKey(<tenantId>, <escapedTopicFilter>)
-    // InnerCacheKey: ClientInfo(<tenantId>, <type>, <metadata>)
-    private final LoadingCache<OrderedSharedMatchingKey, Cache<ClientInfo, NormalMatching>> orderedSharedMatching;
+    // the hash is rebuilt only when the GroupMatching is replaced, the key is compared by identity
+    private final Cache<GroupMatching, MaglevHash<ClientInfo, NormalMatching>> orderedSharedMatching;
     private final int inlineFanOutThreshold = DIST_INLINE_FAN_OUT_THRESHOLD.get();
     private final IEventCollector eventCollector;
     private final IResourceThrottler resourceThrottler;
@@ -62,34 +62,36 @@ class DeliverExecutorGroup {
     private final IMessageDeliverer deliverer;
     private final DeliverExecutor[] fanoutExecutors;
 
-    DeliverExecutorGroup(IMessageDeliverer deliverer,
-                         IEventCollector eventCollector,
-                         IResourceThrottler resourceThrottler,
-                         IDistClient distClient,
-                         int groupSize) {
-        int expirySec = DIST_TOPIC_MATCH_EXPIRY.get();
+    /**
+     * Create a group of deliver executors.
+     *
+     * @param deliverer         the message deliverer
+     * @param eventCollector    the event collector
+     * @param resourceThrottler the resource throttler
+     * @param distClient        the dist client for cleaning up the routes whose receiver is gone
+     * @param groupSize         the number of executors
+     */
+    public DeliverExecutorGroup(IMessageDeliverer deliverer,
+                                IEventCollector eventCollector,
+                                IResourceThrottler resourceThrottler,
+                                IDistClient distClient,
+                                int groupSize) {
         this.eventCollector = eventCollector;
         this.resourceThrottler = resourceThrottler;
         this.distClient = distClient;
         this.deliverer = deliverer;
         orderedSharedMatching = Caffeine.newBuilder()
-            .expireAfterAccess(expirySec * 2L, TimeUnit.SECONDS)
-            .scheduler(Scheduler.systemScheduler())
-            .removalListener((RemovalListener<OrderedSharedMatchingKey, Cache<ClientInfo, NormalMatching>>)
-                (key, value, cause) -> {
-                    if (value != null) {
-                        value.invalidateAll();
-                    }
-                })
-            .build(k -> Caffeine.newBuilder()
-                .expireAfterAccess(expirySec, TimeUnit.SECONDS)
-                .build());
+            .weakKeys()
+            .build();
         fanoutExecutors = new DeliverExecutor[groupSize];
         for (int i = 0; i < groupSize; i++) {
             fanoutExecutors[i] = new DeliverExecutor(i, deliverer, eventCollector, distClient);
         }
     }
 
+    /**
+     * Shutdown all the executors.
+     */
     public void shutdown() {
         for (DeliverExecutor fanoutExecutor : fanoutExecutors) {
             fanoutExecutor.shutdown();
@@ -97,17 +99,26 @@ class DeliverExecutorGroup {
         orderedSharedMatching.invalidateAll();
     }
 
+    /**
+     * Send the message pack to the matched routes.
+     *
+     * @param matchedRoutes the matched routes
+     * @param msgPack       the message pack
+     */
     public void submit(List<Matching> matchedRoutes, TopicMessagePack msgPack) {
         int msgPackSize = SizeUtil.estSizeOf(msgPack);
         if (matchedRoutes.size() == 1) {
             Matching matching = matchedRoutes.get(0);
-            prepareSend(matching, msgPack, true);
+            FanOutBatch fanOutBatch = new FanOutBatch(true);
+            prepareSend(matching, msgPack, fanOutBatch);
+            fanOutBatch.send();
             if (isSendToInbox(matching)) {
                 ITenantMeter.get(matching.tenantId).recordSummary(MqttPersistentFanOutBytes, msgPackSize);
             }
         } else if (matchedRoutes.size() > 1) {
             String tenantId = matchedRoutes.get(0).tenantId;
             boolean inline = matchedRoutes.size() > inlineFanOutThreshold;
+            FanOutBatch fanOutBatch = new FanOutBatch(inline);
             boolean hasTFanOutBandwidth =
                 resourceThrottler.hasResource(tenantId, TenantResourceType.TotalTransientFanOutBytesPerSeconds);
             boolean hasTFannedOutUnderThrottled = false;
@@ -120,7 +131,7 @@ class DeliverExecutorGroup {
                 if (isSendToInbox(matching)) {
                     if (hasPFanOutBandwidth || !hasPFannedOutUnderThrottled) {
                         pFanoutBytes += msgPackSize;
-                        prepareSend(matching, msgPack, inline);
+                        prepareSend(matching, msgPack, fanOutBatch);
                         if (!hasPFanOutBandwidth) {
                             hasPFannedOutUnderThrottled = true;
                             for (TopicMessagePack.PublisherPack publisherPack : msgPack.getMessageList()) {
@@ -132,7 +143,7 @@ class DeliverExecutorGroup {
                         }
                     }
                 } else if (hasTFanOutBandwidth || !hasTFannedOutUnderThrottled) {
-                    prepareSend(matching, msgPack, inline);
+                    prepareSend(matching, msgPack, fanOutBatch);
                     if (!hasTFanOutBandwidth) {
                         hasTFannedOutUnderThrottled = true;
                         for (TopicMessagePack.PublisherPack publisherPack : msgPack.getMessageList()) {
@@ -147,6 +158,7 @@ class DeliverExecutorGroup {
                     break;
                 }
             }
+            fanOutBatch.send();
             ITenantMeter.get(tenantId).recordSummary(MqttPersistentFanOutBytes, pFanoutBytes);
         }
     }
@@ -155,51 +167,72 @@ class DeliverExecutorGroup {
         return matching.type() == Matching.Type.Normal && ((NormalMatching) matching).subBrokerId == 1;
     }
 
-    public void invalidate(ScopedTopic scopedTopic) {
-        orderedSharedMatching.invalidate(new OrderedSharedMatchingKey(scopedTopic.tenantId, escape(scopedTopic.topic)));
-    }
-
-    private void prepareSend(Matching matching, TopicMessagePack msgPack, boolean inline) {
+    private void prepareSend(Matching matching, TopicMessagePack msgPack, FanOutBatch fanOutBatch) {
         switch (matching.type()) {
-            case Normal -> send((NormalMatching) matching, msgPack, inline);
+            case Normal -> fanOutBatch.add((NormalMatching) matching, msgPack);
             case Group -> {
                 GroupMatching groupMatching = (GroupMatching) matching;
                 if (!groupMatching.ordered) {
                     // pick one route randomly
-                    send(groupMatching.receiverList.get(
-                        ThreadLocalRandom.current().nextInt(groupMatching.receiverList.size())), msgPack, inline);
+                    fanOutBatch.add(groupMatching.receiverList.get(
+                        ThreadLocalRandom.current().nextInt(groupMatching.receiverList.size())), msgPack);
                 } else {
                     // ordered shared subscription
                     Map<NormalMatching, TopicMessagePack.Builder> orderedRoutes = new HashMap<>();
+                    MaglevHash<ClientInfo, NormalMatching> hash = orderedSharedMatching.get(groupMatching,
+                        k -> new MaglevHash<>(murmur3_128(),
+                            (from, into) -> into.putInt(from.hashCode()),
+                            (from, into) -> into.putBytes(from.scopedInboxId.getBytes()),
+                            Comparator.comparing(a -> a.scopedInboxId),
+                            k.receiverList));
                     for (TopicMessagePack.PublisherPack publisherPack : msgPack.getMessageList()) {
-                        ClientInfo sender = publisherPack.getPublisher();
-                        NormalMatching matchedInbox = orderedSharedMatching
-                            .get(new OrderedSharedMatchingKey(groupMatching.tenantId, groupMatching.escapedTopicFilter))
-                            .get(sender, k -> {
-                                RendezvousHash<ClientInfo, NormalMatching> hash =
-                                    new RendezvousHash<>(murmur3_128(),
-                                        (from, into) -> into.putInt(from.hashCode()),
-                                        (from, into) -> into.putBytes(from.scopedInboxId.getBytes()),
-                                        Comparator.comparing(a -> a.scopedInboxId));
-                                groupMatching.receiverList.forEach(hash::add);
-                                return hash.get(k);
-                            });
+                        NormalMatching matchedInbox = hash.get(publisherPack.getPublisher());
                         // ordered share sub
                         orderedRoutes.computeIfAbsent(matchedInbox, k -> TopicMessagePack.newBuilder())
                             .setTopic(msgPack.getTopic())
                             .addMessage(publisherPack);
                     }
-                    orderedRoutes.forEach((route, msgPackBuilder) -> send(route, msgPackBuilder.build(), inline));
+                    orderedRoutes.forEach((route, msgPackBuilder) -> fanOutBatch.add(route, msgPackBuilder.build()));
                 }
             }
         }
     }
 
-    private void send(NormalMatching route, TopicMessagePack msgPack, boolean inline) {
+    private int executorIndex(NormalMatching route) {
         int idx = route.hashCode() % fanoutExecutors.length;
         if (idx < 0) {
             idx += fanoutExecutors.length;
         }
-        fanoutExecutors[idx].submit(route, msgPack, inline);
+        return idx;
+    }
+
+    /**
+     * The routes of one fan-out grouped by message pack, executor and deliverer, so that the message pack is wrapped
+     * once and delivered to each deliverer in one DeliveryPack.
+     */
+    private class FanOutBatch {
+        private final boolean inline;
+        private final Map<TopicMessagePack, Map<SendBucket, List<NormalMatching>>> buckets = new IdentityHashMap<>();
+
+        FanOutBatch(boolean inline) {
+            this.inline = inline;
+        }
+
+        void add(NormalMatching route, TopicMessagePack msgPack) {
+            // route is always sent via the same executor to keep the message order
+            SendBucket bucket =
+                new SendBucket(executorIndex(route), new DelivererKey(route.subBrokerId, route.delivererKey));
+            buckets.computeIfAbsent(msgPack, k -> new HashMap<>())
+                .computeIfAbsent(bucket, k -> new ArrayList<>())
+                .add(route);
+        }
+
+        void send() {
+            buckets.forEach((msgPack, routes) -> {
+                MessagePackWrapper msgPackWrapper = MessagePackWrapper.wrap(msgPack);
+                routes.forEach((bucket, bucketRoutes) -> fanoutExecutors[bucket.executorIdx]
+                    .submit(bucket.delivererKey, bucketRoutes, msgPackWrapper, inline));
+            });
+        }
     }
 }
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.dist.worker;
+
+import com.baidu.bifromq.deliverer.DelivererKey;
+import com.baidu.bifromq.deliverer.MessagePackWrapper;
+import com.baidu.bifromq.dist.entity.NormalMatching;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded multi-producer single-consumer ring buffer of send tasks. The slots are preallocated, and each slot carries
+ * a sequence telling whether it's free to be claimed by producers or published to the consumer.
+ */
+class DeliverTaskRingBuffer {
+    interface Handler {
+        void handle(DelivererKey delivererKey, List<NormalMatching> routes, MessagePackWrapper msgPack);
+    }
+
+    private final int capacity;
+    private final int mask;
+    private final Slot[] slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    DeliverTaskRingBuffer(int capacity) {
+        assert capacity > 0;
+        this.capacity = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+        this.mask = this.capacity - 1;
+        this.slots = new Slot[this.capacity];
+        this.sequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            slots[i] = new Slot();
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Publish a send task, it's safe to be called from multiple threads.
+     *
+     * @return false if the ring buffer is full
+     */
+    boolean offer(DelivererKey delivererKey, List<NormalMatching> routes, MessagePackWrapper msgPack) {
+        while (true) {
+            long pos = tail.get();
+            int idx = (int) (pos & mask);
+            long seq = sequences.get(idx);
+            if (seq == pos) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    Slot slot = slots[idx];
+                    slot.delivererKey = delivererKey;
+                    slot.routes = routes;
+                    slot.msgPack = msgPack;
+                    // publish to consumer
+                    sequences.lazySet(idx, pos + 1);
+                    return true;
+                }
+            } else if (seq < pos) {
+                // the slot is not consumed in last round
+                return false;
+            }
+            // the slot has been claimed by other producer, retry
+        }
+    }
+
+    /**
+     * Drain the published send tasks in order, it must be called from one thread at a time.
+     *
+     * @param handler the handler of send tasks
+     * @param limit   the max number of send tasks to drain
+     * @return the number of send tasks drained
+     */
+    int drain(Handler handler, int limit) {
+        long pos = head.get();
+        int drained = 0;
+        while (drained < limit) {
+            int idx = (int) (pos & mask);
+            if (sequences.get(idx) != pos + 1) {
+                break;
+            }
+            Slot slot = slots[idx];
+            DelivererKey delivererKey = slot.delivererKey;
+            List<NormalMatching> routes = slot.routes;
+            MessagePackWrapper msgPack = slot.msgPack;
+            slot.delivererKey = null;
+            slot.routes = null;
+            slot.msgPack = null;
+            // release the slot to producers of next round
+            sequences.lazySet(idx, pos + capacity);
+            head.lazySet(++pos);
+            drained++;
+            handler.handle(delivererKey, routes, msgPack);
+        }
+        return drained;
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    private static class Slot {
+        private DelivererKey delivererKey;
+        private List<NormalMatching> routes;
+        private MessagePackWrapper msgPack;
+    }
+}
@@ -13,9 +13,12 @@
 
 package com.baidu.bifromq.dist.worker;
 
+import static com.baidu.bifromq.basekv.utils.BoundaryUtil.inRange;
 import static com.baidu.bifromq.basekv.utils.BoundaryUtil.intersect;
 import static com.baidu.bifromq.basekv.utils.BoundaryUtil.isEmptyRange;
-import static com.baidu.bifromq.dist.entity.EntityUtil.getType;
+import static com.baidu.bifromq.basekv.utils.BoundaryUtil.startKey;
+import static com.baidu.bifromq.basekv.utils.BoundaryUtil.upperBound;
+import static com.baidu.bifromq.dist.entity.EntityUtil.legacyMatchRecordKeyPrefix;
 import static com.baidu.bifromq.dist.entity.EntityUtil.matchRecordKeyPrefix;
 import static com.baidu.bifromq.dist.entity.EntityUtil.parseMatchRecord;
 import static com.baidu.bifromq.dist.entity.EntityUtil.parseOriginalTopicFilter;
@@ -24,12 +27,15 @@ import static com.baidu.bifromq.dist.entity.EntityUtil.parseTenantId;
 import static com.baidu.bifromq.dist.entity.EntityUtil.parseTenantIdFromScopedTopicFilter;
 import static com.baidu.bifromq.dist.entity.EntityUtil.parseTopicFilter;
 import static com.baidu.bifromq.dist.entity.EntityUtil.parseTopicFilterFromScopedTopicFilter;
+import static com.baidu.bifromq.dist.entity.EntityUtil.tenantPrefix;
 import static com.baidu.bifromq.dist.entity.EntityUtil.tenantUpperBound;
 import static com.baidu.bifromq.dist.entity.EntityUtil.toGroupMatchRecordKey;
+import static com.baidu.bifromq.dist.entity.EntityUtil.toLegacyMatchRecordKey;
+import static com.baidu.bifromq.dist.entity.EntityUtil.toMatchRecordKey;
 import static com.baidu.bifromq.dist.entity.EntityUtil.toNormalMatchRecordKey;
+import static com.baidu.bifromq.dist.entity.EntityUtil.toRouteCounterKey;
 import static com.baidu.bifromq.dist.entity.EntityUtil.toScopedTopicFilter;
 import static com.baidu.bifromq.dist.util.TopicUtil.isNormalTopicFilter;
-import static com.baidu.bifromq.dist.util.TopicUtil.isWildcardTopicFilter;
 import static com.baidu.bifromq.sysprops.BifroMQSysProp.DIST_FAN_OUT_PARALLELISM;
 import static java.util.Collections.singletonMap;
 
@@ -46,6 +52,7 @@ import com.baidu.bifromq.basekv.store.proto.RWCoProcOutput;
 import com.baidu.bifromq.basekv.utils.KVRangeIdUtil;
 import com.baidu.bifromq.deliverer.IMessageDeliverer;
 import com.baidu.bifromq.dist.client.IDistClient;
+import com.baidu.bifromq.dist.entity.EntityUtil;
 import com.baidu.bifromq.dist.entity.GroupMatching;
 import com.baidu.bifromq.dist.entity.Matching;
 import com.baidu.bifromq.dist.rpc.proto.BatchDistReply;
@@ -70,6 +77,7 @@ import com.google.common.collect.Sets;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -88,11 +96,14 @@ import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 class DistWorkerCoProc implements IKVRangeCoProc {
+    // the max number of legacy match records migrated along with a batch match
+    private static final int MAX_MIGRATIONS_PER_BATCH = 100;
     private final KVRangeId id;
     private final Supplier<IKVReader> readerProvider;
     private final IDistClient distClient;
     private final ISubBrokerManager subBrokerManager;
     private final IMessageDeliverer deliverer;
+    private final RouteIndex routeIndex;
     private final SubscriptionCache routeCache;
     private final TenantsState tenantsState;
     private final DeliverExecutorGroup fanoutExecutorGroup;
@@ -112,7 +123,8 @@ class DistWorkerCoProc implements IKVRangeCoProc {
         this.distClient = distClient;
         this.subBrokerManager = subBrokerManager;
         this.deliverer = deliverer;
-        this.routeCache = new SubscriptionCache(id, readerProvider, matchExecutor);
+        this.routeIndex = new RouteIndex(this::loadRoutes);
+        this.routeCache = new SubscriptionCache(id, routeIndex, matchExecutor);
         this.tenantsState = new TenantsState(readerProvider.get(),
             "clusterId", clusterId, "storeId", storeId, "rangeId", KVRangeIdUtil.toString(id));
         fanoutExecutorGroup = new DeliverExecutorGroup(deliverer,
@@ -152,7 +164,6 @@ class DistWorkerCoProc implements IKVRangeCoProc {
     public Supplier<RWCoProcOutput> mutate(RWCoProcInput input, IKVReader reader, IKVWriter writer) {
         DistServiceRWCoProcInput coProcInput = input.getDistService();
         log.trace("Receive rw co-proc request\n{}", coProcInput);
-        Set<String> touchedTenants = Sets.newHashSet();
         Set<ScopedTopic> touchedTopicFilters = Sets.newHashSet();
         DistServiceRWCoProcOutput.Builder outputBuilder = DistServiceRWCoProcOutput.newBuilder();
         AtomicReference<Runnable> afterMutate = new AtomicReference<>();
@@ -160,26 +171,21 @@ class DistWorkerCoProc implements IKVRangeCoProc {
             case BATCHMATCH -> {
                 BatchMatchReply.Builder replyBuilder = BatchMatchReply.newBuilder();
                 afterMutate.set(
-                    batchMatch(coProcInput.getBatchMatch(), reader, writer, touchedTenants, touchedTopicFilters,
-                        replyBuilder));
+                    batchMatch(coProcInput.getBatchMatch(), reader, writer, touchedTopicFilters, replyBuilder));
                 outputBuilder.setBatchMatch(replyBuilder.build());
             }
             case BATCHUNMATCH -> {
                 BatchUnmatchReply.Builder replyBuilder = BatchUnmatchReply.newBuilder();
                 afterMutate.set(
-                    batchUnmatch(coProcInput.getBatchUnmatch(), reader, writer, touchedTenants, touchedTopicFilters,
-                        replyBuilder));
+                    batchUnmatch(coProcInput.getBatchUnmatch(), reader, writer, touchedTopicFilters, replyBuilder));
                 outputBuilder.setBatchUnmatch(replyBuilder.build());
             }
         }
         RWCoProcOutput output = RWCoProcOutput.newBuilder().setDistService(outputBuilder.build()).build();
         return () -> {
-            touchedTopicFilters.forEach(topicFilter -> {
-                routeCache.invalidate(topicFilter);
-                fanoutExecutorGroup.invalidate(topicFilter);
-            });
-            touchedTenants.forEach(routeCache::touch);
+            // update route index before invalidating cache, so that reloading always see the latest routes
             afterMutate.get().run();
+            touchedTopicFilters.forEach(routeCache::invalidate);
             return output;
         };
     }
@@ -187,12 +193,14 @@ class DistWorkerCoProc implements IKVRangeCoProc {
     @Override
     public void reset(Boundary boundary) {
         tenantsState.reset();
-        routeCache.touchAll();
+        routeIndex.clear();
         load();
+        routeCache.invalidateAll();
     }
 
     public void close() {
         tenantsState.reset();
+        routeIndex.clear();
         routeCache.close();
         fanoutExecutorGroup.shutdown();
     }
@@ -200,25 +208,54 @@ class DistWorkerCoProc implements IKVRangeCoProc {
     private Runnable batchMatch(BatchMatchRequest request,
                                 IKVReader reader,
                                 IKVWriter writer,
-                                Set<String> touchedTenants,
                                 Set<ScopedTopic> touchedTopics,
                                 BatchMatchReply.Builder replyBuilder) {
         replyBuilder.setReqId(request.getReqId());
+        boolean matchRecordV2 = request.getMatchRecordV2();
+        boolean legacyOnly = request.getLegacyOnly();
         Map<String, AtomicInteger> normalRoutesAdded = new HashMap<>();
         Map<String, AtomicInteger> sharedRoutesAdded = new HashMap<>();
         Map<ByteString, List<String>> groupMatchRecords = new HashMap<>();
+        // key: groupMatchRecordKey, value: legacyGroupMatchRecordKey
+        Map<ByteString, ByteString> legacyGroupMatchRecordKeys = new HashMap<>();
+        List<Matching> addedMatchings = new ArrayList<>();
+        List<Matching> migratedMatchings = new ArrayList<>();
+        Set<ByteString> touchedLegacyKeys = new HashSet<>();
+        final Map<String, RouteCounter> routeCounters = legacyOnly
+            ? Collections.emptyMap() : getRouteCounters(request.getScopedTopicFilterList(), reader);
         request.getScopedTopicFilterList().forEach(scopedTopicFilter -> {
             String tenantId = parseTenantIdFromScopedTopicFilter(scopedTopicFilter);
-            String qInboxId = parseQInboxIdFromScopedTopicFilter(scopedTopicFilter);
+            String qinboxId = parseQInboxIdFromScopedTopicFilter(scopedTopicFilter);
             String topicFilter = parseTopicFilterFromScopedTopicFilter(scopedTopicFilter);
             if (isNormalTopicFilter(topicFilter)) {
-                ByteString normalMatchRecordKey = toNormalMatchRecordKey(tenantId, topicFilter, qInboxId);
-                if (!reader.exist(normalMatchRecordKey)) {
-                    writer.put(normalMatchRecordKey, ByteString.EMPTY);
-                    normalRoutesAdded.computeIfAbsent(tenantId, k -> new AtomicInteger()).incrementAndGet();
-                    if (isWildcardTopicFilter(topicFilter)) {
-                        touchedTenants.add(tenantId);
+                ByteString normalMatchRecordKey = toNormalMatchRecordKey(tenantId, topicFilter, qinboxId);
+                ByteString legacyMatchRecordKey = toLegacyMatchRecordKey(tenantId, topicFilter, qinboxId);
+                touchedLegacyKeys.add(legacyMatchRecordKey);
+                if (legacyOnly) {
+                    // the v2 key is hosted by another range, only report whether the legacy record is here
+                    replyBuilder.putResults(scopedTopicFilter, existInRange(reader, legacyMatchRecordKey)
+                        ? BatchMatchReply.Result.OK : BatchMatchReply.Result.NOT_EXISTED);
+                    return;
+                }
+                ByteString matchRecordKey = matchRecordV2 ? normalMatchRecordKey : legacyMatchRecordKey;
+                ByteString altMatchRecordKey = matchRecordV2 ? legacyMatchRecordKey : normalMatchRecordKey;
+                boolean changed = false;
+                if (!existInRange(reader, matchRecordKey)) {
+                    if (!existInRange(reader, altMatchRecordKey)) {
+                        writer.put(matchRecordKey, ByteString.EMPTY);
+                        addedMatchings.add(parseMatchRecord(matchRecordKey, ByteString.EMPTY));
+                        normalRoutesAdded.computeIfAbsent(tenantId, k -> new AtomicInteger()).incrementAndGet();
+                        changed = true;
+                    } else if (matchRecordV2) {
+                        // migrate the existing match record to current schema
+                        writer.delete(legacyMatchRecordKey);
+                        writer.put(normalMatchRecordKey, ByteString.EMPTY);
+                        migratedMatchings.add(parseMatchRecord(legacyMatchRecordKey, ByteString.EMPTY));
+                        addedMatchings.add(parseMatchRecord(normalMatchRecordKey, ByteString.EMPTY));
+                        changed = true;
                     }
+                }
+                if (changed) {
                     touchedTopics.add(ScopedTopic.builder()
                         .tenantId(tenantId)
                         .topic(topicFilter)
@@ -228,12 +265,34 @@ class DistWorkerCoProc implements IKVRangeCoProc {
                 replyBuilder.putResults(scopedTopicFilter, BatchMatchReply.Result.OK);
             } else {
                 ByteString groupMatchRecordKey = toGroupMatchRecordKey(tenantId, topicFilter);
-                groupMatchRecords.computeIfAbsent(groupMatchRecordKey, k -> new LinkedList<>()).add(qInboxId);
+                legacyGroupMatchRecordKeys.computeIfAbsent(groupMatchRecordKey,
+                    k -> toLegacyMatchRecordKey(tenantId, topicFilter, qinboxId));
+                groupMatchRecords.computeIfAbsent(groupMatchRecordKey, k -> new LinkedList<>()).add(qinboxId);
             }
         });
         groupMatchRecords.forEach((groupMatchRecordKey, newGroupMembers) -> {
             String tenantId = parseTenantId(groupMatchRecordKey);
-            GroupMatchRecord.Builder matchGroup = reader.get(groupMatchRecordKey)
+            ByteString legacyGroupMatchRecordKey = legacyGroupMatchRecordKeys.get(groupMatchRecordKey);
+            touchedLegacyKeys.add(legacyGroupMatchRecordKey);
+            ByteString matchRecordKey = matchRecordV2 ? groupMatchRecordKey : legacyGroupMatchRecordKey;
+            ByteString altMatchRecordKey = matchRecordV2 ? legacyGroupMatchRecordKey : groupMatchRecordKey;
+            ByteString existingMatchRecordKey = matchRecordKey;
+            Optional<ByteString> existingGroupMatchRecord = getInRange(reader, matchRecordKey);
+            if (existingGroupMatchRecord.isEmpty()) {
+                existingMatchRecordKey = altMatchRecordKey;
+                existingGroupMatchRecord = getInRange(reader, altMatchRecordKey);
+            }
+            if (legacyOnly && existingGroupMatchRecord.isEmpty()) {
+                // the v2 key is hosted by another range, the group will be created there
+                newGroupMembers.forEach(newQInboxId -> replyBuilder.putResults(toScopedTopicFilter(tenantId,
+                    newQInboxId, parseOriginalTopicFilter(groupMatchRecordKey)), BatchMatchReply.Result.NOT_EXISTED));
+                return;
+            }
+            // keep the record where it is unless it could be migrated to current schema within the range
+            ByteString targetMatchRecordKey = existingGroupMatchRecord.isEmpty()
+                || (matchRecordV2 && inRange(groupMatchRecordKey, reader.boundary()))
+                ? matchRecordKey : existingMatchRecordKey;
+            GroupMatchRecord.Builder matchGroup = existingGroupMatchRecord
                 .map(b -> {
                     try {
                         return GroupMatchRecord.parseFrom(b).toBuilder();
@@ -254,26 +313,31 @@ class DistWorkerCoProc implements IKVRangeCoProc {
                     if (matchGroup.getQReceiverIdCount() < maxMembers) {
                         matchGroup.addQReceiverId(newQInboxId);
                         replyBuilder.putResults(toScopedTopicFilter(tenantId, newQInboxId,
-                                parseOriginalTopicFilter(groupMatchRecordKey.toStringUtf8())),
+                                parseOriginalTopicFilter(groupMatchRecordKey)),
                             BatchMatchReply.Result.OK);
                         updated = true;
                     } else {
                         replyBuilder.putResults(toScopedTopicFilter(tenantId, newQInboxId,
-                                parseOriginalTopicFilter(groupMatchRecordKey.toStringUtf8())),
+                                parseOriginalTopicFilter(groupMatchRecordKey)),
                             BatchMatchReply.Result.EXCEED_LIMIT);
                     }
                 } else {
                     replyBuilder.putResults(toScopedTopicFilter(tenantId, newQInboxId,
-                            parseOriginalTopicFilter(groupMatchRecordKey.toStringUtf8())),
+                            parseOriginalTopicFilter(groupMatchRecordKey)),
                         BatchMatchReply.Result.OK);
                 }
             }
             if (updated) {
-                writer.put(groupMatchRecordKey, matchGroup.build().toByteString());
-                String groupTopicFilter = parseTopicFilter(groupMatchRecordKey.toStringUtf8());
-                if (isWildcardTopicFilter(groupTopicFilter)) {
-                    touchedTenants.add(parseTenantId(groupMatchRecordKey));
+                ByteString groupMatchRecord = matchGroup.build().toByteString();
+                writer.put(targetMatchRecordKey, groupMatchRecord);
+                addedMatchings.add(parseMatchRecord(targetMatchRecordKey, groupMatchRecord));
+                if (existingGroupMatchRecord.isPresent() && !existingMatchRecordKey.equals(targetMatchRecordKey)) {
+                    // migrate the existing match record to current schema
+                    writer.delete(existingMatchRecordKey);
+                    migratedMatchings.add(
+                        parseMatchRecord(existingMatchRecordKey, existingGroupMatchRecord.get()));
                 }
+                String groupTopicFilter = parseTopicFilter(groupMatchRecordKey);
                 touchedTopics.add(ScopedTopic.builder()
                     .tenantId(parseTenantId(groupMatchRecordKey))
                     .topic(groupTopicFilter)
@@ -281,35 +345,67 @@ class DistWorkerCoProc implements IKVRangeCoProc {
                     .build());
             }
         });
+        if (matchRecordV2 && !legacyOnly) {
+            AtomicInteger quota = new AtomicInteger(MAX_MIGRATIONS_PER_BATCH);
+            request.getScopedTopicFilterList().stream()
+                .map(EntityUtil::parseTenantIdFromScopedTopicFilter)
+                .distinct()
+                .forEach(tenantId -> migrateLegacyMatchRecords(tenantId, touchedLegacyKeys, quota, reader, writer,
+                    migratedMatchings, addedMatchings, normalRoutesAdded, sharedRoutesAdded, touchedTopics));
+        }
+        updateRouteCounters(routeCounters, normalRoutesAdded, sharedRoutesAdded, 1, reader, writer);
         return () -> {
-            normalRoutesAdded.forEach((tenantId, added) -> tenantsState.incNormalRoutes(tenantId, added.get()));
-            sharedRoutesAdded.forEach((tenantId, added) -> tenantsState.incSharedRoutes(tenantId, added.get()));
+            migratedMatchings.forEach(routeIndex::remove);
+            addedMatchings.forEach(routeIndex::add);
+            normalRoutesAdded.forEach((tenantId, added) -> {
+                if (added.get() > 0) {
+                    tenantsState.incNormalRoutes(tenantId, added.get());
+                } else if (added.get() < 0) {
+                    tenantsState.decNormalRoutes(tenantId, -added.get());
+                }
+            });
+            sharedRoutesAdded.forEach((tenantId, added) -> {
+                if (added.get() > 0) {
+                    tenantsState.incSharedRoutes(tenantId, added.get());
+                } else if (added.get() < 0) {
+                    tenantsState.decSharedRoutes(tenantId, -added.get());
+                }
+            });
         };
     }
 
     private Runnable batchUnmatch(BatchUnmatchRequest request,
                                   IKVReader reader,
                                   IKVWriter writer,
-                                  Set<String> touchedTenants,
                                   Set<ScopedTopic> touchedTopics,
                                   BatchUnmatchReply.Builder replyBuilder) {
         replyBuilder.setReqId(request.getReqId());
+        boolean matchRecordV2 = request.getMatchRecordV2();
         Map<String, AtomicInteger> normalRoutesRemoved = new HashMap<>();
         Map<String, AtomicInteger> sharedRoutesRemoved = new HashMap<>();
         Map<ByteString, Set<String>> delGroupMatchRecords = new HashMap<>();
+        // key: groupMatchRecordKey, value: legacyGroupMatchRecordKey
+        Map<ByteString, ByteString> legacyGroupMatchRecordKeys = new HashMap<>();
+        List<Matching> updatedMatchings = new ArrayList<>();
+        List<Matching> removedMatchings = new ArrayList<>();
+        Map<String, RouteCounter> routeCounters = getRouteCounters(request.getScopedTopicFilterList(), reader);
         for (String scopedTopicFilter : request.getScopedTopicFilterList()) {
             String tenantId = parseTenantIdFromScopedTopicFilter(scopedTopicFilter);
-            String qInboxId = parseQInboxIdFromScopedTopicFilter(scopedTopicFilter);
+            String qinboxId = parseQInboxIdFromScopedTopicFilter(scopedTopicFilter);
             String topicFilter = parseTopicFilterFromScopedTopicFilter(scopedTopicFilter);
             if (isNormalTopicFilter(topicFilter)) {
-                ByteString normalMatchRecordKey = toNormalMatchRecordKey(tenantId, topicFilter, qInboxId);
-                Optional<ByteString> value = reader.get(normalMatchRecordKey);
+                ByteString normalMatchRecordKey = toNormalMatchRecordKey(tenantId, topicFilter, qinboxId);
+                ByteString legacyMatchRecordKey = toLegacyMatchRecordKey(tenantId, topicFilter, qinboxId);
+                ByteString matchRecordKey = matchRecordV2 ? normalMatchRecordKey : legacyMatchRecordKey;
+                Optional<ByteString> value = getInRange(reader, matchRecordKey);
+                if (value.isEmpty()) {
+                    matchRecordKey = matchRecordV2 ? legacyMatchRecordKey : normalMatchRecordKey;
+                    value = getInRange(reader, matchRecordKey);
+                }
                 if (value.isPresent()) {
-                    writer.delete(normalMatchRecordKey);
+                    writer.delete(matchRecordKey);
+                    removedMatchings.add(parseMatchRecord(matchRecordKey, value.get()));
                     normalRoutesRemoved.computeIfAbsent(tenantId, k -> new AtomicInteger()).incrementAndGet();
-                    if (isWildcardTopicFilter(topicFilter)) {
-                        touchedTenants.add(tenantId);
-                    }
                     touchedTopics.add(ScopedTopic.builder()
                         .tenantId(tenantId)
                         .topic(topicFilter)
@@ -321,14 +417,22 @@ class DistWorkerCoProc implements IKVRangeCoProc {
                 }
             } else {
                 ByteString groupMatchRecordKey = toGroupMatchRecordKey(tenantId, topicFilter);
-                delGroupMatchRecords.computeIfAbsent(groupMatchRecordKey, k -> new HashSet<>()).add(qInboxId);
+                legacyGroupMatchRecordKeys.computeIfAbsent(groupMatchRecordKey,
+                    k -> toLegacyMatchRecordKey(tenantId, topicFilter, qinboxId));
+                delGroupMatchRecords.computeIfAbsent(groupMatchRecordKey, k -> new HashSet<>()).add(qinboxId);
             }
         }
         delGroupMatchRecords.forEach((groupMatchRecordKey, delGroupMembers) -> {
             String tenantId = parseTenantId(groupMatchRecordKey);
-            Optional<ByteString> value = reader.get(groupMatchRecordKey);
+            ByteString legacyGroupMatchRecordKey = legacyGroupMatchRecordKeys.get(groupMatchRecordKey);
+            ByteString existingGroupMatchRecordKey = matchRecordV2 ? groupMatchRecordKey : legacyGroupMatchRecordKey;
+            Optional<ByteString> value = getInRange(reader, existingGroupMatchRecordKey);
+            if (value.isEmpty()) {
+                existingGroupMatchRecordKey = matchRecordV2 ? legacyGroupMatchRecordKey : groupMatchRecordKey;
+                value = getInRange(reader, existingGroupMatchRecordKey);
+            }
             if (value.isPresent()) {
-                Matching matching = parseMatchRecord(groupMatchRecordKey, value.get());
+                Matching matching = parseMatchRecord(existingGroupMatchRecordKey, value.get());
                 assert matching instanceof GroupMatching;
                 GroupMatching groupMatching = (GroupMatching) matching;
                 Set<String> existing = Sets.newLinkedHashSet(groupMatching.receiverIds);
@@ -346,18 +450,27 @@ class DistWorkerCoProc implements IKVRangeCoProc {
                 }
                 if (existing.size() != groupMatching.receiverIds.size()) {
                     if (existing.isEmpty()) {
-                        writer.delete(groupMatchRecordKey);
+                        writer.delete(existingGroupMatchRecordKey);
+                        removedMatchings.add(groupMatching);
                         sharedRoutesRemoved.computeIfAbsent(tenantId, k -> new AtomicInteger()).incrementAndGet();
                     } else {
-                        writer.put(groupMatchRecordKey, GroupMatchRecord.newBuilder()
+                        // keep the record where it is unless it could be migrated to current schema within the range
+                        ByteString targetGroupMatchRecordKey =
+                            matchRecordV2 && inRange(groupMatchRecordKey, reader.boundary())
+                                ? groupMatchRecordKey : existingGroupMatchRecordKey;
+                        if (!existingGroupMatchRecordKey.equals(targetGroupMatchRecordKey)) {
+                            // migrate the existing match record to current schema
+                            writer.delete(existingGroupMatchRecordKey);
+                            removedMatchings.add(groupMatching);
+                        }
+                        ByteString groupMatchRecord = GroupMatchRecord.newBuilder()
                             .addAllQReceiverId(existing)
                             .build()
-                            .toByteString());
-                    }
-                    String groupTopicFilter = parseTopicFilter(groupMatchRecordKey.toStringUtf8());
-                    if (isWildcardTopicFilter(groupTopicFilter)) {
-                        touchedTenants.add(parseTenantId(groupMatchRecordKey));
+                            .toByteString();
+                        writer.put(targetGroupMatchRecordKey, groupMatchRecord);
+                        updatedMatchings.add(parseMatchRecord(targetGroupMatchRecordKey, groupMatchRecord));
                     }
+                    String groupTopicFilter = parseTopicFilter(groupMatchRecordKey);
                     touchedTopics.add(ScopedTopic.builder()
                         .tenantId(parseTenantId(groupMatchRecordKey))
                         .topic(groupTopicFilter)
@@ -367,16 +480,73 @@ class DistWorkerCoProc implements IKVRangeCoProc {
             } else {
                 delGroupMembers.forEach(delQInboxId ->
                     replyBuilder.putResults(toScopedTopicFilter(tenantId, delQInboxId,
-                            parseOriginalTopicFilter(groupMatchRecordKey.toStringUtf8())),
+                            parseOriginalTopicFilter(groupMatchRecordKey)),
                         BatchUnmatchReply.Result.NOT_EXISTED));
             }
         });
+        updateRouteCounters(routeCounters, normalRoutesRemoved, sharedRoutesRemoved, -1, reader, writer);
         return () -> {
+            removedMatchings.forEach(routeIndex::remove);
+            updatedMatchings.forEach(routeIndex::add);
             normalRoutesRemoved.forEach((tenantId, removed) -> tenantsState.decNormalRoutes(tenantId, removed.get()));
             sharedRoutesRemoved.forEach((tenantId, removed) -> tenantsState.decSharedRoutes(tenantId, removed.get()));
         };
     }
 
+    private void migrateLegacyMatchRecords(String tenantId,
+                                           Set<ByteString> skipKeys,
+                                           AtomicInteger quota,
+                                           IKVReader reader,
+                                           IKVWriter writer,
+                                           List<Matching> migratedMatchings,
+                                           List<Matching> addedMatchings,
+                                           Map<String, AtomicInteger> normalRoutesDelta,
+                                           Map<String, AtomicInteger> sharedRoutesDelta,
+                                           Set<ScopedTopic> touchedTopics) {
+        Boundary rangeBoundary = reader.boundary();
+        if (quota.get() <= 0 || !inRange(matchRecordKeyPrefix(tenantId), rangeBoundary)) {
+            // v2 keys sort before legacy keys of the same tenant, so a legacy record could only be migrated in place
+            // when the range starts at or before the tenant's v2 match records
+            return;
+        }
+        Boundary boundary = intersect(Boundary.newBuilder()
+            .setStartKey(legacyMatchRecordKeyPrefix(tenantId))
+            .setEndKey(tenantUpperBound(tenantId))
+            .build(), rangeBoundary);
+        if (isEmptyRange(boundary)) {
+            return;
+        }
+        IKVIterator itr = reader.iterator();
+        for (itr.seek(startKey(boundary)); itr.isValid() && inRange(itr.key(), boundary); itr.next()) {
+            ByteString legacyMatchRecordKey = itr.key();
+            if (skipKeys.contains(legacyMatchRecordKey)) {
+                continue;
+            }
+            if (quota.getAndDecrement() <= 0) {
+                break;
+            }
+            ByteString value = itr.value();
+            ByteString matchRecordKey = toMatchRecordKey(legacyMatchRecordKey);
+            Matching legacyMatching = parseMatchRecord(legacyMatchRecordKey, value);
+            writer.delete(legacyMatchRecordKey);
+            migratedMatchings.add(legacyMatching);
+            if (reader.exist(matchRecordKey)) {
+                // the route has been recorded in both schemas, drop the legacy one
+                Map<String, AtomicInteger> delta = legacyMatching.type() == Matching.Type.Normal
+                    ? normalRoutesDelta : sharedRoutesDelta;
+                delta.computeIfAbsent(tenantId, k -> new AtomicInteger()).decrementAndGet();
+            } else {
+                writer.put(matchRecordKey, value);
+                addedMatchings.add(parseMatchRecord(matchRecordKey, value));
+            }
+            touchedTopics.add(ScopedTopic.builder()
+                .tenantId(tenantId)
+                .topic(parseTopicFilter(legacyMatchRecordKey))
+                .boundary(rangeBoundary)
+                .build());
+        }
+    }
+
     private CompletableFuture<BatchDistReply> batchDist(BatchDistRequest request, IKVReader reader) {
         List<DistPack> distPackList = request.getDistPackList();
         if (distPackList.isEmpty()) {
@@ -423,16 +593,148 @@ class DistWorkerCoProc implements IKVRangeCoProc {
             });
     }
 
+    // read the route counters before mutating, so that they could be updated without counting the routes by scanning
+    private Map<String, RouteCounter> getRouteCounters(List<String> scopedTopicFilters, IKVReader reader) {
+        Boundary boundary = reader.boundary();
+        Map<String, RouteCounter> routeCounters = new HashMap<>();
+        for (String scopedTopicFilter : scopedTopicFilters) {
+            String tenantId = parseTenantIdFromScopedTopicFilter(scopedTopicFilter);
+            if (routeCounters.containsKey(tenantId) || !isTenantHosted(tenantId, boundary)) {
+                // the counter is not maintained if the routes of the tenant are split across ranges
+                continue;
+            }
+            RouteCounter routeCounter = reader.get(toRouteCounterKey(tenantId))
+                .flatMap(value -> RouteCounter.parse(value, boundary))
+                // a missing or stale counter has not been written in current write batch, since the counter of the
+                // tenant having routes is always rewritten along with the routes, so the loaded state is up-to-date
+                .orElseGet(() -> hasRoutes(tenantId, reader)
+                    ? new RouteCounter(tenantsState.normalRoutes(tenantId), tenantsState.sharedRoutes(tenantId))
+                    : RouteCounter.ZERO);
+            routeCounters.put(tenantId, routeCounter);
+        }
+        return routeCounters;
+    }
+
+    private void updateRouteCounters(Map<String, RouteCounter> routeCounters,
+                                     Map<String, AtomicInteger> normalRoutesDelta,
+                                     Map<String, AtomicInteger> sharedRoutesDelta,
+                                     int sign,
+                                     IKVReader reader,
+                                     IKVWriter writer) {
+        for (String tenantId : Sets.union(normalRoutesDelta.keySet(), sharedRoutesDelta.keySet())) {
+            RouteCounter routeCounter = routeCounters.get(tenantId);
+            if (routeCounter == null) {
+                continue;
+            }
+            routeCounter = routeCounter.add(sign * normalRoutesDelta.getOrDefault(tenantId, new AtomicInteger()).get(),
+                sign * sharedRoutesDelta.getOrDefault(tenantId, new AtomicInteger()).get());
+            ByteString routeCounterKey = toRouteCounterKey(tenantId);
+            if (routeCounter.isZero()) {
+                writer.delete(routeCounterKey);
+            } else {
+                writer.put(routeCounterKey, routeCounter.toByteString(reader.boundary()));
+            }
+        }
+    }
+
     private void load() {
-        IKVReader reader = readerProvider.get();
-        IKVIterator itr = reader.iterator();
-        for (itr.seekToFirst(); itr.isValid(); ) {
-            String tenantId = parseTenantId(itr.key());
-            switch (getType(itr.key())) {
-                case Normal -> tenantsState.incNormalRoutes(tenantId);
-                case Group -> tenantsState.decNormalRoutes(tenantId);
+        try (IKVReader reader = readerProvider.get()) {
+            Boundary boundary = reader.boundary();
+            IKVIterator itr = reader.iterator();
+            itr.seekToFirst();
+            while (itr.isValid()) {
+                String tenantId = parseTenantId(itr.key());
+                RouteCounter routeCounter = null;
+                if (isTenantHosted(tenantId, boundary)) {
+                    ByteString routeCounterKey = toRouteCounterKey(tenantId);
+                    itr.seek(routeCounterKey);
+                    if (itr.isValid() && itr.key().equals(routeCounterKey)) {
+                        routeCounter = RouteCounter.parse(itr.value(), boundary).orElse(null);
+                    }
+                }
+                if (routeCounter != null) {
+                    // the routes will be indexed on the first match of the tenant
+                    routeIndex.defer(tenantId);
+                } else {
+                    // the routes of the tenant are split across ranges, or the counter is missing or stale
+                    routeCounter = indexRoutes(tenantId, itr, boundary);
+                }
+                if (routeCounter.normalRoutes() > 0) {
+                    tenantsState.incNormalRoutes(tenantId, Math.toIntExact(routeCounter.normalRoutes()));
+                }
+                if (routeCounter.sharedRoutes() > 0) {
+                    tenantsState.incSharedRoutes(tenantId, Math.toIntExact(routeCounter.sharedRoutes()));
+                }
+                // skip to next tenant
+                itr.seek(upperBound(tenantPrefix(tenantId)));
+            }
+        }
+    }
+
+    // add the match records of the tenant in the range to the route index, and count them
+    private RouteCounter indexRoutes(String tenantId, IKVIterator itr, Boundary rangeBoundary) {
+        Boundary boundary = tenantMatchRecordBoundary(tenantId, rangeBoundary);
+        if (isEmptyRange(boundary)) {
+            return RouteCounter.ZERO;
+        }
+        long normalRoutes = 0;
+        long sharedRoutes = 0;
+        for (itr.seek(startKey(boundary)); itr.isValid() && inRange(itr.key(), boundary); itr.next()) {
+            Matching matching = parseMatchRecord(itr.key(), itr.value());
+            routeIndex.add(matching);
+            switch (matching.type()) {
+                case Normal -> normalRoutes++;
+                case Group -> sharedRoutes++;
+            }
+        }
+        return new RouteCounter(normalRoutes, sharedRoutes);
+    }
+
+    private List<Matching> loadRoutes(String tenantId) {
+        try (IKVReader reader = readerProvider.get()) {
+            List<Matching> routes = new ArrayList<>();
+            Boundary boundary = tenantMatchRecordBoundary(tenantId, reader.boundary());
+            if (isEmptyRange(boundary)) {
+                return routes;
+            }
+            IKVIterator itr = reader.iterator();
+            for (itr.seek(startKey(boundary)); itr.isValid() && inRange(itr.key(), boundary); itr.next()) {
+                routes.add(parseMatchRecord(itr.key(), itr.value()));
             }
-            itr.next();
+            return routes;
         }
     }
+
+    private boolean hasRoutes(String tenantId, IKVReader reader) {
+        Boundary boundary = tenantMatchRecordBoundary(tenantId, reader.boundary());
+        if (isEmptyRange(boundary)) {
+            return false;
+        }
+        IKVIterator itr = reader.iterator();
+        itr.seek(startKey(boundary));
+        return itr.isValid() && inRange(itr.key(), boundary);
+    }
+
+    private boolean existInRange(IKVReader reader, ByteString key) {
+        return inRange(key, reader.boundary()) && reader.exist(key);
+    }
+
+    private Optional<ByteString> getInRange(IKVReader reader, ByteString key) {
+        return inRange(key, reader.boundary()) ? reader.get(key) : Optional.empty();
+    }
+
+    private Boundary tenantMatchRecordBoundary(String tenantId, Boundary rangeBoundary) {
+        return intersect(Boundary.newBuilder()
+            .setStartKey(matchRecordKeyPrefix(tenantId))
+            .setEndKey(tenantUpperBound(tenantId))
+            .build(), rangeBoundary);
+    }
+
+    private boolean isTenantHosted(String tenantId, Boundary rangeBoundary) {
+        ByteString tenantPrefix = tenantPrefix(tenantId);
+        return inRange(Boundary.newBuilder()
+            .setStartKey(tenantPrefix)
+            .setEndKey(upperBound(tenantPrefix))
+            .build(), rangeBoundary);
+    }
 }
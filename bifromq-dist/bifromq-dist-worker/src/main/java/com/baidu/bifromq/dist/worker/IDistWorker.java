@@ -15,6 +15,10 @@ package com.baidu.bifromq.dist.worker;
 
 public interface IDistWorker {
     String CLUSTER_NAME = "dist.worker";
+    // the max length of the key prefix which the bloom filters are built on. The prefix extractor is not aware of the
+    // key schema, so it covers some leading bytes of the topic filter when <tenantId><NUL> is shorter than 16 bytes,
+    // which only makes the filter finer, seeks remain exact in auto prefix mode
+    int KEY_PREFIX_LENGTH = 16;
 
     static StandaloneDistWorkerBuilder standaloneBuilder() {
         return new StandaloneDistWorkerBuilder();
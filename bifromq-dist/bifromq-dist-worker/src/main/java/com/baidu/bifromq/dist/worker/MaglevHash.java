@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.dist.worker;
+
+import com.google.common.hash.Funnel;
+import com.google.common.hash.HashFunction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Immutable consistent hash based on the lookup table populated in the way of Maglev, so that a key could be mapped to
+ * a node in O(1) time regardless of the size of the pool, and only a small portion of keys would be remapped when the
+ * pool changes.
+ */
+@ThreadSafe
+class MaglevHash<K, N> {
+    // the prime table sizes to choose from
+    private static final int[] TABLE_SIZES = {251, 509, 1021, 2039, 4093, 8191, 16381, 32749, 65521, 131071, 262139,
+        524287, 1048573};
+    // the table size should be much larger than the pool size to keep the load balanced
+    private static final int TABLE_SIZE_FACTOR = 100;
+    private static final int SKIP_SEED = 0x9E3779B9;
+
+    private final HashFunction hasher;
+    private final Funnel<K> keyFunnel;
+    private final List<N> nodes;
+    private final int[] lookup;
+
+    /**
+     * Creates a new MaglevHash using guava provided hash function.
+     *
+     * @param hasher     hash function
+     * @param keyFunnel  key funnel for calculate hashing
+     * @param nodeFunnel node funnel for calculate hashing
+     * @param comparator node comparator, which makes the lookup table irrelevant to the order of given nodes
+     * @param nodes      the nodes in the pool
+     */
+    MaglevHash(HashFunction hasher,
+               Funnel<K> keyFunnel,
+               Funnel<N> nodeFunnel,
+               Comparator<N> comparator,
+               Collection<N> nodes) {
+        this.hasher = hasher;
+        this.keyFunnel = keyFunnel;
+        this.nodes = new ArrayList<>(nodes);
+        this.nodes.sort(comparator);
+        this.lookup = populate(hasher, nodeFunnel, this.nodes);
+    }
+
+    /**
+     * Return the node for the given key, or null if the pool is empty.
+     */
+    N get(K key) {
+        if (nodes.isEmpty()) {
+            return null;
+        }
+        long hash = hasher.newHasher().putObject(key, keyFunnel).hash().asLong();
+        return nodes.get(lookup[(int) Math.floorMod(hash, (long) lookup.length)]);
+    }
+
+    private static <N> int[] populate(HashFunction hasher, Funnel<N> nodeFunnel, List<N> nodes) {
+        int n = nodes.size();
+        if (n == 0) {
+            return new int[0];
+        }
+        int m = tableSize(n);
+        // each node prefers the slots in the order of its own permutation: (offset + j * skip) mod m
+        long[] offsets = new long[n];
+        long[] skips = new long[n];
+        long[] next = new long[n];
+        for (int i = 0; i < n; i++) {
+            N node = nodes.get(i);
+            offsets[i] = Math.floorMod(hasher.hashObject(node, nodeFunnel).asLong(), (long) m);
+            skips[i] = Math.floorMod(hasher.newHasher()
+                .putInt(SKIP_SEED)
+                .putObject(node, nodeFunnel)
+                .hash()
+                .asLong(), (long) (m - 1)) + 1;
+        }
+        int[] lookup = new int[m];
+        Arrays.fill(lookup, -1);
+        int filled = 0;
+        while (true) {
+            // nodes take turns to claim their next preferred slot
+            for (int i = 0; i < n; i++) {
+                int slot = (int) ((offsets[i] + next[i] * skips[i]) % m);
+                while (lookup[slot] >= 0) {
+                    next[i]++;
+                    slot = (int) ((offsets[i] + next[i] * skips[i]) % m);
+                }
+                lookup[slot] = i;
+                next[i]++;
+                if (++filled == m) {
+                    return lookup;
+                }
+            }
+        }
+    }
+
+    private static int tableSize(int poolSize) {
+        long expected = (long) poolSize * TABLE_SIZE_FACTOR;
+        for (int size : TABLE_SIZES) {
+            if (size >= expected) {
+                return size;
+            }
+        }
+        return TABLE_SIZES[TABLE_SIZES.length - 1];
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.dist.worker;
+
+import static com.google.protobuf.UnsafeByteOperations.unsafeWrap;
+
+import com.baidu.bifromq.basekv.proto.Boundary;
+import com.google.protobuf.ByteString;
+import java.nio.ByteBuffer;
+import java.util.Optional;
+
+/**
+ * The persisted route counter of a tenant, encoded as two big-endian longs followed by the boundary of the range which
+ * wrote it. The counter is trusted only by the range of the same boundary, since the changes made by other ranges
+ * after split are not counted, and the counter may be stale after merge.
+ */
+record RouteCounter(long normalRoutes, long sharedRoutes) {
+    static final RouteCounter ZERO = new RouteCounter(0, 0);
+    private static final int COUNTS_SIZE = 2 * Long.BYTES;
+
+    /**
+     * Parse the persisted route counter.
+     *
+     * @param value    the persisted value
+     * @param boundary the boundary of current range
+     * @return the route counter, or empty if it's written by a range of different boundary
+     */
+    static Optional<RouteCounter> parse(ByteString value, Boundary boundary) {
+        if (value.size() < COUNTS_SIZE || !value.substring(COUNTS_SIZE).equals(boundary.toByteString())) {
+            return Optional.empty();
+        }
+        ByteBuffer buffer = value.asReadOnlyByteBuffer();
+        return Optional.of(new RouteCounter(buffer.getLong(), buffer.getLong()));
+    }
+
+    RouteCounter add(long normalRoutesDelta, long sharedRoutesDelta) {
+        return new RouteCounter(normalRoutes + normalRoutesDelta, sharedRoutes + sharedRoutesDelta);
+    }
+
+    boolean isZero() {
+        return normalRoutes == 0 && sharedRoutes == 0;
+    }
+
+    ByteString toByteString(Boundary boundary) {
+        return unsafeWrap(ByteBuffer.allocate(COUNTS_SIZE)
+            .putLong(normalRoutes)
+            .putLong(sharedRoutes)
+            .array())
+            .concat(boundary.toByteString());
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.dist.worker;
+
+import static com.baidu.bifromq.dist.util.TopicUtil.SYS_PREFIX;
+
+import com.baidu.bifromq.dist.entity.Matching;
+import com.baidu.bifromq.dist.util.TopicUtil;
+import com.google.protobuf.ByteString;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * The in-memory topic filter trie of all match records hosted by a KVRange. The index is mutated only from the apply
+ * path of the owner range(single writer), while matching could happen concurrently from any thread.
+ *
+ * <p>The routes of a deferred tenant are loaded on its first match. The changes made before that are skipped, since
+ * they have been persisted when applied, and are serialized with the loading per tenant.
+ */
+public class RouteIndex {
+    private static final String MULTI_LEVEL = "#";
+    private static final String SINGLE_LEVEL = "+";
+
+    private final Function<String, List<Matching>> tenantRoutesLoader;
+    private final Map<String, Node> tenantRoots = new ConcurrentHashMap<>();
+    // the tenants whose routes have not been loaded yet
+    private final Map<String, Boolean> deferredTenants = new ConcurrentHashMap<>();
+
+    /**
+     * Create an index whose routes are all added explicitly.
+     */
+    public RouteIndex() {
+        this(tenantId -> Collections.emptyList());
+    }
+
+    /**
+     * Create an index which could defer loading the routes of a tenant.
+     *
+     * @param tenantRoutesLoader the loader of all persisted routes of a tenant
+     */
+    RouteIndex(Function<String, List<Matching>> tenantRoutesLoader) {
+        this.tenantRoutesLoader = tenantRoutesLoader;
+    }
+
+    /**
+     * Defer loading the routes of the tenant until it's matched.
+     *
+     * @param tenantId the tenant
+     */
+    void defer(String tenantId) {
+        deferredTenants.put(tenantId, true);
+    }
+
+    /**
+     * Add or replace the match record in the index.
+     *
+     * @param matching the parsed match record
+     */
+    public void add(Matching matching) {
+        deferredTenants.compute(matching.tenantId, (k, deferred) -> {
+            if (deferred == null) {
+                doAdd(matching);
+            }
+            return deferred;
+        });
+    }
+
+    /**
+     * Remove the match record from the index, the trie nodes left empty will be pruned.
+     *
+     * @param matching the parsed match record
+     */
+    void remove(Matching matching) {
+        deferredTenants.compute(matching.tenantId, (k, deferred) -> {
+            if (deferred == null) {
+                doRemove(matching);
+            }
+            return deferred;
+        });
+    }
+
+    private boolean remove(Node node, List<String> filterLevels, int level, ByteString matchRecordKey) {
+        if (level == filterLevels.size()) {
+            node.routes.remove(matchRecordKey);
+            return node.isEmpty();
+        }
+        String levelName = filterLevels.get(level);
+        Node child = node.children.get(levelName);
+        if (child != null && remove(child, filterLevels, level + 1, matchRecordKey)) {
+            node.children.remove(levelName, child);
+        }
+        return node.isEmpty();
+    }
+
+    /**
+     * Match the topic against all indexed topic filters of the tenant.
+     *
+     * @param tenantId the tenant
+     * @param topic    the topic to match
+     * @return the matched routes
+     */
+    public List<Matching> match(String tenantId, String topic) {
+        if (deferredTenants.containsKey(tenantId)) {
+            deferredTenants.computeIfPresent(tenantId, (k, deferred) -> {
+                tenantRoutesLoader.apply(tenantId).forEach(this::doAdd);
+                return null;
+            });
+        }
+        Node root = tenantRoots.get(tenantId);
+        if (root == null) {
+            return Collections.emptyList();
+        }
+        List<Matching> routes = new ArrayList<>();
+        match(root, TopicUtil.parse(topic, false), 0, routes);
+        return routes;
+    }
+
+    private void match(Node node, List<String> topicLevels, int level, List<Matching> routes) {
+        if (level == topicLevels.size()) {
+            routes.addAll(node.routes.values());
+            // # match parent level as well. [MQTT-4.7.1-2]
+            Node multi = node.children.get(MULTI_LEVEL);
+            if (multi != null) {
+                routes.addAll(multi.routes.values());
+            }
+            return;
+        }
+        String levelName = topicLevels.get(level);
+        // system topic should not be matched by first "#" or "+". [MQTT-4.7.2-1]
+        if (level != 0 || !levelName.startsWith(SYS_PREFIX)) {
+            Node multi = node.children.get(MULTI_LEVEL);
+            if (multi != null) {
+                routes.addAll(multi.routes.values());
+            }
+            Node single = node.children.get(SINGLE_LEVEL);
+            if (single != null) {
+                match(single, topicLevels, level + 1, routes);
+            }
+        }
+        Node child = node.children.get(levelName);
+        if (child != null) {
+            match(child, topicLevels, level + 1, routes);
+        }
+    }
+
+    boolean isEmpty() {
+        return tenantRoots.isEmpty() && deferredTenants.isEmpty();
+    }
+
+    void clear() {
+        // wait for the in-flight loading
+        deferredTenants.keySet().forEach(tenantId -> deferredTenants.computeIfPresent(tenantId, (k, v) -> null));
+        tenantRoots.clear();
+    }
+
+    private void doAdd(Matching matching) {
+        Node node = tenantRoots.computeIfAbsent(matching.tenantId, k -> new Node());
+        for (String levelName : TopicUtil.parse(matching.escapedTopicFilter, true)) {
+            node = node.children.computeIfAbsent(levelName, k -> new Node());
+        }
+        node.routes.put(matching.key, matching);
+    }
+
+    private void doRemove(Matching matching) {
+        Node root = tenantRoots.get(matching.tenantId);
+        if (root == null) {
+            return;
+        }
+        remove(root, TopicUtil.parse(matching.escapedTopicFilter, true), 0, matching.key);
+        if (root.isEmpty()) {
+            tenantRoots.remove(matching.tenantId, root);
+        }
+    }
+
+    private static class Node {
+        // key: match record key
+        final Map<ByteString, Matching> routes = new ConcurrentHashMap<>();
+        // key: level name of the topic filter
+        final Map<String, Node> children = new ConcurrentHashMap<>();
+
+        boolean isEmpty() {
+            return routes.isEmpty() && children.isEmpty();
+        }
+    }
+}
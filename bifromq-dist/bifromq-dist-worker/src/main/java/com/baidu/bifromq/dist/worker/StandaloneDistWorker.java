@@ -13,6 +13,9 @@
 
 package com.baidu.bifromq.dist.worker;
 
+import static com.baidu.bifromq.dist.RPCServerMetadataUtil.RPC_METADATA_MATCH_RECORD_V2;
+import static java.util.Collections.singletonMap;
+
 import com.baidu.bifromq.basekv.server.IBaseKVStoreServer;
 import lombok.extern.slf4j.Slf4j;
 
@@ -32,6 +35,10 @@ final class StandaloneDistWorker extends AbstractDistWorker<StandaloneDistWorker
             .queryExecutor(builder.queryExecutor)
             .tickTaskExecutor(builder.tickTaskExecutor)
             .bgTaskExecutor(builder.bgTaskExecutor)
+            .queryPipelineConcurrency(builder.queryPipelineConcurrency)
+            .rpcStoreMessenger(builder.rpcStoreMessenger)
+            .clientSslContext(builder.clientSslContext)
+            .attributes(singletonMap(RPC_METADATA_MATCH_RECORD_V2, "true"))
             .finish()
             // build rpc server
             .host(builder.host)
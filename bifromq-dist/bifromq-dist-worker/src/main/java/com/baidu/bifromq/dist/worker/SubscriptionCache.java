@@ -13,120 +13,63 @@
 
 package com.baidu.bifromq.dist.worker;
 
-import static com.baidu.bifromq.basekv.utils.BoundaryUtil.compare;
-import static com.baidu.bifromq.dist.entity.EntityUtil.matchRecordPrefixWithEscapedTopicFilter;
-import static com.baidu.bifromq.dist.entity.EntityUtil.parseMatchRecord;
 import static com.baidu.bifromq.sysprops.BifroMQSysProp.DIST_MAX_CACHED_SUBS_PER_TENANT;
 import static com.baidu.bifromq.sysprops.BifroMQSysProp.DIST_TOPIC_MATCH_EXPIRY;
-import static java.util.Collections.singleton;
 
-import com.baidu.bifromq.basekv.proto.Boundary;
 import com.baidu.bifromq.basekv.proto.KVRangeId;
-import com.baidu.bifromq.basekv.store.api.IKVIterator;
-import com.baidu.bifromq.basekv.store.api.IKVReader;
 import com.baidu.bifromq.basekv.utils.KVRangeIdUtil;
 import com.baidu.bifromq.dist.entity.Matching;
-import com.baidu.bifromq.dist.util.TopicFilterMatcher;
-import com.baidu.bifromq.dist.util.TopicTrie;
-import com.baidu.bifromq.type.TopicMessage;
 import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
 import com.github.benmanes.caffeine.cache.CacheLoader;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.RemovalCause;
 import com.github.benmanes.caffeine.cache.RemovalListener;
 import com.github.benmanes.caffeine.cache.Scheduler;
 import com.github.benmanes.caffeine.cache.Weigher;
-import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.MoreExecutors;
-import com.google.protobuf.ByteString;
 import io.micrometer.core.instrument.Metrics;
 import io.micrometer.core.instrument.Tags;
 import io.micrometer.core.instrument.Timer;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.function.Supplier;
-import java.util.stream.Collectors;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import org.checkerframework.checker.index.qual.NonNegative;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 public class SubscriptionCache {
-    private final LoadingCache<String, AsyncLoadingCache<ScopedTopic, MatchResult>> tenantCache;
-    private final LoadingCache<String, AtomicLong> tenantVerCache;
-    private final ThreadLocal<IKVReader> threadLocalReader;
+    private final LoadingCache<String, TenantRouteCache> tenantCache;
+    private final RouteIndex routeIndex;
     private final Timer externalMatchTimer;
     private final Timer internalMatchTimer;
 
-    SubscriptionCache(KVRangeId id, Supplier<IKVReader> rangeReaderProvider, Executor matchExecutor) {
+    /**
+     * Create a cache of the match results made against the route index.
+     *
+     * @param id            the id of the range owning the route index
+     * @param routeIndex    the route index
+     * @param matchExecutor the executor for matching the uncached topics
+     */
+    public SubscriptionCache(KVRangeId id, RouteIndex routeIndex, Executor matchExecutor) {
         int expirySec = DIST_TOPIC_MATCH_EXPIRY.get();
-        threadLocalReader = ThreadLocal.withInitial(rangeReaderProvider);
+        this.routeIndex = routeIndex;
         tenantCache = Caffeine.newBuilder()
             .expireAfterAccess(expirySec * 3L, TimeUnit.SECONDS)
             .scheduler(Scheduler.systemScheduler())
             .executor(MoreExecutors.directExecutor())
-            .removalListener((RemovalListener<String, AsyncLoadingCache<ScopedTopic, MatchResult>>)
+            .removalListener((RemovalListener<String, TenantRouteCache>)
                 (key, value, cause) -> {
                     if (value != null) {
-                        value.synchronous().invalidateAll();
+                        value.routeCache.synchronous().invalidateAll();
                     }
                 })
-            .build(k -> Caffeine.newBuilder()
-                .scheduler(Scheduler.systemScheduler())
-                .maximumWeight(DIST_MAX_CACHED_SUBS_PER_TENANT.get())
-                .weigher(new Weigher<ScopedTopic, MatchResult>() {
-                    @Override
-                    public @NonNegative int weigh(ScopedTopic key, MatchResult value) {
-                        return value.routes.size();
-                    }
-                })
-                .expireAfterAccess(expirySec, TimeUnit.SECONDS)
-                .refreshAfterWrite(expirySec, TimeUnit.SECONDS)
-                .executor(matchExecutor)
-                .buildAsync(new CacheLoader<>() {
-                    @Override
-                    public @Nullable MatchResult load(ScopedTopic key) {
-                        return match(key.tenantId, singleton(key.topic), key.matchRecordRange).get(key);
-                    }
-
-                    @Override
-                    public Map<ScopedTopic, MatchResult> loadAll(Set<? extends ScopedTopic> keys) {
-                        Map<String, Set<String>> topicsByTenantId = new HashMap<>();
-                        Map<String, Boundary> matchRecordRangeByTenantId = new HashMap<>();
-                        for (ScopedTopic st : keys) {
-                            topicsByTenantId.computeIfAbsent(st.tenantId, k -> new HashSet<>()).add(st.topic);
-                            matchRecordRangeByTenantId.computeIfAbsent(st.tenantId, k -> st.matchRecordRange);
-                        }
-                        return topicsByTenantId
-                            .entrySet()
-                            .stream()
-                            .flatMap(entry -> match(entry.getKey(), entry.getValue(),
-                                matchRecordRangeByTenantId.get(entry.getKey())).entrySet().stream())
-                            .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-                    }
-
-                    @Override
-                    public @Nullable MatchResult reload(ScopedTopic key, MatchResult oldValue) {
-                        long tenantVer = tenantVerCache.get(key.tenantId).get();
-                        if (oldValue.tenantVer >= tenantVer) {
-                            return oldValue;
-                        }
-                        return match(key.tenantId, singleton(key.topic), key.matchRecordRange, tenantVer).get(
-                            key);
-                    }
-                }));
-        tenantVerCache = Caffeine.newBuilder()
-            .expireAfterAccess(expirySec * 2L, TimeUnit.SECONDS)
-            .scheduler(Scheduler.systemScheduler())
-            .build(k -> new AtomicLong(System.nanoTime()));
+            .build(k -> new TenantRouteCache(expirySec, matchExecutor));
 
         Tags tag = Tags.of("id", KVRangeIdUtil.toString(id));
         externalMatchTimer = Timer.builder("dist.match.external")
@@ -139,120 +82,123 @@ public class SubscriptionCache {
 
     public CompletableFuture<MatchResult> get(ScopedTopic topic) {
         Timer.Sample sample = Timer.start();
-        return tenantCache.get(topic.tenantId).get(topic).whenComplete((v, e) -> sample.stop(externalMatchTimer));
+        return tenantCache.get(topic.tenantId).routeCache.get(topic)
+            .whenComplete((v, e) -> sample.stop(externalMatchTimer));
     }
 
-    // TODO: explore the possibility to invalidate all keys which matching a given wildcard topic filter
-    public void touch(String tenantId) {
-        tenantVerCache.get(tenantId).updateAndGet(v -> Math.max(v, System.nanoTime()));
-    }
-
-    public void touchAll() {
-        tenantVerCache.invalidateAll();
+    /**
+     * Invalidate the cached match results of all the topics matched by the topic filter. The method must be called
+     * after the route index has been updated.
+     *
+     * @param topicFilter the scoped topic filter which has been subscribed or unsubscribed
+     */
+    public void invalidate(ScopedTopic topicFilter) {
+        TenantRouteCache tenantRouteCache = tenantCache.getIfPresent(topicFilter.tenantId);
+        if (tenantRouteCache != null) {
+            tenantRouteCache.invalidate(topicFilter);
+        }
     }
 
-    public void invalidate(ScopedTopic topic) {
-        // TODO: there is a potential invalidation lost that will lead to staled routes still being cached. think about the sequence:
-        // 1. match against KVRange, but before add the match result to cache
-        // 2. sub/unsub
-        // 3. invalidation cache, nothing happens
-        // 4. add staled result to cache
-        AsyncLoadingCache<ScopedTopic, MatchResult> routeCache = tenantCache.getIfPresent(topic.tenantId);
-        if (routeCache != null) {
-            routeCache.synchronous().invalidate(topic);
-        }
+    public void invalidateAll() {
+        tenantCache.invalidateAll();
     }
 
     public void close() {
         tenantCache.invalidateAll();
-        tenantVerCache.invalidateAll();
         Metrics.globalRegistry.remove(externalMatchTimer);
         Metrics.globalRegistry.remove(internalMatchTimer);
     }
 
-    private Map<ScopedTopic, MatchResult> match(String tenantId, Set<String> topics, Boundary matchRecordRange) {
-        long tenantVer = tenantVerCache.get(tenantId).get();
-        return match(tenantId, topics, matchRecordRange, tenantVer);
-    }
+    private class TenantRouteCache {
+        // the topics being loaded or cached
+        private final TopicIndex cachedTopics = new TopicIndex();
+        private final AsyncLoadingCache<ScopedTopic, MatchResult> routeCache;
 
-    private Map<ScopedTopic, MatchResult> match(String tenantId,
-                                                Set<String> topics,
-                                                Boundary matchRecordBoundary,
-                                                long tenantVer) {
-        Timer.Sample sample = Timer.start();
-        Map<ScopedTopic, MatchResult> routes = Maps.newHashMap();
-        topics.forEach(topic -> routes.put(ScopedTopic.builder()
-            .tenantId(tenantId)
-            .topic(topic)
-            .boundary(matchRecordBoundary)
-            .build(), new MatchResult(tenantVer)));
-        IKVReader rangeReader = threadLocalReader.get();
-        rangeReader.refresh();
+        TenantRouteCache(int expirySec, Executor matchExecutor) {
+            routeCache = Caffeine.newBuilder()
+                .scheduler(Scheduler.systemScheduler())
+                .maximumWeight(DIST_MAX_CACHED_SUBS_PER_TENANT.get())
+                .weigher(new Weigher<ScopedTopic, MatchResult>() {
+                    @Override
+                    public @NonNegative int weigh(ScopedTopic key, MatchResult value) {
+                        return value.routes.size();
+                    }
+                })
+                .expireAfterAccess(expirySec, TimeUnit.SECONDS)
+                .executor(matchExecutor)
+                .removalListener(this::onRemoval)
+                .buildAsync(new CacheLoader<>() {
+                    @Override
+                    public @Nullable MatchResult load(ScopedTopic key) {
+                        Timer.Sample sample = Timer.start();
+                        MatchResult matchResult = match(key);
+                        sample.stop(internalMatchTimer);
+                        return matchResult;
+                    }
 
-        TopicTrie topicTrie = new TopicTrie();
-        topics.forEach(topic -> topicTrie.add(topic, singleton(TopicMessage.getDefaultInstance())));
-        // key: topicFilter, value: set of matched topics
-        Map<String, Set<String>> matched = Maps.newHashMap();
-        TopicFilterMatcher matcher = new TopicFilterMatcher(topicTrie);
-        int probe = 0;
-        IKVIterator itr = rangeReader.iterator();
-        // track seek
-        itr.seek(matchRecordBoundary.getStartKey());
-        while (itr.isValid() && compare(itr.key(), matchRecordBoundary.getEndKey()) < 0) {
-            // track itr.key()
-            Matching matching = parseMatchRecord(itr.key(), itr.value());
-            // key: topic
-            Set<String> matchedTopics = matched.get(matching.escapedTopicFilter);
-            if (matchedTopics == null) {
-                Optional<Map<String, Iterable<TopicMessage>>> clientMsgs =
-                    matcher.match(matching.escapedTopicFilter);
-                if (clientMsgs.isPresent()) {
-                    matchedTopics = clientMsgs.get().keySet();
-                    matched.put(matching.escapedTopicFilter, matchedTopics);
-                    itr.next();
-                    probe = 0;
-                } else {
-                    Optional<String> higherFilter = matcher.higher(matching.escapedTopicFilter);
-                    if (higherFilter.isPresent()) {
-                        // next() is much cheaper than seek(), we probe following 20 entries
-                        if (probe++ < 20) {
-                            // probe next
-                            itr.next();
-                        } else {
-                            // seek to match next topic filter
-                            ByteString nextMatch =
-                                matchRecordPrefixWithEscapedTopicFilter(tenantId, higherFilter.get());
-                            if (ByteString.unsignedLexicographicalComparator().compare(nextMatch, itr.key()) <= 0) {
-                                // TODO: THIS IS ONLY FOR BYPASSING THE HANG ISSUE CAUSED BY PREVIOUS BUGGY MATCH_RECORD_KEY ENCODING
-                                // AND WILL BE REMOVED IN LATER VERSION
-                                itr.next();
-                            } else {
-                                itr.seek(nextMatch);
-                            }
+                    @Override
+                    public Map<ScopedTopic, MatchResult> loadAll(Set<? extends ScopedTopic> keys) {
+                        Timer.Sample sample = Timer.start();
+                        Map<ScopedTopic, MatchResult> matchResults = new HashMap<>();
+                        for (ScopedTopic key : keys) {
+                            matchResults.put(key, match(key));
                         }
-                        continue;
-                    } else {
-                        break; // no more topic filter to match, stop here
+                        sample.stop(internalMatchTimer);
+                        return matchResults;
                     }
+                });
+        }
+
+        void invalidate(ScopedTopic topicFilter) {
+            for (TopicIndex.Entry entry : cachedTopics.detach(topicFilter.topic)) {
+                ScopedTopic scopedTopic = ScopedTopic.builder()
+                    .tenantId(topicFilter.tenantId)
+                    .topic(entry.topic)
+                    .boundary(topicFilter.matchRecordRange)
+                    .build();
+                CompletableFuture<MatchResult> matchFuture = routeCache.getIfPresent(scopedTopic);
+                if (matchFuture == null) {
+                    continue;
+                }
+                if (matchFuture.isDone()) {
+                    routeCache.synchronous().invalidate(scopedTopic);
+                } else {
+                    // the loader rematches if it sees the entry detached, only the result which had been made before
+                    // the detaching needs to be invalidated after loaded. Invalidating in-flight loading here may
+                    // cause recursive update when called from the loading thread.
+                    matchFuture.thenAccept(matchResult -> {
+                        if (matchResult.entry == entry) {
+                            routeCache.asMap().remove(scopedTopic, matchFuture);
+                        }
+                    });
                 }
-            } else {
-                itr.next();
             }
-            matchedTopics.forEach(t -> routes.get(ScopedTopic.builder()
-                    .tenantId(tenantId)
-                    .topic(t)
-                    .boundary(matchRecordBoundary)
-                    .build())
-                .routes.add(matching));
         }
-        sample.stop(internalMatchTimer);
-        return routes;
-    }
 
+        private MatchResult match(ScopedTopic scopedTopic) {
+            while (true) {
+                // register before matching, so that the concurrent sub/unsub could be detected
+                TopicIndex.Entry entry = cachedTopics.register(scopedTopic.topic);
+                List<Matching> routes = routeIndex.match(scopedTopic.tenantId, scopedTopic.topic);
+                if (!entry.isDetached()) {
+                    return new MatchResult(routes, entry);
+                }
+                // the topic has been invalidated during matching, the result may be staled
+            }
+        }
+
+        private void onRemoval(@Nullable ScopedTopic key, @Nullable MatchResult value, RemovalCause cause) {
+            // explicit removal is triggered by invalidation which has already unregistered the topic
+            if (key != null && cause.wasEvicted() && !routeCache.asMap().containsKey(key)) {
+                cachedTopics.unregister(key.topic);
+            }
+        }
+    }
 
-    @AllArgsConstructor
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
     public static class MatchResult {
-        final List<Matching> routes = new ArrayList<>();
-        final long tenantVer;
+        final List<Matching> routes;
+        // the registration under which the routes were matched
+        private final TopicIndex.Entry entry;
     }
 }
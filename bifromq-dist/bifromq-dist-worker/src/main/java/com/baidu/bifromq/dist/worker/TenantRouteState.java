@@ -41,6 +41,14 @@ class TenantRouteState {
         sharedRoutes.add(delta);
     }
 
+    long normalRoutes() {
+        return normalRoutes.sum();
+    }
+
+    long sharedRoutes() {
+        return sharedRoutes.sum();
+    }
+
     boolean isNoRoutes() {
         return normalRoutes.sum() == 0 && sharedRoutes.sum() == 0;
     }
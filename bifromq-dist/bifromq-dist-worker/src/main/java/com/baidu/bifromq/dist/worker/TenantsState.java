@@ -46,7 +46,7 @@ class TenantsState {
     }
 
     void decNormalRoutes(String tenantId) {
-        decSharedRoutes(tenantId, 1);
+        decNormalRoutes(tenantId, 1);
     }
 
     void decNormalRoutes(String tenantId, int count) {
@@ -87,6 +87,16 @@ class TenantsState {
         });
     }
 
+    long normalRoutes(String tenantId) {
+        TenantRouteState state = tenantRouteStates.get(tenantId);
+        return state == null ? 0 : state.normalRoutes();
+    }
+
+    long sharedRoutes(String tenantId) {
+        TenantRouteState state = tenantRouteStates.get(tenantId);
+        return state == null ? 0 : state.sharedRoutes();
+    }
+
     void reset() {
         tenantRouteStates.values().forEach(TenantRouteState::destroy);
         tenantRouteStates.clear();
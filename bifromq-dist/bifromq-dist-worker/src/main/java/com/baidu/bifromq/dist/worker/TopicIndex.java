@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.dist.worker;
+
+import static com.baidu.bifromq.dist.util.TopicUtil.SYS_PREFIX;
+
+import com.baidu.bifromq.dist.util.TopicUtil;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The reverse trie of topics whose match results are being loaded or cached, used to find the topics affected by a
+ * topic filter.
+ */
+class TopicIndex {
+    /**
+     * The registration of a topic. Once the entry is detached, the match result loaded while holding it may be staled.
+     */
+    static final class Entry {
+        final String topic;
+        private volatile boolean detached;
+
+        private Entry(String topic) {
+            this.topic = topic;
+        }
+
+        boolean isDetached() {
+            return detached;
+        }
+    }
+
+    private final Node root = new Node();
+
+    /**
+     * Register the topic, the existing entry will be returned if the topic has been registered.
+     *
+     * @param topic the topic
+     * @return the registered entry
+     */
+    synchronized Entry register(String topic) {
+        Node node = root;
+        for (String levelName : TopicUtil.parse(topic, false)) {
+            node = node.children.computeIfAbsent(levelName, k -> new Node());
+        }
+        if (node.entry == null) {
+            node.entry = new Entry(topic);
+        }
+        return node.entry;
+    }
+
+    /**
+     * Unregister the topic and detach its entry.
+     *
+     * @param topic the topic
+     */
+    synchronized void unregister(String topic) {
+        unregister(root, TopicUtil.parse(topic, false), 0);
+    }
+
+    private boolean unregister(Node node, List<String> topicLevels, int level) {
+        if (level == topicLevels.size()) {
+            if (node.entry != null) {
+                node.entry.detached = true;
+                node.entry = null;
+            }
+            return node.isEmpty();
+        }
+        String levelName = topicLevels.get(level);
+        Node child = node.children.get(levelName);
+        if (child != null && unregister(child, topicLevels, level + 1)) {
+            node.children.remove(levelName);
+        }
+        return node.isEmpty();
+    }
+
+    /**
+     * Detach and unregister all the topics matched by given topic filter.
+     *
+     * @param topicFilter the topic filter
+     * @return the detached entries
+     */
+    synchronized List<Entry> detach(String topicFilter) {
+        List<Entry> matched = new ArrayList<>();
+        match(root, TopicUtil.parse(topicFilter, false), 0, matched);
+        for (Entry entry : matched) {
+            unregister(root, TopicUtil.parse(entry.topic, false), 0);
+        }
+        return matched;
+    }
+
+    private void match(Node node, List<String> filterLevels, int level, List<Entry> matched) {
+        if (level == filterLevels.size()) {
+            if (node.entry != null) {
+                matched.add(node.entry);
+            }
+            return;
+        }
+        switch (filterLevels.get(level)) {
+            case "#" -> {
+                // # match parent level as well. [MQTT-4.7.1-2]
+                if (level > 0 && node.entry != null) {
+                    matched.add(node.entry);
+                }
+                for (Map.Entry<String, Node> child : node.children.entrySet()) {
+                    // system topic should not be matched by first "#". [MQTT-4.7.2-1]
+                    if (level > 0 || !child.getKey().startsWith(SYS_PREFIX)) {
+                        collect(child.getValue(), matched);
+                    }
+                }
+            }
+            case "+" -> {
+                for (Map.Entry<String, Node> child : node.children.entrySet()) {
+                    // system topic should not be matched by first "+". [MQTT-4.7.2-1]
+                    if (level > 0 || !child.getKey().startsWith(SYS_PREFIX)) {
+                        match(child.getValue(), filterLevels, level + 1, matched);
+                    }
+                }
+            }
+            default -> {
+                Node child = node.children.get(filterLevels.get(level));
+                if (child != null) {
+                    match(child, filterLevels, level + 1, matched);
+                }
+            }
+        }
+    }
+
+    private void collect(Node node, List<Entry> matched) {
+        LinkedList<Node> toVisit = new LinkedList<>();
+        toVisit.add(node);
+        while (!toVisit.isEmpty()) {
+            Node current = toVisit.poll();
+            if (current.entry != null) {
+                matched.add(current.entry);
+            }
+            toVisit.addAll(current.children.values());
+        }
+    }
+
+    private static class Node {
+        final Map<String, Node> children = new HashMap<>();
+        Entry entry;
+
+        boolean isEmpty() {
+            return entry == null && children.isEmpty();
+        }
+    }
+}
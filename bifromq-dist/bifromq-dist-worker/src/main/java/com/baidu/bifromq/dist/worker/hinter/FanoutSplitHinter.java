@@ -86,10 +86,10 @@ public class FanoutSplitHinter implements IKVRangeSplitHinter {
                 request.getScopedTopicFilterList().forEach((stf_str) -> {
                     String tenantId = parseTenantIdFromScopedTopicFilter(stf_str);
                     String topicFilter = parseTopicFilterFromScopedTopicFilter(stf_str);
-                    String qInboxId = parseQInboxIdFromScopedTopicFilter(stf_str);
+                    String qinboxId = parseQInboxIdFromScopedTopicFilter(stf_str);
                     matchRecordKeyPrefixMap.computeIfAbsent(toMatchRecordKeyPrefix(tenantId, topicFilter),
                             k -> new RecordEstimation(false))
-                        .addRecordSize(matchRecordSize(tenantId, topicFilter, qInboxId));
+                        .addRecordSize(matchRecordSize(tenantId, topicFilter, qinboxId));
                 });
                 doEstimate(matchRecordKeyPrefixMap);
             }
@@ -99,10 +99,10 @@ public class FanoutSplitHinter implements IKVRangeSplitHinter {
                 request.getScopedTopicFilterList().forEach((stf_str) -> {
                     String tenantId = parseTenantIdFromScopedTopicFilter(stf_str);
                     String topicFilter = parseTopicFilterFromScopedTopicFilter(stf_str);
-                    String qInboxId = parseQInboxIdFromScopedTopicFilter(stf_str);
+                    String qinboxId = parseQInboxIdFromScopedTopicFilter(stf_str);
                     matchRecordKeyPrefixMap.computeIfAbsent(toMatchRecordKeyPrefix(tenantId, topicFilter),
                             k -> new RecordEstimation(true))
-                        .addRecordSize(matchRecordSize(tenantId, topicFilter, qInboxId));
+                        .addRecordSize(matchRecordSize(tenantId, topicFilter, qinboxId));
                 });
                 doEstimate(matchRecordKeyPrefixMap);
             }
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2024. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.dist.worker;
+
+import static com.baidu.bifromq.dist.entity.EntityUtil.parseMatchRecord;
+import static com.baidu.bifromq.dist.entity.EntityUtil.toNormalMatchRecordKey;
+import static com.baidu.bifromq.dist.entity.EntityUtil.toQInboxId;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+import com.baidu.bifromq.deliverer.DeliveryCall;
+import com.baidu.bifromq.deliverer.IMessageDeliverer;
+import com.baidu.bifromq.dist.client.IDistClient;
+import com.baidu.bifromq.dist.entity.Matching;
+import com.baidu.bifromq.plugin.eventcollector.IEventCollector;
+import com.baidu.bifromq.plugin.eventcollector.distservice.DeliverError;
+import com.baidu.bifromq.plugin.eventcollector.distservice.DeliverNoInbox;
+import com.baidu.bifromq.plugin.eventcollector.distservice.Delivered;
+import com.baidu.bifromq.plugin.subbroker.DeliveryResult;
+import com.baidu.bifromq.type.ClientInfo;
+import com.baidu.bifromq.type.Message;
+import com.baidu.bifromq.type.TopicMessagePack;
+import com.bifromq.plugin.resourcethrottler.IResourceThrottler;
+import com.google.protobuf.ByteString;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class DeliverExecutorGroupTest {
+    private final String tenantId = "tenantA";
+    private final String topicFilter = "a/b";
+    private final String delivererKey = "deliverer";
+    @Mock
+    private IMessageDeliverer deliverer;
+    @Mock
+    private IEventCollector eventCollector;
+    @Mock
+    private IResourceThrottler resourceThrottler;
+    @Mock
+    private IDistClient distClient;
+    private DeliverExecutorGroup executorGroup;
+    private AutoCloseable closeable;
+
+    @BeforeMethod
+    public void setup() {
+        closeable = MockitoAnnotations.openMocks(this);
+        when(resourceThrottler.hasResource(anyString(), any())).thenReturn(true);
+        executorGroup = new DeliverExecutorGroup(deliverer, eventCollector, resourceThrottler, distClient, 2);
+    }
+
+    @AfterMethod
+    public void teardown() throws Exception {
+        executorGroup.shutdown();
+        closeable.close();
+    }
+
+    @Test
+    public void mixedResultsInOneBatch() {
+        when(deliverer.schedule(any())).thenAnswer(invocation -> {
+            DeliveryCall call = invocation.getArgument(0);
+            return switch (call.matchInfo.getReceiverId()) {
+                case "delivered" -> CompletableFuture.completedFuture(DeliveryResult.Code.OK);
+                case "noInbox" -> CompletableFuture.completedFuture(DeliveryResult.Code.NO_RECEIVER);
+                case "error" -> CompletableFuture.completedFuture(DeliveryResult.Code.ERROR);
+                default -> CompletableFuture.failedFuture(new RuntimeException("Mocked failure"));
+            };
+        });
+        TopicMessagePack msgPack = msgPack();
+        executorGroup.submit(List.of(route("delivered"), route("noInbox"), route("error"), route("failed")), msgPack);
+
+        ArgumentCaptor<DeliveryCall> callCap = ArgumentCaptor.forClass(DeliveryCall.class);
+        verify(deliverer, timeout(5000).times(4)).schedule(callCap.capture());
+        // the routes of the fan-out share one wrapped message pack
+        for (DeliveryCall call : callCap.getAllValues()) {
+            assertSame(call.msgPackWrapper, callCap.getAllValues().get(0).msgPackWrapper);
+            assertSame(call.msgPackWrapper.messagePack, msgPack);
+            assertEquals(call.delivererKey.delivererKey(), delivererKey);
+        }
+        // each route gets its own outcome
+        verify(eventCollector, timeout(5000)).report(any(Delivered.class));
+        verify(eventCollector, timeout(5000)).report(any(DeliverNoInbox.class));
+        verify(eventCollector, timeout(5000).times(2)).report(any(DeliverError.class));
+        verify(distClient, timeout(5000))
+            .unmatch(anyLong(), eq(tenantId), eq(topicFilter), eq("noInbox"), eq(delivererKey), eq(0));
+        verify(distClient, never())
+            .unmatch(anyLong(), anyString(), anyString(), eq("delivered"), anyString(), anyInt());
+    }
+
+    private Matching route(String inboxId) {
+        return parseMatchRecord(toNormalMatchRecordKey(tenantId, topicFilter, toQInboxId(0, inboxId, delivererKey)),
+            ByteString.EMPTY);
+    }
+
+    private TopicMessagePack msgPack() {
+        return TopicMessagePack.newBuilder()
+            .setTopic("a/b")
+            .addMessage(TopicMessagePack.PublisherPack.newBuilder()
+                .setPublisher(ClientInfo.newBuilder().setTenantId(tenantId).build())
+                .addMessage(Message.newBuilder().setPayload(ByteString.copyFromUtf8("hello")).build())
+                .build())
+            .build();
+    }
+}
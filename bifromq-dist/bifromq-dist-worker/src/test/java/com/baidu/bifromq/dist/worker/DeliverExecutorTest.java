@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2024. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.dist.worker;
+
+import static com.baidu.bifromq.sysprops.BifroMQSysProp.DIST_WORKER_DELIVER_QUEUE_CAPACITY;
+import static com.baidu.bifromq.sysprops.BifroMQSysProp.DIST_WORKER_DELIVER_QUEUE_MAX_WAIT_MS;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.baidu.bifromq.deliverer.DelivererKey;
+import com.baidu.bifromq.deliverer.IMessageDeliverer;
+import com.baidu.bifromq.deliverer.MessagePackWrapper;
+import com.baidu.bifromq.dist.client.IDistClient;
+import com.baidu.bifromq.dist.entity.NormalMatching;
+import com.baidu.bifromq.plugin.eventcollector.IEventCollector;
+import com.baidu.bifromq.plugin.eventcollector.distservice.DeliverError;
+import com.baidu.bifromq.plugin.eventcollector.distservice.Delivered;
+import com.baidu.bifromq.plugin.subbroker.DeliveryResult;
+import com.baidu.bifromq.type.TopicMessagePack;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import lombok.SneakyThrows;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class DeliverExecutorTest {
+    @Mock
+    private IMessageDeliverer deliverer;
+    @Mock
+    private IEventCollector eventCollector;
+    @Mock
+    private IDistClient distClient;
+    private AutoCloseable closeable;
+
+    @BeforeMethod
+    public void setup() {
+        closeable = MockitoAnnotations.openMocks(this);
+        System.setProperty(DIST_WORKER_DELIVER_QUEUE_CAPACITY.propKey, "2");
+        System.setProperty(DIST_WORKER_DELIVER_QUEUE_MAX_WAIT_MS.propKey, "10");
+    }
+
+    @SneakyThrows
+    @AfterMethod
+    public void teardown() {
+        System.clearProperty(DIST_WORKER_DELIVER_QUEUE_CAPACITY.propKey);
+        System.clearProperty(DIST_WORKER_DELIVER_QUEUE_MAX_WAIT_MS.propKey);
+        closeable.close();
+    }
+
+    @SneakyThrows
+    @Test
+    public void dropWhenQueueStaysFull() {
+        CountDownLatch latch = new CountDownLatch(1);
+        when(deliverer.schedule(any())).thenAnswer(invocation -> {
+            // stall the executor thread so that the queue stays full
+            latch.await();
+            return CompletableFuture.completedFuture(DeliveryResult.Code.OK);
+        });
+        DeliverExecutor executor = new DeliverExecutor(0, deliverer, eventCollector, distClient);
+        DelivererKey delivererKey = new DelivererKey(0, "deliverer");
+        MessagePackWrapper msgPack = MessagePackWrapper.wrap(TopicMessagePack.getDefaultInstance());
+        for (int i = 0; i < 10; i++) {
+            executor.submit(delivererKey, List.of(mock(NormalMatching.class)), msgPack, false);
+        }
+        verify(eventCollector, atLeastOnce()).report(any(DeliverError.class));
+
+        latch.countDown();
+        verify(eventCollector, timeout(5000).atLeastOnce()).report(any(Delivered.class));
+        executor.shutdown();
+    }
+
+    @SneakyThrows
+    @Test
+    public void resumeWhenQueueHasRoom() {
+        System.setProperty(DIST_WORKER_DELIVER_QUEUE_MAX_WAIT_MS.propKey, "5000");
+        CountDownLatch latch = new CountDownLatch(1);
+        when(deliverer.schedule(any())).thenAnswer(invocation -> {
+            latch.await();
+            return CompletableFuture.completedFuture(DeliveryResult.Code.OK);
+        });
+        DeliverExecutor executor = new DeliverExecutor(0, deliverer, eventCollector, distClient);
+        DelivererKey delivererKey = new DelivererKey(0, "deliverer");
+        MessagePackWrapper msgPack = MessagePackWrapper.wrap(TopicMessagePack.getDefaultInstance());
+        // release the stalled executor thread after the producer gets blocked
+        new Thread(() -> {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+            latch.countDown();
+        }).start();
+        for (int i = 0; i < 10; i++) {
+            executor.submit(delivererKey, List.of(mock(NormalMatching.class)), msgPack, false);
+        }
+        verify(eventCollector, timeout(5000).times(10)).report(any(Delivered.class));
+        verify(eventCollector, never()).report(any(DeliverError.class));
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.dist.worker;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import com.baidu.bifromq.deliverer.DelivererKey;
+import com.baidu.bifromq.deliverer.MessagePackWrapper;
+import com.baidu.bifromq.dist.entity.NormalMatching;
+import com.baidu.bifromq.type.TopicMessagePack;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import org.testng.annotations.Test;
+
+public class DeliverTaskRingBufferTest {
+    private final List<NormalMatching> routes = Collections.emptyList();
+    private final MessagePackWrapper msgPack = MessagePackWrapper.wrap(TopicMessagePack.getDefaultInstance());
+
+    @Test
+    public void capacity() {
+        assertEquals(new DeliverTaskRingBuffer(4).capacity(), 4);
+        assertEquals(new DeliverTaskRingBuffer(5).capacity(), 8);
+    }
+
+    @Test
+    public void offerAndDrain() {
+        DeliverTaskRingBuffer ringBuffer = new DeliverTaskRingBuffer(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ringBuffer.offer(new DelivererKey(i, "d"), routes, msgPack));
+        }
+        assertFalse(ringBuffer.offer(new DelivererKey(4, "d"), routes, msgPack));
+        assertEquals(ringBuffer.size(), 4);
+
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(ringBuffer.drain((delivererKey, r, m) -> drained.add(delivererKey.subBrokerId()), 3), 3);
+        assertEquals(drained, List.of(0, 1, 2));
+        assertEquals(ringBuffer.size(), 1);
+
+        // released slots are reused in next round
+        assertTrue(ringBuffer.offer(new DelivererKey(4, "d"), routes, msgPack));
+        assertEquals(ringBuffer.drain((delivererKey, r, m) -> drained.add(delivererKey.subBrokerId()), 10), 2);
+        assertEquals(drained, List.of(0, 1, 2, 3, 4));
+        assertTrue(ringBuffer.isEmpty());
+    }
+
+    @Test
+    public void multiProducers() throws InterruptedException {
+        int producers = 4;
+        int perProducer = 1000;
+        DeliverTaskRingBuffer ringBuffer = new DeliverTaskRingBuffer(64);
+        CountDownLatch latch = new CountDownLatch(producers);
+        for (int p = 0; p < producers; p++) {
+            int producerId = p;
+            new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    DelivererKey delivererKey = new DelivererKey(producerId, String.valueOf(i));
+                    while (!ringBuffer.offer(delivererKey, routes, msgPack)) {
+                        Thread.onSpinWait();
+                    }
+                }
+                latch.countDown();
+            }).start();
+        }
+        Map<Integer, Integer> lastSeq = new HashMap<>();
+        int total = 0;
+        while (total < producers * perProducer) {
+            total += ringBuffer.drain((delivererKey, r, m) -> {
+                int seq = Integer.parseInt(delivererKey.delivererKey());
+                // tasks from the same producer are drained in order
+                assertEquals(seq, lastSeq.getOrDefault(delivererKey.subBrokerId(), -1) + 1);
+                lastSeq.put(delivererKey.subBrokerId(), seq);
+            }, 16);
+        }
+        latch.await();
+        assertTrue(ringBuffer.isEmpty());
+    }
+}
@@ -280,16 +280,27 @@ public abstract class DistWorkerTest {
                                            String inboxId,
                                            String delivererKey,
                                            int maxMembersPerSharedSubGroup) {
+        return match(tenantId, topicFilter, subBroker, inboxId, delivererKey, maxMembersPerSharedSubGroup, true);
+    }
+
+    protected BatchMatchReply.Result match(String tenantId,
+                                           String topicFilter,
+                                           int subBroker,
+                                           String inboxId,
+                                           String delivererKey,
+                                           int maxMembersPerSharedSubGroup,
+                                           boolean matchRecordV2) {
         long reqId = ThreadLocalRandom.current().nextInt();
-        String qInboxId = toQInboxId(subBroker, inboxId, delivererKey);
-        KVRangeSetting s = storeClient.findByKey(toMatchRecordKey(tenantId, topicFilter, qInboxId)).get();
-        String scopedTopicFilter = EntityUtil.toScopedTopicFilter(tenantId, qInboxId, topicFilter);
+        String qinboxId = toQInboxId(subBroker, inboxId, delivererKey);
+        KVRangeSetting s = storeClient.findByKey(toMatchRecordKey(tenantId, topicFilter, qinboxId)).get();
+        String scopedTopicFilter = EntityUtil.toScopedTopicFilter(tenantId, qinboxId, topicFilter);
         DistServiceRWCoProcInput input = DistServiceRWCoProcInput.newBuilder()
             .setBatchMatch(BatchMatchRequest.newBuilder()
                 .setReqId(reqId)
-                .addScopedTopicFilter(EntityUtil.toScopedTopicFilter(tenantId, qInboxId, topicFilter))
+                .addScopedTopicFilter(EntityUtil.toScopedTopicFilter(tenantId, qinboxId, topicFilter))
                 .putOptions(tenantId,
                     TenantOption.newBuilder().setMaxReceiversPerSharedSubGroup(maxMembersPerSharedSubGroup).build())
+                .setMatchRecordV2(matchRecordV2)
                 .build())
             .build();
         KVRangeRWReply reply = storeClient.execute(s.leader, KVRangeRWRequest.newBuilder()
@@ -307,14 +318,20 @@ public abstract class DistWorkerTest {
 
     protected BatchUnmatchReply.Result unmatch(String tenantId, String topicFilter, int subBroker, String inboxId,
                                                String delivererKey) {
+        return unmatch(tenantId, topicFilter, subBroker, inboxId, delivererKey, true);
+    }
+
+    protected BatchUnmatchReply.Result unmatch(String tenantId, String topicFilter, int subBroker, String inboxId,
+                                               String delivererKey, boolean matchRecordV2) {
         long reqId = ThreadLocalRandom.current().nextInt();
-        String qInboxId = toQInboxId(subBroker, inboxId, delivererKey);
-        KVRangeSetting s = storeClient.findByKey(toMatchRecordKey(tenantId, topicFilter, qInboxId)).get();
-        String scopedTopicFilter = EntityUtil.toScopedTopicFilter(tenantId, qInboxId, topicFilter);
+        String qinboxId = toQInboxId(subBroker, inboxId, delivererKey);
+        KVRangeSetting s = storeClient.findByKey(toMatchRecordKey(tenantId, topicFilter, qinboxId)).get();
+        String scopedTopicFilter = EntityUtil.toScopedTopicFilter(tenantId, qinboxId, topicFilter);
         DistServiceRWCoProcInput input = DistServiceRWCoProcInput.newBuilder()
             .setBatchUnmatch(BatchUnmatchRequest.newBuilder()
                 .setReqId(reqId)
                 .addScopedTopicFilter(scopedTopicFilter)
+                .setMatchRecordV2(matchRecordV2)
                 .build()).build();
         KVRangeRWReply reply = storeClient.execute(s.leader, KVRangeRWRequest.newBuilder()
             .setReqId(reqId)
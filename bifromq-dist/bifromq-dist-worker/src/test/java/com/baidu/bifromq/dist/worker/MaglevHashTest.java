@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.dist.worker;
+
+import static com.google.common.hash.Hashing.murmur3_128;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.testng.annotations.Test;
+
+public class MaglevHashTest {
+    @Test
+    public void emptyPool() {
+        assertNull(newHash(Collections.emptyList()).get(1));
+    }
+
+    @Test
+    public void irrelevantToNodesOrder() {
+        List<String> nodes = nodes(10);
+        MaglevHash<Integer, String> hash = newHash(nodes);
+        Collections.reverse(nodes);
+        MaglevHash<Integer, String> reversed = newHash(nodes);
+        for (int key = 0; key < 1000; key++) {
+            assertEquals(hash.get(key), reversed.get(key));
+        }
+    }
+
+    @Test
+    public void balanced() {
+        List<String> nodes = nodes(10);
+        MaglevHash<Integer, String> hash = newHash(nodes);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int key = 0; key < 100000; key++) {
+            counts.merge(hash.get(key), 1, Integer::sum);
+        }
+        assertEquals(counts.size(), nodes.size());
+        counts.values().forEach(count -> assertTrue(count > 8000 && count < 12000));
+    }
+
+    @Test
+    public void minimalDisruption() {
+        List<String> nodes = nodes(10);
+        MaglevHash<Integer, String> hash = newHash(nodes);
+        String removed = nodes.remove(3);
+        MaglevHash<Integer, String> newHash = newHash(nodes);
+        int remapped = 0;
+        for (int key = 0; key < 10000; key++) {
+            String node = hash.get(key);
+            if (!node.equals(removed) && !node.equals(newHash.get(key))) {
+                remapped++;
+            }
+        }
+        assertTrue(remapped < 1000);
+    }
+
+    private List<String> nodes(int size) {
+        List<String> nodes = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            nodes.add("Node" + i);
+        }
+        return nodes;
+    }
+
+    private MaglevHash<Integer, String> newHash(List<String> nodes) {
+        return new MaglevHash<>(murmur3_128(), (from, into) -> into.putInt(from),
+            (from, into) -> into.putBytes(from.getBytes()), String::compareTo, nodes);
+    }
+}
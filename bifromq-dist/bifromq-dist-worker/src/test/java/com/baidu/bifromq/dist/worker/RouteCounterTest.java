@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2024. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.dist.worker;
+
+import static com.baidu.bifromq.basekv.utils.BoundaryUtil.FULL_BOUNDARY;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+import com.baidu.bifromq.basekv.proto.Boundary;
+import com.google.protobuf.ByteString;
+import java.nio.ByteBuffer;
+import org.testng.annotations.Test;
+
+public class RouteCounterTest {
+    @Test
+    public void parseWithSameBoundary() {
+        RouteCounter routeCounter = new RouteCounter(3, 2);
+        assertEquals(RouteCounter.parse(routeCounter.toByteString(FULL_BOUNDARY), FULL_BOUNDARY).get(), routeCounter);
+    }
+
+    @Test
+    public void staleAfterBoundaryChanged() {
+        Boundary leftHalf = Boundary.newBuilder().setEndKey(ByteString.copyFromUtf8("tenantB")).build();
+        ByteString value = new RouteCounter(3, 2).toByteString(FULL_BOUNDARY);
+        // written before split
+        assertFalse(RouteCounter.parse(value, leftHalf).isPresent());
+        // written before merge
+        assertFalse(RouteCounter.parse(new RouteCounter(3, 2).toByteString(leftHalf), FULL_BOUNDARY).isPresent());
+    }
+
+    @Test
+    public void staleWithoutBoundary() {
+        ByteString value = ByteString.copyFrom(ByteBuffer.allocate(2 * Long.BYTES).putLong(3).putLong(2).array());
+        assertFalse(RouteCounter.parse(value, Boundary.newBuilder()
+            .setStartKey(ByteString.copyFromUtf8("tenantA"))
+            .build()).isPresent());
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.dist.worker;
+
+import static com.baidu.bifromq.dist.entity.EntityUtil.parseMatchRecord;
+import static com.baidu.bifromq.dist.entity.EntityUtil.toMatchRecordKey;
+import static com.baidu.bifromq.dist.entity.EntityUtil.toQInboxId;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import com.baidu.bifromq.dist.entity.Matching;
+import com.baidu.bifromq.dist.rpc.proto.GroupMatchRecord;
+import com.google.protobuf.ByteString;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import org.testng.annotations.Test;
+
+public class RouteIndexTest {
+    private final String tenantId = "tenantA";
+
+    @Test
+    public void matchExactAndWildcard() {
+        RouteIndex index = new RouteIndex();
+        index.add(normal("a/b/c", "inbox1"));
+        index.add(normal("a/+/c", "inbox2"));
+        index.add(normal("a/#", "inbox3"));
+        index.add(normal("#", "inbox4"));
+        index.add(normal("a/b", "inbox5"));
+        index.add(normal("+/+", "inbox6"));
+
+        assertEquals(filters(index.match(tenantId, "a/b/c")), Set.of("a/b/c", "a/+/c", "a/#", "#"));
+        assertEquals(filters(index.match(tenantId, "a/b")), Set.of("a/#", "#", "a/b", "+/+"));
+        // '#' matches parent level
+        assertEquals(filters(index.match(tenantId, "a")), Set.of("a/#", "#"));
+        assertTrue(index.match("tenantB", "a/b/c").isEmpty());
+    }
+
+    @Test
+    public void sysTopicNotMatchedByFirstLevelWildcard() {
+        RouteIndex index = new RouteIndex();
+        index.add(normal("#", "inbox1"));
+        index.add(normal("+/x", "inbox2"));
+        index.add(normal("$sys/#", "inbox3"));
+
+        assertEquals(filters(index.match(tenantId, "$sys/x")), Set.of("$sys/#"));
+    }
+
+    @Test
+    public void emptyLevel() {
+        RouteIndex index = new RouteIndex();
+        index.add(normal("/a", "inbox1"));
+        index.add(normal("+/a", "inbox2"));
+        index.add(normal("a/", "inbox3"));
+
+        assertEquals(filters(index.match(tenantId, "/a")), Set.of("/a", "+/a"));
+        assertEquals(filters(index.match(tenantId, "a/")), Set.of("a/"));
+    }
+
+    @Test
+    public void removeAndPrune() {
+        RouteIndex index = new RouteIndex();
+        Matching m1 = normal("a/b", "inbox1");
+        Matching m2 = normal("a/b", "inbox2");
+        index.add(m1);
+        index.add(m2);
+        assertEquals(index.match(tenantId, "a/b").size(), 2);
+
+        index.remove(m1);
+        assertEquals(index.match(tenantId, "a/b").size(), 1);
+        index.remove(m2);
+        assertTrue(index.match(tenantId, "a/b").isEmpty());
+        assertTrue(index.isEmpty());
+    }
+
+    @Test
+    public void groupReplace() {
+        RouteIndex index = new RouteIndex();
+        String inbox1 = toQInboxId(1, "inbox1", "d");
+        String inbox2 = toQInboxId(1, "inbox2", "d");
+        ByteString key = toMatchRecordKey(tenantId, "$share/g/a/b", inbox1);
+        index.add(parseMatchRecord(key, GroupMatchRecord.newBuilder().addQReceiverId(inbox1).build().toByteString()));
+        index.add(parseMatchRecord(key, GroupMatchRecord.newBuilder()
+            .addQReceiverId(inbox1)
+            .addQReceiverId(inbox2)
+            .build().toByteString()));
+
+        List<Matching> matched = index.match(tenantId, "a/b");
+        assertEquals(matched.size(), 1);
+        assertEquals(matched.get(0).type(), Matching.Type.Group);
+    }
+
+    @Test
+    public void loadDeferredTenantOnFirstMatch() {
+        AtomicInteger loads = new AtomicInteger();
+        Matching persisted = normal("a/b", "inbox1");
+        RouteIndex index = new RouteIndex(tenantId -> {
+            loads.incrementAndGet();
+            return List.of(persisted);
+        });
+        index.defer(tenantId);
+        // changes before loading have been persisted, and will be loaded
+        index.add(normal("a/+", "inbox2"));
+        assertEquals(loads.get(), 0);
+        assertFalse(index.isEmpty());
+
+        assertEquals(filters(index.match(tenantId, "a/b")), Set.of("a/b"));
+        assertEquals(loads.get(), 1);
+
+        index.add(normal("a/#", "inbox3"));
+        index.remove(persisted);
+        assertEquals(filters(index.match(tenantId, "a/b")), Set.of("a/#"));
+        assertEquals(loads.get(), 1);
+    }
+
+    @Test
+    public void clearDeferredTenant() {
+        AtomicInteger loads = new AtomicInteger();
+        RouteIndex index = new RouteIndex(tenantId -> {
+            loads.incrementAndGet();
+            return List.of(normal("a/b", "inbox1"));
+        });
+        index.defer(tenantId);
+        index.clear();
+        assertTrue(index.isEmpty());
+        assertTrue(index.match(tenantId, "a/b").isEmpty());
+        assertEquals(loads.get(), 0);
+    }
+
+    private Matching normal(String topicFilter, String inbox) {
+        return parseMatchRecord(toMatchRecordKey(tenantId, topicFilter, toQInboxId(1, inbox, "d")), ByteString.EMPTY);
+    }
+
+    private Set<String> filters(List<Matching> matchings) {
+        return matchings.stream().map(Matching::originalTopicFilter).collect(Collectors.toSet());
+    }
+}
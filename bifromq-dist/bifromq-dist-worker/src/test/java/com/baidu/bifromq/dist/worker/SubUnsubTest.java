@@ -86,4 +86,33 @@ public class SubUnsubTest extends DistWorkerTest {
         result = match(tenantA, "$share/sharedSubExceedLimit/a/b/c", MqttBroker, "inbox3", "server1");
         assertEquals(result, BatchMatchReply.Result.OK);
     }
+
+    @Test(groups = "integration")
+    public void migrateLegacySub() {
+        BatchMatchReply.Result result = match(tenantA, "/a/legacy", MqttBroker, "inbox1", "server1", 100, false);
+        assertEquals(result, BatchMatchReply.Result.OK);
+        result = match(tenantA, "/a/legacy", MqttBroker, "inbox1", "server1");
+        assertEquals(result, BatchMatchReply.Result.OK);
+        BatchUnmatchReply.Result unmatchResult = unmatch(tenantA, "/a/legacy", MqttBroker, "inbox1", "server1");
+        assertEquals(unmatchResult, BatchUnmatchReply.Result.OK);
+        unmatchResult = unmatch(tenantA, "/a/legacy", MqttBroker, "inbox1", "server1", false);
+        assertEquals(unmatchResult, BatchUnmatchReply.Result.NOT_EXISTED);
+    }
+
+    @Test(groups = "integration")
+    public void migrateLegacySharedSub() {
+        String topicFilter = "$share/legacyGroup/a/b/c";
+        BatchMatchReply.Result result = match(tenantA, topicFilter, MqttBroker, "inbox1", "server1", 2, false);
+        assertEquals(result, BatchMatchReply.Result.OK);
+        result = match(tenantA, topicFilter, MqttBroker, "inbox2", "server1", 2);
+        assertEquals(result, BatchMatchReply.Result.OK);
+        // the members in legacy record are migrated along
+        result = match(tenantA, topicFilter, MqttBroker, "inbox3", "server1", 2);
+        assertEquals(result, BatchMatchReply.Result.EXCEED_LIMIT);
+
+        BatchUnmatchReply.Result unmatchResult = unmatch(tenantA, topicFilter, MqttBroker, "inbox1", "server1");
+        assertEquals(unmatchResult, BatchUnmatchReply.Result.OK);
+        unmatchResult = unmatch(tenantA, topicFilter, MqttBroker, "inbox2", "server1");
+        assertEquals(unmatchResult, BatchUnmatchReply.Result.OK);
+    }
 }
@@ -15,18 +15,14 @@ package com.baidu.bifromq.dist.worker;
 
 import static com.baidu.bifromq.basekv.utils.BoundaryUtil.FULL_BOUNDARY;
 import static com.baidu.bifromq.sysprops.BifroMQSysProp.DIST_TOPIC_MATCH_EXPIRY;
-import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.Mockito.doNothing;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertSame;
-import static org.testng.Assert.assertTrue;
 
 import com.baidu.bifromq.basekv.proto.KVRangeId;
-import com.baidu.bifromq.basekv.store.api.IKVIterator;
-import com.baidu.bifromq.basekv.store.api.IKVReader;
 import com.baidu.bifromq.basekv.utils.KVRangeIdUtil;
 import com.baidu.bifromq.dist.entity.EntityUtil;
 import com.baidu.bifromq.dist.entity.GroupMatching;
@@ -35,9 +31,12 @@ import com.baidu.bifromq.dist.entity.NormalMatching;
 import com.baidu.bifromq.dist.rpc.proto.GroupMatchRecord;
 import com.baidu.bifromq.type.ClientInfo;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.ByteString;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Supplier;
+import java.util.concurrent.atomic.AtomicBoolean;
 import lombok.SneakyThrows;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
@@ -48,11 +47,7 @@ import org.testng.annotations.Test;
 public class SubscriptionCacheTest {
     private KVRangeId id = KVRangeIdUtil.generate();
     @Mock
-    private IKVReader rangeReader;
-    @Mock
-    private IKVIterator kvIterator;
-    @Mock
-    private Supplier<IKVReader> rangeReaderProvider;
+    private RouteIndex routeIndex;
     private ExecutorService matchExecutor;
     private AutoCloseable closeable;
 
@@ -61,8 +56,7 @@ public class SubscriptionCacheTest {
         closeable = MockitoAnnotations.openMocks(this);
         id = KVRangeIdUtil.generate();
         System.setProperty(DIST_TOPIC_MATCH_EXPIRY.propKey, "1");
-        when(rangeReaderProvider.get()).thenReturn(rangeReader);
-        when(rangeReader.iterator()).thenReturn(kvIterator);
+        when(routeIndex.match(anyString(), anyString())).thenReturn(Collections.emptyList());
         matchExecutor = MoreExecutors.newDirectExecutorService();
     }
 
@@ -80,9 +74,7 @@ public class SubscriptionCacheTest {
             .boundary(FULL_BOUNDARY)
             .build();
         ClientInfo sender = ClientInfo.newBuilder().setTenantId("testTraffic").build();
-        SubscriptionCache cache = new SubscriptionCache(id, rangeReaderProvider, matchExecutor);
-        doNothing().when(kvIterator).seek(scopedTopic.matchRecordRange.getStartKey());
-        when(kvIterator.isValid()).thenReturn(false);
+        SubscriptionCache cache = new SubscriptionCache(id, routeIndex, matchExecutor);
 
         SubscriptionCache.MatchResult matchResult = cache.get(scopedTopic).join();
         assertEquals(matchResult.routes.size(), 0);
@@ -93,7 +85,7 @@ public class SubscriptionCacheTest {
         assertEquals(matchResult.routes.size(), 0);
 //        assertTrue(matchResult.get(scopedTopic).isEmpty());
 
-        verify(rangeReader).refresh();
+        verify(routeIndex, times(1)).match(scopedTopic.tenantId, scopedTopic.topic);
     }
 
     @SneakyThrows
@@ -105,10 +97,8 @@ public class SubscriptionCacheTest {
             .boundary(FULL_BOUNDARY)
             .build();
 
-        SubscriptionCache cache = new SubscriptionCache(id, rangeReaderProvider, matchExecutor);
+        SubscriptionCache cache = new SubscriptionCache(id, routeIndex, matchExecutor);
 
-        doNothing().when(kvIterator).seek(scopedTopic.matchRecordRange.getStartKey());
-        when(kvIterator.isValid()).thenReturn(false);
         SubscriptionCache.MatchResult matchResult = cache.get(scopedTopic).join();
         Thread.sleep(500);
         cache.get(scopedTopic).join();
@@ -116,8 +106,7 @@ public class SubscriptionCacheTest {
         matchResult = cache.get(scopedTopic).join();
         assertEquals(matchResult.routes.size(), 0);
 
-        verify(kvIterator, times(1)).seek(any());
-        verify(rangeReader, times(1)).refresh();
+        verify(routeIndex, times(1)).match(scopedTopic.tenantId, scopedTopic.topic);
     }
 
     @SneakyThrows
@@ -129,47 +118,103 @@ public class SubscriptionCacheTest {
             .topic("/test/user")
             .boundary(FULL_BOUNDARY)
             .build();
-        SubscriptionCache cache = new SubscriptionCache(id, rangeReaderProvider, matchExecutor);
+        SubscriptionCache cache = new SubscriptionCache(id, routeIndex, matchExecutor);
 
-        when(kvIterator.isValid()).thenReturn(false);
 
         SubscriptionCache.MatchResult matchResult = cache.get(scopedTopic).join();
         Thread.sleep(1100);
-        doNothing().when(kvIterator).seek(scopedTopic.matchRecordRange.getStartKey());
-        when(kvIterator.isValid()).thenReturn(false);
 
         matchResult = cache.get(scopedTopic).join();
         assertEquals(matchResult.routes.size(), 0);
-        verify(kvIterator, times(2)).seek(any());
-        verify(kvIterator, times(2)).seek(scopedTopic.matchRecordRange.getStartKey());
+        verify(routeIndex, times(2)).match(scopedTopic.tenantId, scopedTopic.topic);
     }
 
-    @SneakyThrows
-    @Test(priority = 0)
-    public void cacheTouchAndMatch() {
+    @Test
+    public void cacheInvalidateByWildcard() {
         String tenantId = "testTenant";
         ScopedTopic scopedTopic = ScopedTopic.builder()
             .tenantId(tenantId)
             .topic("/test/user")
             .boundary(FULL_BOUNDARY)
             .build();
-        SubscriptionCache cache = new SubscriptionCache(id, rangeReaderProvider, matchExecutor);
+        ScopedTopic otherTopic = ScopedTopic.builder()
+            .tenantId(tenantId)
+            .topic("/other/user")
+            .boundary(FULL_BOUNDARY)
+            .build();
+        SubscriptionCache cache = new SubscriptionCache(id, routeIndex, matchExecutor);
+        cache.get(scopedTopic).join();
+        cache.get(otherTopic).join();
 
-        when(kvIterator.isValid()).thenReturn(false);
-        SubscriptionCache.MatchResult matchResult = cache.get(scopedTopic).join();
-        Thread.sleep(500);
+        // not matched
+        cache.invalidate(ScopedTopic.builder()
+            .tenantId(tenantId)
+            .topic("/test/+/+")
+            .boundary(FULL_BOUNDARY)
+            .build());
         cache.get(scopedTopic).join();
-        cache.touch(tenantId);
-        Thread.sleep(600);
+        cache.get(otherTopic).join();
+        verify(routeIndex, times(1)).match(tenantId, scopedTopic.topic);
+        verify(routeIndex, times(1)).match(tenantId, otherTopic.topic);
 
-        doNothing().when(kvIterator).seek(scopedTopic.matchRecordRange.getStartKey());
-        when(kvIterator.isValid()).thenReturn(false);
+        // matched
+        cache.invalidate(ScopedTopic.builder()
+            .tenantId(tenantId)
+            .topic("/test/#")
+            .boundary(FULL_BOUNDARY)
+            .build());
+        cache.get(scopedTopic).join();
+        cache.get(otherTopic).join();
+        verify(routeIndex, times(2)).match(tenantId, scopedTopic.topic);
+        verify(routeIndex, times(1)).match(tenantId, otherTopic.topic);
 
-        SubscriptionCache.MatchResult matchResult1 = cache.get(scopedTopic).join();
-        assertTrue(matchResult1.tenantVer > matchResult.tenantVer);
-        assertEquals(matchResult1.routes.size(), 0);
-        verify(kvIterator, times(2)).seek(any());
-        verify(kvIterator, times(2)).seek(scopedTopic.matchRecordRange.getStartKey());
+        // '#' matches the parent level as well
+        cache.invalidate(ScopedTopic.builder()
+            .tenantId(tenantId)
+            .topic("/test/+/#")
+            .boundary(FULL_BOUNDARY)
+            .build());
+        cache.get(scopedTopic).join();
+        cache.get(otherTopic).join();
+        verify(routeIndex, times(3)).match(tenantId, scopedTopic.topic);
+        verify(routeIndex, times(1)).match(tenantId, otherTopic.topic);
+    }
+
+    @Test
+    public void invalidateDuringMatch() {
+        String tenantId = "testTenant";
+        ScopedTopic scopedTopic = ScopedTopic.builder()
+            .tenantId(tenantId)
+            .topic("/test/user")
+            .boundary(FULL_BOUNDARY)
+            .build();
+        ScopedTopic topicFilter = ScopedTopic.builder()
+            .tenantId(tenantId)
+            .topic("/test/+")
+            .boundary(FULL_BOUNDARY)
+            .build();
+        SubscriptionCache cache = new SubscriptionCache(id, routeIndex, matchExecutor);
+        Matching matching = EntityUtil.parseMatchRecord(
+            EntityUtil.toMatchRecordKey(tenantId, topicFilter.topic, EntityUtil.toQInboxId(0, "inbox1", "d")),
+            ByteString.EMPTY);
+        AtomicBoolean subscribed = new AtomicBoolean();
+        when(routeIndex.match(tenantId, scopedTopic.topic)).thenAnswer(invocation -> {
+            if (subscribed.compareAndSet(false, true)) {
+                // sub happens after matching against the route index, but before the result is cached
+                cache.invalidate(topicFilter);
+                return Collections.emptyList();
+            }
+            return List.of(matching);
+        });
+
+        // the staled result should be discarded and rematched
+        SubscriptionCache.MatchResult matchResult = cache.get(scopedTopic).join();
+        assertEquals(matchResult.routes, List.of(matching));
+        verify(routeIndex, times(2)).match(tenantId, scopedTopic.topic);
+
+        // the rematched result is cached
+        assertEquals(cache.get(scopedTopic).join().routes, List.of(matching));
+        verify(routeIndex, times(2)).match(tenantId, scopedTopic.topic);
     }
 
     @SneakyThrows
@@ -181,26 +226,20 @@ public class SubscriptionCacheTest {
             .topic("/test/user")
             .boundary(FULL_BOUNDARY)
             .build();
-        SubscriptionCache cache = new SubscriptionCache(id, rangeReaderProvider, matchExecutor);
+        SubscriptionCache cache = new SubscriptionCache(id, routeIndex, matchExecutor);
 
-        when(kvIterator.isValid()).thenReturn(false);
 
         SubscriptionCache.MatchResult matchResult = cache.get(scopedTopic).join();
 
         Thread.sleep(500);
         SubscriptionCache.MatchResult matchResult1 = cache.get(scopedTopic).join();
-        assertEquals(matchResult1.tenantVer, matchResult.tenantVer);
         cache.invalidate(scopedTopic); // invalidate
         Thread.sleep(600);
 
-        doNothing().when(kvIterator).seek(scopedTopic.matchRecordRange.getStartKey());
-        when(kvIterator.isValid()).thenReturn(false);
 
         SubscriptionCache.MatchResult matchResult2 = cache.get(scopedTopic).join();
-        assertEquals(matchResult2.tenantVer, matchResult.tenantVer);
         assertEquals(matchResult2.routes.size(), 0);
-        verify(kvIterator, times(2)).seek(any());
-        verify(kvIterator, times(2)).seek(scopedTopic.matchRecordRange.getStartKey());
+        verify(routeIndex, times(2)).match(scopedTopic.tenantId, scopedTopic.topic);
     }
 
     @Test
@@ -210,16 +249,13 @@ public class SubscriptionCacheTest {
             .topic("/test/user")
             .boundary(FULL_BOUNDARY)
             .build();
-        SubscriptionCache cache = new SubscriptionCache(id, rangeReaderProvider, matchExecutor);
-
-        doNothing().when(kvIterator).seek(scopedTopic.matchRecordRange.getStartKey());
-        when(kvIterator.isValid()).thenReturn(true, false);
-        String qInboxId = EntityUtil.toQInboxId(0, "inbox1", "deliverer1");
+        String qinboxId = EntityUtil.toQInboxId(0, "inbox1", "deliverer1");
         String sharedTopicFilter = "$oshare/group/" + scopedTopic.topic;
-        when(kvIterator.key())
-            .thenReturn(EntityUtil.toMatchRecordKey(scopedTopic.tenantId, sharedTopicFilter, qInboxId));
-        when(kvIterator.value())
-            .thenReturn(GroupMatchRecord.newBuilder().addQReceiverId(qInboxId).build().toByteString());
+        RouteIndex index = new RouteIndex();
+        index.add(EntityUtil.parseMatchRecord(
+            EntityUtil.toMatchRecordKey(scopedTopic.tenantId, sharedTopicFilter, qinboxId),
+            GroupMatchRecord.newBuilder().addQReceiverId(qinboxId).build().toByteString()));
+        SubscriptionCache cache = new SubscriptionCache(id, index, matchExecutor);
 
         SubscriptionCache.MatchResult matchResult = cache.get(scopedTopic).join();
         assertEquals(matchResult.routes.size(), 1);
@@ -55,6 +55,17 @@ public class TenantsStatesTest extends MeterTest {
         assertGaugeValue(tenantId, MqttSharedSubNumGauge, 1);
     }
 
+    @Test
+    public void decNormalRoute() {
+        when(reader.size(any())).thenReturn(1L);
+        String tenantId = "tenant" + System.nanoTime();
+        TenantsState tenantsState = new TenantsState(reader);
+        tenantsState.incSharedRoutes(tenantId);
+        tenantsState.incNormalRoutes(tenantId);
+        tenantsState.decNormalRoutes(tenantId);
+        assertGaugeValue(tenantId, MqttSharedSubNumGauge, 1);
+    }
+
     @Test
     public void testRemove() {
         when(reader.size(any())).thenReturn(1L);
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.dist.worker;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.testng.annotations.Test;
+
+public class TopicIndexTest {
+    @Test
+    public void register() {
+        TopicIndex index = new TopicIndex();
+        TopicIndex.Entry entry = index.register("a/b");
+        assertSame(index.register("a/b"), entry);
+        index.unregister("a/b");
+        assertTrue(entry.isDetached());
+        assertNotSame(index.register("a/b"), entry);
+    }
+
+    @Test
+    public void detach() {
+        TopicIndex index = new TopicIndex();
+        index.register("a");
+        index.register("a/b");
+        index.register("a/b/c");
+        index.register("a/c");
+        index.register("/a");
+        index.register("$sys/a");
+
+        assertEquals(detach(index, "x/#"), Set.of());
+        assertEquals(detach(index, "a/+"), Set.of("a/b", "a/c"));
+        assertEquals(detach(index, "+/#"), Set.of("a", "a/b/c", "/a"));
+        assertEquals(detach(index, "#"), Set.of());
+        assertEquals(detach(index, "$sys/#"), Set.of("$sys/a"));
+    }
+
+    @Test
+    public void detachedEntry() {
+        TopicIndex index = new TopicIndex();
+        TopicIndex.Entry entry1 = index.register("a/b");
+        TopicIndex.Entry entry2 = index.register("a/c");
+        index.detach("a/b");
+        assertTrue(entry1.isDetached());
+        assertFalse(entry2.isDetached());
+    }
+
+    private Set<String> detach(TopicIndex index, String topicFilter) {
+        return index.detach(topicFilter).stream().map(e -> e.topic).collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.dist.worker.benchmark;
+
+import static com.baidu.bifromq.dist.entity.EntityUtil.parseMatchRecord;
+import static com.baidu.bifromq.dist.entity.EntityUtil.toMatchRecordKey;
+import static com.baidu.bifromq.dist.entity.EntityUtil.toQInboxId;
+import static org.mockito.Mockito.mock;
+
+import com.baidu.bifromq.deliverer.DeliveryCall;
+import com.baidu.bifromq.deliverer.IMessageDeliverer;
+import com.baidu.bifromq.dist.client.IDistClient;
+import com.baidu.bifromq.dist.entity.Matching;
+import com.baidu.bifromq.dist.worker.DeliverExecutorGroup;
+import com.baidu.bifromq.plugin.eventcollector.IEventCollector;
+import com.baidu.bifromq.plugin.subbroker.DeliveryResult;
+import com.baidu.bifromq.type.ClientInfo;
+import com.baidu.bifromq.type.Message;
+import com.baidu.bifromq.type.TopicMessagePack;
+import com.google.protobuf.ByteString;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * The throughput of fanning out one message pack to the given number of routes, the delivered messages per second is
+ * the score multiplied by the route count.
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class FanOutBenchmark {
+    @SneakyThrows
+    public static void main(String[] args) {
+        Options opt = new OptionsBuilder()
+            .include(FanOutBenchmark.class.getSimpleName())
+            .build();
+        new Runner(opt).run();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Threads(4)
+    public void fanOut(FanOutState state) {
+        state.executorGroup.submit(state.routes, state.msgPack);
+    }
+
+    @Slf4j
+    @State(Scope.Benchmark)
+    public static class FanOutState {
+        @Param({"1", "100", "10000"})
+        public int routeCount;
+        // the number of distinct deliverers the routes spread on
+        @Param({"16"})
+        public int delivererCount;
+
+        final List<Matching> routes = new ArrayList<>();
+        final LongAdder delivered = new LongAdder();
+        DeliverExecutorGroup executorGroup;
+        TopicMessagePack msgPack;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            for (int i = 0; i < routeCount; i++) {
+                String qinboxId = toQInboxId(1, "inbox" + i, "deliverer" + (i % delivererCount));
+                routes.add(parseMatchRecord(toMatchRecordKey("tenantA", "a/b/c", qinboxId), ByteString.EMPTY));
+            }
+            msgPack = TopicMessagePack.newBuilder()
+                .setTopic("a/b/c")
+                .addMessage(TopicMessagePack.PublisherPack.newBuilder()
+                    .setPublisher(ClientInfo.newBuilder().setTenantId("tenantA").build())
+                    .addMessage(Message.newBuilder()
+                        .setPayload(ByteString.copyFrom(new byte[128]))
+                        .build())
+                    .build())
+                .build();
+            IMessageDeliverer deliverer = new IMessageDeliverer() {
+                @Override
+                public CompletableFuture<DeliveryResult.Code> schedule(DeliveryCall request) {
+                    delivered.increment();
+                    return CompletableFuture.completedFuture(DeliveryResult.Code.OK);
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+            executorGroup = new DeliverExecutorGroup(deliverer, mock(IEventCollector.class),
+                (tenantId, type) -> true, mock(IDistClient.class), Runtime.getRuntime().availableProcessors());
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() {
+            executorGroup.shutdown();
+            log.info("Delivered {} messages to {} routes", delivered.sum(), routeCount);
+        }
+    }
+}
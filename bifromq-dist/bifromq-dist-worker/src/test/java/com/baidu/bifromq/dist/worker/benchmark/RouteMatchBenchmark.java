@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.dist.worker.benchmark;
+
+import static com.baidu.bifromq.dist.entity.EntityUtil.parseMatchRecord;
+
+import com.baidu.bifromq.dist.entity.Matching;
+import com.baidu.bifromq.dist.worker.RouteIndex;
+import com.baidu.bifromq.dist.worker.SubscriptionCache;
+import com.google.protobuf.ByteString;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import lombok.SneakyThrows;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class RouteMatchBenchmark {
+    @SneakyThrows
+    public static void main(String[] args) {
+        Options opt = new OptionsBuilder()
+            .include(RouteMatchBenchmark.class.getSimpleName())
+            .build();
+        new Runner(opt).run();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Threads(4)
+    public List<Matching> matchRouteIndex(RouteMatchBenchmarkState state) {
+        return state.routeIndex.match(state.randomTenant(), state.randomTopic());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Threads(4)
+    public SubscriptionCache.MatchResult matchCachedHotTopic(RouteMatchBenchmarkState state) {
+        return state.routeCache.get(state.randomHotTopic()).join();
+    }
+
+    // the cost of a cache miss, i.e. matching against the route index and loading the result into the cache. Each
+    // batch walks through distinct topics against a cache emptied per iteration, so the score divided by the batch
+    // size is the cost per miss
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, batchSize = RouteMatchBenchmarkState.COLD_TOPICS)
+    @Measurement(iterations = 5, batchSize = RouteMatchBenchmarkState.COLD_TOPICS)
+    @Threads(1)
+    public SubscriptionCache.MatchResult matchUncachedTopic(RouteMatchBenchmarkState state) {
+        return state.coldRouteCache.get(state.nextColdTopic()).join();
+    }
+
+    // the cost of indexing all routes of a tenant from the kv space, which is paid when loading the range
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Threads(1)
+    public RouteIndex indexTenantRoutes(RouteMatchBenchmarkState state) {
+        RouteIndex routeIndex = new RouteIndex();
+        state.loadRoutes(state.randomTenant()).forEach(routeIndex::add);
+        return routeIndex;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Threads(1)
+    public Matching parseMatchRecordKey(RouteMatchBenchmarkState state) {
+        return parseMatchRecord(state.randomMatchRecordKey(), ByteString.EMPTY);
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2023. The BifroMQ Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.dist.worker.benchmark;
+
+import static com.baidu.bifromq.basekv.utils.BoundaryUtil.FULL_BOUNDARY;
+import static com.baidu.bifromq.dist.entity.EntityUtil.matchRecordKeyPrefix;
+import static com.baidu.bifromq.dist.entity.EntityUtil.parseMatchRecord;
+import static com.baidu.bifromq.dist.entity.EntityUtil.tenantUpperBound;
+import static com.baidu.bifromq.dist.entity.EntityUtil.toMatchRecordKey;
+import static com.baidu.bifromq.dist.entity.EntityUtil.toQInboxId;
+
+import com.baidu.bifromq.basekv.localengine.ICPableKVSpace;
+import com.baidu.bifromq.basekv.localengine.IKVEngine;
+import com.baidu.bifromq.basekv.localengine.IKVSpace;
+import com.baidu.bifromq.basekv.localengine.IKVSpaceIterator;
+import com.baidu.bifromq.basekv.localengine.IKVSpaceWriter;
+import com.baidu.bifromq.basekv.localengine.KVEngineFactory;
+import com.baidu.bifromq.basekv.localengine.memory.InMemKVEngineConfigurator;
+import com.baidu.bifromq.basekv.localengine.rocksdb.RocksDBCPableKVEngineConfigurator;
+import com.baidu.bifromq.basekv.proto.Boundary;
+import com.baidu.bifromq.basekv.utils.KVRangeIdUtil;
+import com.baidu.bifromq.dist.entity.Matching;
+import com.baidu.bifromq.dist.worker.RouteIndex;
+import com.baidu.bifromq.dist.worker.ScopedTopic;
+import com.baidu.bifromq.dist.worker.SubscriptionCache;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.ByteString;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import lombok.extern.slf4j.Slf4j;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * The match records of the benchmark tenants, persisted in a local kv space. Topic filters are generated from a fixed
+ * vocabulary with the same seed, so the data set is reproducible across runs.
+ */
+@Slf4j
+@State(Scope.Benchmark)
+public class RouteMatchBenchmarkState {
+    // the number of distinct topics matched by the uncached topic benchmark in each iteration
+    public static final int COLD_TOPICS = 10000;
+    private static final int TOPIC_LEVELS = 4;
+    private static final int HOT_TOPICS = 100;
+
+    @Param({"inMem", "rocksdb"})
+    public String engine;
+    @Param({"10"})
+    public int tenantCount;
+    @Param({"100000"})
+    public int filtersPerTenant;
+    // the ratio of topic filters containing wildcards
+    @Param({"0.1"})
+    public double wildcardRatio;
+    // the number of distinct level names in each topic level
+    @Param({"16"})
+    public int levelFanout;
+
+    public RouteIndex routeIndex;
+    public SubscriptionCache routeCache;
+    public SubscriptionCache coldRouteCache;
+    public final List<ByteString> matchRecordKeys = new ArrayList<>();
+    private final List<ScopedTopic> hotTopics = new ArrayList<>();
+    private final List<ScopedTopic> coldTopics = new ArrayList<>();
+    private int coldTopicCursor;
+    private IKVEngine<? extends ICPableKVSpace> kvEngine;
+    private IKVSpace kvSpace;
+    private Path dbRootDir;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        if ("rocksdb".equals(engine)) {
+            dbRootDir = Files.createTempDirectory("");
+            kvEngine = KVEngineFactory.createCPable(null, RocksDBCPableKVEngineConfigurator.builder()
+                .dbRootDir(dbRootDir.resolve("data").toString())
+                .dbCheckpointRootDir(dbRootDir.resolve("checkpoint").toString())
+                .build());
+        } else {
+            kvEngine = KVEngineFactory.createCPable(null, new InMemKVEngineConfigurator());
+        }
+        kvEngine.start();
+        kvSpace = kvEngine.createIfMissing(KVRangeIdUtil.toString(KVRangeIdUtil.generate()));
+        Random random = new Random(0);
+        IKVSpaceWriter writer = kvSpace.toWriter();
+        for (int t = 0; t < tenantCount; t++) {
+            String tenantId = tenant(t);
+            for (int i = 0; i < filtersPerTenant; i++) {
+                String topicFilter = random.nextDouble() < wildcardRatio
+                    ? randomTopicFilter(random) : randomTopic(random);
+                ByteString key = toMatchRecordKey(tenantId, topicFilter, toQInboxId(1, "inbox" + i, "deliverer" + i));
+                writer.put(key, ByteString.EMPTY);
+                if (matchRecordKeys.size() < HOT_TOPICS * 10) {
+                    matchRecordKeys.add(key);
+                }
+            }
+        }
+        writer.done();
+        routeIndex = new RouteIndex();
+        for (int t = 0; t < tenantCount; t++) {
+            loadRoutes(tenant(t)).forEach(routeIndex::add);
+        }
+        routeCache = new SubscriptionCache(KVRangeIdUtil.generate(), routeIndex,
+            MoreExecutors.newDirectExecutorService());
+        for (int i = 0; i < HOT_TOPICS; i++) {
+            ScopedTopic hotTopic = ScopedTopic.builder()
+                .tenantId(tenant(random.nextInt(tenantCount)))
+                .topic(randomTopic(random))
+                .boundary(FULL_BOUNDARY)
+                .build();
+            hotTopics.add(hotTopic);
+            // warm up the route index and the cache
+            routeCache.get(hotTopic).join();
+        }
+        Set<ScopedTopic> distinctTopics = new LinkedHashSet<>();
+        while (distinctTopics.size() < COLD_TOPICS) {
+            distinctTopics.add(ScopedTopic.builder()
+                .tenantId(tenant(random.nextInt(tenantCount)))
+                .topic(randomTopic(random))
+                .boundary(FULL_BOUNDARY)
+                .build());
+        }
+        coldTopics.addAll(distinctTopics);
+        log.info("Setup finished: tenants={}, filtersPerTenant={}", tenantCount, filtersPerTenant);
+    }
+
+    @Setup(Level.Iteration)
+    public void resetColdCache() {
+        if (coldRouteCache != null) {
+            coldRouteCache.close();
+        }
+        coldRouteCache = new SubscriptionCache(KVRangeIdUtil.generate(), routeIndex,
+            MoreExecutors.newDirectExecutorService());
+        coldTopicCursor = 0;
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws IOException {
+        routeCache.close();
+        coldRouteCache.close();
+        kvEngine.stop();
+        if (dbRootDir != null) {
+            try (var paths = Files.walk(dbRootDir)) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    public String randomTenant() {
+        return tenant(ThreadLocalRandom.current().nextInt(tenantCount));
+    }
+
+    public String randomTopic() {
+        return randomTopic(ThreadLocalRandom.current());
+    }
+
+    public ScopedTopic randomHotTopic() {
+        return hotTopics.get(ThreadLocalRandom.current().nextInt(hotTopics.size()));
+    }
+
+    public ScopedTopic nextColdTopic() {
+        return coldTopics.get(coldTopicCursor++ % coldTopics.size());
+    }
+
+    public ByteString randomMatchRecordKey() {
+        return matchRecordKeys.get(ThreadLocalRandom.current().nextInt(matchRecordKeys.size()));
+    }
+
+    public List<Matching> loadRoutes(String tenantId) {
+        List<Matching> routes = new ArrayList<>();
+        try (IKVSpaceIterator itr = kvSpace.newIterator(Boundary.newBuilder()
+            .setStartKey(matchRecordKeyPrefix(tenantId))
+            .setEndKey(tenantUpperBound(tenantId))
+            .build())) {
+            for (itr.seekToFirst(); itr.isValid(); itr.next()) {
+                routes.add(parseMatchRecord(itr.key(), itr.value()));
+            }
+        }
+        return routes;
+    }
+
+    private String tenant(int idx) {
+        return "tenant" + idx;
+    }
+
+    private String randomTopic(Random random) {
+        StringBuilder topic = new StringBuilder();
+        for (int i = 0; i < TOPIC_LEVELS; i++) {
+            if (i > 0) {
+                topic.append('/');
+            }
+            topic.append("level").append(random.nextInt(levelFanout));
+        }
+        return topic.toString();
+    }
+
+    private String randomTopicFilter(Random random) {
+        StringBuilder topicFilter = new StringBuilder();
+        int multiLevelAt = random.nextInt(TOPIC_LEVELS * 2);
+        for (int i = 0; i < TOPIC_LEVELS; i++) {
+            if (i > 0) {
+                topicFilter.append('/');
+            }
+            if (i == multiLevelAt) {
+                return topicFilter.append('#').toString();
+            }
+            if (random.nextBoolean()) {
+                topicFilter.append('+');
+            } else {
+                topicFilter.append("level").append(random.nextInt(levelFanout));
+            }
+        }
+        return topicFilter.toString();
+    }
+}
@@ -35,8 +35,9 @@ import lombok.extern.slf4j.Slf4j;
 public class BatchGetCall extends BatchQueryCall<GetRequest, GetReply> {
     protected BatchGetCall(KVRangeId rangeId,
                            IBaseKVStoreClient storeClient,
+                           long maxStaleMillis,
                            Duration pipelineExpiryTime) {
-        super(rangeId, storeClient, true, pipelineExpiryTime);
+        super(rangeId, storeClient, true, maxStaleMillis, pipelineExpiryTime);
     }
 
     @Override
@@ -14,6 +14,7 @@
 package com.baidu.bifromq.inbox.server.scheduler;
 
 import static com.baidu.bifromq.inbox.util.KeyUtil.inboxPrefix;
+import static com.baidu.bifromq.sysprops.BifroMQSysProp.INBOX_CHECK_MAX_STALE_MILLIS;
 import static com.baidu.bifromq.sysprops.BifroMQSysProp.INBOX_CHECK_QUEUES_PER_RANGE;
 
 import com.baidu.bifromq.basekv.client.IBaseKVStoreClient;
@@ -30,7 +31,8 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class InboxGetScheduler extends InboxReadScheduler<GetRequest, GetReply> implements IInboxGetScheduler {
     public InboxGetScheduler(IBaseKVStoreClient inboxStoreClient) {
-        super(INBOX_CHECK_QUEUES_PER_RANGE.get(), inboxStoreClient, "inbox_server_check");
+        super(INBOX_CHECK_QUEUES_PER_RANGE.get(), inboxStoreClient, "inbox_server_check",
+            INBOX_CHECK_MAX_STALE_MILLIS.get());
     }
 
     @Override
@@ -38,7 +40,8 @@ public class InboxGetScheduler extends InboxReadScheduler<GetRequest, GetReply>
                                                                             long tolerableLatencyNanos,
                                                                             long burstLatencyNanos,
                                                                             QueryCallBatcherKey batcherKey) {
-        return new InboxGetBatcher(batcherKey, name, tolerableLatencyNanos, burstLatencyNanos, storeClient);
+        return new InboxGetBatcher(batcherKey, name, tolerableLatencyNanos, burstLatencyNanos, storeClient,
+            maxStaleMillis);
     }
 
     @Override
@@ -47,17 +50,21 @@ public class InboxGetScheduler extends InboxReadScheduler<GetRequest, GetReply>
     }
 
     private static class InboxGetBatcher extends QueryCallBatcher<GetRequest, GetReply> {
+        private final long maxStaleMillis;
+
         InboxGetBatcher(QueryCallBatcherKey batcherKey,
                         String name,
                         long tolerableLatencyNanos,
                         long burstLatencyNanos,
-                        IBaseKVStoreClient storeClient) {
+                        IBaseKVStoreClient storeClient,
+                        long maxStaleMillis) {
             super(name, tolerableLatencyNanos, burstLatencyNanos, batcherKey, storeClient);
+            this.maxStaleMillis = maxStaleMillis;
         }
 
         @Override
         protected IBatchCall<GetRequest, GetReply, QueryCallBatcherKey> newBatch() {
-            return new BatchGetCall(batcherKey.id, storeClient, Duration.ofMinutes(5));
+            return new BatchGetCall(batcherKey.id, storeClient, maxStaleMillis, Duration.ofMinutes(5));
         }
     }
 }
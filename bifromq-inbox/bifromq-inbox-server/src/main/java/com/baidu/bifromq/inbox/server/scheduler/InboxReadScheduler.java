@@ -27,8 +27,13 @@ public abstract class InboxReadScheduler<Req, Resp> extends QueryCallScheduler<R
     protected final int queuesPerRange;
 
     public InboxReadScheduler(int queuesPerRange, IBaseKVStoreClient inboxStoreClient, String name) {
+        this(queuesPerRange, inboxStoreClient, name, 0);
+    }
+
+    public InboxReadScheduler(int queuesPerRange, IBaseKVStoreClient inboxStoreClient, String name,
+                              long maxStaleMillis) {
         super(name, inboxStoreClient, Duration.ofMillis(DATA_PLANE_TOLERABLE_LATENCY_MS.get()),
-            Duration.ofSeconds(DATA_PLANE_BURST_LATENCY_MS.get()));
+            Duration.ofSeconds(DATA_PLANE_BURST_LATENCY_MS.get()), maxStaleMillis);
         Preconditions.checkArgument(queuesPerRange > 0, "Queues per range must be positive");
         this.queuesPerRange = queuesPerRange;
     }
@@ -21,6 +21,7 @@ import com.baidu.bifromq.basekv.store.option.KVRangeStoreOptions;
 import com.baidu.bifromq.inbox.client.IInboxClient;
 import com.baidu.bifromq.plugin.eventcollector.IEventCollector;
 import com.baidu.bifromq.plugin.settingprovider.ISettingProvider;
+import io.netty.handler.ssl.SslContext;
 import java.time.Duration;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
@@ -39,6 +40,9 @@ abstract class AbstractInboxStoreBuilder<T extends AbstractInboxStoreBuilder<T>>
     Executor queryExecutor;
     ScheduledExecutorService tickTaskExecutor;
     ScheduledExecutorService bgTaskExecutor;
+    int queryPipelineConcurrency = 1;
+    boolean rpcStoreMessenger;
+    SslContext clientSslContext;
     Duration loadEstimateWindow = Duration.ofSeconds(5);
     Duration gcInterval = Duration.ofMinutes(5);
 
@@ -112,6 +116,21 @@ abstract class AbstractInboxStoreBuilder<T extends AbstractInboxStoreBuilder<T>>
         return thisT();
     }
 
+    public T queryPipelineConcurrency(int queryPipelineConcurrency) {
+        this.queryPipelineConcurrency = queryPipelineConcurrency;
+        return thisT();
+    }
+
+    public T rpcStoreMessenger(boolean rpcStoreMessenger) {
+        this.rpcStoreMessenger = rpcStoreMessenger;
+        return thisT();
+    }
+
+    public T clientSslContext(SslContext clientSslContext) {
+        this.clientSslContext = clientSslContext;
+        return thisT();
+    }
+
     public T loadEstimateWindow(Duration window) {
         this.loadEstimateWindow = window;
         return thisT();
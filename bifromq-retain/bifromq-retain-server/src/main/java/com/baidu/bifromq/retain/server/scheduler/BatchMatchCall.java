@@ -37,8 +37,9 @@ import java.util.Queue;
 public class BatchMatchCall extends BatchQueryCall<MatchCall, MatchCallResult> {
     protected BatchMatchCall(KVRangeId rangeId,
                              IBaseKVStoreClient storeClient,
+                             long maxStaleMillis,
                              Duration pipelineExpiryTime) {
-        super(rangeId, storeClient, true, pipelineExpiryTime);
+        super(rangeId, storeClient, true, maxStaleMillis, pipelineExpiryTime);
     }
 
     @Override
@@ -16,6 +16,7 @@ package com.baidu.bifromq.retain.server.scheduler;
 import static com.baidu.bifromq.retain.utils.KeyUtil.tenantNS;
 import static com.baidu.bifromq.sysprops.BifroMQSysProp.DATA_PLANE_BURST_LATENCY_MS;
 import static com.baidu.bifromq.sysprops.BifroMQSysProp.DATA_PLANE_TOLERABLE_LATENCY_MS;
+import static com.baidu.bifromq.sysprops.BifroMQSysProp.RETAIN_MATCH_MAX_STALE_MILLIS;
 
 import com.baidu.bifromq.basekv.client.IBaseKVStoreClient;
 import com.baidu.bifromq.basekv.client.scheduler.QueryCallBatcher;
@@ -33,7 +34,8 @@ public class MatchCallScheduler extends QueryCallScheduler<MatchCall, MatchCallR
     public MatchCallScheduler(IBaseKVStoreClient retainStoreClient) {
         super("retain_server_match_batcher", retainStoreClient,
             Duration.ofMillis(DATA_PLANE_TOLERABLE_LATENCY_MS.get()),
-            Duration.ofSeconds(DATA_PLANE_BURST_LATENCY_MS.get()));
+            Duration.ofSeconds(DATA_PLANE_BURST_LATENCY_MS.get()),
+            RETAIN_MATCH_MAX_STALE_MILLIS.get());
     }
 
     @Override
@@ -41,7 +43,8 @@ public class MatchCallScheduler extends QueryCallScheduler<MatchCall, MatchCallR
                                                                                   long tolerableLatencyNanos,
                                                                                   long burstLatencyNanos,
                                                                                   QueryCallBatcherKey batcherKey) {
-        return new MatchCallBatcher(batcherKey, name, tolerableLatencyNanos, burstLatencyNanos, storeClient);
+        return new MatchCallBatcher(batcherKey, name, tolerableLatencyNanos, burstLatencyNanos, storeClient,
+            maxStaleMillis);
     }
 
     @Override
@@ -55,18 +58,21 @@ public class MatchCallScheduler extends QueryCallScheduler<MatchCall, MatchCallR
     }
 
     public static class MatchCallBatcher extends QueryCallBatcher<MatchCall, MatchCallResult> {
+        private final long maxStaleMillis;
 
         protected MatchCallBatcher(QueryCallBatcherKey batcherKey,
                                    String name,
                                    long tolerableLatencyNanos,
                                    long burstLatencyNanos,
-                                   IBaseKVStoreClient storeClient) {
+                                   IBaseKVStoreClient storeClient,
+                                   long maxStaleMillis) {
             super(name, tolerableLatencyNanos, burstLatencyNanos, batcherKey, storeClient);
+            this.maxStaleMillis = maxStaleMillis;
         }
 
         @Override
         protected IBatchCall<MatchCall, MatchCallResult, QueryCallBatcherKey> newBatch() {
-            return new BatchMatchCall(batcherKey.id, storeClient, Duration.ofMinutes(5));
+            return new BatchMatchCall(batcherKey.id, storeClient, maxStaleMillis, Duration.ofMinutes(5));
         }
     }
 }
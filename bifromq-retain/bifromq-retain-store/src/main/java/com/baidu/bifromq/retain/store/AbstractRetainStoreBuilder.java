@@ -18,6 +18,7 @@ import com.baidu.bifromq.basecrdt.service.ICRDTService;
 import com.baidu.bifromq.basekv.balance.option.KVRangeBalanceControllerOptions;
 import com.baidu.bifromq.basekv.client.IBaseKVStoreClient;
 import com.baidu.bifromq.basekv.store.option.KVRangeStoreOptions;
+import io.netty.handler.ssl.SslContext;
 import java.time.Duration;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
@@ -33,6 +34,9 @@ abstract class AbstractRetainStoreBuilder<T extends AbstractRetainStoreBuilder<T
     Executor queryExecutor;
     ScheduledExecutorService tickTaskExecutor;
     ScheduledExecutorService bgTaskExecutor;
+    int queryPipelineConcurrency = 1;
+    boolean rpcStoreMessenger;
+    SslContext clientSslContext;
     Duration loadEstimateWindow = Duration.ofSeconds(5);
     Duration gcInterval = Duration.ofMinutes(60);
 
@@ -92,6 +96,21 @@ abstract class AbstractRetainStoreBuilder<T extends AbstractRetainStoreBuilder<T
         return thisT();
     }
 
+    public T queryPipelineConcurrency(int queryPipelineConcurrency) {
+        this.queryPipelineConcurrency = queryPipelineConcurrency;
+        return thisT();
+    }
+
+    public T rpcStoreMessenger(boolean rpcStoreMessenger) {
+        this.rpcStoreMessenger = rpcStoreMessenger;
+        return thisT();
+    }
+
+    public T clientSslContext(SslContext clientSslContext) {
+        this.clientSslContext = clientSslContext;
+        return thisT();
+    }
+
     public T loadEstimateWindow(Duration window) {
         this.loadEstimateWindow = window;
         return thisT();
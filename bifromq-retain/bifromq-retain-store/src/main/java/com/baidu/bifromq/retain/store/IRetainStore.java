@@ -15,6 +15,10 @@ package com.baidu.bifromq.retain.store;
 
 public interface IRetainStore {
     String CLUSTER_NAME = "retain.store";
+    // the max length of the key prefix which the bloom filters are built on, i.e. <SCHEMA_VER><tenantIdLength> and
+    // 16 more bytes. The prefix extractor is not aware of the key schema, so it covers some leading bytes of the
+    // topic when the tenantId is shorter, which only makes the filter finer, seeks remain exact in auto prefix mode
+    int KEY_PREFIX_LENGTH = 21;
 
     static StandaloneRetainStoreBuilder standaloneBuilder() {
         return new StandaloneRetainStoreBuilder();
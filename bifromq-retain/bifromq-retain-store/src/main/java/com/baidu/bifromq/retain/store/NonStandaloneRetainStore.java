@@ -32,6 +32,9 @@ final class NonStandaloneRetainStore extends AbstractRetainStore<NonStandaloneRe
             .queryExecutor(builder.queryExecutor)
             .tickTaskExecutor(builder.tickTaskExecutor)
             .bgTaskExecutor(builder.bgTaskExecutor)
+            .queryPipelineConcurrency(builder.queryPipelineConcurrency)
+            .rpcStoreMessenger(builder.rpcStoreMessenger)
+            .clientSslContext(builder.clientSslContext)
             .finish()
             // attach to rpc server
             .rpcServerBuilder(builder.rpcServerBuilder)
@@ -175,7 +175,7 @@ class RetainStoreCoProc implements IKVRangeCoProc {
             .setEndKey(upperBound(tenantNS))
             .build();
         reader.refresh();
-        IKVIterator itr = reader.iterator();
+        IKVIterator itr = reader.zeroCopyIterator();
         itr.seek(range.getStartKey());
         if (!itr.isValid()) {
             return emptyList();
@@ -32,6 +32,9 @@ final class StandaloneRetainStore extends AbstractRetainStore<StandaloneRetainSt
             .queryExecutor(builder.queryExecutor)
             .tickTaskExecutor(builder.tickTaskExecutor)
             .bgTaskExecutor(builder.bgTaskExecutor)
+            .queryPipelineConcurrency(builder.queryPipelineConcurrency)
+            .rpcStoreMessenger(builder.rpcStoreMessenger)
+            .clientSslContext(builder.clientSslContext)
             .finish()
             // build rpc server
             .host(builder.host)
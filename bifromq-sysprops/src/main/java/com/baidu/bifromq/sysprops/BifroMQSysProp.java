@@ -41,10 +41,14 @@ public enum BifroMQSysProp {
     CONTROL_PLANE_BURST_LATENCY_MS("control_plane_burst_latency_ms", 5000L, LongParser.POSITIVE),
     DIST_WORKER_CALL_QUEUES("dist_server_dist_worker_call_queues", EnvProvider.INSTANCE.availableProcessors(),
         IntegerParser.POSITIVE),
+    // write match records in v2 schema once all dist workers support it, set false to stay on legacy schema
+    DIST_MATCH_RECORD_SCHEMA_V2("dist_server_match_record_schema_v2", true, BooleanParser.INSTANCE),
     DIST_FAN_OUT_PARALLELISM("dist_worker_fanout_parallelism",
         Math.max(2, EnvProvider.INSTANCE.availableProcessors() / 8), IntegerParser.POSITIVE),
 
     DIST_INLINE_FAN_OUT_THRESHOLD("dist_worker_inline_fanout_threshold", 1000, IntegerParser.POSITIVE),
+    DIST_WORKER_DELIVER_QUEUE_CAPACITY("dist_worker_deliver_queue_capacity", 4096, IntegerParser.POSITIVE),
+    DIST_WORKER_DELIVER_QUEUE_MAX_WAIT_MS("dist_worker_deliver_queue_max_wait_ms", 100L, LongParser.POSITIVE),
     DIST_MAX_CACHED_SUBS_PER_TENANT("dist_worker_max_cached_subs_per_tenant", 200_000L, LongParser.POSITIVE),
     DIST_TOPIC_MATCH_EXPIRY("dist_worker_topic_match_expiry_seconds", 5, IntegerParser.POSITIVE),
     DIST_MATCH_PARALLELISM("dist_worker_match_parallelism",
@@ -61,6 +65,8 @@ public enum BifroMQSysProp {
     INBOX_FETCH_QUEUES_PER_RANGE("inbox_fetch_queues_per_range",
         Math.max(1, EnvProvider.INSTANCE.availableProcessors() / 4), IntegerParser.POSITIVE),
     INBOX_CHECK_QUEUES_PER_RANGE("inbox_check_queues_per_range", 1, IntegerParser.POSITIVE),
+    // the max staleness in millis allowed by inbox check, 0 for strictly linearizable read from the leader
+    INBOX_CHECK_MAX_STALE_MILLIS("inbox_check_max_stale_millis", 0L, LongParser.NON_NEGATIVE),
     INBOX_STORE_LOAD_EST_WINDOW_SECONDS("inbox_store_load_estimation_window_seconds", 5L, LongParser.POSITIVE),
     INBOX_STORE_RANGE_SPLIT_UNDER_RANGES_PER_STORE("inbox_store_range_split_under_ranges_per_store",
         EnvProvider.INSTANCE.availableProcessors(), IntegerParser.POSITIVE),
@@ -72,6 +78,8 @@ public enum BifroMQSysProp {
     INBOX_STORE_RECOVERY_TIMEOUT_MILLIS("inbox_store_recovery_timeout_millis", 10000L, LongParser.NON_NEGATIVE),
     MQTT_DELIVERERS_PER_SERVER("mqtt_deliverers_per_server",
         EnvProvider.INSTANCE.availableProcessors(), IntegerParser.POSITIVE),
+    // the max staleness in millis allowed by retain match, 0 for strictly linearizable read from the leader
+    RETAIN_MATCH_MAX_STALE_MILLIS("retain_match_max_stale_millis", 0L, LongParser.NON_NEGATIVE),
     RETAIN_STORE_RANGE_SPLIT_UNDER_RANGES_PER_STORE("retain_store_range_split_under_ranges_per_store",
         EnvProvider.INSTANCE.availableProcessors(), IntegerParser.POSITIVE),
     RETAIN_STORE_RANGE_SPLIT_MAX_CPU_USAGE("retain_store_range_split_max_cpu_usage", 0.8,
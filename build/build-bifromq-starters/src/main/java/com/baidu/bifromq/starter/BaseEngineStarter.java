@@ -31,7 +31,9 @@ public abstract class BaseEngineStarter<T extends StarterConfig> extends BaseSta
     public static final String USER_DIR_PROP = "user.dir";
     public static final String DATA_DIR_PROP = "DATA_DIR";
 
-    protected ICPableKVEngineConfigurator buildDataEngineConf(StorageEngineConfig config, String name) {
+    protected ICPableKVEngineConfigurator buildDataEngineConf(StorageEngineConfig config,
+                                                              String name,
+                                                              int keyPrefixLength) {
         if (config instanceof InMemEngineConfig) {
             return InMemKVEngineConfigurator.builder()
                 .build();
@@ -53,6 +55,7 @@ public abstract class BaseEngineStarter<T extends StarterConfig> extends BaseSta
             return RocksDBCPableKVEngineConfigurator.builder()
                 .dbRootDir(dataRootDir.toString())
                 .dbCheckpointRootDir(dataCheckpointRootDir.toString())
+                .keyPrefixLength(keyPrefixLength)
                 .heuristicCompaction(rocksDBConfig.isManualCompaction())
                 .compactMinTombstoneKeys(rocksDBConfig.getCompactMinTombstoneKeys())
                 .compactMinTombstoneRanges(rocksDBConfig.getCompactMinTombstoneRanges())
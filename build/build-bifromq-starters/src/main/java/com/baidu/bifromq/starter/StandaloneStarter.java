@@ -302,6 +302,9 @@ public class StandaloneStarter extends BaseEngineStarter<StandaloneConfig> {
             .queryExecutor(MoreExecutors.directExecutor())
             .tickTaskExecutor(tickTaskExecutor)
             .bgTaskExecutor(bgTaskExecutor)
+            .queryPipelineConcurrency(config.getStateStoreConfig().getRetainStoreConfig().getQueryPipelineConcurrency())
+            .rpcStoreMessenger(config.getStateStoreConfig().getRetainStoreConfig().isRpcStoreMessenger())
+            .clientSslContext(clientSslContext)
             .loadEstimateWindow(Duration.ofSeconds(RETAIN_STORE_LOAD_EST_WINDOW_SECONDS.get()))
             .gcInterval(Duration.ofSeconds(config.getStateStoreConfig().getRetainStoreConfig().getGcIntervalSeconds()))
             .balanceControllerOptions(
@@ -316,7 +319,7 @@ public class StandaloneStarter extends BaseEngineStarter<StandaloneConfig> {
                     buildDataEngineConf(config
                         .getStateStoreConfig()
                         .getRetainStoreConfig()
-                        .getDataEngineConfig(), "retain_data"))
+                        .getDataEngineConfig(), "retain_data", IRetainStore.KEY_PREFIX_LENGTH))
                 .setWalEngineConfigurator(
                     buildWALEngineConf(config
                         .getStateStoreConfig()
@@ -348,6 +351,9 @@ public class StandaloneStarter extends BaseEngineStarter<StandaloneConfig> {
             .queryExecutor(MoreExecutors.directExecutor())
             .tickTaskExecutor(tickTaskExecutor)
             .bgTaskExecutor(bgTaskExecutor)
+            .queryPipelineConcurrency(config.getStateStoreConfig().getInboxStoreConfig().getQueryPipelineConcurrency())
+            .rpcStoreMessenger(config.getStateStoreConfig().getInboxStoreConfig().isRpcStoreMessenger())
+            .clientSslContext(clientSslContext)
             .loadEstimateWindow(Duration.ofSeconds(INBOX_STORE_LOAD_EST_WINDOW_SECONDS.get()))
             .gcInterval(Duration.ofSeconds(config.getStateStoreConfig().getInboxStoreConfig().getGcIntervalSeconds()))
             .balanceControllerOptions(
@@ -363,7 +369,7 @@ public class StandaloneStarter extends BaseEngineStarter<StandaloneConfig> {
                     buildDataEngineConf(config
                         .getStateStoreConfig()
                         .getInboxStoreConfig()
-                        .getDataEngineConfig(), "inbox_data"))
+                        .getDataEngineConfig(), "inbox_data", IInboxStore.KEY_PREFIX_LENGTH))
                 .setWalEngineConfigurator(
                     buildWALEngineConf(config
                         .getStateStoreConfig()
@@ -427,6 +433,9 @@ public class StandaloneStarter extends BaseEngineStarter<StandaloneConfig> {
             .queryExecutor(MoreExecutors.directExecutor())
             .tickTaskExecutor(tickTaskExecutor)
             .bgTaskExecutor(bgTaskExecutor)
+            .queryPipelineConcurrency(config.getStateStoreConfig().getDistWorkerConfig().getQueryPipelineConcurrency())
+            .rpcStoreMessenger(config.getStateStoreConfig().getDistWorkerConfig().isRpcStoreMessenger())
+            .clientSslContext(clientSslContext)
             .storeOptions(new KVRangeStoreOptions()
                 .setKvRangeOptions(new KVRangeOptions()
                     .setCompactWALThreshold(config.getStateStoreConfig()
@@ -436,7 +445,7 @@ public class StandaloneStarter extends BaseEngineStarter<StandaloneConfig> {
                     buildDataEngineConf(config
                         .getStateStoreConfig()
                         .getDistWorkerConfig()
-                        .getDataEngineConfig(), "dist_data"))
+                        .getDataEngineConfig(), "dist_data", IDistWorker.KEY_PREFIX_LENGTH))
                 .setWalEngineConfigurator(
                     buildWALEngineConf(config
                         .getStateStoreConfig()
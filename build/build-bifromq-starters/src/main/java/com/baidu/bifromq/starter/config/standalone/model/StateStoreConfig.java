@@ -47,6 +47,8 @@ public class StateStoreConfig {
     @Setter
     public static class DistWorkerConfig {
         private int queryPipelinePerStore = 1000;
+        private int queryPipelineConcurrency = 4;
+        private boolean rpcStoreMessenger = false;
         private int compactWALThreshold = 2500;
         @JsonSetter(nulls = Nulls.SKIP)
         private StorageEngineConfig dataEngineConfig = new RocksDBEngineConfig();
@@ -70,6 +72,8 @@ public class StateStoreConfig {
     @Setter
     public static class InboxStoreConfig {
         private int queryPipelinePerStore = 100;
+        private int queryPipelineConcurrency = 4;
+        private boolean rpcStoreMessenger = false;
         private int compactWALThreshold = 2500;
         private int gcIntervalSeconds = 600;
         @JsonSetter(nulls = Nulls.SKIP)
@@ -93,6 +97,8 @@ public class StateStoreConfig {
     @Setter
     public static class RetainStoreConfig {
         private int queryPipelinePerStore = 100;
+        private int queryPipelineConcurrency = 4;
+        private boolean rpcStoreMessenger = false;
         private int compactWALThreshold = 2500;
         private int gcIntervalSeconds = 600;
         @JsonSetter(nulls = Nulls.SKIP)